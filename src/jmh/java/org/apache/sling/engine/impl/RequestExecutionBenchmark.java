@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.lang.reflect.Field;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.auth.core.AuthenticationSupport;
+import org.apache.sling.engine.impl.helper.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Compares the execution modes of the {@link SlingMainServlet} under load
+ * with a servlet blocking on I/O.
+ * <p>
+ * A burst of concurrent requests is passed to
+ * {@link SlingMainServlet#service(jakarta.servlet.ServletRequest, jakarta.servlet.ServletResponse)}
+ * by a fixed pool of worker threads modelling the servlet container. The
+ * requests support asynchronous processing, such that with
+ * <code>virtual</code> execution the worker thread only hands the request
+ * off, while with <code>platform</code> execution it renders the request
+ * itself. A request is done once the servlet returned or, if it started
+ * asynchronous processing, once its async context is completed. Virtual
+ * execution requires Java 21 or newer.
+ * <p>
+ * The request processor blocks like a servlet waiting for the repository
+ * or a backend. The servlet container objects are stub-only mocks, which
+ * do not record their invocations, and are created once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RequestExecutionBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String mode;
+
+    /** number of concurrent requests */
+    @Param({"2000"})
+    public int requests;
+
+    /** number of worker threads of the servlet container */
+    @Param({"200"})
+    public int workers;
+
+    /** time the servlet blocks, for example on repository or backend I/O */
+    @Param({"10"})
+    public long blockingMsec;
+
+    private ExecutorService container;
+
+    private ExecutorService requestExecutor;
+
+    private SlingMainServlet servlet;
+
+    private Exchange[] exchanges;
+
+    private volatile CountDownLatch done;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        container = Executors.newFixedThreadPool(workers);
+        servlet = new SlingMainServlet();
+        if (Config.EXECUTION_MODE_VIRTUAL.equals(mode)) {
+            requestExecutor = VirtualThreads.newExecutor();
+            if (requestExecutor == null) {
+                throw new IllegalStateException("Virtual threads require Java 21 or newer");
+            }
+            setField("requestExecutor", requestExecutor);
+        }
+
+        final SlingRequestProcessorImpl processor = mock(SlingRequestProcessorImpl.class, withSettings().stubOnly());
+        doAnswer(invocation -> {
+                    Thread.sleep(blockingMsec);
+                    return null;
+                })
+                .when(processor)
+                .doProcessRequest(any(), any(), any());
+        setField("requestProcessorImpl", processor);
+
+        final ResourceResolver resolver = mock(ResourceResolver.class, withSettings().stubOnly());
+        exchanges = new Exchange[requests];
+        for (int i = 0; i < requests; i++) {
+            exchanges[i] = new Exchange(resolver);
+        }
+
+        // make sure the benchmark measures the execution mode configured
+        burst();
+        for (final Exchange exchange : exchanges) {
+            if (exchange.async != (requestExecutor != null)) {
+                throw new IllegalStateException("The request has not been processed in " + mode + " mode");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        container.shutdownNow();
+        if (requestExecutor != null) {
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void burst() throws InterruptedException {
+        done = new CountDownLatch(requests);
+        for (final Exchange exchange : exchanges) {
+            exchange.reset();
+            container.execute(exchange::service);
+        }
+        done.await();
+    }
+
+    private void setField(final String name, final Object value) throws Exception {
+        final Field field = SlingMainServlet.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(servlet, value);
+    }
+
+    /**
+     * The request and response of the servlet container for one of the
+     * concurrent requests, which complete their async context like the
+     * container does.
+     */
+    private final class Exchange {
+
+        private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        private final List<AsyncListener> listeners = new CopyOnWriteArrayList<>();
+
+        private final ResourceResolver resolver;
+
+        private final HttpServletRequest request;
+
+        private final HttpServletResponse response;
+
+        private volatile boolean asyncStarted;
+
+        /** whether the request started asynchronous processing */
+        private volatile boolean async;
+
+        Exchange(final ResourceResolver resolver) {
+            this.resolver = resolver;
+            request = mock(HttpServletRequest.class, withSettings().stubOnly());
+            response = mock(HttpServletResponse.class, withSettings().stubOnly());
+            final AsyncContext asyncContext = mock(AsyncContext.class, withSettings().stubOnly());
+
+            when(request.getMethod()).thenReturn("GET");
+            when(request.getRequestURI()).thenReturn("/content/benchmark/page.html");
+            when(request.getAttribute(anyString()))
+                    .thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+            doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                    .when(request)
+                    .setAttribute(anyString(), any());
+            when(request.isAsyncSupported()).thenReturn(true);
+            when(request.isAsyncStarted()).thenAnswer(invocation -> asyncStarted);
+            when(request.getAsyncContext()).thenReturn(asyncContext);
+            when(request.startAsync(request, response)).thenAnswer(invocation -> {
+                asyncStarted = true;
+                async = true;
+                return asyncContext;
+            });
+
+            when(asyncContext.getRequest()).thenReturn(request);
+            doAnswer(invocation -> listeners.add(invocation.getArgument(0)))
+                    .when(asyncContext)
+                    .addListener(any());
+            doAnswer(invocation -> {
+                        asyncStarted = false;
+                        for (final AsyncListener listener : listeners) {
+                            listener.onComplete(new AsyncEvent(asyncContext));
+                        }
+                        done.countDown();
+                        return null;
+                    })
+                    .when(asyncContext)
+                    .complete();
+        }
+
+        void reset() {
+            attributes.clear();
+            attributes.put(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER, resolver);
+            listeners.clear();
+            asyncStarted = false;
+            async = false;
+        }
+
+        /** Runs on a worker thread of the servlet container */
+        void service() {
+            try {
+                servlet.service(request, response);
+            } catch (final ServletException e) {
+                throw new IllegalStateException(e);
+            }
+            if (!async) {
+                done.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.GenericServlet;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.engine.impl.filter.FilterHandle;
+import org.apache.sling.engine.impl.filter.ServletFilterManager;
+import org.apache.sling.engine.impl.filter.SlingFilterChainHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Drives a GET request through
+ * {@link SlingRequestProcessorImpl#doProcessRequest(HttpServletRequest, HttpServletResponse, ResourceResolver)}
+ * with in-memory resource and servlet resolution and without filters, so
+ * the numbers reflect the request processing of the engine itself.
+ * <p>
+ * The servlet container objects are stub-only mocks, which do not record
+ * their invocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RequestProcessorBenchmark {
+
+    private static final String RESOURCE_TYPE = "sling/benchmark";
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private SlingRequestProcessorImpl processor;
+
+    private ResourceResolver resourceResolver;
+
+    private HttpServletRequest servletRequest;
+
+    private HttpServletResponse servletResponse;
+
+    private InMemoryServletResolver servletResolver;
+
+    @Setup
+    public void setup() throws Exception {
+        final ServletFilterManager filterManager = mock(ServletFilterManager.class, withSettings().stubOnly());
+        when(filterManager.getFilters(any(), any())).thenReturn(new FilterHandle[0]);
+        when(filterManager.getSelection(any())).thenReturn(new SlingFilterChainHelper().getSelection());
+
+        servletResolver = new InMemoryServletResolver();
+        processor = new SlingRequestProcessorImpl();
+        setField(processor, "servletResolver", servletResolver);
+        setField(processor, "filterManager", filterManager);
+        setField(processor, "mbean", new RequestProcessorMBeanImpl());
+
+        resourceResolver = mock(ResourceResolver.class, withSettings().stubOnly());
+        when(resourceResolver.resolve(any(HttpServletRequest.class), anyString()))
+                .thenAnswer(invocation -> resolve(invocation.getArgument(1)));
+
+        servletRequest = mock(HttpServletRequest.class, withSettings().stubOnly());
+        when(servletRequest.getMethod()).thenReturn("GET");
+        when(servletRequest.getContextPath()).thenReturn("");
+        when(servletRequest.getServletPath()).thenReturn("");
+        when(servletRequest.getPathInfo()).thenReturn("/content/benchmark/page.sel.html");
+        when(servletRequest.getRequestURI()).thenReturn("/content/benchmark/page.sel.html");
+        when(servletRequest.getRequestURL())
+                .thenAnswer(invocation -> new StringBuffer("http://localhost/content/benchmark/page.sel.html"));
+        when(servletRequest.getAttribute(anyString()))
+                .thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+        doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(servletRequest)
+                .setAttribute(anyString(), any());
+        doAnswer(invocation -> attributes.remove(invocation.getArgument(0)))
+                .when(servletRequest)
+                .removeAttribute(anyString());
+
+        final PrintWriter writer = new PrintWriter(Writer.nullWriter());
+        servletResponse = mock(HttpServletResponse.class, withSettings().stubOnly());
+        when(servletResponse.getWriter()).thenReturn(writer);
+
+        // make sure the benchmark measures rendering and not the error handling
+        doProcessRequest();
+        if (servletResolver.renders != 1) {
+            throw new IllegalStateException("The request has not been rendered by the servlet");
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> doProcessRequest() throws IOException {
+        attributes.clear();
+        processor.doProcessRequest(servletRequest, servletResponse, resourceResolver);
+        return attributes;
+    }
+
+    private Resource resolve(final String path) {
+        final int dot = path.indexOf('.', path.lastIndexOf('/'));
+        final ResourceMetadata metadata = new ResourceMetadata();
+        metadata.setResolutionPath(dot < 0 ? path : path.substring(0, dot));
+        metadata.setResolutionPathInfo(dot < 0 ? null : path.substring(dot));
+        return new SyntheticResource(resourceResolver, metadata, RESOURCE_TYPE);
+    }
+
+    private static void setField(final Object target, final String name, final Object value) throws Exception {
+        final Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * Resolves every request to the same servlet writing a short response.
+     */
+    private static final class InMemoryServletResolver implements ServletResolver {
+
+        private int renders;
+
+        private final Servlet servlet = new GenericServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void service(final ServletRequest request, final ServletResponse response) throws IOException {
+                renders++;
+                response.setContentType("text/html");
+                response.getWriter().write("<html><body>benchmark</body></html>");
+            }
+        };
+
+        @Override
+        public Servlet resolve(final SlingJakartaHttpServletRequest request) {
+            return servlet;
+        }
+
+        @Override
+        public Servlet resolve(final Resource resource, final String scriptName) {
+            return servlet;
+        }
+
+        @Override
+        public Servlet resolve(final ResourceResolver resolver, final String scriptName) {
+            return servlet;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public javax.servlet.Servlet resolveServlet(final org.apache.sling.api.SlingHttpServletRequest request) {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public javax.servlet.Servlet resolveServlet(final Resource resource, final String scriptName) {
+            return null;
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public javax.servlet.Servlet resolveServlet(final ResourceResolver resolver, final String scriptName) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.Filter;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.apache.sling.engine.impl.request.SlingRequestPathInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.osgi.framework.ServiceReference;
+
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_EXTENSIONS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_METHODS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_SELECTORS;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Selects the filters of a chain for a request the way the
+ * {@link AbstractSlingFilterChain} does: the shape of the request is looked
+ * up in the chain, the remaining patterns are matched per request.
+ * <p>
+ * The filters are a mix of method, extension, selector and path pattern
+ * restricted filters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FilterSelectionBenchmark {
+
+    @Param({"10", "100"})
+    public int filterCount;
+
+    private SlingFilterChainHelper chain;
+
+    private SlingJakartaHttpServletRequest request;
+
+    @Setup
+    public void setup() {
+        chain = new SlingFilterChainHelper();
+        for (int i = 0; i < filterCount; i++) {
+            final Filter filter = (req, res, next) -> next.doFilter(req, res);
+            chain.addFilter(filter, new FilterPredicate(reference(i)), i, i, "filter" + i, null);
+        }
+
+        final ResourceMetadata metadata = new ResourceMetadata();
+        metadata.setResolutionPath("/content/section1/page");
+        metadata.setResolutionPathInfo(".sel.html");
+        final SyntheticResource resource = new SyntheticResource(null, metadata, "sling/benchmark");
+
+        request = mock(SlingJakartaHttpServletRequest.class, withSettings().stubOnly());
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getPathInfo()).thenReturn("/content/section1/page.sel.html");
+        when(request.getRequestPathInfo()).thenReturn(new SlingRequestPathInfo(resource));
+        when(request.getResource()).thenReturn(resource);
+    }
+
+    @Benchmark
+    public void selectFilters(final Blackhole blackhole) {
+        final FilterSelection selection = chain.getSelection();
+        final FilterHandle[] filters = selection.select(request);
+        final FilterPatternMatcher patternMatcher = selection.getPatternMatcher();
+        final FilterPatternMatcher.Matches matches = patternMatcher == null ? null : patternMatcher.match(request);
+        for (final FilterHandle filter : filters) {
+            blackhole.consume(matches == null ? filter.selectResidual(request) : matches.select(filter, request));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceReference<Filter> reference(final int i) {
+        final Map<String, Object> properties = new HashMap<>();
+        switch (i % 4) {
+            case 0:
+                properties.put(SLING_FILTER_METHODS, new String[] {"GET", "POST"});
+                break;
+            case 1:
+                properties.put(SLING_FILTER_EXTENSIONS, new String[] {"json"});
+                break;
+            case 2:
+                properties.put(SLING_FILTER_SELECTORS, new String[] {"sel"});
+                break;
+            default:
+                properties.put(SLING_FILTER_PATTERN, "/content/section" + i + "/.*");
+        }
+        final ServiceReference<Filter> reference = mock(ServiceReference.class, withSettings().stubOnly());
+        when(reference.getProperty(anyString())).thenAnswer(invocation -> properties.get(invocation.getArgument(0)));
+        return reference;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Formats request log messages with the default formats of the
+ * {@link RequestLogger}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CustomLogFormatBenchmark {
+
+    @Param({
+        "%t [%R] -> %m %U%q %H",
+        "%{end}t [%R] <- %s %{Content-Type}o %Dms",
+        "%a %l %u %t \"%r\" %>s %b \"%{Referer}i\" \"%{User-Agent}i\""
+    })
+    public String pattern;
+
+    private CustomLogFormat format;
+
+    private RequestLoggerRequest request;
+
+    private RequestLoggerResponse response;
+
+    @Setup
+    public void setup() {
+        format = new CustomLogFormat(pattern);
+
+        final HttpServletRequest servletRequest = mock(HttpServletRequest.class, withSettings().stubOnly());
+        when(servletRequest.getMethod()).thenReturn("GET");
+        when(servletRequest.getProtocol()).thenReturn("HTTP/1.1");
+        when(servletRequest.getRequestURI()).thenReturn("/content/site/en/page.html");
+        when(servletRequest.getQueryString()).thenReturn("q=sling&page=2");
+        when(servletRequest.getRemoteAddr()).thenReturn("192.168.0.1");
+        when(servletRequest.getRemoteUser()).thenReturn("admin");
+        when(servletRequest.getHeader("Referer")).thenReturn("http://localhost/content/site/en.html");
+        when(servletRequest.getHeader("User-Agent")).thenReturn("Mozilla/5.0 (X11; Linux x86_64) Benchmark/1.0");
+        when(servletRequest.getHeaders("Referer"))
+                .thenAnswer(invocation -> Collections.enumeration(
+                        Collections.singleton("http://localhost/content/site/en.html")));
+        when(servletRequest.getHeaders("User-Agent"))
+                .thenAnswer(invocation ->
+                        Collections.enumeration(Collections.singleton("Mozilla/5.0 (X11; Linux x86_64) Benchmark/1.0")));
+        request = new RequestLoggerRequest(servletRequest);
+
+        final HttpServletResponse servletResponse = mock(HttpServletResponse.class, withSettings().stubOnly());
+        response = new RequestLoggerResponse(servletRequest, servletResponse);
+        response.setStatus(200);
+        response.setContentType("text/html;charset=UTF-8");
+        response.requestEnd();
+    }
+
+    @Benchmark
+    public String format() {
+        return format.format(request, response);
+    }
+}
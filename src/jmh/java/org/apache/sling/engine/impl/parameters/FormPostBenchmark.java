@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.request.RequestParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parses a large <code>application/x-www-form-urlencoded</code> post of
+ * about 1 MB with a <code>_charset_</code> parameter the way
+ * {@link ParameterSupport} does and reads all values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FormPostBenchmark {
+
+    @Param({"1000", "10000"})
+    public int fieldCount;
+
+    private byte[] body;
+
+    @Setup
+    public void setup() {
+        final int valueLength = 1024 * 1024 / fieldCount;
+        final StringBuilder form = new StringBuilder("_charset_=UTF-8");
+        for (int i = 1; i < fieldCount; i++) {
+            form.append("&./field").append(i).append('=');
+            final int start = form.length();
+            while (form.length() - start < valueLength) {
+                form.append("Some+value+with+%C3%A4%C3%B6%C3%BC+and+%2Fescapes%2F+");
+            }
+        }
+        body = form.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public void parseFormPost(final Blackhole blackhole) throws Exception {
+        final ParameterMap map = new ParameterMap();
+        Util.parseQueryString(body.clone(), Util.ENCODING_DIRECT, map, false);
+        Util.fixEncoding(map);
+        for (final RequestParameter parameter : map.getRequestParameterList()) {
+            blackhole.consume(parameter.getString());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.request.RequestParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Fills a {@link ParameterMap} with 10000 values spread over a number of
+ * names, like a bulk edit form does, and reads the string values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParameterMapBenchmark {
+
+    private static final int VALUE_COUNT = 10000;
+
+    @Param({"5", "10000"})
+    public int nameCount;
+
+    private RequestParameter[] parameters;
+
+    @Setup
+    public void setup() {
+        parameters = new RequestParameter[VALUE_COUNT];
+        for (int i = 0; i < VALUE_COUNT; i++) {
+            parameters[i] = new ContainerRequestParameter("./name" + (i % nameCount), "value", Util.ENCODING_DIRECT);
+        }
+    }
+
+    @Benchmark
+    public void fillAndRead(final Blackhole blackhole) {
+        final ParameterMap map = new ParameterMap();
+        for (final RequestParameter parameter : parameters) {
+            map.addParameter(parameter, false);
+        }
+        for (final Map.Entry<String, String[]> entry : map.getStringParameterMap().entrySet()) {
+            blackhole.consume(entry.getValue());
+        }
+    }
+}
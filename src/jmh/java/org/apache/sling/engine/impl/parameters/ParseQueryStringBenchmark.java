@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses query strings with {@link Util#parseQueryString(java.io.InputStream, String, ParameterMap, boolean)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ParseQueryStringBenchmark {
+
+    @Param({
+        "q=sling",
+        "a=1&b=two&c=%C3%A4%C3%B6%C3%BC&d=x+y+z&e=1&e=2&e=3&flag",
+        "_charset_=UTF-8&./jcr:title=A+longer+title+with+spaces&./jcr:description=Some%20escaped%20text%21"
+                + "&./tags=one&./tags=two&./tags=three&:redirect=%2Fcontent%2Fsite%2Fen.html&:status=browser"
+    })
+    public String queryString;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() {
+        data = queryString.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    @Benchmark
+    public ParameterMap parseQueryString() throws IOException {
+        final ParameterMap map = new ParameterMap();
+        Util.parseQueryString(new ByteArrayInputStream(data), Util.ENCODING_DIRECT, map, false);
+        return map;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.api.resource.ResourceMetadata;
+import org.apache.sling.api.resource.SyntheticResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decomposes the resolution path info of a resource with the
+ * {@link SlingRequestPathInfo#SlingRequestPathInfo(org.apache.sling.api.resource.Resource)}
+ * constructor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SlingRequestPathInfoBenchmark {
+
+    @Param({"", ".html", ".tidy.infinity.json", ".sel1.sel2.html/suffix/path.txt"})
+    public String pathInfo;
+
+    private SyntheticResource resource;
+
+    @Setup
+    public void setup() {
+        final ResourceMetadata metadata = new ResourceMetadata();
+        metadata.setResolutionPath("/content/site/en/page");
+        metadata.setResolutionPathInfo(pathInfo);
+        resource = new SyntheticResource(null, metadata, "sling/benchmark");
+    }
+
+    @Benchmark
+    public SlingRequestPathInfo create() {
+        return new SlingRequestPathInfo(resource);
+    }
+}
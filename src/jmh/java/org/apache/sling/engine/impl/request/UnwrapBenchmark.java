@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletRequestWrapper;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
+import org.apache.sling.engine.impl.SlingRequestProcessorImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Unwraps requests wrapped by a number of filters with
+ * {@link RequestData#unwrap(ServletRequest)} and
+ * {@link RequestData#unwrap(SlingJakartaHttpServletRequest)}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class UnwrapBenchmark {
+
+    @Param({"0", "1", "5"})
+    public int depth;
+
+    private ServletRequest servletRequest;
+
+    private SlingJakartaHttpServletRequest slingRequest;
+
+    @Setup
+    public void setup() {
+        final RequestData requestData = new RequestData(
+                new SlingRequestProcessorImpl(),
+                mock(HttpServletRequest.class, withSettings().stubOnly()),
+                mock(HttpServletResponse.class, withSettings().stubOnly()),
+                false,
+                false,
+                false);
+
+        ServletRequest wrapped = requestData.getSlingRequest();
+        SlingJakartaHttpServletRequest slingWrapped = requestData.getSlingRequest();
+        for (int i = 0; i < depth; i++) {
+            wrapped = new ServletRequestWrapper(wrapped);
+            slingWrapped = new SlingJakartaHttpServletRequestWrapper(slingWrapped);
+        }
+        servletRequest = wrapped;
+        slingRequest = slingWrapped;
+    }
+
+    @Benchmark
+    public SlingJakartaHttpServletRequest unwrapServletRequest() {
+        return RequestData.unwrap(servletRequest);
+    }
+
+    @Benchmark
+    public SlingJakartaHttpServletRequest unwrapSlingRequest() {
+        return RequestData.unwrap(slingRequest);
+    }
+}
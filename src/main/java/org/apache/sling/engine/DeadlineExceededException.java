@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine;
+
+import org.apache.sling.api.SlingException;
+
+/**
+ * The <code>DeadlineExceededException</code> is thrown if an include or
+ * forward is dispatched or a servlet is called after the
+ * {@link RequestDeadline} of the request has passed.
+ *
+ * @since 2.8
+ */
+public class DeadlineExceededException extends SlingException {
+
+    private static final long serialVersionUID = 4226374128637316591L;
+
+    /**
+     * Creates an exception for a dispatch or servlet call which has not been
+     * executed.
+     *
+     * @param target The path dispatched to or the name of the servlet
+     */
+    public DeadlineExceededException(final String target) {
+        super("Request deadline exceeded, not calling " + target);
+    }
+}
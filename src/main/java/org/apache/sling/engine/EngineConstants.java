@@ -210,6 +210,21 @@ public class EngineConstants {
      */
     public static final String SLING_FILTER_EXTENSIONS = "sling.filter.extensions";
 
+    /**
+     * Name of the request dispatcher option marking an include as independent
+     * of the including servlet. If set to <code>true</code> and parallel
+     * includes are configured, the include may be rendered concurrently to
+     * the including servlet and its output is inserted into the response at
+     * the position of the include.
+     * <p>
+     * Such an include only sees the request attributes set before it is
+     * included and its changes to request attributes and response headers
+     * are not visible to the including servlet.
+     *
+     * @since 2.8
+     */
+    public static final String OPTION_PARALLEL_INCLUDE = "parallelInclude";
+
     /**
      * Filter scope value identifying a component level filter.
      * <p>
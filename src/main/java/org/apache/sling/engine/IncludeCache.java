@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * This service caches the output of includes through the request dispatcher.
+ * An include is cached if the request dispatcher options enable it through
+ * {@link #OPTION_CACHE} or if the resource type of the included resource is
+ * configured to be cached. Code changing content should invalidate the output
+ * rendered from it.
+ *
+ * @since 2.8
+ */
+@ProviderType
+public interface IncludeCache {
+
+    /**
+     * The name of the request dispatcher option to cache the output of an
+     * include (value is "cacheInclude"). Set it to <code>true</code> to cache
+     * the include or to <code>false</code> to render it even if its resource
+     * type is configured to be cached.
+     */
+    String OPTION_CACHE = "cacheInclude";
+
+    /**
+     * Invalidate the cached output of includes of the resource at the path
+     * and of all resources below it.
+     * @param path The resource path
+     */
+    void invalidate(String path);
+
+    /**
+     * Invalidate the cached output of all includes.
+     */
+    void invalidateAll();
+}
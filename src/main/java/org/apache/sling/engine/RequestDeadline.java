@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * The <code>RequestDeadline</code> is the time budget of a request. Once the
+ * deadline has passed, includes and forwards are not dispatched and servlets
+ * are not called anymore, instead a {@link DeadlineExceededException} is
+ * thrown and the request fails with status 503.
+ * <p>
+ * If a request has a deadline, it is available as the request attribute
+ * {@link #ATTRIBUTE_NAME}. Servlets should use the remaining time to bound
+ * calls to backend services.
+ *
+ * @since 2.8
+ */
+@ProviderType
+public interface RequestDeadline {
+
+    /**
+     * The name of the request attribute providing the deadline of the
+     * request.
+     */
+    String ATTRIBUTE_NAME = "org.apache.sling.engine.RequestDeadline";
+
+    /**
+     * The name of the request attribute overriding the configured time budget
+     * of the request. The value is a <code>Number</code> of milliseconds, zero
+     * or less removes the deadline. The attribute must be set before the
+     * request is passed to the {@link SlingRequestProcessor}.
+     */
+    String TIMEOUT_ATTRIBUTE_NAME = "sling.request.timeout";
+
+    /**
+     * @param unit The unit of the returned time
+     * @return the time remaining until the deadline, zero or less if the
+     *      deadline has passed
+     */
+    long getRemainingTime(TimeUnit unit);
+
+    /**
+     * @return true if the deadline has passed
+     */
+    boolean isExceeded();
+}
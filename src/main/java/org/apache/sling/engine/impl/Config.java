@@ -22,6 +22,7 @@ import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 
 /**
  * The OSGi configuration for the main servlet. This configuration is actually
@@ -50,6 +51,16 @@ public @interface Config {
      */
     int DEFAULT_MAX_CALL_COUNTER = 1000;
 
+    /**
+     * Requests are processed on the thread of the servlet container.
+     */
+    String EXECUTION_MODE_CONTAINER = "container";
+
+    /**
+     * Requests are processed on a new virtual thread each.
+     */
+    String EXECUTION_MODE_VIRTUAL = "virtual";
+
     @AttributeDefinition(
             name = "Number of Calls per Request",
             description = "Defines the maximum number of Servlet and Script "
@@ -126,4 +137,33 @@ public @interface Config {
                     "When enabled, the getUserPrincipal method of the request object might even return a principal "
                             + "in the non authenticated case. This is not spec compliant but might be required for some legacy code.")
     boolean disable_spec_compliant_getuserprincipal() default true;
+
+    @AttributeDefinition(
+            name = "Request Execution Mode",
+            description = "Defines the thread processing requests. \"Container Thread\" processes requests on the "
+                    + "thread of the servlet container. \"Virtual Thread\" hands each request off to a new virtual "
+                    + "thread using the asynchronous servlet API, releasing the container thread while the request "
+                    + "waits for I/O. Virtual threads require Java 21 or newer. On older Java versions, and for "
+                    + "requests not supporting asynchronous processing, requests are processed on the container "
+                    + "thread.",
+            options = {
+                @Option(label = "Container Thread", value = EXECUTION_MODE_CONTAINER),
+                @Option(label = "Virtual Thread", value = EXECUTION_MODE_VIRTUAL)
+            })
+    String sling_execution_mode() default EXECUTION_MODE_CONTAINER;
+
+    @AttributeDefinition(
+            name = "Request Timeout",
+            description = "The time budget of a request in milliseconds. Once it is exceeded, includes and "
+                    + "forwards are not dispatched and servlets are not called anymore and the request fails with "
+                    + "status 503. Zero or less disables the deadline. The budget can be overridden per request "
+                    + "with the \"sling.request.timeout\" request attribute.")
+    long sling_request_timeout() default 0;
+
+    @AttributeDefinition(
+            name = "Request Timeout Header",
+            description = "The name of a request header, set by a load balancer, providing the time budget of the "
+                    + "request in milliseconds. The header can only shorten the configured request timeout. "
+                    + "If left empty, no header is used.")
+    String sling_request_timeout_header();
 }
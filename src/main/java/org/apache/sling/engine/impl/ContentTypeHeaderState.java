@@ -19,7 +19,7 @@
 package org.apache.sling.engine.impl;
 
 /**
- * This enumeration defines states hold in a ThreadLocal to indicate a
+ * This enumeration defines states hold in the request data to indicate a
  * previously detected violation to change the content type header.
  */
 public enum ContentTypeHeaderState {
@@ -21,8 +21,7 @@ package org.apache.sling.engine.impl;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
 
-import java.util.concurrent.atomic.AtomicReference;
-
+import org.apache.sling.engine.impl.helper.LatencyHistogram;
 import org.apache.sling.engine.impl.request.RequestData;
 import org.apache.sling.engine.jmx.RequestProcessorMBean;
 import org.osgi.service.component.annotations.Component;
@@ -30,263 +29,256 @@ import org.osgi.service.component.annotations.Component;
 /**
  * This is the implementation of the management interface for the
  * RequestProcessor.
+ * <p>
+ * The raw data is collected in a number of cells, each request thread
+ * updating the cell it hashes to. Request threads therefore rarely contend
+ * and adding data does not allocate. The statistics are only computed from
+ * the merged cells when they are read.
  */
 @Component(
         service = {RequestProcessorMBean.class, RequestProcessorMBeanImpl.class},
         property = {"jmx.objectname=org.apache.sling:type=engine,service=RequestProcessor"})
 public class RequestProcessorMBeanImpl extends StandardMBean implements RequestProcessorMBean {
 
-    private final AtomicReference<Data> dataRef = new AtomicReference<Data>(new Data());
+    private static final int CELLS = cells();
+
+    private final Cell[] cells = new Cell[CELLS];
+
+    private final LatencyHistogram durationHistogram = new LatencyHistogram();
 
     public RequestProcessorMBeanImpl() throws NotCompliantMBeanException {
         super(RequestProcessorMBean.class);
+        for (int i = 0; i < CELLS; i++) {
+            cells[i] = new Cell();
+        }
+    }
+
+    private static int cells() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, Math.min(64, processors * 2)));
     }
 
     void addRequestData(final RequestData data) {
+        addRequestData(data.getElapsedTimeMsec(), data.getServletCallCount(), data.getPeakRecusionDepth());
+    }
 
-        // do a non-blocking busy loop and atomically set the new data
-        // the advantage of this algorithm is that there is no blocking
-        // involved
-        //
-        // there might be some memory churn under high contention, but that
-        // remains to be seen
-        for (; ; ) {
-
-            Data oldVal = dataRef.get();
-            Data newVal = new Data(oldVal, data);
-
-            boolean success = dataRef.compareAndSet(oldVal, newVal);
-            if (success) {
-                break;
-            }
-        }
+    /**
+     * Adds the data of a single request to the statistics.
+     * @param duration The request duration in milliseconds
+     * @param servletCallCount The number of servlet calls
+     * @param peakRecursionDepth The peak recursion depth
+     */
+    public void addRequestData(final long duration, final int servletCallCount, final int peakRecursionDepth) {
+        final long id = Thread.currentThread().getId();
+        cells[(int) ((id ^ (id >>> 16)) & (CELLS - 1))].add(duration, servletCallCount, peakRecursionDepth);
+        durationHistogram.record(duration);
     }
 
     public void resetStatistics() {
-        dataRef.set(new Data());
+        for (final Cell cell : cells) {
+            cell.reset();
+        }
+        durationHistogram.reset();
     }
 
     public long getRequestsCount() {
-        return dataRef.get().n;
+        return getData().n;
     }
 
     public long getMinRequestDurationMsec() {
-        return dataRef.get().durationMsecMin;
+        return getData().durationMsecMin;
     }
 
     public long getMaxRequestDurationMsec() {
-        return dataRef.get().durationMsecMax;
+        return getData().durationMsecMax;
     }
 
     public double getStandardDeviationDurationMsec() {
-        return dataRef.get().standardDeviationDurationMsec;
+        final Data data = getData();
+        return standardDeviation(data.n, data.durationMsecSumX, data.durationMsecSumX2);
     }
 
     public double getMeanRequestDurationMsec() {
-        return dataRef.get().meanRequestDurationMsec;
+        final Data data = getData();
+        return mean(data.n, data.durationMsecSumX);
+    }
+
+    @Override
+    public long getMedianRequestDurationMsec() {
+        return durationHistogram.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long get90thPercentileRequestDurationMsec() {
+        return durationHistogram.snapshot().getValueAtPercentile(90);
+    }
+
+    @Override
+    public long get99thPercentileRequestDurationMsec() {
+        return durationHistogram.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long get999thPercentileRequestDurationMsec() {
+        return durationHistogram.snapshot().getValueAtPercentile(99.9);
     }
 
     public int getMaxPeakRecursionDepth() {
-        return dataRef.get().peakRecursionDepthMax;
+        return getData().peakRecursionDepthMax;
     }
 
     public int getMinPeakRecursionDepth() {
-        return dataRef.get().peakRecursionDepthMin;
+        return getData().peakRecursionDepthMin;
     }
 
     public double getMeanPeakRecursionDepth() {
-        return dataRef.get().meanPeakRecursionDepth;
+        final Data data = getData();
+        return mean(data.n, data.peakRecursionDepthSumX);
     }
 
     public double getStandardDeviationPeakRecursionDepth() {
-        return dataRef.get().standardDeviationPeakRecursionDepth;
+        final Data data = getData();
+        return standardDeviation(data.n, data.peakRecursionDepthSumX, data.peakRecursionDepthSumX2);
     }
 
     public int getMaxServletCallCount() {
-        return dataRef.get().servletCallCountMax;
+        return getData().servletCallCountMax;
     }
 
     public int getMinServletCallCount() {
-        return dataRef.get().servletCallCountMin;
+        return getData().servletCallCountMin;
     }
 
     public double getMeanServletCallCount() {
-
-        return dataRef.get().meanServletCallCount;
+        final Data data = getData();
+        return mean(data.n, data.servletCallCountSumX);
     }
 
     public double getStandardDeviationServletCallCount() {
+        final Data data = getData();
+        return standardDeviation(data.n, data.servletCallCountSumX, data.servletCallCountSumX2);
+    }
 
-        return dataRef.get().standardDeviationServletCallCount;
+    private Data getData() {
+        final Data data = new Data();
+        for (final Cell cell : cells) {
+            cell.mergeInto(data);
+        }
+        return data;
+    }
+
+    private static double mean(final long n, final double sumX) {
+        if (n > 0) {
+            return sumX / n;
+        }
+        return 0;
+    }
+
+    private static double standardDeviation(final long n, final double sumX, final double sumX2) {
+        if (n > 1) {
+            // algorithm taken from
+            // http://de.wikipedia.org/wiki/Standardabweichung section
+            // "Berechnung fuer auflaufende Messwerte"
+            return Math.sqrt((sumX2 - sumX * sumX / n) / (n - 1));
+        }
+
+        // single data point has no deviation
+        return 0;
     }
 
     /**
-     * Helper class to atomically hold raw data and compute statistics
+     * Helper class to hold raw data
      */
     private static class Data {
 
         // number of requests
-        private final long n;
+        long n;
 
         // shortest request
-        private final long durationMsecMin;
+        long durationMsecMin = Long.MAX_VALUE;
 
         // longest request
-        private final long durationMsecMax;
+        long durationMsecMax;
 
         // sum of request durations
-        private final double durationMsecSumX;
+        double durationMsecSumX;
 
         // sum of squared request durations
-        private final double durationMsecSumX2;
-
-        private final int servletCallCountMin;
-
-        private final int servletCallCountMax;
-
-        private final double servletCallCountSumX;
-
-        private final double servletCallCountSumX2;
-
-        private final int peakRecursionDepthMin;
+        double durationMsecSumX2;
 
-        private final int peakRecursionDepthMax;
+        int servletCallCountMin = Integer.MAX_VALUE;
 
-        private final double peakRecursionDepthSumX;
+        int servletCallCountMax;
 
-        private final double peakRecursionDepthSumX2;
+        double servletCallCountSumX;
 
-        private final double standardDeviationDurationMsec;
+        double servletCallCountSumX2;
 
-        private final double meanRequestDurationMsec;
+        int peakRecursionDepthMin = Integer.MAX_VALUE;
 
-        private final double meanPeakRecursionDepth;
+        int peakRecursionDepthMax;
 
-        private final double standardDeviationPeakRecursionDepth;
+        double peakRecursionDepthSumX;
 
-        private final double meanServletCallCount;
+        double peakRecursionDepthSumX2;
 
-        private final double standardDeviationServletCallCount;
+        void add(final long duration, final int servletCallCount, final int peakRecursionDepth) {
+            n++;
 
-        // computed fields
+            durationMsecMin = Math.min(duration, durationMsecMin);
+            durationMsecMax = Math.max(duration, durationMsecMax);
+            durationMsecSumX += duration;
+            durationMsecSumX2 += (double) duration * duration;
 
-        Data() {
-            n = 0;
+            servletCallCountMin = Math.min(servletCallCount, servletCallCountMin);
+            servletCallCountMax = Math.max(servletCallCount, servletCallCountMax);
+            servletCallCountSumX += servletCallCount;
+            servletCallCountSumX2 += (double) servletCallCount * servletCallCount;
 
-            durationMsecMin = Long.MAX_VALUE;
-            durationMsecMax = 0;
-            durationMsecSumX = 0;
-            durationMsecSumX2 = 0;
-
-            servletCallCountMin = Integer.MAX_VALUE;
-            servletCallCountMax = 0;
-            servletCallCountSumX = 0;
-            servletCallCountSumX2 = 0;
-
-            peakRecursionDepthMin = Integer.MAX_VALUE;
-            peakRecursionDepthMax = 0;
-            peakRecursionDepthSumX = 0;
-            peakRecursionDepthSumX2 = 0;
-
-            standardDeviationDurationMsec = computeStandardDeviationDurationMsec();
-            meanRequestDurationMsec = computeMeanRequestDurationMsec();
-            meanPeakRecursionDepth = computeMeanPeakRecursionDepth();
-            standardDeviationPeakRecursionDepth = computeStandardDeviationPeakRecursionDepth();
-            meanServletCallCount = computeMeanServletCallCount();
-            standardDeviationServletCallCount = computeStandardDeviationServletCallCount();
+            peakRecursionDepthMin = Math.min(peakRecursionDepth, peakRecursionDepthMin);
+            peakRecursionDepthMax = Math.max(peakRecursionDepth, peakRecursionDepthMax);
+            peakRecursionDepthSumX += peakRecursionDepth;
+            peakRecursionDepthSumX2 += (double) peakRecursionDepth * peakRecursionDepth;
         }
 
-        Data(Data other, RequestData data) {
-            if (other == null || data == null) {
-                throw new IllegalArgumentException("Neither 'other' nor 'data' may be null");
-            }
-
-            final long duration = data.getElapsedTimeMsec();
-            final int servletCallCount = data.getServletCallCount();
-            final int peakRecursionDepth = data.getPeakRecusionDepth();
-
-            n = other.n + 1;
-
-            durationMsecMin = Math.min(duration, other.durationMsecMin);
-            durationMsecMax = Math.max(duration, other.durationMsecMax);
-            durationMsecSumX = other.durationMsecSumX + duration;
-            durationMsecSumX2 = other.durationMsecSumX2 + (duration * duration);
-
-            servletCallCountMin = Math.min(servletCallCount, other.servletCallCountMin);
-            servletCallCountMax = Math.max(servletCallCount, other.servletCallCountMax);
-            servletCallCountSumX = other.servletCallCountSumX + servletCallCount;
-            servletCallCountSumX2 = other.servletCallCountSumX2 + (servletCallCount * servletCallCount);
-
-            peakRecursionDepthMin = Math.min(peakRecursionDepth, other.peakRecursionDepthMin);
-            peakRecursionDepthMax = Math.max(peakRecursionDepth, other.peakRecursionDepthMax);
-            peakRecursionDepthSumX = other.peakRecursionDepthSumX + peakRecursionDepth;
-            peakRecursionDepthSumX2 = other.peakRecursionDepthSumX2 + (peakRecursionDepth * peakRecursionDepth);
-
-            standardDeviationDurationMsec = computeStandardDeviationDurationMsec();
-            meanRequestDurationMsec = computeMeanRequestDurationMsec();
-            meanPeakRecursionDepth = computeMeanPeakRecursionDepth();
-            standardDeviationPeakRecursionDepth = computeStandardDeviationPeakRecursionDepth();
-            meanServletCallCount = computeMeanServletCallCount();
-            standardDeviationServletCallCount = computeStandardDeviationServletCallCount();
-        }
+        void add(final Data other) {
+            n += other.n;
 
-        private double computeStandardDeviationDurationMsec() {
-            if (this.n > 1) {
-                // algorithm taken from
-                // http://de.wikipedia.org/wiki/Standardabweichung section
-                // "Berechnung fuer auflaufende Messwerte"
-                return Math.sqrt((this.durationMsecSumX2 - this.durationMsecSumX * this.durationMsecSumX / this.n)
-                        / (this.n - 1));
-            }
-
-            // single data point has no deviation
-            return 0;
-        }
+            durationMsecMin = Math.min(other.durationMsecMin, durationMsecMin);
+            durationMsecMax = Math.max(other.durationMsecMax, durationMsecMax);
+            durationMsecSumX += other.durationMsecSumX;
+            durationMsecSumX2 += other.durationMsecSumX2;
 
-        private double computeMeanRequestDurationMsec() {
-            if (this.n > 0) {
-                return this.durationMsecSumX / this.n;
-            } else {
-                return 0;
-            }
-        }
+            servletCallCountMin = Math.min(other.servletCallCountMin, servletCallCountMin);
+            servletCallCountMax = Math.max(other.servletCallCountMax, servletCallCountMax);
+            servletCallCountSumX += other.servletCallCountSumX;
+            servletCallCountSumX2 += other.servletCallCountSumX2;
 
-        private double computeMeanPeakRecursionDepth() {
-            if (this.n > 0) {
-                return this.peakRecursionDepthSumX / this.n;
-            } else {
-                return 0;
-            }
+            peakRecursionDepthMin = Math.min(other.peakRecursionDepthMin, peakRecursionDepthMin);
+            peakRecursionDepthMax = Math.max(other.peakRecursionDepthMax, peakRecursionDepthMax);
+            peakRecursionDepthSumX += other.peakRecursionDepthSumX;
+            peakRecursionDepthSumX2 += other.peakRecursionDepthSumX2;
         }
+    }
 
-        private double computeStandardDeviationPeakRecursionDepth() {
-            if (this.n > 1) {
-                return Math.sqrt((this.peakRecursionDepthSumX2
-                                - this.peakRecursionDepthSumX * this.peakRecursionDepthSumX / this.n)
-                        / (this.n - 1));
-            }
+    /**
+     * One cell of raw data. The lock of a cell is only shared by the few
+     * threads hashing to it and by readers merging the cells.
+     */
+    private static final class Cell {
 
-            // single data point has no deviation
-            return 0;
-        }
+        private Data data = new Data();
 
-        private double computeMeanServletCallCount() {
-            if (this.n > 0) {
-                return this.servletCallCountSumX / this.n;
-            } else {
-                return 0;
-            }
+        synchronized void add(final long duration, final int servletCallCount, final int peakRecursionDepth) {
+            data.add(duration, servletCallCount, peakRecursionDepth);
         }
 
-        private double computeStandardDeviationServletCallCount() {
-            if (this.n > 1) {
-                return Math.sqrt(
-                        (this.servletCallCountSumX2 - this.servletCallCountSumX * this.servletCallCountSumX / this.n)
-                                / (this.n - 1));
-            }
+        synchronized void mergeInto(final Data target) {
+            target.add(data);
+        }
 
-            // single data point has no deviation
-            return 0;
+        synchronized void reset() {
+            data = new Data();
         }
     }
 }
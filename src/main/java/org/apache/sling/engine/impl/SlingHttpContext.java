@@ -28,6 +28,7 @@ import org.apache.sling.api.request.builder.Builders;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.auth.core.AuthenticationSupport;
 import org.apache.sling.commons.mime.MimeTypeService;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.apache.sling.engine.impl.parameters.ParameterSupport;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -132,7 +133,8 @@ public class SlingHttpContext extends ServletContextHelper {
                 (resolverObject instanceof ResourceResolver) ? (ResourceResolver) resolverObject : null;
         if (resolver != null) {
             // it's safe to call close() several times - checking isLive() can be expensive
-            resolver.close();
+            // a request continuing asynchronously still uses the resolver until it completes
+            RequestCompletion.whenComplete(request, resolver::close);
         }
     }
 }
@@ -34,9 +34,12 @@ import java.util.Map;
 import java.util.ResourceBundle;
 import java.util.Set;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.DispatcherType;
 import jakarta.servlet.RequestDispatcher;
 import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
@@ -52,6 +55,7 @@ import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.wrappers.JakartaToJavaxServletWrapper;
 import org.apache.sling.engine.impl.helper.NullResourceBundle;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.apache.sling.engine.impl.parameters.ParameterSupport;
 import org.apache.sling.engine.impl.request.ContentData;
 import org.apache.sling.engine.impl.request.DispatchingInfo;
@@ -397,6 +401,33 @@ public class SlingJakartaHttpServletRequestImpl extends HttpServletRequestWrappe
         return (Collection<Part>) this.getParameterSupport().getParts();
     }
 
+    // ---------- Asynchronous processing -----------------------------------
+
+    /**
+     * Starts asynchronous processing with this request and the Sling
+     * response, such that output written asynchronously passes the same
+     * response wrappers as output written by the servlet directly.
+     */
+    @Override
+    public AsyncContext startAsync() {
+        return startAsync(this, getRequestData().getSlingResponse());
+    }
+
+    /**
+     * Starts asynchronous processing. If the engine already processes the
+     * request asynchronously, the servlet takes over the async context of
+     * the engine and becomes responsible for completing it.
+     */
+    @Override
+    public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+        final RequestCompletion completion = RequestCompletion.get(this);
+        if (completion != null) {
+            return completion.takeOver();
+        }
+        return RequestCompletion.start(super.startAsync(servletRequest, servletResponse))
+                .takeOver();
+    }
+
     // ---------- Attribute handling -----------------------------------
 
     @SuppressWarnings("deprecation")
@@ -214,9 +214,20 @@ public class SlingJakartaHttpServletResponseImpl extends HttpServletResponseWrap
         }
     }
 
+    @Override
+    public void resetBuffer() {
+        if (firstSlingResponse) {
+            requestData.discardParallelIncludes();
+        }
+        super.resetBuffer();
+    }
+
     @Override
     public void reset() {
         if (!this.isProtectHeadersOnInclude() || isError()) {
+            if (firstSlingResponse) {
+                requestData.discardParallelIncludes();
+            }
             super.reset();
         } else {
             // ignore if not committed: because we want the exception to be thrown when the
@@ -354,14 +365,14 @@ public class SlingJakartaHttpServletResponseImpl extends HttpServletResponseWrap
      * @return an optional message to log
      */
     protected Optional<String> checkContentTypeOverride(@Nullable String contentType) {
-        if (requestData.getSlingRequestProcessor().getContentTypeHeaderState() == ContentTypeHeaderState.VIOLATED) {
+        if (requestData.getContentTypeHeaderState() == ContentTypeHeaderState.VIOLATED) {
             // return immediatly as the content type header has already been violated
             // prevoiously, no more checks needed
             return Optional.empty();
         }
         String currentContentType = getContentType();
         if (contentType == null) {
-            requestData.getSlingRequestProcessor().setContentTypeHeaderState(ContentTypeHeaderState.VIOLATED);
+            requestData.setContentTypeHeaderState(ContentTypeHeaderState.VIOLATED);
             return Optional.of(getMessage(currentContentType, null));
         } else {
             Optional<String> currentMime = currentContentType == null
@@ -371,7 +382,7 @@ public class SlingJakartaHttpServletResponseImpl extends HttpServletResponseWrap
             if (currentMime.isPresent()
                     && setMime.isPresent()
                     && !currentMime.get().equals(setMime.get())) {
-                requestData.getSlingRequestProcessor().setContentTypeHeaderState(ContentTypeHeaderState.VIOLATED);
+                requestData.setContentTypeHeaderState(ContentTypeHeaderState.VIOLATED);
                 return Optional.of(getMessage(currentContentType, contentType));
             }
         }
@@ -525,8 +536,8 @@ public class SlingJakartaHttpServletResponseImpl extends HttpServletResponseWrap
     public PrintWriter getWriter() throws IOException {
         PrintWriter result = super.getWriter();
         if (firstSlingResponse) {
-            final PrintWriter delegatee = result;
-            result = new PrintWriter(result) {
+            final PrintWriter delegatee = requestData.splice(result);
+            result = new PrintWriter(delegatee) {
 
                 private boolean isClosed = false;
 
@@ -21,7 +21,10 @@ package org.apache.sling.engine.impl;
 import java.util.Dictionary;
 import java.util.Hashtable;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.GenericServlet;
 import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletContext;
@@ -34,8 +37,10 @@ import org.apache.sling.api.request.SlingJakartaRequestEvent;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.auth.core.AuthenticationSupport;
 import org.apache.sling.engine.impl.helper.ClientAbortException;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.apache.sling.engine.impl.helper.RequestListenerManager;
 import org.apache.sling.engine.impl.helper.SlingServletContext;
+import org.apache.sling.engine.impl.helper.VirtualThreads;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.ServiceRegistration;
@@ -94,73 +99,105 @@ public class SlingMainServlet extends GenericServlet {
 
     private volatile ServiceRegistration<Servlet> servletRegistration;
 
+    /** Executor of the virtual thread execution mode, null to use the container thread */
+    private volatile ExecutorService requestExecutor;
+
     // ---------- Servlet API -------------------------------------------------
 
     @Override
     public void service(ServletRequest req, ServletResponse res) throws ServletException {
         if (req instanceof HttpServletRequest && res instanceof HttpServletResponse) {
 
-            HttpServletRequest request = (HttpServletRequest) req;
+            final HttpServletRequest request = (HttpServletRequest) req;
+            final HttpServletResponse response = (HttpServletResponse) res;
+
+            final ExecutorService executor = this.requestExecutor;
+            if (executor != null && request.isAsyncSupported()) {
+                // release the container thread, the request completes once processed
+                // unless a servlet takes over the asynchronous processing
+                final AsyncContext asyncContext = request.startAsync(request, response);
+                asyncContext.setTimeout(0);
+                final RequestCompletion completion = RequestCompletion.start(asyncContext);
+                final Runnable task = () -> {
+                    try {
+                        processRequest(request, response);
+                    } finally {
+                        completion.complete();
+                    }
+                };
+                try {
+                    executor.execute(task);
+                } catch (final RejectedExecutionException ree) {
+                    // the executor has been shut down by a reconfiguration
+                    task.run();
+                }
+            } else {
+                processRequest(request, response);
+            }
+
+        } else {
+            throw new ServletException("Apache Sling must be run in an HTTP servlet environment.");
+        }
+    }
+
+    private void processRequest(final HttpServletRequest request, final HttpServletResponse response) {
+        // set the thread name according to the request
+        String threadName = setThreadName(request);
 
-            // set the thread name according to the request
-            String threadName = setThreadName(request);
+        final RequestListenerManager localRLM = requestListenerManager;
+        if (localRLM != null) {
+            localRLM.sendEvent(request, SlingJakartaRequestEvent.EventType.EVENT_INIT);
+        }
 
-            final RequestListenerManager localRLM = requestListenerManager;
-            if (localRLM != null) {
-                localRLM.sendEvent(request, SlingJakartaRequestEvent.EventType.EVENT_INIT);
+        ResourceResolver resolver = null;
+        try {
+            if (!allowTrace && "TRACE".equals(request.getMethod())) {
+                response.setStatus(405);
+                response.setHeader("Allow", "GET, HEAD, POST, PUT, DELETE, OPTIONS");
+                return;
             }
 
-            ResourceResolver resolver = null;
-            try {
-                if (!allowTrace && "TRACE".equals(request.getMethod())) {
-                    HttpServletResponse response = (HttpServletResponse) res;
-                    response.setStatus(405);
-                    response.setHeader("Allow", "GET, HEAD, POST, PUT, DELETE, OPTIONS");
-                    return;
-                }
-
-                // get ResourceResolver (set by AuthenticationSupport)
-                Object resolverObject = request.getAttribute(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER);
-                resolver = (resolverObject instanceof ResourceResolver) ? (ResourceResolver) resolverObject : null;
+            // get ResourceResolver (set by AuthenticationSupport)
+            Object resolverObject = request.getAttribute(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER);
+            resolver = (resolverObject instanceof ResourceResolver) ? (ResourceResolver) resolverObject : null;
 
-                // real request handling for HTTP requests
-                // we don't check for null of requestProcessorImpl as we would throw an exception anyway in that case
-                requestProcessorImpl.doProcessRequest(request, (HttpServletResponse) res, resolver);
+            // real request handling for HTTP requests
+            // we don't check for null of requestProcessorImpl as we would throw an exception anyway in that case
+            requestProcessorImpl.doProcessRequest(request, response, resolver);
 
-            } catch (ClientAbortException cae) {
-                log.debug(
-                        "service: ClientAbortException, probable cause is client aborted request or network problem",
-                        cae);
+        } catch (ClientAbortException cae) {
+            log.debug(
+                    "service: ClientAbortException, probable cause is client aborted request or network problem", cae);
 
-            } catch (Throwable t) {
+        } catch (Throwable t) {
 
-                // some failure while handling the request, log the issue
-                // and terminate. We do not call error handling here, because
-                // we assume the real request handling would have done this.
-                // So here we just log
+            // some failure while handling the request, log the issue
+            // and terminate. We do not call error handling here, because
+            // we assume the real request handling would have done this.
+            // So here we just log
 
-                log.error("service: Uncaught Problem handling the request", t);
+            log.error("service: Uncaught Problem handling the request", t);
 
-            } finally {
+        } finally {
 
-                // close the resource resolver (not relying on servlet request
-                // listener to do this for now; see SLING-1270)
-                if (resolver != null) {
-                    resolver.close();
+            // close the resource resolver (not relying on servlet request
+            // listener to do this for now; see SLING-1270) once the request
+            // is complete, which is later if it continues asynchronously
+            final ResourceResolver localResolver = resolver;
+            RequestCompletion.whenComplete(request, () -> {
+                if (localResolver != null) {
+                    localResolver.close();
                 }
 
                 if (localRLM != null) {
                     localRLM.sendEvent(request, SlingJakartaRequestEvent.EventType.EVENT_DESTROY);
                 }
+            });
 
-                // reset the thread name
-                if (threadName != null) {
-                    Thread.currentThread().setName(threadName);
-                }
+            // reset the thread name
+            if (threadName != null) {
+                Thread.currentThread().setName(threadName);
             }
-
-        } else {
-            throw new ServletException("Apache Sling must be run in an HTTP servlet environment.");
         }
     }
 
@@ -178,6 +215,7 @@ public class SlingMainServlet extends GenericServlet {
                 "(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME + "=" + SlingHttpContext.SERVLET_CONTEXT_NAME
                         + ")");
         servletConfig.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_PATTERN, "/");
+        servletConfig.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_ASYNC_SUPPORTED, Boolean.TRUE);
         if (servletName != null) {
             servletConfig.put(HttpWhiteboardConstants.HTTP_WHITEBOARD_SERVLET_NAME, servletName);
         }
@@ -191,6 +229,8 @@ public class SlingMainServlet extends GenericServlet {
         // configure method filter
         this.allowTrace = config.sling_trace_allow();
 
+        setupExecutionMode(config.sling_execution_mode());
+
         String servletName = config.servlet_name();
         if (servletName == null || servletName.isEmpty()) {
             servletName = this.productInfoProvider.getProductInfo();
@@ -210,6 +250,24 @@ public class SlingMainServlet extends GenericServlet {
         }
     }
 
+    private void setupExecutionMode(final String executionMode) {
+        final ExecutorService current = this.requestExecutor;
+        if (Config.EXECUTION_MODE_VIRTUAL.equals(executionMode)) {
+            if (current == null) {
+                if (VirtualThreads.isSupported()) {
+                    this.requestExecutor = VirtualThreads.newExecutor();
+                    log.info("Processing requests on virtual threads");
+                } else {
+                    log.warn("Virtual threads require Java 21 or newer, processing requests on container threads");
+                }
+            }
+        } else if (current != null) {
+            this.requestExecutor = null;
+            // requests already handed off complete on their virtual threads
+            current.shutdown();
+        }
+    }
+
     @Activate
     protected void activate(final BundleContext bundleContext, final Config config) {
         this.bundleContext = bundleContext;
@@ -224,6 +282,8 @@ public class SlingMainServlet extends GenericServlet {
 
     @Deactivate
     protected void deactivate() {
+        setupExecutionMode(Config.EXECUTION_MODE_CONTAINER);
+
         if (this.servletRegistration != null) {
             this.servletRegistration.unregister();
             this.servletRegistration = null;
@@ -237,7 +297,9 @@ public class SlingMainServlet extends GenericServlet {
     /**
      * Sets the name of the current thread to the IP address of the remote
      * client with the current system time and the first request line consisting
-     * of the method, path and protocol.
+     * of the method, path and protocol. In the virtual thread execution mode
+     * this is the virtual thread processing the request, the container thread
+     * is not renamed.
      *
      * @param request The request to extract the remote IP address, method,
      *            request URL and protocol from.
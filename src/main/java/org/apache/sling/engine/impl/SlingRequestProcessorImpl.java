@@ -26,7 +26,9 @@ import java.io.PrintWriter;
 import java.io.Writer;
 import java.security.AccessControlException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import jakarta.servlet.DispatcherType;
@@ -55,19 +57,30 @@ import org.apache.sling.api.wrappers.JavaxToJakartaRequestWrapper;
 import org.apache.sling.api.wrappers.JavaxToJakartaResponseWrapper;
 import org.apache.sling.api.wrappers.SlingJakartaHttpServletResponseWrapper;
 import org.apache.sling.commons.mime.MimeTypeService;
+import org.apache.sling.engine.DeadlineExceededException;
+import org.apache.sling.engine.RequestDeadline;
 import org.apache.sling.engine.SlingRequestProcessor;
+import org.apache.sling.engine.impl.cache.IncludeCacheImpl;
+import org.apache.sling.engine.impl.cache.RequestCoalescer;
+import org.apache.sling.engine.impl.cache.ResponseCacheImpl;
+import org.apache.sling.engine.impl.cache.ServletResolutionCache;
 import org.apache.sling.engine.impl.debug.RequestInfoProviderImpl;
 import org.apache.sling.engine.impl.filter.ErrorFilterChain;
-import org.apache.sling.engine.impl.filter.FilterHandle;
 import org.apache.sling.engine.impl.filter.RequestSlingFilterChain;
 import org.apache.sling.engine.impl.filter.ServletFilterManager;
 import org.apache.sling.engine.impl.filter.ServletFilterManager.FilterChainType;
 import org.apache.sling.engine.impl.filter.SlingComponentFilterChain;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.apache.sling.engine.impl.helper.SlingServletContext;
+import org.apache.sling.engine.impl.limiter.ConcurrencyLimiter;
+import org.apache.sling.engine.impl.limiter.ConcurrencyLimiterService;
 import org.apache.sling.engine.impl.parameters.ParameterSupport;
+import org.apache.sling.engine.impl.parameters.UploadBudgetExceededException;
 import org.apache.sling.engine.impl.request.ContentData;
 import org.apache.sling.engine.impl.request.DispatchingInfo;
+import org.apache.sling.engine.impl.request.ParallelIncludeExecutor;
 import org.apache.sling.engine.impl.request.RequestData;
+import org.apache.sling.engine.impl.request.RequestDeadlineImpl;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
@@ -113,14 +126,33 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
 
     private volatile int maxInclusionCounter = Config.DEFAULT_MAX_INCLUSION_COUNTER;
 
+    private volatile long requestTimeout;
+
+    private volatile String requestTimeoutHeader;
+
     private volatile List<StaticResponseHeader> additionalResponseHeaders = Collections.emptyList();
 
     private volatile boolean protectHeadersOnInclude;
     private volatile boolean checkContentTypeOnInclude;
     private volatile boolean disableCheckCompliantGetUserPrincipal;
 
-    private static final ThreadLocal<ContentTypeHeaderState> contentTypeHeaderState =
-            ThreadLocal.withInitial(() -> ContentTypeHeaderState.UNSET);
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile RequestCoalescer requestCoalescer;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile ResponseCacheImpl responseCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile IncludeCacheImpl includeCache;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile ParallelIncludeExecutor parallelIncludeExecutor;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile ServletResolutionCache servletResolutionCache;
+
+    /** The concurrency limiters, highest ranking first */
+    private volatile ConcurrencyLimiterService[] concurrencyLimiters = new ConcurrencyLimiterService[0];
 
     @Activate
     public void activate(final Config config) {
@@ -148,6 +180,11 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         // configure the request limits
         this.maxInclusionCounter = config.sling_max_inclusions();
         this.maxCallCounter = config.sling_max_calls();
+        this.requestTimeout = config.sling_request_timeout();
+        final String timeoutHeader = config.sling_request_timeout_header() == null
+                ? ""
+                : config.sling_request_timeout_header().trim();
+        this.requestTimeoutHeader = timeoutHeader.isEmpty() ? null : timeoutHeader;
         this.protectHeadersOnInclude = config.sling_includes_protectheaders();
         this.checkContentTypeOnInclude = config.sling_includes_checkcontenttype();
         this.disableCheckCompliantGetUserPrincipal = config.disable_spec_compliant_getuserprincipal();
@@ -190,6 +227,34 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         this.errorHandler.setDelegate(ref, (ErrorHandler) null);
     }
 
+    @Reference(
+            name = "ConcurrencyLimiter",
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY)
+    synchronized void bindConcurrencyLimiter(final ConcurrencyLimiterService limiter) {
+        final List<ConcurrencyLimiterService> limiters = new ArrayList<>(Arrays.asList(this.concurrencyLimiters));
+        limiters.add(limiter);
+        limiters.sort(
+                Comparator.comparingInt(ConcurrencyLimiterService::getRanking).reversed());
+        this.concurrencyLimiters = limiters.toArray(new ConcurrencyLimiterService[0]);
+    }
+
+    synchronized void unbindConcurrencyLimiter(final ConcurrencyLimiterService limiter) {
+        final List<ConcurrencyLimiterService> limiters = new ArrayList<>(Arrays.asList(this.concurrencyLimiters));
+        limiters.remove(limiter);
+        this.concurrencyLimiters = limiters.toArray(new ConcurrencyLimiterService[0]);
+    }
+
+    private ConcurrencyLimiterService getConcurrencyLimiter(final HttpServletRequest request) {
+        for (final ConcurrencyLimiterService limiter : this.concurrencyLimiters) {
+            if (limiter.matches(request)) {
+                return limiter;
+            }
+        }
+        return null;
+    }
+
     public int getMaxCallCounter() {
         return maxCallCounter;
     }
@@ -198,6 +263,32 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         return maxInclusionCounter;
     }
 
+    /**
+     * @return the cache for the output of includes or <code>null</code>
+     */
+    public IncludeCacheImpl getIncludeCache() {
+        return this.includeCache;
+    }
+
+    /**
+     * Resolves the servlet for the request, through the servlet resolution
+     * cache if available.
+     * @param sr The servlet resolver
+     * @param request The request
+     * @return the servlet or <code>null</code>
+     */
+    public Servlet resolveServlet(final ServletResolver sr, final SlingJakartaHttpServletRequest request) {
+        final ServletResolutionCache cache = this.servletResolutionCache;
+        return cache == null ? sr.resolve(request) : cache.resolve(sr, request);
+    }
+
+    /**
+     * @return the executor for includes rendered in parallel or <code>null</code>
+     */
+    public ParallelIncludeExecutor getParallelIncludeExecutor() {
+        return this.parallelIncludeExecutor;
+    }
+
     public List<StaticResponseHeader> getAdditionalResponseHeaders() {
         return this.additionalResponseHeaders;
     }
@@ -244,31 +335,82 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             return;
         }
 
+        // limit the number of requests processed concurrently before any
+        // state of the request is created, the permit is released once the
+        // request is complete
+        final ConcurrencyLimiterService limiter = getConcurrencyLimiter(servletRequest);
+        final ConcurrencyLimiter.Permit permit =
+                limiter == null ? null : limiter.getLimiter().acquire();
+        if (limiter != null && permit == null) {
+            log.debug(
+                    "Concurrency limit of {} reached, rejecting request",
+                    limiter.getLimiter().getName());
+            servletResponse.setHeader("Retry-After", String.valueOf(limiter.getRetryAfter()));
+            servletResponse.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent requests");
+            return;
+        }
+
+        try {
+            // let only one of several identical requests be processed
+            final RequestCoalescer coalescer = this.requestCoalescer;
+            final RequestCoalescer.Flight flight = coalescer == null ? null : coalescer.join(servletRequest);
+            if (flight != null && flight.isLeader()) {
+                try {
+                    this.doProcessRequestInternal(servletRequest, flight.record(servletResponse), resourceResolver, sr);
+                } finally {
+                    RequestCompletion.whenComplete(servletRequest, flight::complete);
+                }
+            } else if (flight == null || !flight.replay(servletResponse)) {
+                this.doProcessRequestInternal(servletRequest, servletResponse, resourceResolver, sr);
+            }
+        } finally {
+            if (permit != null) {
+                RequestCompletion.whenComplete(servletRequest, permit::release);
+            }
+        }
+    }
+
+    private void doProcessRequestInternal(
+            final HttpServletRequest servletRequest,
+            final HttpServletResponse servletResponse,
+            final ResourceResolver resourceResolver,
+            final ServletResolver sr)
+            throws IOException {
+        // record the response for the response cache
+        final ResponseCacheImpl cache = this.responseCache;
+        final ResponseCacheImpl.Lookup cacheLookup =
+                cache == null ? null : cache.lookup(servletRequest, servletResponse);
+
         // setting the Sling request and response
         final RequestData requestData = new RequestData(
                 this,
                 servletRequest,
-                servletResponse,
+                cacheLookup == null ? servletResponse : cacheLookup.getResponse(),
                 protectHeadersOnInclude,
                 checkContentTypeOnInclude,
                 this.disableCheckCompliantGetUserPrincipal);
         final SlingJakartaHttpServletRequest request = requestData.getSlingRequest();
         final SlingJakartaHttpServletResponse response = requestData.getSlingResponse();
 
+        final RequestDeadline deadline = createDeadline(servletRequest);
+        if (deadline != null) {
+            requestData.setDeadline(deadline);
+            request.setAttribute(RequestDeadline.ATTRIBUTE_NAME, deadline);
+        }
+
         try {
-            if (getContentTypeHeaderState() != ContentTypeHeaderState.UNSET) {
-                log.debug(
-                        "Content Type Header state has not been cleared properly, is set to {}",
-                        getContentTypeHeaderState());
-            }
-            setContentTypeHeaderState(ContentTypeHeaderState.NOT_VIOLATED);
+            requestData.setContentTypeHeaderState(ContentTypeHeaderState.NOT_VIOLATED);
 
             // initialize the request data - resolve resource and servlet
             final Resource resource = requestData.initResource(resourceResolver);
+            if (cacheLookup != null && cacheLookup.serve(request)) {
+                request.getRequestProgressTracker().log("Served response from cache");
+                return;
+            }
             requestData.initServlet(resource, sr);
 
-            final FilterHandle[] filters = filterManager.getFilters(FilterChainType.REQUEST);
-            final FilterChain processor = new RequestSlingFilterChain(this, filters);
+            final FilterChain processor =
+                    new RequestSlingFilterChain(this, filterManager.getSelection(FilterChainType.REQUEST), request);
 
             request.getRequestProgressTracker()
                     .log("Applying ".concat(FilterChainType.REQUEST.name()).concat("filters"));
@@ -327,16 +469,53 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             handleError(requestData, "Throwable", t, request, response);
 
         } finally {
-            // record the request for the web console and info provider
-            RequestInfoProviderImpl.recordRequest(request);
+            // write the output of includes still rendering in parallel
+            requestData.joinParallelIncludes();
+
+            // record the request for the web console, info provider and
+            // statistics once it is complete, which is later if it
+            // continues asynchronously
+            RequestCompletion.whenComplete(servletRequest, () -> {
+                ParameterSupport.dispose(servletRequest);
+                if (cacheLookup != null) {
+                    cacheLookup.complete();
+                }
 
-            final RequestProcessorMBeanImpl localBean = this.mbean;
-            if (localBean != null) {
-                localBean.addRequestData(requestData);
-            }
+                RequestInfoProviderImpl.recordRequest(request);
 
-            setContentTypeHeaderState(ContentTypeHeaderState.UNSET);
+                final RequestProcessorMBeanImpl localBean = this.mbean;
+                if (localBean != null) {
+                    localBean.addRequestData(requestData);
+                }
+            });
+        }
+    }
+
+    /**
+     * Creates the deadline of a request from the configured request timeout,
+     * the timeout request attribute or the timeout header.
+     * @param request The request
+     * @return the deadline or <code>null</code> if the request has none
+     */
+    RequestDeadline createDeadline(final HttpServletRequest request) {
+        long timeout = this.requestTimeout;
+        final Object override = request.getAttribute(RequestDeadline.TIMEOUT_ATTRIBUTE_NAME);
+        if (override instanceof Number) {
+            timeout = ((Number) override).longValue();
+        } else if (this.requestTimeoutHeader != null) {
+            final String value = request.getHeader(this.requestTimeoutHeader);
+            if (value != null) {
+                try {
+                    final long headerTimeout = Long.parseLong(value.trim());
+                    if (headerTimeout > 0) {
+                        timeout = timeout > 0 ? Math.min(timeout, headerTimeout) : headerTimeout;
+                    }
+                } catch (final NumberFormatException nfe) {
+                    log.debug("Ignoring invalid request timeout header {}: {}", this.requestTimeoutHeader, value);
+                }
+            }
         }
+        return timeout > 0 ? new RequestDeadlineImpl(timeout) : null;
     }
 
     private void handleError(
@@ -346,6 +525,22 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final SlingJakartaHttpServletRequest request,
             final SlingJakartaHttpServletResponse response)
             throws IOException {
+        // the client is not waiting anymore or the upload is rejected, do not log as uncaught
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException) {
+                log.debug("service: {}", cause.getMessage());
+                // lift the deadline for rendering the error
+                requestData.setDeadline(null);
+                handleError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, cause.getMessage(), request, response);
+                return;
+            }
+            if (cause instanceof UploadBudgetExceededException) {
+                log.debug("service: {}", cause.getMessage());
+                handleError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, cause.getMessage(), request, response);
+                return;
+            }
+        }
+
         // we assume, that this is the name of the causing servlet
         if (requestData.getActiveServletName() != null) {
             request.setAttribute(RequestDispatcher.ERROR_SERVLET_NAME, requestData.getActiveServletName());
@@ -407,9 +602,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final FilterChainType filterChainType)
             throws IOException, ServletException {
 
-        final FilterHandle filters[] = filterManager.getFilters(filterChainType);
-
-        FilterChain processor = new SlingComponentFilterChain(filters);
+        FilterChain processor = new SlingComponentFilterChain(filterManager.getSelection(filterChainType), request);
         request.getRequestProgressTracker().log("Applying " + filterChainType + "filters");
         processor.doFilter(request, response);
     }
@@ -456,7 +649,7 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         requestData.setDispatchingInfo(dispatchingInfo);
         try {
             // resolve the servlet
-            Servlet servlet = sr.resolve(cRequest);
+            Servlet servlet = resolveServlet(sr, cRequest);
             contentData.setServlet(servlet);
 
             final FilterChainType type = dispatchingInfo.getType() == DispatcherType.INCLUDE
@@ -493,8 +686,8 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final SlingJakartaHttpServletRequest request,
             final SlingJakartaHttpServletResponse response)
             throws IOException {
-        final FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
-        final FilterChain processor = new ErrorFilterChain(filters, errorHandler, status, message);
+        final FilterChain processor = new ErrorFilterChain(
+                filterManager.getSelection(FilterChainType.ERROR), request, errorHandler, status, message);
         this.handleError(processor, request, response);
     }
 
@@ -503,8 +696,8 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
             final SlingJakartaHttpServletRequest request,
             final SlingJakartaHttpServletResponse response)
             throws IOException {
-        final FilterHandle[] filters = filterManager.getFilters(FilterChainType.ERROR);
-        final FilterChain processor = new ErrorFilterChain(filters, errorHandler, throwable);
+        final FilterChain processor = new ErrorFilterChain(
+                filterManager.getSelection(FilterChainType.ERROR), request, errorHandler, throwable);
         this.handleError(processor, request, response);
     }
 
@@ -565,12 +758,4 @@ public class SlingRequestProcessorImpl implements SlingRequestProcessor {
         log.debug("getMimeType: MimeTypeService not available, cannot resolve mime type for {}", name);
         return null;
     }
-
-    public ContentTypeHeaderState getContentTypeHeaderState() {
-        return contentTypeHeaderState.get();
-    }
-
-    public void setContentTypeHeaderState(ContentTypeHeaderState newState) {
-        contentTypeHeaderState.set(newState);
-    }
 }
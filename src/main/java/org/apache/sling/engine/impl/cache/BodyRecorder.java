@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+
+/**
+ * The <code>BodyRecorder</code> keeps a copy of the bytes or characters
+ * written to a response through the stream or writer returned by
+ * {@link #record(ServletOutputStream)} and {@link #record(PrintWriter)}.
+ * Recording stops once the copy would grow beyond the maximum size.
+ */
+class BodyRecorder {
+
+    private final int maxSize;
+
+    private ByteArrayOutputStream bytes;
+
+    private CharArrayWriter chars;
+
+    private boolean discarded;
+
+    BodyRecorder(final int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    ServletOutputStream record(final ServletOutputStream delegatee) {
+        return new RecordingOutputStream(delegatee);
+    }
+
+    PrintWriter record(final PrintWriter delegatee) {
+        return new PrintWriter(new RecordingWriter(delegatee));
+    }
+
+    synchronized void reset() {
+        if (this.bytes != null) {
+            this.bytes.reset();
+        }
+        if (this.chars != null) {
+            this.chars.reset();
+        }
+    }
+
+    /**
+     * Stops recording, the body is incomplete.
+     */
+    synchronized void discard() {
+        this.discarded = true;
+        this.bytes = null;
+        this.chars = null;
+    }
+
+    /**
+     * @return true if the body could not be recorded completely
+     */
+    synchronized boolean isDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * @return the bytes written to the stream or <code>null</code>
+     */
+    synchronized byte[] getBytes() {
+        return bytes == null ? null : bytes.toByteArray();
+    }
+
+    /**
+     * @return the characters written to the writer or <code>null</code>
+     */
+    synchronized String getChars() {
+        return chars == null ? null : chars.toString();
+    }
+
+    private int size() {
+        return (bytes == null ? 0 : bytes.size()) + (chars == null ? 0 : chars.size());
+    }
+
+    private synchronized void write(final byte[] b, final int off, final int len) {
+        if (!discarded) {
+            if (size() + len > maxSize) {
+                discard();
+            } else {
+                if (bytes == null) {
+                    bytes = new ByteArrayOutputStream();
+                }
+                bytes.write(b, off, len);
+            }
+        }
+    }
+
+    private synchronized void write(final char[] c, final int off, final int len) {
+        if (!discarded) {
+            if (size() + len > maxSize) {
+                discard();
+            } else {
+                if (chars == null) {
+                    chars = new CharArrayWriter();
+                }
+                chars.write(c, off, len);
+            }
+        }
+    }
+
+    private final class RecordingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegatee;
+
+        RecordingOutputStream(final ServletOutputStream delegatee) {
+            this.delegatee = delegatee;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            delegatee.write(b);
+            BodyRecorder.this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            delegatee.write(b, off, len);
+            BodyRecorder.this.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegatee.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegatee.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegatee.isReady();
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            delegatee.setWriteListener(writeListener);
+        }
+    }
+
+    private final class RecordingWriter extends Writer {
+
+        private final PrintWriter delegatee;
+
+        RecordingWriter(final PrintWriter delegatee) {
+            this.delegatee = delegatee;
+        }
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            delegatee.write(cbuf, off, len);
+            BodyRecorder.this.write(cbuf, off, len);
+        }
+
+        @Override
+        public void flush() {
+            delegatee.flush();
+        }
+
+        @Override
+        public void close() {
+            delegatee.close();
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.wrappers.SlingJakartaHttpServletResponseWrapper;
+import org.apache.sling.engine.IncludeCache;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * The <code>IncludeCacheImpl</code> caches the output of includes, such that
+ * a cached include is written without resolving its servlet and calling the
+ * include and component filters.
+ * <p>
+ * The output is keyed by the path and resource type of the included
+ * resource, the selectors, extension and suffix of the include and the user
+ * of the request. Headers set by an include are not cached.
+ */
+@Component(service = {IncludeCache.class, IncludeCacheImpl.class})
+@ServiceDescription("Caches the output of includes")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = IncludeCacheImpl.Config.class)
+public class IncludeCacheImpl implements IncludeCache {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Include Cache",
+            description = "Caches the output of includes of the configured resource types and of includes "
+                    + "whose request dispatcher options set \"" + OPTION_CACHE + "\" to true. Code changing "
+                    + "content must invalidate the affected output through the IncludeCache service.")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Resource Types",
+                description = "Resource types whose includes are cached, for example headers, navigations "
+                        + "and footers rendered the same on all pages.")
+        String[] include_cache_resource_types();
+
+        @AttributeDefinition(name = "Maximum Size", description = "Maximum size in megabytes of all cached output.")
+        int include_cache_max_size() default 16;
+
+        @AttributeDefinition(
+                name = "Maximum Include Size",
+                description = "Maximum size in bytes of the output of an include to cache.")
+        int include_cache_max_entry_size() default 256 * 1024;
+
+        @AttributeDefinition(
+                name = "Time To Live",
+                description = "Seconds the output of an include is cached unless invalidated earlier. Set to "
+                        + "zero to cache the output until invalidated.")
+        long include_cache_ttl() default 300;
+    }
+
+    private final Set<String> resourceTypes = new HashSet<>();
+
+    private final int maxEntrySize;
+
+    private final PathCache<Fragment> cache;
+
+    @Activate
+    public IncludeCacheImpl(final Config config) {
+        if (config.include_cache_resource_types() != null) {
+            this.resourceTypes.addAll(Arrays.asList(config.include_cache_resource_types()));
+        }
+        this.maxEntrySize = Math.max(0, config.include_cache_max_entry_size());
+        this.cache = new PathCache<>(
+                Math.max(0, config.include_cache_max_size()) * 1024L * 1024L,
+                TimeUnit.SECONDS.toMillis(Math.max(0, config.include_cache_ttl())),
+                Fragment::getWeight);
+    }
+
+    /**
+     * Starts the lookup of an include in the cache.
+     * @param request The request
+     * @param resource The included resource
+     * @param info The request path info of the include
+     * @param options The request dispatcher options or <code>null</code>
+     * @return the lookup or <code>null</code> if the include is not cached
+     */
+    public Lookup lookup(
+            final SlingJakartaHttpServletRequest request,
+            final Resource resource,
+            final RequestPathInfo info,
+            final RequestDispatcherOptions options) {
+        final String option = options == null ? null : options.get(OPTION_CACHE);
+        final boolean enabled =
+                option != null ? Boolean.parseBoolean(option) : resourceTypes.contains(resource.getResourceType());
+        if (!enabled) {
+            return null;
+        }
+        final String key = resource.getPath()
+                + '\n'
+                + resource.getResourceType()
+                + '\n'
+                + info.getSelectorString()
+                + '\n'
+                + info.getExtension()
+                + '\n'
+                + info.getSuffix()
+                + '\n'
+                + request.getResourceResolver().getUserID();
+        return new Lookup(request, resource.getPath(), key, cache.generation());
+    }
+
+    // ---------- IncludeCache
+
+    @Override
+    public void invalidate(final String path) {
+        cache.invalidate(path);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    /**
+     * The output of an include, written either to the writer or to the
+     * output stream.
+     */
+    private static final class Fragment {
+
+        private final String chars;
+
+        private final byte[] bytes;
+
+        Fragment(final String chars, final byte[] bytes) {
+            this.chars = chars;
+            this.bytes = bytes;
+        }
+
+        int getWeight() {
+            return 64 + (chars != null ? 2 * chars.length() : 0) + (bytes != null ? bytes.length : 0);
+        }
+
+        void writeTo(final ServletResponse response) throws IOException {
+            if (chars != null) {
+                response.getWriter().write(chars);
+            } else if (bytes != null) {
+                response.getOutputStream().write(bytes);
+            }
+        }
+    }
+
+    /**
+     * The lookup of an include in the cache. If the output is not cached,
+     * the output rendered by the include is recorded and cached once the
+     * include is complete.
+     */
+    public final class Lookup {
+
+        private final SlingJakartaHttpServletRequest request;
+
+        private final String path;
+
+        private final String key;
+
+        private final long started;
+
+        private final BodyRecorder body = new BodyRecorder(maxEntrySize);
+
+        private Lookup(
+                final SlingJakartaHttpServletRequest request, final String path, final String key, final long started) {
+            this.request = request;
+            this.path = path;
+            this.key = key;
+            this.started = started;
+        }
+
+        /**
+         * Writes the cached output of the include.
+         * @param response The response
+         * @return true if the output has been written, false if the include
+         *      has to be rendered
+         * @throws IOException If the output cannot be written
+         */
+        public boolean serve(final ServletResponse response) throws IOException {
+            final Fragment fragment = cache.get(key);
+            if (fragment == null) {
+                request.getRequestProgressTracker().log("Include cache miss for {0}", path);
+                return false;
+            }
+            request.getRequestProgressTracker().log("Include cache hit for {0}", path);
+            fragment.writeTo(response);
+            return true;
+        }
+
+        /**
+         * @param response The response
+         * @return the response to render the include with
+         */
+        public SlingJakartaHttpServletResponse record(final SlingJakartaHttpServletResponse response) {
+            return new FragmentResponse(response);
+        }
+
+        /**
+         * Caches the output of the include. This must be called once the
+         * include completed successfully.
+         */
+        public void complete() {
+            final String chars = body.getChars();
+            final byte[] bytes = body.getBytes();
+            if (!body.isDiscarded() && (chars == null || bytes == null)) {
+                cache.put(path, key, new Fragment(chars, bytes), started);
+            }
+        }
+
+        private final class FragmentResponse extends SlingJakartaHttpServletResponseWrapper {
+
+            private ServletOutputStream stream;
+
+            private PrintWriter writer;
+
+            FragmentResponse(final SlingJakartaHttpServletResponse response) {
+                super(response);
+            }
+
+            @Override
+            public ServletOutputStream getOutputStream() throws IOException {
+                if (this.stream == null) {
+                    this.stream = body.record(super.getOutputStream());
+                }
+                return this.stream;
+            }
+
+            @Override
+            public PrintWriter getWriter() throws IOException {
+                if (this.writer == null) {
+                    this.writer = body.record(super.getWriter());
+                }
+                return this.writer;
+            }
+
+            @Override
+            public void reset() {
+                // output written before the include is reset, too
+                body.discard();
+                super.reset();
+            }
+
+            @Override
+            public void resetBuffer() {
+                body.discard();
+                super.resetBuffer();
+            }
+        }
+    }
+}
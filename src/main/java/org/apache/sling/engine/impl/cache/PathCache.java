@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * The <code>PathCache</code> holds values rendered from resources, keyed by
+ * arbitrary strings and indexed by the path of the resource, such that all
+ * values rendered from a subtree can be invalidated.
+ * <p>
+ * Values are looked up without locking, only changes to the cache are
+ * synchronized. Once the total weight exceeds the maximum weight, values are
+ * evicted in approximate least recently used order: of a small sample of the
+ * cached values, the one accessed longest ago is evicted. Values expire after
+ * the time to live.
+ *
+ * @param <V> The type of the cached values
+ */
+class PathCache<V> {
+
+    /** the number of values compared to pick the one to evict */
+    static final int EVICTION_SAMPLES = 8;
+
+    private final long maxWeight;
+
+    private final long ttl;
+
+    private final ToIntFunction<V> weigher;
+
+    /** the cached values by key, only changed while holding the lock */
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    /** the keys of the cached values by resource path */
+    private final NavigableMap<String, Set<String>> keysByPath = new TreeMap<>();
+
+    private long weight;
+
+    /** walks the values to sample for eviction, continued with each eviction */
+    private Iterator<Entry<V>> evictionCursor;
+
+    /**
+     * incremented on each invalidation while holding the lock, values
+     * rendered concurrently are not cached; read without locking
+     */
+    private volatile long generation;
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxWeight The maximum total weight
+     * @param ttl The time to live in milliseconds or zero to cache values
+     *      until invalidated
+     * @param weigher Calculates the approximate number of bytes used by a value
+     */
+    PathCache(final long maxWeight, final long ttl, final ToIntFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttl = ttl;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the current generation, to be passed to
+     *      {@link #put(String, String, Object, long)} once the value is
+     *      rendered
+     */
+    long generation() {
+        return generation;
+    }
+
+    V get(final String key) {
+        final Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expires > 0 && entry.expires < System.currentTimeMillis()) {
+            expire(entry);
+            return null;
+        }
+        entry.accessed = System.nanoTime();
+        return entry.value;
+    }
+
+    private synchronized void expire(final Entry<V> entry) {
+        // the entry might have been replaced or removed concurrently
+        if (entries.get(entry.key) == entry) {
+            remove(entry);
+        }
+    }
+
+    /**
+     * Caches a value unless the cache has been invalidated since the value
+     * started rendering.
+     * @param path The path of the resource rendered
+     * @param key The key
+     * @param value The value
+     * @param started The {@link #generation()} when the value started rendering
+     */
+    synchronized void put(final String path, final String key, final V value, final long started) {
+        final int valueWeight = weigher.applyAsInt(value) + 2 * key.length();
+        if (started != generation || valueWeight > maxWeight) {
+            return;
+        }
+        final Entry<V> existing = entries.get(key);
+        if (existing != null) {
+            remove(existing);
+        }
+        final Entry<V> entry =
+                new Entry<>(path, key, value, valueWeight, ttl > 0 ? System.currentTimeMillis() + ttl : 0);
+        entries.put(key, entry);
+        keysByPath.computeIfAbsent(path, p -> new HashSet<>()).add(key);
+        weight += entry.weight;
+
+        while (weight > maxWeight) {
+            final Entry<V> evicted = sampleEldest();
+            if (evicted == null) {
+                break;
+            }
+            if (entries.get(evicted.key) == evicted) {
+                remove(evicted);
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the value accessed longest ago of the next values of the
+     *      eviction cursor or null if the cache is empty
+     */
+    private Entry<V> sampleEldest() {
+        Entry<V> eldest = null;
+        for (int i = 0; i < EVICTION_SAMPLES; i++) {
+            if (evictionCursor == null || !evictionCursor.hasNext()) {
+                evictionCursor = entries.values().iterator();
+                if (!evictionCursor.hasNext()) {
+                    break;
+                }
+            }
+            final Entry<V> candidate = evictionCursor.next();
+            if (eldest == null || candidate.accessed - eldest.accessed < 0) {
+                eldest = candidate;
+            }
+        }
+        return eldest;
+    }
+
+    private void remove(final Entry<V> entry) {
+        entries.remove(entry.key);
+        unindex(entry);
+    }
+
+    private void unindex(final Entry<V> entry) {
+        weight -= entry.weight;
+        final Set<String> keys = keysByPath.get(entry.path);
+        if (keys != null) {
+            keys.remove(entry.key);
+            if (keys.isEmpty()) {
+                keysByPath.remove(entry.path);
+            }
+        }
+    }
+
+    /**
+     * Removes the values rendered from the resource at the path and from
+     * all resources below it.
+     * @param path The resource path
+     */
+    synchronized void invalidate(final String path) {
+        generation++;
+        final String prefix = path.endsWith("/") ? path : path.concat("/");
+        final List<String> keys = new ArrayList<>();
+        final Set<String> exact = keysByPath.get(path);
+        if (exact != null) {
+            keys.addAll(exact);
+        }
+        for (final Set<String> below : keysByPath
+                .subMap(prefix, true, prefix + Character.MAX_VALUE, true)
+                .values()) {
+            keys.addAll(below);
+        }
+        for (final String key : keys) {
+            final Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                remove(entry);
+                invalidations.increment();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        generation++;
+        invalidations.add(entries.size());
+        entries.clear();
+        keysByPath.clear();
+        weight = 0;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    synchronized long getWeight() {
+        return weight;
+    }
+
+    long getMaxWeight() {
+        return maxWeight;
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    void resetStatistics() {
+        evictions.reset();
+        invalidations.reset();
+    }
+
+    private static final class Entry<V> {
+
+        private final String path;
+
+        private final String key;
+
+        private final V value;
+
+        private final int weight;
+
+        private final long expires;
+
+        /** the {@link System#nanoTime()} of the last access */
+        private volatile long accessed = System.nanoTime();
+
+        Entry(final String path, final String key, final V value, final int weight, final long expires) {
+            this.path = path;
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The <code>RecordedResponse</code> holds the status, headers and body of a
+ * response recorded by a {@link RecordingResponse}.
+ */
+public class RecordedResponse {
+
+    /** status codes which are cacheable by default, see RFC 9110, section 15.1 */
+    private static final int[] CACHEABLE_STATUS = {200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501};
+
+    private final int status;
+
+    private final String contentType;
+
+    private final List<String[]> headers;
+
+    private final ByteBuffer body;
+
+    RecordedResponse(final int status, final String contentType, final List<String[]> headers, final byte[] body) {
+        this(status, contentType, headers, ByteBuffer.wrap(body));
+    }
+
+    private RecordedResponse(
+            final int status, final String contentType, final List<String[]> headers, final ByteBuffer body) {
+        this.status = status;
+        this.contentType = contentType;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * @return a copy of this response with the body stored outside of the
+     *      Java heap
+     */
+    public RecordedResponse offHeap() {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(body.remaining());
+        direct.put(body.duplicate()).flip();
+        return new RecordedResponse(status, contentType, headers, direct.asReadOnlyBuffer());
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public int getContentLength() {
+        return body.remaining();
+    }
+
+    /**
+     * @return the approximate number of bytes used by this response
+     */
+    public int getWeight() {
+        int weight = 64 + body.remaining();
+        for (final String[] header : headers) {
+            weight += 2 * (header[0].length() + header[1].length());
+        }
+        return weight;
+    }
+
+    /**
+     * @param name The header name
+     * @return the first value of the header or <code>null</code>
+     */
+    public String getHeader(final String name) {
+        for (final String[] header : headers) {
+            if (header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether this response may be sent to other clients. This is
+     * the case if its status is cacheable by default, it does not set
+     * cookies, its <code>Cache-Control</code> header does not restrict
+     * caching and it does not vary by other request headers than the given
+     * ones.
+     * @param varyHeaders The request headers, in lower case, the response
+     *      may vary by
+     * @return true if the response may be shared
+     */
+    public boolean isShareable(final Collection<String> varyHeaders) {
+        boolean cacheableStatus = false;
+        for (final int sc : CACHEABLE_STATUS) {
+            cacheableStatus |= sc == status;
+        }
+        if (!cacheableStatus) {
+            return false;
+        }
+        for (final String[] header : headers) {
+            final String name = header[0].toLowerCase(Locale.ROOT);
+            final String value = header[1].toLowerCase(Locale.ROOT);
+            if ("set-cookie".equals(name)) {
+                return false;
+            }
+            if ("cache-control".equals(name)
+                    && (value.contains("private") || value.contains("no-store") || value.contains("no-cache"))) {
+                return false;
+            }
+            if ("vary".equals(name)) {
+                for (final String token : value.split(",")) {
+                    final String vary = token.trim();
+                    if (!vary.isEmpty() && !varyHeaders.contains(vary)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sends this response to the client.
+     * @param response The response
+     * @throws IOException If the body cannot be written
+     */
+    public void replay(final HttpServletResponse response) throws IOException {
+        response.setStatus(status);
+        for (final String[] header : headers) {
+            final String name = header[0];
+            // the container provides the message framing and date
+            if (!"Content-Type".equalsIgnoreCase(name)
+                    && !"Content-Length".equalsIgnoreCase(name)
+                    && !"Transfer-Encoding".equalsIgnoreCase(name)
+                    && !"Connection".equalsIgnoreCase(name)
+                    && !"Date".equalsIgnoreCase(name)) {
+                response.addHeader(name, header[1]);
+            }
+        }
+        if (contentType != null) {
+            response.setContentType(contentType);
+        }
+        response.setContentLength(body.remaining());
+        if (body.hasRemaining()) {
+            write(body.duplicate(), response.getOutputStream());
+        }
+    }
+
+    private static void write(final ByteBuffer data, final ServletOutputStream out) throws IOException {
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else {
+            final byte[] chunk = new byte[Math.min(8192, data.remaining())];
+            while (data.hasRemaining()) {
+                final int length = Math.min(chunk.length, data.remaining());
+                data.get(chunk, 0, length);
+                out.write(chunk, 0, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * The <code>RecordingResponse</code> passes the response through to the
+ * client and records a copy of it, such that it can be replayed to other
+ * clients as a {@link RecordedResponse}.
+ * <p>
+ * Recording stops if the body grows beyond the configured maximum size or if
+ * an error is sent to the container, in which case {@link #finish()} returns
+ * <code>null</code>.
+ */
+public class RecordingResponse extends HttpServletResponseWrapper {
+
+    private final BodyRecorder body;
+
+    private ServletOutputStream stream;
+
+    private PrintWriter writer;
+
+    public RecordingResponse(final HttpServletResponse response, final int maxSize) {
+        super(response);
+        this.body = new BodyRecorder(maxSize);
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.stream == null) {
+            this.stream = body.record(super.getOutputStream());
+        }
+        return this.stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.writer == null) {
+            this.writer = body.record(super.getWriter());
+        }
+        return this.writer;
+    }
+
+    @Override
+    public void sendError(final int sc) throws IOException {
+        // the container renders the error page, which we cannot record
+        body.discard();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(final int sc, final String msg) throws IOException {
+        body.discard();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        body.reset();
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        body.reset();
+    }
+
+    /**
+     * Ends recording. This must be called once the request is complete.
+     * @return the recorded response or <code>null</code> if the response
+     *      could not be recorded completely
+     */
+    public RecordedResponse finish() {
+        final Collection<String> names = getHeaderNames();
+        final byte[] bytes = body.getBytes();
+        final String chars = body.getChars();
+        // mixing the stream and the writer is not supported
+        if (body.isDiscarded() || names == null || (bytes != null && chars != null)) {
+            return null;
+        }
+
+        final List<String[]> headers = new ArrayList<>();
+        for (final String name : names) {
+            final Collection<String> values = getHeaders(name);
+            if (values != null) {
+                for (final String value : values) {
+                    headers.add(new String[] {name, value});
+                }
+            }
+        }
+        final byte[] content = chars != null ? chars.getBytes(charset()) : (bytes != null ? bytes : new byte[0]);
+        return new RecordedResponse(getStatus(), getContentType(), headers, content);
+    }
+
+    private Charset charset() {
+        final String encoding = getCharacterEncoding();
+        try {
+            return encoding == null ? StandardCharsets.ISO_8859_1 : Charset.forName(encoding);
+        } catch (final IllegalArgumentException iae) {
+            return StandardCharsets.ISO_8859_1;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RequestCoalescer</code> lets only one of several identical
+ * concurrent anonymous GET requests be processed. The other requests wait
+ * for it to complete and get its recorded response replayed, provided the
+ * response may be shared.
+ * <p>
+ * Requests are identical if they have the same URL and the same values for
+ * the configured request headers. Requests with cookies or authorization are
+ * never coalesced.
+ */
+@Component(service = RequestCoalescer.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@ServiceDescription("Coalesces identical concurrent anonymous GET requests")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = RequestCoalescer.Config.class)
+public class RequestCoalescer {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Request Coalescing",
+            description = "Processes only one of several identical concurrent anonymous GET requests and "
+                    + "replays its response to the other requests, if the response is cacheable. This protects "
+                    + "the system from a burst of requests for the same URL, for example after a CDN purge.")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Path Patterns",
+                description =
+                        "Regular expressions matched against the request path. Leave empty to apply " + "to all paths.")
+        String[] coalesce_paths();
+
+        @AttributeDefinition(
+                name = "Extensions",
+                description = "Extensions of the requests to coalesce. Leave empty to apply to all extensions.")
+        String[] coalesce_extensions() default {"html", "json"};
+
+        @AttributeDefinition(
+                name = "Request Headers",
+                description = "Request headers whose values must be equal for requests to be coalesced. A "
+                        + "response varying by other headers is not replayed.")
+        String[] coalesce_headers() default {"Accept", "Accept-Encoding", "Accept-Language"};
+
+        @AttributeDefinition(
+                name = "Maximum Response Size",
+                description = "Maximum size in bytes of a response to replay. Larger responses are not "
+                        + "replayed and the waiting requests are processed themselves.")
+        int coalesce_max_size() default 1024 * 1024;
+
+        @AttributeDefinition(
+                name = "Timeout",
+                description = "Time in milliseconds a request waits for an identical request to complete "
+                        + "before it is processed itself.")
+        long coalesce_timeout() default 5000;
+    }
+
+    /** default log */
+    private final Logger log = LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private final ConcurrentMap<String, Call> calls = new ConcurrentHashMap<>();
+
+    private final RequestPatterns patterns;
+
+    private final String[] headers;
+
+    private final Set<String> varyHeaders;
+
+    private final int maxSize;
+
+    private final long timeout;
+
+    @Activate
+    public RequestCoalescer(final Config config) {
+        this.patterns = new RequestPatterns(config.coalesce_paths(), config.coalesce_extensions());
+        this.headers = config.coalesce_headers() == null ? new String[0] : config.coalesce_headers();
+        this.varyHeaders = new HashSet<>();
+        for (final String header : this.headers) {
+            this.varyHeaders.add(header.toLowerCase(Locale.ROOT));
+        }
+        this.maxSize = Math.max(0, config.coalesce_max_size());
+        this.timeout = Math.max(0, config.coalesce_timeout());
+    }
+
+    /**
+     * Joins the request to the processing of identical requests.
+     * @param request The request
+     * @return the flight of the request or <code>null</code> if the request
+     *      cannot be coalesced
+     */
+    public Flight join(final HttpServletRequest request) {
+        if (!isCoalescable(request)) {
+            return null;
+        }
+        final String key = getKey(request);
+        final Call call = new Call(key);
+        final Call existing = calls.putIfAbsent(key, call);
+        return existing == null ? new Flight(call, true) : new Flight(existing, false);
+    }
+
+    boolean isCoalescable(final HttpServletRequest request) {
+        return patterns.matches(request);
+    }
+
+    String getKey(final HttpServletRequest request) {
+        final StringBuilder key = new StringBuilder(128);
+        key.append(request.getScheme())
+                .append("://")
+                .append(request.getServerName())
+                .append(':')
+                .append(request.getServerPort())
+                .append(request.getRequestURI());
+        final String query = request.getQueryString();
+        if (query != null) {
+            key.append('?').append(query);
+        }
+        for (final String header : headers) {
+            key.append('\n');
+            final Enumeration<String> values = request.getHeaders(header);
+            if (values != null) {
+                while (values.hasMoreElements()) {
+                    key.append(values.nextElement()).append(',');
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * The state of the processing of identical requests.
+     */
+    private static final class Call {
+
+        private final String key;
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile RecordedResponse response;
+
+        Call(final String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The participation of a request in a {@link Call}, either as the leader
+     * processing the request or as a follower waiting for the response.
+     */
+    public final class Flight {
+
+        private final Call call;
+
+        private final boolean leader;
+
+        private RecordingResponse recording;
+
+        private Flight(final Call call, final boolean leader) {
+            this.call = call;
+            this.leader = leader;
+        }
+
+        /**
+         * @return true if the request has to be processed and its response
+         *      recorded
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Starts recording the response of the leader.
+         * @param response The response
+         * @return the response to process the request with
+         */
+        public HttpServletResponse record(final HttpServletResponse response) {
+            this.recording = new RecordingResponse(response, maxSize);
+            return this.recording;
+        }
+
+        /**
+         * Ends the flight of the leader and releases the followers. This
+         * must be called once the request is complete.
+         */
+        public void complete() {
+            if (leader) {
+                calls.remove(call.key, call);
+                final RecordedResponse response = recording == null ? null : recording.finish();
+                if (response != null && response.isShareable(varyHeaders)) {
+                    call.response = response;
+                }
+                call.done.countDown();
+            }
+        }
+
+        /**
+         * Waits for the leader and replays its response.
+         * @param response The response
+         * @return true if the response has been replayed, false if the
+         *      request has to be processed itself
+         * @throws IOException If the response cannot be written
+         */
+        public boolean replay(final HttpServletResponse response) throws IOException {
+            if (leader) {
+                return false;
+            }
+            try {
+                if (!call.done.await(timeout, TimeUnit.MILLISECONDS)) {
+                    log.debug("Timeout waiting for identical request, processing {}", call.key);
+                    return false;
+                }
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            final RecordedResponse recorded = call.response;
+            if (recorded == null) {
+                return false;
+            }
+            recorded.replay(response);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.osgi.service.servlet.context.ServletContextHelper;
+
+/**
+ * The <code>RequestPatterns</code> select the anonymous GET requests whose
+ * responses may be shared with other clients: requests which have not been
+ * authenticated, carry no cookies and authorization and whose path and
+ * extension match the configuration.
+ */
+class RequestPatterns {
+
+    private final Pattern[] paths;
+
+    private final Set<String> extensions = new HashSet<>();
+
+    /**
+     * @param paths Regular expressions matched against the request path, if
+     *      empty all paths match
+     * @param extensions The extensions, if empty all extensions match
+     */
+    RequestPatterns(final String[] paths, final String[] extensions) {
+        this.paths = new Pattern[paths == null ? 0 : paths.length];
+        for (int i = 0; i < this.paths.length; i++) {
+            this.paths[i] = Pattern.compile(paths[i]);
+        }
+        if (extensions != null) {
+            for (final String extension : extensions) {
+                this.extensions.add(extension);
+            }
+        }
+    }
+
+    boolean matches(final HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod())
+                || request.getHeader("Cookie") != null
+                || request.getHeader("Authorization") != null
+                || !isAnonymous(request)) {
+            return false;
+        }
+        final String pathInfo = request.getPathInfo();
+        final String path = pathInfo == null || pathInfo.isEmpty() ? "/" : pathInfo;
+        if (!extensions.isEmpty() && !extensions.contains(getExtension(path))) {
+            return false;
+        }
+        if (paths.length == 0) {
+            return true;
+        }
+        for (final Pattern pattern : paths) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Requests may be authenticated without cookies or authorization headers,
+     * for example by client certificates or custom token headers, so the
+     * result of the authentication decides.
+     * @param request The request
+     * @return true if neither an authentication handler nor the servlet
+     *      container authenticated the request
+     */
+    static boolean isAnonymous(final HttpServletRequest request) {
+        return request.getAttribute(ServletContextHelper.AUTHENTICATION_TYPE) == null && request.getAuthType() == null;
+    }
+
+    /**
+     * @param path The request path
+     * @return the extension of the last path segment or an empty string
+     */
+    static String getExtension(final String path) {
+        final int dot = path.lastIndexOf('.');
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return "";
+        }
+        return path.substring(dot + 1);
+    }
+}
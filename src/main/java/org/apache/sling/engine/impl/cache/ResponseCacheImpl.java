@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.engine.ResponseCache;
+import org.apache.sling.engine.jmx.ResponseCacheMBean;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * The <code>ResponseCacheImpl</code> caches the rendered responses of
+ * anonymous GET requests. A cached response is served after resolving the
+ * resource, without resolving the servlet and calling the request filters.
+ * <p>
+ * Responses are keyed by the resource path, selectors, extension and suffix
+ * of the request and the values of the configured request headers and
+ * parameters. Requests with other parameters are not cached. The bodies are
+ * stored outside of the Java heap and the least recently used responses are
+ * evicted once the cached responses exceed the maximum weight.
+ */
+@Component(
+        service = {ResponseCache.class, ResponseCacheMBean.class, ResponseCacheImpl.class},
+        configurationPolicy = ConfigurationPolicy.REQUIRE,
+        property = {"jmx.objectname=org.apache.sling:type=engine,service=ResponseCache"})
+@ServiceDescription("Caches rendered responses")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = ResponseCacheImpl.Config.class)
+public class ResponseCacheImpl extends StandardMBean implements ResponseCache, ResponseCacheMBean {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Response Cache",
+            description = "Caches the rendered responses of anonymous GET requests. Code changing content must "
+                    + "invalidate the affected responses through the ResponseCache service.")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Path Patterns",
+                description =
+                        "Regular expressions matched against the request path. Leave empty to apply " + "to all paths.")
+        String[] cache_paths();
+
+        @AttributeDefinition(
+                name = "Extensions",
+                description = "Extensions of the requests to cache. Leave empty to apply to all extensions.")
+        String[] cache_extensions() default {"html", "json"};
+
+        @AttributeDefinition(
+                name = "Request Headers",
+                description = "Request headers whose values are part of the cache key. A response varying by "
+                        + "other headers is not cached.")
+        String[] cache_headers() default {"Host", "Accept", "Accept-Encoding", "Accept-Language"};
+
+        @AttributeDefinition(
+                name = "Request Parameters",
+                description = "Request parameters whose values are part of the cache key. Requests with "
+                        + "other parameters are not cached.")
+        String[] cache_parameters();
+
+        @AttributeDefinition(name = "Maximum Size", description = "Maximum size in megabytes of all cached responses.")
+        int cache_max_size() default 64;
+
+        @AttributeDefinition(
+                name = "Maximum Response Size",
+                description = "Maximum size in bytes of a response to cache.")
+        int cache_max_entry_size() default 1024 * 1024;
+
+        @AttributeDefinition(
+                name = "Time To Live",
+                description = "Seconds a response is cached unless invalidated earlier. Set to zero to cache "
+                        + "responses until invalidated.")
+        long cache_ttl() default 300;
+    }
+
+    private final RequestPatterns patterns;
+
+    private final String[] headers;
+
+    private final Set<String> varyHeaders = new HashSet<>();
+
+    private final Set<String> parameters = new HashSet<>();
+
+    private final int maxEntrySize;
+
+    private final PathCache<RecordedResponse> cache;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    @Activate
+    public ResponseCacheImpl(final Config config) throws NotCompliantMBeanException {
+        super(ResponseCacheMBean.class);
+        this.patterns = new RequestPatterns(config.cache_paths(), config.cache_extensions());
+        this.headers = config.cache_headers() == null ? new String[0] : config.cache_headers();
+        for (final String header : this.headers) {
+            this.varyHeaders.add(header.toLowerCase(Locale.ROOT));
+        }
+        if (config.cache_parameters() != null) {
+            this.parameters.addAll(Arrays.asList(config.cache_parameters()));
+        }
+        this.maxEntrySize = Math.max(0, config.cache_max_entry_size());
+        this.cache = new PathCache<>(
+                Math.max(0, config.cache_max_size()) * 1024L * 1024L,
+                TimeUnit.SECONDS.toMillis(Math.max(0, config.cache_ttl())),
+                RecordedResponse::getWeight);
+    }
+
+    /**
+     * Starts the lookup of a request in the cache.
+     * @param request The request
+     * @param response The response
+     * @return the lookup or <code>null</code> if the request cannot be cached
+     */
+    public Lookup lookup(final HttpServletRequest request, final HttpServletResponse response) {
+        final List<String> query = getQuery(request.getQueryString());
+        if (query == null || !patterns.matches(request)) {
+            return null;
+        }
+        return new Lookup(response, query, cache.generation());
+    }
+
+    /**
+     * @param queryString The query string
+     * @return the sorted parameters or <code>null</code> if the query has
+     *      parameters which are not part of the key
+     */
+    List<String> getQuery(final String queryString) {
+        final List<String> query = new ArrayList<>();
+        if (queryString == null || queryString.isEmpty()) {
+            return query;
+        }
+        for (final String parameter : queryString.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            final int eq = parameter.indexOf('=');
+            try {
+                final String name =
+                        URLDecoder.decode(eq < 0 ? parameter : parameter.substring(0, eq), StandardCharsets.UTF_8);
+                if (!parameters.contains(name)) {
+                    return null;
+                }
+            } catch (final IllegalArgumentException iae) {
+                return null;
+            }
+            query.add(parameter);
+        }
+        query.sort(null);
+        return query;
+    }
+
+    String getKey(final SlingJakartaHttpServletRequest request, final List<String> query) {
+        final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+        final StringBuilder key = new StringBuilder(128);
+        key.append(requestPathInfo.getResourcePath())
+                .append('\n')
+                .append(requestPathInfo.getSelectorString())
+                .append('\n')
+                .append(requestPathInfo.getExtension())
+                .append('\n')
+                .append(requestPathInfo.getSuffix());
+        for (final String parameter : query) {
+            key.append('\n').append(parameter);
+        }
+        for (final String header : headers) {
+            key.append('\n');
+            final Enumeration<String> values = request.getHeaders(header);
+            if (values != null) {
+                while (values.hasMoreElements()) {
+                    key.append(values.nextElement()).append(',');
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    RecordedResponse get(final String key) {
+        return cache.get(key);
+    }
+
+    void put(final String path, final String key, final RecordedResponse response, final long started) {
+        cache.put(path, key, response, started);
+    }
+
+    // ---------- ResponseCache
+
+    @Override
+    public void invalidate(final String path) {
+        cache.invalidate(path);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    // ---------- ResponseCacheMBean
+
+    @Override
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return cache.getInvalidationCount();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    @Override
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return cache.getMaxWeight();
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        cache.resetStatistics();
+    }
+
+    /**
+     * The lookup of a request in the cache. If the response is not cached,
+     * the response rendered for the request is recorded and cached once the
+     * request is complete.
+     */
+    public final class Lookup {
+
+        private final HttpServletResponse response;
+
+        private final RecordingResponse recording;
+
+        private final List<String> query;
+
+        private final long started;
+
+        private String path;
+
+        private String key;
+
+        private Lookup(final HttpServletResponse response, final List<String> query, final long started) {
+            this.response = response;
+            this.recording = new RecordingResponse(response, maxEntrySize);
+            this.query = query;
+            this.started = started;
+        }
+
+        /**
+         * @return the response to render the request with
+         */
+        public HttpServletResponse getResponse() {
+            return recording;
+        }
+
+        /**
+         * Serves the request from the cache. This must be called after the
+         * resource of the request has been resolved.
+         * @param request The request
+         * @return true if the response has been served from the cache
+         * @throws IOException If the response cannot be written
+         */
+        public boolean serve(final SlingJakartaHttpServletRequest request) throws IOException {
+            final String resourcePath = request.getRequestPathInfo().getResourcePath();
+            if (resourcePath == null) {
+                return false;
+            }
+            final String requestKey = getKey(request, query);
+            final RecordedResponse cached = get(requestKey);
+            if (cached != null) {
+                hits.increment();
+                cached.replay(response);
+                return true;
+            }
+            misses.increment();
+            this.path = resourcePath;
+            this.key = requestKey;
+            return false;
+        }
+
+        /**
+         * Caches the rendered response if it may be shared. This must be
+         * called once the request is complete.
+         */
+        public void complete() {
+            if (key != null) {
+                final RecordedResponse rendered = recording.finish();
+                if (rendered != null && rendered.isShareable(varyHeaders)) {
+                    put(path, key, rendered.offHeap(), started);
+                }
+            }
+        }
+    }
+}
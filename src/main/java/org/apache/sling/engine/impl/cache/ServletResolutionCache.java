@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jakarta.servlet.Servlet;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.observation.ResourceChange;
+import org.apache.sling.api.resource.observation.ResourceChangeListener;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.apache.sling.engine.jmx.ServletResolutionCacheMBean;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
+import org.osgi.service.component.annotations.ReferencePolicyOption;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * The <code>ServletResolutionCache</code> memoizes the servlet resolved for a
+ * request shape, that is the method, extension, selector string, resource
+ * type and resource super type of the request.
+ * <p>
+ * The cache is bound to one servlet resolver and invalidated if another
+ * resolver is used, if servlet services are registered, modified or
+ * unregistered and if resources below the configured script paths change.
+ */
+@Component(
+        service = {ServletResolutionCacheMBean.class, ResourceChangeListener.class, ServletResolutionCache.class},
+        property = {"jmx.objectname=org.apache.sling:type=engine,service=ServletResolutionCache"})
+@ServiceDescription("Caches the servlets resolved per request shape")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = ServletResolutionCache.Config.class)
+public class ServletResolutionCache extends StandardMBean
+        implements ServletResolutionCacheMBean, ResourceChangeListener {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Servlet Resolution Cache",
+            description = "Caches the servlet resolved for the resource type, resource super type, method, "
+                    + "selectors and extension of requests and includes.")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Enabled",
+                description = "Whether resolved servlets are cached. The cache can also be disabled at "
+                        + "runtime through JMX.")
+        boolean servlet_resolution_cache_enabled() default true;
+
+        @AttributeDefinition(
+                name = "Maximum Entries",
+                description = "Maximum number of request shapes cached. The cache is cleared once full.")
+        int servlet_resolution_cache_size() default 1000;
+
+        @AttributeDefinition(
+                name = "Script Paths",
+                description = "Changes to resources below these paths invalidate the cache. This should "
+                        + "cover the search paths of the resource resolver.")
+        String[] resource_paths() default {"/apps", "/libs"};
+    }
+
+    private final int maxEntries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private volatile boolean enabled;
+
+    private volatile Entries entries = new Entries(null);
+
+    @Activate
+    public ServletResolutionCache(final Config config) throws NotCompliantMBeanException {
+        super(ServletResolutionCacheMBean.class);
+        this.enabled = config.servlet_resolution_cache_enabled();
+        this.maxEntries = Math.max(1, config.servlet_resolution_cache_size());
+    }
+
+    @Reference(
+            name = "Servlet",
+            service = Servlet.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY,
+            updated = "updatedServlet")
+    void bindServlet(final ServiceReference<Servlet> reference) {
+        invalidate();
+    }
+
+    void updatedServlet(final ServiceReference<Servlet> reference) {
+        invalidate();
+    }
+
+    void unbindServlet(final ServiceReference<Servlet> reference) {
+        invalidate();
+    }
+
+    @Reference(
+            name = "JavaxServlet",
+            service = javax.servlet.Servlet.class,
+            cardinality = ReferenceCardinality.MULTIPLE,
+            policy = ReferencePolicy.DYNAMIC,
+            policyOption = ReferencePolicyOption.GREEDY,
+            updated = "updatedJavaxServlet")
+    void bindJavaxServlet(final ServiceReference<javax.servlet.Servlet> reference) {
+        invalidate();
+    }
+
+    void updatedJavaxServlet(final ServiceReference<javax.servlet.Servlet> reference) {
+        invalidate();
+    }
+
+    void unbindJavaxServlet(final ServiceReference<javax.servlet.Servlet> reference) {
+        invalidate();
+    }
+
+    /**
+     * Resolves the servlet for the request.
+     * @param resolver The servlet resolver
+     * @param request The request
+     * @return the servlet or <code>null</code>
+     */
+    public Servlet resolve(final ServletResolver resolver, final SlingJakartaHttpServletRequest request) {
+        if (!enabled) {
+            return resolver.resolve(request);
+        }
+        Entries current = this.entries;
+        if (current.resolver != resolver) {
+            current = new Entries(resolver);
+            this.entries = current;
+        }
+
+        final RequestShape shape = new RequestShape(request);
+        Servlet servlet = current.servlets.get(shape);
+        if (servlet != null) {
+            hits.increment();
+            return servlet;
+        }
+
+        misses.increment();
+        servlet = resolver.resolve(request);
+        if (servlet != null) {
+            if (current.servlets.size() >= maxEntries) {
+                current.servlets.clear();
+            }
+            current.servlets.put(shape, servlet);
+        }
+        return servlet;
+    }
+
+    // ---------- ResourceChangeListener
+
+    @Override
+    public void onChange(final List<ResourceChange> changes) {
+        invalidate();
+    }
+
+    // ---------- ServletResolutionCacheMBean
+
+    @Override
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public double getHitRatio() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    @Override
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return entries.servlets.size();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            invalidate();
+        }
+    }
+
+    @Override
+    public void invalidate() {
+        final Entries current = this.entries;
+        if (!current.servlets.isEmpty()) {
+            invalidations.increment();
+        }
+        this.entries = new Entries(current.resolver);
+    }
+
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        invalidations.reset();
+    }
+
+    /**
+     * The servlets resolved by one servlet resolver. Replacing the instance
+     * atomically invalidates all cached servlets.
+     */
+    private static final class Entries {
+
+        private final ServletResolver resolver;
+
+        private final Map<RequestShape, Servlet> servlets = new ConcurrentHashMap<>();
+
+        Entries(final ServletResolver resolver) {
+            this.resolver = resolver;
+        }
+    }
+
+    private static final class RequestShape {
+
+        private final String method;
+
+        private final String extension;
+
+        private final String selectorString;
+
+        private final String resourceType;
+
+        private final String resourceSuperType;
+
+        private final int hashCode;
+
+        RequestShape(final SlingJakartaHttpServletRequest request) {
+            final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+            final Resource resource = request.getResource();
+            this.method = request.getMethod();
+            this.extension = requestPathInfo.getExtension();
+            this.selectorString = requestPathInfo.getSelectorString();
+            this.resourceType = resource == null ? null : resource.getResourceType();
+            this.resourceSuperType = resource == null ? null : resource.getResourceSuperType();
+            this.hashCode = Objects.hash(method, extension, selectorString, resourceType, resourceSuperType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RequestShape)) {
+                return false;
+            }
+            final RequestShape other = (RequestShape) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(method, other.method)
+                    && Objects.equals(extension, other.extension)
+                    && Objects.equals(selectorString, other.selectorString)
+                    && Objects.equals(resourceType, other.resourceType)
+                    && Objects.equals(resourceSuperType, other.resourceSuperType);
+        }
+    }
+}
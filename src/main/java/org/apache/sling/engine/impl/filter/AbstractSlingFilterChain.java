@@ -34,25 +34,54 @@ import org.slf4j.LoggerFactory;
 public abstract class AbstractSlingFilterChain implements FilterChain {
     protected static final Logger LOG = LoggerFactory.getLogger(AbstractSlingFilterChain.class);
 
+    /** marker in the times array for filters not selected for the request */
+    private static final long SKIPPED = -1;
+
     private FilterHandle[] filters;
 
     private int current;
 
     private long[] times;
 
+    private final FilterSelection selection;
+
+    private final FilterPatternMatcher patternMatcher;
+
+    private FilterPatternMatcher.Matches patternMatches;
+
+    /** the request the filters have been selected for */
+    private SlingJakartaHttpServletRequest selectedFor;
+
     protected AbstractSlingFilterChain(final FilterHandle[] filters) {
         this.filters = filters;
         this.current = -1;
         this.times = new long[filters.length + 1];
+        this.selection = null;
+        this.patternMatcher = null;
+    }
+
+    /**
+     * Creates a chain of the filters of the selection which apply to the
+     * request. If a filter passes on a wrapped request, the remaining filters
+     * are selected again for the wrapped request.
+     * @param selection The snapshot of the filter chain
+     * @param request The request
+     */
+    protected AbstractSlingFilterChain(final FilterSelection selection, final SlingJakartaHttpServletRequest request) {
+        this.filters = selection.select(request);
+        this.current = -1;
+        this.times = new long[filters.length + 1];
+        this.selection = selection;
+        this.patternMatcher = selection.getPatternMatcher();
+        this.selectedFor = request;
     }
 
     public void doFilter(final ServletRequest request, final ServletResponse response)
             throws ServletException, IOException {
 
-        final int filterIdx = ++this.current;
-        final long start = System.nanoTime();
+        final int entryIdx = ++this.current;
 
-        if (filterIdx > this.filters.length) {
+        if (entryIdx > this.filters.length) {
             // this happens when the whole filter chain has been executed, and a filter in that chain,
             // for some (bad) reason, calls doFilter yet another time.
             throw new IllegalStateException("doFilter should not be called more than once");
@@ -64,35 +93,37 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
         SlingJakartaHttpServletRequest slingRequest = toSlingRequest(request);
         SlingJakartaHttpServletResponse slingResponse = toSlingResponse(response);
 
+        if (selection != null && slingRequest != selectedFor) {
+            reselect(entryIdx, slingRequest);
+        }
+
+        // advance over the filters not selected for this request in place
+        // instead of recursing, so only invoked filters cost a stack frame
+        int filterIdx = entryIdx;
+        while (filterIdx < this.filters.length && !selectResidual(this.filters[filterIdx], slingRequest)) {
+            LOG.debug("{} was not selected for this request", this.filters[filterIdx]);
+            times[filterIdx] = SKIPPED;
+            filterIdx = ++this.current;
+        }
+
+        final long start = System.nanoTime();
         try {
 
-            if (this.current < this.filters.length) {
+            if (filterIdx < this.filters.length) {
 
                 // continue filtering with the next filter
-                FilterHandle filter = this.filters[this.current];
-
-                if (filter.select(slingRequest)) {
-                    LOG.debug("{} got selected for this request", filter);
-                    trackFilter(slingRequest, filter);
-                    filter.getFilter().doFilter(slingRequest, slingResponse, this);
-                } else {
-                    LOG.debug("{} was not selected for this request", filter);
-                    if (this.current == this.filters.length - 1) {
-                        this.render(slingRequest, slingResponse);
-                    } else {
-                        doFilter(slingRequest, slingResponse);
-                    }
-                }
+                FilterHandle filter = this.filters[filterIdx];
+                LOG.debug("{} got selected for this request", filter);
+                trackFilter(slingRequest, filter);
+                filter.getFilter().doFilter(slingRequest, slingResponse, this);
             } else {
                 this.render(slingRequest, slingResponse);
             }
 
         } finally {
-            if (filterIdx < times.length) {
-                times[filterIdx] = (System.nanoTime() - start) / 1000;
-                if (filterIdx == 0) {
-                    consolidateFilterTimings(slingRequest);
-                }
+            times[filterIdx] = (System.nanoTime() - start) / 1000;
+            if (entryIdx == 0) {
+                consolidateFilterTimings(slingRequest);
             }
         }
     }
@@ -102,6 +133,45 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
 
     // ---------- internal helper
 
+    /**
+     * A wrapper may change the method, the request path info or the resource
+     * of the request, so the filters after the last invoked one are selected
+     * again for the wrapped request like each hop tested the request before.
+     */
+    private void reselect(final int entryIdx, final SlingJakartaHttpServletRequest request) {
+        selectedFor = request;
+        final FilterHandle[] candidates = selection.select(request);
+        if (candidates == filters) {
+            return;
+        }
+        int from = 0;
+        if (entryIdx > 0) {
+            final FilterHandle last = filters[entryIdx - 1];
+            while (from < candidates.length && candidates[from].compareTo(last) <= 0) {
+                from++;
+            }
+        }
+        final FilterHandle[] newFilters = new FilterHandle[entryIdx + candidates.length - from];
+        System.arraycopy(filters, 0, newFilters, 0, entryIdx);
+        System.arraycopy(candidates, from, newFilters, entryIdx, candidates.length - from);
+        final long[] newTimes = new long[newFilters.length + 1];
+        System.arraycopy(times, 0, newTimes, 0, entryIdx);
+        this.filters = newFilters;
+        this.times = newTimes;
+    }
+
+    private boolean selectResidual(final FilterHandle filter, final SlingJakartaHttpServletRequest request) {
+        if (patternMatcher == null || !filter.hasResidual()) {
+            return filter.selectResidual(request);
+        }
+        // match the patterns of all filters at once, unless a previous
+        // filter has changed the paths of the request since
+        if (patternMatches == null || !patternMatches.isValidFor(request)) {
+            patternMatches = patternMatcher.match(request);
+        }
+        return patternMatches.select(filter, request);
+    }
+
     private void trackFilter(ServletRequest request, FilterHandle filter) {
         final RequestData data = RequestData.getRequestData(request);
         if (data != null) {
@@ -116,16 +186,18 @@ public abstract class AbstractSlingFilterChain implements FilterChain {
             final RequestData data = RequestData.getRequestData(request);
             final RequestProgressTracker tracker = (data != null) ? data.getRequestProgressTracker() : null;
 
+            long inner = times[filters.length];
             for (int i = filters.length - 1; i > 0; i--) {
-                filters[i].trackTime(times[i] - times[i + 1]);
+                if (times[i] == SKIPPED) {
+                    continue;
+                }
+                filters[i].trackTime(times[i] - inner);
                 if (tracker != null) {
                     tracker.log(
                             "Filter timing: filter={0}, inner={1,number,#}, total={2,number,#}, outer={3,number,#}",
-                            filters[i].getFilter().getClass().getName(),
-                            times[i + 1],
-                            times[i],
-                            (times[i] - times[i + 1]));
+                            filters[i].getFilter().getClass().getName(), inner, times[i], (times[i] - inner));
                 }
+                inner = times[i];
             }
         }
     }
@@ -77,6 +77,33 @@ public class ErrorFilterChain extends AbstractSlingFilterChain {
         this.errorHandler = errorHandler;
     }
 
+    public ErrorFilterChain(
+            final FilterSelection selection,
+            final SlingJakartaHttpServletRequest request,
+            final JakartaErrorHandler errorHandler,
+            final int status,
+            final String message) {
+        super(selection, request);
+        this.mode = Mode.STATUS;
+        this.status = status;
+        this.message = message;
+        this.errorHandler = errorHandler;
+        this.throwable = null;
+    }
+
+    public ErrorFilterChain(
+            final FilterSelection selection,
+            final SlingJakartaHttpServletRequest request,
+            final JakartaErrorHandler errorHandler,
+            final Throwable t) {
+        super(selection, request);
+        this.mode = Mode.THROWABLE;
+        this.status = 0;
+        this.message = null;
+        this.throwable = t;
+        this.errorHandler = errorHandler;
+    }
+
     @Override
     public void doFilter(final ServletRequest request, final ServletResponse response)
             throws ServletException, IOException {
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+
+/**
+ * The <code>FilterChainCache</code> memoizes the filters selected for a
+ * request shape, that is the method, extension, selector string and - if any
+ * filter of the chain is restricted to resource types - the resource type and
+ * resource super type of the request.
+ * <p>
+ * The cached filter lists are fully decided for all filters without patterns.
+ * Filters with patterns are kept in the list if the rest of their predicate
+ * matches, their patterns are tested per request through
+ * {@link FilterHandle#selectResidual(SlingJakartaHttpServletRequest)}.
+ * <p>
+ * An instance is bound to one snapshot of the filter chain.
+ * {@link SlingFilterChainHelper} replaces it whenever the chain changes, which
+ * atomically invalidates all cached entries.
+ */
+class FilterChainCache {
+
+    /** Maximum number of request shapes cached per filter chain */
+    static final int MAX_ENTRIES = 1000;
+
+    private final FilterSelectionIndex index;
+
+    private final boolean resourceTypeScoped;
+
+    private final Map<RequestShape, FilterHandle[]> cache = new ConcurrentHashMap<>();
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    FilterChainCache(final FilterHandle[] filters, final LongAdder hits, final LongAdder misses) {
+        this.index = new FilterSelectionIndex(filters);
+        this.hits = hits;
+        this.misses = misses;
+
+        boolean scoped = false;
+        for (final FilterHandle filter : filters) {
+            if (filter.getPredicate() != null && filter.getPredicate().hasResourceTypes()) {
+                scoped = true;
+                break;
+            }
+        }
+        this.resourceTypeScoped = scoped;
+    }
+
+    /**
+     * @param request The request
+     * @return the filters selected for the shape of the request
+     */
+    FilterHandle[] select(final SlingJakartaHttpServletRequest request) {
+        final RequestShape shape = new RequestShape(request, resourceTypeScoped);
+        FilterHandle[] filters = cache.get(shape);
+        if (filters != null) {
+            hits.increment();
+            return filters;
+        }
+
+        misses.increment();
+        filters = resolve(request);
+        if (cache.size() >= MAX_ENTRIES) {
+            cache.clear();
+        }
+        cache.put(shape, filters);
+        return filters;
+    }
+
+    /**
+     * @return the number of cached request shapes
+     */
+    int size() {
+        return cache.size();
+    }
+
+    private FilterHandle[] resolve(final SlingJakartaHttpServletRequest request) {
+        final FilterHandle[] candidates = index.select(request);
+        if (!resourceTypeScoped) {
+            return candidates;
+        }
+        final List<FilterHandle> result = new ArrayList<>(candidates.length);
+        for (final FilterHandle candidate : candidates) {
+            final FilterPredicate predicate = candidate.getPredicate();
+            if (predicate == null || predicate.testResourceTypes(request)) {
+                result.add(candidate);
+            }
+        }
+        return result.size() == candidates.length ? candidates : result.toArray(new FilterHandle[result.size()]);
+    }
+
+    private static final class RequestShape {
+
+        private final String method;
+
+        private final String extension;
+
+        private final String selectorString;
+
+        private final String resourceType;
+
+        private final String resourceSuperType;
+
+        private final int hashCode;
+
+        RequestShape(final SlingJakartaHttpServletRequest request, final boolean withResourceType) {
+            final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+            this.method = request.getMethod();
+            this.extension = requestPathInfo.getExtension();
+            this.selectorString = requestPathInfo.getSelectorString();
+            final Resource resource = withResourceType ? request.getResource() : null;
+            this.resourceType = resource == null ? null : resource.getResourceType();
+            this.resourceSuperType = resource == null ? null : resource.getResourceSuperType();
+            this.hashCode = Objects.hash(method, extension, selectorString, resourceType, resourceSuperType);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof RequestShape)) {
+                return false;
+            }
+            final RequestShape other = (RequestShape) obj;
+            return hashCode == other.hashCode
+                    && Objects.equals(method, other.method)
+                    && Objects.equals(extension, other.extension)
+                    && Objects.equals(selectorString, other.selectorString)
+                    && Objects.equals(resourceType, other.resourceType)
+                    && Objects.equals(resourceSuperType, other.resourceSuperType);
+        }
+    }
+}
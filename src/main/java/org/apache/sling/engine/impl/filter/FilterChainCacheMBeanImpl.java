@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import org.apache.sling.engine.impl.filter.ServletFilterManager.FilterChainType;
+import org.apache.sling.engine.jmx.FilterChainCacheMBean;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * This is the implementation of the management interface for the
+ * FilterChainCacheMBean. It sums up the statistics of all filter chains.
+ */
+@Component(
+        service = FilterChainCacheMBean.class,
+        property = {"jmx.objectname=org.apache.sling:type=engine,service=FilterChainCache"})
+public class FilterChainCacheMBeanImpl extends StandardMBean implements FilterChainCacheMBean {
+
+    private final ServletFilterManager filterManager;
+
+    @Activate
+    public FilterChainCacheMBeanImpl(@Reference final ServletFilterManager filterManager)
+            throws NotCompliantMBeanException {
+        super(FilterChainCacheMBean.class);
+        this.filterManager = filterManager;
+    }
+
+    @Override
+    public long getCacheHits() {
+        long hits = 0;
+        for (final FilterChainType type : FilterChainType.values()) {
+            hits += filterManager.getFilterChain(type).getCacheHits();
+        }
+        return hits;
+    }
+
+    @Override
+    public long getCacheMisses() {
+        long misses = 0;
+        for (final FilterChainType type : FilterChainType.values()) {
+            misses += filterManager.getFilterChain(type).getCacheMisses();
+        }
+        return misses;
+    }
+
+    @Override
+    public int getCacheSize() {
+        int size = 0;
+        for (final FilterChainType type : FilterChainType.values()) {
+            size += filterManager.getFilterChain(type).getCacheSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void resetStatistics() {
+        for (final FilterChainType type : FilterChainType.values()) {
+            filterManager.getFilterChain(type).resetCacheStatistics();
+        }
+    }
+}
@@ -18,10 +18,11 @@
  */
 package org.apache.sling.engine.impl.filter;
 
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import jakarta.servlet.Filter;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.engine.impl.helper.LatencyHistogram;
 
 public class FilterHandle implements Comparable<FilterHandle> {
 
@@ -33,9 +34,11 @@ public class FilterHandle implements Comparable<FilterHandle> {
 
     private final String orderSource;
 
-    private final AtomicLong calls;
+    private final LongAdder calls;
 
-    private final AtomicLong time;
+    private final LongAdder time;
+
+    private final LatencyHistogram histogram;
 
     private final FilterPredicate predicate;
 
@@ -53,9 +56,13 @@ public class FilterHandle implements Comparable<FilterHandle> {
         this.filterId = filterId;
         this.order = order;
         this.orderSource = orderSource;
-        this.calls = new AtomicLong();
-        this.time = new AtomicLong(); // unit is microseconds
+        this.calls = new LongAdder();
+        this.time = new LongAdder(); // unit is microseconds
+        this.histogram = new LatencyHistogram(); // unit is microseconds
         this.mbean = mbean;
+        if (mbean != null) {
+            mbean.addFilterHandle(this);
+        }
     }
 
     public Filter getFilter() {
@@ -74,6 +81,10 @@ public class FilterHandle implements Comparable<FilterHandle> {
         return orderSource;
     }
 
+    FilterPredicate getPredicate() {
+        return predicate;
+    }
+
     boolean select(SlingJakartaHttpServletRequest slingHttpServletRequest) {
         if (predicate != null) {
             return predicate.test(slingHttpServletRequest);
@@ -81,8 +92,28 @@ public class FilterHandle implements Comparable<FilterHandle> {
         return true;
     }
 
+    /**
+     * @return true if the predicate has patterns to be tested per request
+     */
+    boolean hasResidual() {
+        return predicate != null && predicate.hasResidual();
+    }
+
+    /**
+     * Tests the parts of the predicate which are not covered by the
+     * {@link FilterChainCache}.
+     * @param slingHttpServletRequest The request
+     * @return true if the filter is selected for the request
+     */
+    boolean selectResidual(SlingJakartaHttpServletRequest slingHttpServletRequest) {
+        if (predicate != null) {
+            return predicate.testResidual(slingHttpServletRequest);
+        }
+        return true;
+    }
+
     public long getCalls() {
-        return calls.get();
+        return calls.sum();
     }
 
     /**
@@ -90,7 +121,7 @@ public class FilterHandle implements Comparable<FilterHandle> {
      * @return duration in miliseconds
      */
     public long getTime() {
-        return time.get() / 1000;
+        return time.sum() / 1000;
     }
 
     /**
@@ -98,11 +129,28 @@ public class FilterHandle implements Comparable<FilterHandle> {
      * @return the average duration in microseconds
      */
     public long getTimePerCall() {
-        return (getCalls() > 0) ? (time.get() / getCalls()) : -1;
+        final long callCount = getCalls();
+        return (callCount > 0) ? (time.sum() / callCount) : -1;
+    }
+
+    /**
+     * get the total duration to process this filter
+     * @return duration in microseconds
+     */
+    long getTimeMicros() {
+        return time.sum();
+    }
+
+    /**
+     * get the distribution of the durations of this filter
+     * @return snapshot of the durations in microseconds
+     */
+    LatencyHistogram.Snapshot getTimeHistogram() {
+        return histogram.snapshot();
     }
 
     void track() {
-        calls.incrementAndGet();
+        calls.increment();
     }
 
     /**
@@ -110,9 +158,22 @@ public class FilterHandle implements Comparable<FilterHandle> {
      * @param time in microseconds
      */
     void trackTime(long time) {
-        this.time.addAndGet(time);
+        this.time.add(time);
+        this.histogram.record(time);
+    }
+
+    void resetStatistics() {
+        calls.reset();
+        time.reset();
+        histogram.reset();
+    }
+
+    /**
+     * Called when this handle is removed from its filter chain.
+     */
+    void dispose() {
         if (mbean != null) {
-            mbean.addFilterHandle(this);
+            mbean.removeFilterHandle(this);
         }
     }
 
@@ -0,0 +1,371 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+
+/**
+ * The <code>FilterPatternMatcher</code> combines the path, request path,
+ * resource path and suffix patterns of all filters of a chain. Matching a
+ * request returns the set of filters whose patterns match in one pass over
+ * each of the resource path, the request path and the suffix.
+ * <p>
+ * Patterns which are a plain literal, optionally followed by a trailing
+ * <code>.*</code>, are compiled into a prefix automaton shared by all filters.
+ * All other patterns fall back to {@link java.util.regex.Pattern}.
+ */
+public class FilterPatternMatcher {
+
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final Map<FilterHandle, Integer> positions = new IdentityHashMap<>();
+
+    private final PatternSet pathPatterns;
+
+    private final PatternSet requestPathPatterns;
+
+    private final PatternSet resourcePathPatterns;
+
+    private final PatternSet suffixPatterns;
+
+    private final int size;
+
+    FilterPatternMatcher(final FilterHandle[] filters) {
+        final List<FilterPredicate> predicates = new ArrayList<>();
+        for (final FilterHandle filter : filters) {
+            final FilterPredicate predicate = filter.getPredicate();
+            if (predicate != null && predicate.hasResidual()) {
+                positions.put(filter, predicates.size());
+                predicates.add(predicate);
+            }
+        }
+        this.size = predicates.size();
+        this.pathPatterns = new PatternSet(predicates, FilterPredicate::getPathPattern);
+        this.requestPathPatterns = new PatternSet(predicates, FilterPredicate::getRequestPathPattern);
+        this.resourcePathPatterns = new PatternSet(predicates, FilterPredicate::getResourcePathPattern);
+        this.suffixPatterns = new PatternSet(predicates, FilterPredicate::getSuffixPattern);
+    }
+
+    /**
+     * @return true if no filter of the chain has patterns
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Matches the patterns of all filters against the request.
+     * @param request The request
+     * @return the matching filters
+     */
+    Matches match(final SlingJakartaHttpServletRequest request) {
+        final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+        final String resourcePath = requestPathInfo.getResourcePath();
+        final String pathInfo = request.getPathInfo();
+        final String suffix = requestPathInfo.getSuffix();
+        final String path = resourcePath == null || resourcePath.isEmpty() ? "/" : resourcePath;
+        final String uri = pathInfo == null || pathInfo.isEmpty() ? "/" : pathInfo;
+
+        final BitSet result = new BitSet(size);
+        result.set(0, size);
+        if (pathPatterns.isConfigured()) {
+            final BitSet matches = pathPatterns.match(path);
+            if (!uri.equals(path)) {
+                matches.or(pathPatterns.match(uri));
+            }
+            result.and(matches);
+        }
+        if (requestPathPatterns.isConfigured()) {
+            result.and(requestPathPatterns.match(uri));
+        }
+        if (resourcePathPatterns.isConfigured()) {
+            result.and(resourcePathPatterns.match(path));
+        }
+        if (suffix != null && suffixPatterns.isConfigured()) {
+            result.and(suffixPatterns.match(suffix));
+        }
+        return new Matches(resourcePath, pathInfo, suffix, result);
+    }
+
+    /**
+     * The result of matching a request against a {@link FilterPatternMatcher}.
+     */
+    final class Matches {
+
+        private final String resourcePath;
+
+        private final String pathInfo;
+
+        private final String suffix;
+
+        private final BitSet matches;
+
+        private Matches(final String resourcePath, final String pathInfo, final String suffix, final BitSet matches) {
+            this.resourcePath = resourcePath;
+            this.pathInfo = pathInfo;
+            this.suffix = suffix;
+            this.matches = matches;
+        }
+
+        /**
+         * @param request The request
+         * @return true if this result has been computed for the same
+         *      paths as the request currently has
+         */
+        boolean isValidFor(final SlingJakartaHttpServletRequest request) {
+            final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+            return Objects.equals(resourcePath, requestPathInfo.getResourcePath())
+                    && Objects.equals(pathInfo, request.getPathInfo())
+                    && Objects.equals(suffix, requestPathInfo.getSuffix());
+        }
+
+        /**
+         * @param filter The filter
+         * @param request The request, used if the filter is not known to the matcher
+         * @return true if the patterns of the filter match
+         */
+        boolean select(final FilterHandle filter, final SlingJakartaHttpServletRequest request) {
+            final Integer pos = positions.get(filter);
+            if (pos == null) {
+                return filter.selectResidual(request);
+            }
+            return matches.get(pos);
+        }
+    }
+
+    /**
+     * @param regex The regular expression
+     * @return true if the expression ends with an unescaped <code>.*</code>
+     */
+    static boolean isPrefix(final String regex) {
+        if (!regex.endsWith(".*")) {
+            return false;
+        }
+        int backslashes = 0;
+        for (int i = regex.length() - 3; i >= 0 && regex.charAt(i) == '\\'; i--) {
+            backslashes++;
+        }
+        return backslashes % 2 == 0;
+    }
+
+    /**
+     * @param regex The regular expression
+     * @return the literal matched by the expression or null if the
+     *      expression is not a plain literal
+     */
+    static String toLiteral(final String regex) {
+        final StringBuilder literal = new StringBuilder(regex.length());
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    return null;
+                }
+                final char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    final int end = regex.indexOf("\\E", i + 2);
+                    if (end < 0) {
+                        return null;
+                    }
+                    literal.append(regex, i + 2, end);
+                    i = end + 2;
+                } else if (Character.isLetterOrDigit(escaped)) {
+                    // character classes, back references and the like
+                    return null;
+                } else {
+                    literal.append(escaped);
+                    i += 2;
+                }
+            } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+                i++;
+            }
+        }
+        return literal.toString();
+    }
+
+    private static boolean hasLineTerminator(final String candidate) {
+        for (int i = 0; i < candidate.length(); i++) {
+            final char c = candidate.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The patterns of one kind of all filters.
+     */
+    private static final class PatternSet {
+
+        private final Node root = new Node();
+
+        /** Filters without a pattern of this kind, these always match */
+        private final BitSet unconfigured = new BitSet();
+
+        /** Patterns compiled into the automaton, by position */
+        private final List<Integer> automatonPositions = new ArrayList<>();
+
+        private final List<Pattern> automatonPatterns = new ArrayList<>();
+
+        /** Patterns which have to be matched with java.util.regex, by position */
+        private final List<Integer> regexPositions = new ArrayList<>();
+
+        private final List<Pattern> regexPatterns = new ArrayList<>();
+
+        PatternSet(final List<FilterPredicate> predicates, final Function<FilterPredicate, Pattern> accessor) {
+            for (int pos = 0; pos < predicates.size(); pos++) {
+                final Pattern pattern = accessor.apply(predicates.get(pos));
+                if (pattern == null) {
+                    unconfigured.set(pos);
+                    continue;
+                }
+                final String regex = pattern.pattern();
+                final boolean prefix = isPrefix(regex);
+                final String literal = pattern.flags() == 0
+                        ? toLiteral(prefix ? regex.substring(0, regex.length() - 2) : regex)
+                        : null;
+                if (literal == null) {
+                    regexPositions.add(pos);
+                    regexPatterns.add(pattern);
+                } else {
+                    automatonPositions.add(pos);
+                    automatonPatterns.add(pattern);
+                    if (prefix) {
+                        root.add(literal, 0).prefix().set(pos);
+                    } else {
+                        root.add(literal, 0).exact().set(pos);
+                    }
+                }
+            }
+        }
+
+        boolean isConfigured() {
+            return !automatonPositions.isEmpty() || !regexPositions.isEmpty();
+        }
+
+        BitSet match(final String candidate) {
+            final BitSet result = (BitSet) unconfigured.clone();
+            if (hasLineTerminator(candidate)) {
+                // '.' does not match line terminators, let java.util.regex decide
+                matchRegex(automatonPositions, automatonPatterns, candidate, result);
+            } else {
+                Node node = root;
+                int i = 0;
+                while (node != null) {
+                    if (node.prefix != null) {
+                        result.or(node.prefix);
+                    }
+                    if (i == candidate.length()) {
+                        if (node.exact != null) {
+                            result.or(node.exact);
+                        }
+                        break;
+                    }
+                    node = node.child(candidate.charAt(i++));
+                }
+            }
+            matchRegex(regexPositions, regexPatterns, candidate, result);
+            return result;
+        }
+
+        private static void matchRegex(
+                final List<Integer> positions,
+                final List<Pattern> patterns,
+                final String candidate,
+                final BitSet result) {
+            for (int i = 0; i < positions.size(); i++) {
+                if (patterns.get(i).matcher(candidate).matches()) {
+                    result.set(positions.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * A state of the prefix automaton.
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        /** Filters whose literal ends here and which match any remainder */
+        private BitSet prefix;
+
+        /** Filters whose literal ends here and which match no remainder */
+        private BitSet exact;
+
+        Node child(final char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node add(final String literal, final int from) {
+            if (from == literal.length()) {
+                return this;
+            }
+            final char c = literal.charAt(from);
+            Node child = child(c);
+            if (child == null) {
+                child = new Node();
+                final int length = keys.length;
+                keys = Arrays.copyOf(keys, length + 1);
+                children = Arrays.copyOf(children, length + 1);
+                keys[length] = c;
+                children[length] = child;
+            }
+            return child.add(literal, from + 1);
+        }
+
+        BitSet prefix() {
+            if (prefix == null) {
+                prefix = new BitSet();
+            }
+            return prefix;
+        }
+
+        BitSet exact() {
+            if (exact == null) {
+                exact = new BitSet();
+            }
+            return exact;
+        }
+    }
+}
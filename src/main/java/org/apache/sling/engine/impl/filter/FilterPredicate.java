@@ -144,19 +144,106 @@ public class FilterPredicate {
     boolean test(final SlingJakartaHttpServletRequest req) {
         LOG.debug("starting filter test against {} request", req);
         final RequestPathInfo requestPathInfo = req.getRequestPathInfo();
-        final String path = requestPathInfo.getResourcePath();
-        final String uri = req.getPathInfo();
         boolean select = anyElementMatches(methods, req.getMethod())
                 && anyElementMatches(selectors, requestPathInfo.getSelectors())
                 && anyElementMatches(extensions, requestPathInfo.getExtension())
-                && anyResourceTypeMatches(resourceTypes, req)
-                && (patternMatches(pathRegex, path == null || path.isEmpty() ? "/" : path)
+                && testResourceTypes(req)
+                && testResidual(req);
+        LOG.debug("selection of {} returned {}", this, select);
+        return select;
+    }
+
+    /**
+     * @param req request that is tested upon this predicate
+     * @return true if the request's resource is of one of the configured types, or if not configured
+     */
+    boolean testResourceTypes(final SlingJakartaHttpServletRequest req) {
+        return anyResourceTypeMatches(resourceTypes, req);
+    }
+
+    /**
+     * Tests only the regular expression parts of this predicate. The method,
+     * selector, extension and resource type parts are expected to have been
+     * checked already by a {@link FilterChainCache}.
+     * @param req request that is tested upon this predicate
+     * @return true if the patterns of this predicate match the request
+     */
+    boolean testResidual(final SlingJakartaHttpServletRequest req) {
+        if (!hasResidual()) {
+            return true;
+        }
+        final RequestPathInfo requestPathInfo = req.getRequestPathInfo();
+        final String path = requestPathInfo.getResourcePath();
+        final String uri = req.getPathInfo();
+        return (patternMatches(pathRegex, path == null || path.isEmpty() ? "/" : path)
                         || patternMatches(pathRegex, uri == null || uri.isEmpty() ? "/" : uri))
                 && (patternMatches(requestPathRegex, uri == null || uri.isEmpty() ? "/" : uri))
                 && (patternMatches(resourcePathRegex, path == null || path.isEmpty() ? "/" : path))
                 && patternMatches(suffixRegex, requestPathInfo.getSuffix());
-        LOG.debug("selection of {} returned {}", this, select);
-        return select;
+    }
+
+    /**
+     * @return true if this predicate has regular expression configuration
+     *      which has to be tested for each request
+     */
+    boolean hasResidual() {
+        return pathRegex != null || resourcePathRegex != null || requestPathRegex != null || suffixRegex != null;
+    }
+
+    /**
+     * @return true if this predicate is restricted to resource types
+     */
+    boolean hasResourceTypes() {
+        return resourceTypes != null;
+    }
+
+    /**
+     * @return the compiled {@code sling.filter.pattern} or null if not configured
+     */
+    Pattern getPathPattern() {
+        return pathRegex;
+    }
+
+    /**
+     * @return the compiled {@code sling.filter.request.pattern} or null if not configured
+     */
+    Pattern getRequestPathPattern() {
+        return requestPathRegex;
+    }
+
+    /**
+     * @return the compiled {@code sling.filter.resource.pattern} or null if not configured
+     */
+    Pattern getResourcePathPattern() {
+        return resourcePathRegex;
+    }
+
+    /**
+     * @return the compiled {@code sling.filter.suffix.pattern} or null if not configured
+     */
+    Pattern getSuffixPattern() {
+        return suffixRegex;
+    }
+
+    /**
+     * @return the configured methods or null if not configured
+     */
+    Collection<String> getMethods() {
+        return methods;
+    }
+
+    /**
+     * @return the configured selectors or null if not configured
+     */
+    Collection<String> getSelectors() {
+        return selectors;
+    }
+
+    /**
+     * @return the configured extensions or null if not configured
+     */
+    Collection<String> getExtensions() {
+        return extensions;
     }
 
     @Override
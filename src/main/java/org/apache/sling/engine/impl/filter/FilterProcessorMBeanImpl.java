@@ -21,42 +21,95 @@ package org.apache.sling.engine.impl.filter;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardMBean;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.sling.engine.impl.helper.LatencyHistogram;
 import org.apache.sling.engine.jmx.FilterProcessorMBean;
 
 /**
  * This is the implementation of the management interface for the
- * FilterProcessorMBean.
+ * FilterProcessorMBean. The statistics are recorded by the
+ * {@link FilterHandle}s of the filter in the different filter chains and
+ * only aggregated when read.
  */
 public class FilterProcessorMBeanImpl extends StandardMBean implements FilterProcessorMBean {
 
-    // number of filter invocations
-    private volatile long n;
-
-    private volatile double meanDuration;
+    private final List<FilterHandle> handles = new CopyOnWriteArrayList<>();
 
     public FilterProcessorMBeanImpl() throws NotCompliantMBeanException {
         super(FilterProcessorMBean.class);
-        resetStatistics();
     }
 
-    void addFilterHandle(FilterHandle filterHandle) {
-        this.n = filterHandle.getCalls();
-        this.meanDuration = (double) filterHandle.getTimePerCall() / 1000;
+    void addFilterHandle(final FilterHandle filterHandle) {
+        this.handles.add(filterHandle);
+    }
+
+    void removeFilterHandle(final FilterHandle filterHandle) {
+        this.handles.removeIf(handle -> handle == filterHandle);
     }
 
     @Override
     public long getInvocationsCount() {
-        return this.n;
+        long n = 0;
+        for (final FilterHandle handle : handles) {
+            n += handle.getCalls();
+        }
+        return n;
     }
 
     @Override
     public double getMeanFilterDurationMsec() {
-        return this.meanDuration;
+        long n = 0;
+        long time = 0;
+        for (final FilterHandle handle : handles) {
+            n += handle.getCalls();
+            time += handle.getTimeMicros();
+        }
+        return n > 0 ? (double) time / n / 1000 : 0;
+    }
+
+    @Override
+    public double getMedianFilterDurationMsec() {
+        return getFilterDurationMsecAtPercentile(50);
+    }
+
+    @Override
+    public double get90thPercentileFilterDurationMsec() {
+        return getFilterDurationMsecAtPercentile(90);
+    }
+
+    @Override
+    public double get99thPercentileFilterDurationMsec() {
+        return getFilterDurationMsecAtPercentile(99);
+    }
+
+    @Override
+    public double get999thPercentileFilterDurationMsec() {
+        return getFilterDurationMsecAtPercentile(99.9);
+    }
+
+    @Override
+    public double getMaxFilterDurationMsec() {
+        return (double) getHistogram().getMax() / 1000;
     }
 
     @Override
     public void resetStatistics() {
-        this.n = 0;
-        this.meanDuration = 0;
+        for (final FilterHandle handle : handles) {
+            handle.resetStatistics();
+        }
+    }
+
+    private double getFilterDurationMsecAtPercentile(final double percentile) {
+        return (double) getHistogram().getValueAtPercentile(percentile) / 1000;
+    }
+
+    private LatencyHistogram.Snapshot getHistogram() {
+        LatencyHistogram.Snapshot snapshot = LatencyHistogram.Snapshot.empty();
+        for (final FilterHandle handle : handles) {
+            snapshot = snapshot.merge(handle.getTimeHistogram());
+        }
+        return snapshot;
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+
+/**
+ * The <code>FilterSelection</code> is an immutable snapshot of a filter
+ * chain: the sorted filters together with the {@link FilterChainCache} and
+ * the {@link FilterPatternMatcher} built for exactly these filters.
+ * <p>
+ * {@link SlingFilterChainHelper} publishes a new instance whenever the chain
+ * changes, so a chain built from one instance never mixes the filter list of
+ * one snapshot with the pattern matcher of another.
+ */
+public final class FilterSelection {
+
+    private final FilterHandle[] filters;
+
+    private final FilterChainCache cache;
+
+    private final FilterPatternMatcher patternMatcher;
+
+    FilterSelection(final FilterHandle[] filters, final LongAdder hits, final LongAdder misses) {
+        final FilterPatternMatcher matcher = new FilterPatternMatcher(filters);
+        this.filters = filters;
+        this.cache = new FilterChainCache(filters, hits, misses);
+        this.patternMatcher = matcher.isEmpty() ? null : matcher;
+    }
+
+    /**
+     * @return all filters of the chain, the array might be empty
+     */
+    public FilterHandle[] getFilters() {
+        return filters;
+    }
+
+    /**
+     * Returns the filters whose method, extension, selector and resource
+     * type configuration matches the request. Pattern configuration still
+     * has to be checked with the {@link #getPatternMatcher() pattern matcher}.
+     * @param request The request
+     * @return the candidate filters
+     */
+    public FilterHandle[] select(final SlingJakartaHttpServletRequest request) {
+        return cache.select(request);
+    }
+
+    /**
+     * @return the combined matcher for the patterns of all filters or null
+     *      if no filter has patterns
+     */
+    public FilterPatternMatcher getPatternMatcher() {
+        return patternMatcher;
+    }
+
+    /**
+     * @return the number of request shapes currently cached
+     */
+    int getCacheSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+
+/**
+ * The <code>FilterSelectionIndex</code> buckets the filters of a chain by the
+ * methods, extensions and selectors configured in their
+ * {@link FilterPredicate}. A request gets the filters applicable to it by
+ * intersecting the buckets instead of testing each predicate.
+ * <p>
+ * Filters which additionally have resource type or regular expression
+ * configuration cannot be decided by the index. They are returned as
+ * candidates and the remaining part of their predicate is tested by the
+ * {@link FilterChainCache} and the filter chain.
+ * <p>
+ * Instances are immutable and rebuilt whenever the chain changes.
+ */
+class FilterSelectionIndex {
+
+    private final FilterHandle[] filters;
+
+    private final Map<String, BitSet> methods = new HashMap<>();
+
+    private final BitSet anyMethod;
+
+    private final Map<String, BitSet> extensions = new HashMap<>();
+
+    private final BitSet anyExtension;
+
+    private final Map<String, BitSet> selectors = new HashMap<>();
+
+    private final BitSet anySelector;
+
+    /** true if no filter restricts methods, extensions or selectors */
+    private final boolean unrestricted;
+
+    FilterSelectionIndex(final FilterHandle[] filters) {
+        this.filters = filters;
+        this.anyMethod = new BitSet(filters.length);
+        this.anyExtension = new BitSet(filters.length);
+        this.anySelector = new BitSet(filters.length);
+
+        for (int i = 0; i < filters.length; i++) {
+            final FilterPredicate predicate = filters[i].getPredicate();
+            if (predicate == null) {
+                anyMethod.set(i);
+                anyExtension.set(i);
+                anySelector.set(i);
+            } else {
+                index(methods, anyMethod, predicate.getMethods(), i);
+                index(extensions, anyExtension, predicate.getExtensions(), i);
+                index(selectors, anySelector, predicate.getSelectors(), i);
+            }
+        }
+
+        this.unrestricted = methods.isEmpty() && extensions.isEmpty() && selectors.isEmpty();
+    }
+
+    private static void index(
+            final Map<String, BitSet> buckets, final BitSet any, final Collection<String> values, final int idx) {
+        if (values == null) {
+            any.set(idx);
+        } else {
+            for (final String value : values) {
+                buckets.computeIfAbsent(value, key -> new BitSet()).set(idx);
+            }
+        }
+    }
+
+    /**
+     * Selects the filters whose method, extension and selector configuration
+     * matches the request.
+     * @param request The request
+     * @return the candidate filters in chain order, possibly empty
+     */
+    FilterHandle[] select(final SlingJakartaHttpServletRequest request) {
+        if (unrestricted || filters.length == 0) {
+            return filters;
+        }
+
+        final RequestPathInfo requestPathInfo = request.getRequestPathInfo();
+        final BitSet candidates = lookup(methods, anyMethod, request.getMethod());
+        candidates.and(lookup(extensions, anyExtension, requestPathInfo.getExtension()));
+        if (!candidates.isEmpty()) {
+            final BitSet selected = (BitSet) anySelector.clone();
+            for (final String selector : requestPathInfo.getSelectors()) {
+                final BitSet bucket = selectors.get(selector);
+                if (bucket != null) {
+                    selected.or(bucket);
+                }
+            }
+            candidates.and(selected);
+        }
+
+        final int count = candidates.cardinality();
+        if (count == filters.length) {
+            return filters;
+        }
+        final FilterHandle[] result = new FilterHandle[count];
+        int pos = 0;
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            result[pos++] = filters[i];
+        }
+        return result;
+    }
+
+    private static BitSet lookup(final Map<String, BitSet> buckets, final BitSet any, final String value) {
+        final BitSet result = (BitSet) any.clone();
+        if (value != null) {
+            final BitSet bucket = buckets.get(value);
+            if (bucket != null) {
+                result.or(bucket);
+            }
+        }
+        return result;
+    }
+}
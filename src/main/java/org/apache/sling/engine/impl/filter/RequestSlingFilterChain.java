@@ -41,6 +41,12 @@ public class RequestSlingFilterChain extends AbstractSlingFilterChain {
         this.handler = handler;
     }
 
+    public RequestSlingFilterChain(
+            SlingRequestProcessorImpl handler, FilterSelection selection, SlingJakartaHttpServletRequest request) {
+        super(selection, request);
+        this.handler = handler;
+    }
+
     @Override
     protected void render(SlingJakartaHttpServletRequest request, SlingJakartaHttpServletResponse response)
             throws ServletException, IOException {
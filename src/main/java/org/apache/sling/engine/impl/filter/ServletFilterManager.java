@@ -27,6 +27,7 @@ import jakarta.servlet.Filter;
 import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.wrappers.JavaxToJakartaFilterWrapper;
 import org.apache.sling.engine.EngineConstants;
 import org.apache.sling.engine.impl.SlingHttpContext;
@@ -125,6 +126,14 @@ public class ServletFilterManager {
         return getFilterChain(chain).getFilters();
     }
 
+    public FilterHandle[] getFilters(final FilterChainType chain, final SlingJakartaHttpServletRequest request) {
+        return getFilterChain(chain).getFilters(request);
+    }
+
+    public FilterSelection getSelection(final FilterChainType chain) {
+        return getFilterChain(chain).getSelection();
+    }
+
     @Reference(
             service = Filter.class,
             updated = "updatedFilter",
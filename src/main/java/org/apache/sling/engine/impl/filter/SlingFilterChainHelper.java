@@ -21,8 +21,10 @@ package org.apache.sling.engine.impl.filter;
 import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
 
 import jakarta.servlet.Filter;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
 
 /**
  * The <code>SlingFilterChainHelper</code> class is used by Sling to
@@ -37,7 +39,11 @@ public class SlingFilterChainHelper {
 
     private final SortedSet<FilterHandle> filterList = new TreeSet<FilterHandle>();
 
-    private volatile FilterHandle[] filters = EMPTY_FILTER_ARRAY;
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    private volatile FilterSelection selection = new FilterSelection(EMPTY_FILTER_ARRAY, cacheHits, cacheMisses);
 
     /**
      * Add a filter
@@ -55,8 +61,12 @@ public class SlingFilterChainHelper {
             final int order,
             final String orderSource,
             FilterProcessorMBeanImpl mbean) {
-        this.filterList.add(new FilterHandle(filter, pattern, filterId, order, orderSource, mbean));
-        this.filters = getFiltersInternal();
+        final FilterHandle handle = new FilterHandle(filter, pattern, filterId, order, orderSource, mbean);
+        if (this.filterList.add(handle)) {
+            this.update();
+        } else {
+            handle.dispose();
+        }
     }
 
     public synchronized boolean removeFilterById(final long filterId) {
@@ -64,7 +74,8 @@ public class SlingFilterChainHelper {
             final FilterHandle test = fi.next();
             if (test.getFilterId() == filterId) {
                 fi.remove();
-                this.filters = getFiltersInternal();
+                test.dispose();
+                this.update();
                 return true;
             }
         }
@@ -80,7 +91,58 @@ public class SlingFilterChainHelper {
      * @return the filters
      */
     public FilterHandle[] getFilters() {
-        return filters;
+        return selection.getFilters();
+    }
+
+    /**
+     * Returns the {@code Filter}s whose method, extension, selector and
+     * resource type configuration matches the request. Pattern configuration
+     * still has to be checked with
+     * {@link FilterHandle#selectResidual(SlingJakartaHttpServletRequest)}.
+     * @param request The request
+     * @return the candidate filters
+     */
+    public FilterHandle[] getFilters(final SlingJakartaHttpServletRequest request) {
+        return selection.select(request);
+    }
+
+    /**
+     * Returns the current snapshot of this chain. Filters selected from and
+     * the pattern matcher of the same snapshot always belong together.
+     * @return the snapshot
+     */
+    public FilterSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * @return the number of requests whose filters were found in the cache
+     */
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    /**
+     * @return the number of requests whose filters had to be resolved
+     */
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    /**
+     * @return the number of request shapes currently cached
+     */
+    public int getCacheSize() {
+        return selection.getCacheSize();
+    }
+
+    public void resetCacheStatistics() {
+        cacheHits.reset();
+        cacheMisses.reset();
+    }
+
+    private void update() {
+        this.selection = new FilterSelection(getFiltersInternal(), cacheHits, cacheMisses);
     }
 
     private FilterHandle[] getFiltersInternal() {
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.helper;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The <code>LatencyHistogram</code> records durations into log-linear
+ * buckets: values below {@value #SUB_BUCKETS} have their own bucket, larger
+ * values are grouped per power of two into {@value #SUB_BUCKETS} linear
+ * sub-buckets, which bounds the relative error to 12.5%.
+ * <p>
+ * Recording is lock free. The buckets are striped over a few arrays, chosen
+ * by the recording thread, which are only allocated on first use. Reading
+ * takes a {@link Snapshot}, which can be merged with other snapshots.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** values of 2^41 and above, more than 25 days in microseconds, share the last bucket */
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    private final AtomicLongArray max = new AtomicLongArray(STRIPES);
+
+    private static int stripes() {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, Math.min(8, processors)));
+    }
+
+    /**
+     * Records a value. Negative values are recorded as zero.
+     * @param value The value
+     */
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        final int stripe = stripe();
+        AtomicLongArray counts = stripes.get(stripe);
+        if (counts == null) {
+            stripes.compareAndSet(stripe, null, new AtomicLongArray(BUCKETS));
+            counts = stripes.get(stripe);
+        }
+        counts.incrementAndGet(bucket(v));
+
+        long current = max.get(stripe);
+        while (v > current && !max.compareAndSet(stripe, current, v)) {
+            current = max.get(stripe);
+        }
+    }
+
+    /**
+     * Clears all recorded values. Values recorded concurrently may or may
+     * not be cleared.
+     */
+    public void reset() {
+        for (int s = 0; s < STRIPES; s++) {
+            final AtomicLongArray counts = stripes.get(s);
+            if (counts != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts.set(i, 0);
+                }
+            }
+            max.set(s, 0);
+        }
+    }
+
+    /**
+     * @return a snapshot of the values recorded so far
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[BUCKETS];
+        long maxValue = 0;
+        for (int s = 0; s < STRIPES; s++) {
+            final AtomicLongArray stripe = stripes.get(s);
+            if (stripe != null) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    counts[i] += stripe.get(i);
+                }
+            }
+            maxValue = Math.max(maxValue, max.get(s));
+        }
+        return new Snapshot(counts, maxValue);
+    }
+
+    private static int stripe() {
+        final long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & (STRIPES - 1));
+    }
+
+    static int bucket(final long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param bucket The bucket
+     * @return the highest value recorded into the bucket
+     */
+    static long upperBound(final int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long lowerBound = (1L << exponent) | (subBucket << (exponent - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * An immutable view of the recorded values.
+     */
+    public static final class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(new long[BUCKETS], 0);
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long max;
+
+        private Snapshot(final long[] counts, final long max) {
+            this.counts = counts;
+            this.max = max;
+            long total = 0;
+            for (final long c : counts) {
+                total += c;
+            }
+            this.count = total;
+        }
+
+        /**
+         * @return a snapshot without any values
+         */
+        public static Snapshot empty() {
+            return EMPTY;
+        }
+
+        /**
+         * @param other Another snapshot
+         * @return a new snapshot containing the values of both snapshots
+         */
+        public Snapshot merge(final Snapshot other) {
+            final long[] merged = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, Math.max(max, other.max));
+        }
+
+        /**
+         * @return the number of recorded values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the largest recorded value
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param percentile The percentile, between 0 and 100
+         * @return the value at the percentile, that is the upper bound of the
+         *      bucket holding it capped at {@link #getMax()}, or 0 if no
+         *      values have been recorded
+         */
+        public long getValueAtPercentile(final double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RequestCompletion</code> tracks the completion of a request
+ * continuing asynchronously after the servlet container dispatch returned.
+ * <p>
+ * Whoever starts asynchronous processing through the engine registers the
+ * async context with {@link #start(AsyncContext)}. The bookkeeping done at
+ * the end of a request, such as recording statistics or closing the resource
+ * resolver, is registered with {@link #whenComplete(ServletRequest, Runnable)}:
+ * it runs immediately for synchronous requests and once the async context
+ * completes otherwise.
+ * <p>
+ * If the engine started asynchronous processing itself, for example to hand
+ * the request off to a virtual thread, a servlet starting asynchronous
+ * processing {@link #takeOver() takes over} the async context, such that the
+ * engine does not {@link #complete()} it.
+ */
+public final class RequestCompletion implements AsyncListener {
+
+    private static final String ATTRIBUTE = RequestCompletion.class.getName();
+
+    private static final Logger log = LoggerFactory.getLogger(RequestCompletion.class);
+
+    private final AsyncContext asyncContext;
+
+    private final List<Runnable> actions = new ArrayList<>();
+
+    private boolean completed;
+
+    private volatile boolean takenOver;
+
+    private RequestCompletion(final AsyncContext asyncContext) {
+        this.asyncContext = asyncContext;
+    }
+
+    /**
+     * Tracks the completion of a request which started asynchronous
+     * processing. This must be called before the dispatch in which the
+     * async context has been started returns to the container.
+     * @param asyncContext The async context just started
+     * @return the completion of the request
+     */
+    public static RequestCompletion start(final AsyncContext asyncContext) {
+        final RequestCompletion completion = new RequestCompletion(asyncContext);
+        asyncContext.getRequest().setAttribute(ATTRIBUTE, completion);
+        asyncContext.addListener(completion);
+        return completion;
+    }
+
+    /**
+     * @param request The request
+     * @return the completion of the request or null if the request is not
+     *      processed asynchronously
+     */
+    public static RequestCompletion get(final ServletRequest request) {
+        if (!isAsyncStarted(request)) {
+            return null;
+        }
+        final Object completion = request.getAttribute(ATTRIBUTE);
+        return (completion instanceof RequestCompletion) ? (RequestCompletion) completion : null;
+    }
+
+    /**
+     * Runs the action once the request is complete. Actions run in the
+     * order they are registered. If asynchronous processing has been started
+     * without registering the async context, the completion of the request
+     * is tracked from now on.
+     * @param request The request
+     * @param action The action
+     */
+    public static void whenComplete(final ServletRequest request, final Runnable action) {
+        RequestCompletion completion = get(request);
+        if (completion == null && isAsyncStarted(request)) {
+            completion = attach(request);
+        }
+        if (completion == null || !completion.defer(action)) {
+            action.run();
+        }
+    }
+
+    /**
+     * @return the completion of a request which started asynchronous
+     *      processing outside of the engine or null if it completed meanwhile
+     */
+    private static synchronized RequestCompletion attach(final ServletRequest request) {
+        final RequestCompletion completion = get(request);
+        if (completion != null) {
+            return completion;
+        }
+        try {
+            return start(request.getAsyncContext());
+        } catch (final IllegalStateException ise) {
+            // completed concurrently
+            return null;
+        }
+    }
+
+    private static boolean isAsyncStarted(final ServletRequest request) {
+        try {
+            return request.isAsyncStarted();
+        } catch (final UnsupportedOperationException uoe) {
+            // requests created for internal processing
+            return false;
+        }
+    }
+
+    private synchronized boolean defer(final Runnable action) {
+        if (completed) {
+            return false;
+        }
+        actions.add(action);
+        return true;
+    }
+
+    /**
+     * Takes over the async context from the engine.
+     * @return the async context
+     */
+    public AsyncContext takeOver() {
+        this.takenOver = true;
+        return asyncContext;
+    }
+
+    /**
+     * Completes the async context unless it has been taken over.
+     */
+    public void complete() {
+        if (!takenOver) {
+            asyncContext.complete();
+        }
+    }
+
+    // ---------- AsyncListener
+
+    @Override
+    public void onComplete(final AsyncEvent event) {
+        final List<Runnable> deferred;
+        synchronized (this) {
+            completed = true;
+            deferred = new ArrayList<>(actions);
+            actions.clear();
+        }
+        for (final Runnable action : deferred) {
+            try {
+                action.run();
+            } catch (final RuntimeException re) {
+                log.error("Failed completing the request", re);
+            }
+        }
+    }
+
+    @Override
+    public void onStartAsync(final AsyncEvent event) {
+        // keep listening if the request is started again after a dispatch
+        event.getAsyncContext().addListener(this);
+    }
+
+    @Override
+    public void onTimeout(final AsyncEvent event) {
+        // the container completes the request if nobody else does
+    }
+
+    @Override
+    public void onError(final AsyncEvent event) {
+        // the container completes the request if nobody else does
+    }
+}
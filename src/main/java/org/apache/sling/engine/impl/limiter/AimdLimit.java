@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+/**
+ * The <code>AimdLimit</code> increases the limit additively, by one per
+ * limit requests processed in time, and decreases it multiplicatively as
+ * soon as a request takes longer than the latency threshold.
+ */
+class AimdLimit implements LimitAlgorithm {
+
+    /** factor applied to the limit when a request is too slow */
+    static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final long thresholdNanos;
+
+    /** written while holding the lock of onSample, read without it */
+    private volatile double limit;
+
+    AimdLimit(final int initialLimit, final int minLimit, final int maxLimit, final long thresholdNanos) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.thresholdNanos = thresholdNanos;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(final long latencyNanos, final int inFlight) {
+        if (latencyNanos > thresholdNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF);
+        } else if (inFlight * 2 >= limit) {
+            // only grow if the limit is actually used
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+}
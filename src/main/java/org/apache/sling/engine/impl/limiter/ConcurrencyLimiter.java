@@ -0,0 +1,251 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.sling.engine.jmx.ConcurrencyLimiterMBean;
+
+/**
+ * The <code>ConcurrencyLimiter</code> limits the number of requests
+ * processed concurrently. The limit is adapted by a {@link LimitAlgorithm}
+ * to the latency of the processed requests.
+ * <p>
+ * Requests below the limit acquire a {@link Permit} without locking. Requests
+ * over the limit wait in a bounded queue for a permit to be released. They
+ * are rejected if the queue is full or they do not get a permit in time.
+ */
+public class ConcurrencyLimiter extends StandardMBean implements ConcurrencyLimiterMBean {
+
+    private final String name;
+
+    private final LimitAlgorithm algorithm;
+
+    private final int maxQueueLength;
+
+    private final long maxQueueNanos;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /** number of waiting requests, only modified with the lock held */
+    private volatile int queueLength;
+
+    private final LongAdder accepted = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder queued = new LongAdder();
+
+    private final LongAdder queueNanos = new LongAdder();
+
+    private final AtomicLong maxQueueTimeNanos = new AtomicLong();
+
+    ConcurrencyLimiter(
+            final String name, final LimitAlgorithm algorithm, final int maxQueueLength, final long maxQueueMsec)
+            throws NotCompliantMBeanException {
+        super(ConcurrencyLimiterMBean.class);
+        this.name = name;
+        this.algorithm = algorithm;
+        this.maxQueueLength = Math.max(0, maxQueueLength);
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxQueueMsec));
+    }
+
+    /**
+     * Acquires a permit to process a request, waiting in the queue if the
+     * limit has been reached.
+     * @return the permit, which must be released once the request has been
+     *      processed, or null if the request is rejected
+     */
+    public Permit acquire() {
+        int current = tryAcquire();
+        if (current < 0) {
+            current = enqueue();
+            if (current < 0) {
+                rejected.increment();
+                return null;
+            }
+        }
+        accepted.increment();
+        return new Permit(current);
+    }
+
+    /**
+     * @return the number of requests in flight before acquiring, or -1 if
+     *      the limit has been reached
+     */
+    private int tryAcquire() {
+        final int limit = algorithm.getLimit();
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                return -1;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return current;
+    }
+
+    private int enqueue() {
+        if (maxQueueLength == 0 || maxQueueNanos == 0) {
+            return -1;
+        }
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            if (queueLength >= maxQueueLength) {
+                return -1;
+            }
+            queueLength++;
+            queued.increment();
+            try {
+                long remaining = maxQueueNanos;
+                int current;
+                while ((current = tryAcquire()) < 0) {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                return current;
+            } catch (final InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return -1;
+            } finally {
+                queueLength--;
+                final long waited = System.nanoTime() - start;
+                queueNanos.add(waited);
+                maxQueueTimeNanos.accumulateAndGet(waited, Math::max);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(final Permit permit) {
+        inFlight.decrementAndGet();
+        algorithm.onSample(System.nanoTime() - permit.start, permit.inFlight);
+        if (queueLength > 0) {
+            lock.lock();
+            try {
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The permit to process a request.
+     */
+    public final class Permit {
+
+        private final long start = System.nanoTime();
+
+        private final int inFlight;
+
+        private boolean released;
+
+        private Permit(final int inFlight) {
+            this.inFlight = inFlight;
+        }
+
+        /**
+         * Releases the permit and updates the limit with the time the
+         * request took. Releasing a permit more than once has no effect.
+         */
+        public void release() {
+            synchronized (this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            ConcurrencyLimiter.this.release(this);
+        }
+    }
+
+    // ---------- ConcurrencyLimiterMBean
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public int getLimit() {
+        return algorithm.getLimit();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    @Override
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    @Override
+    public double getMeanQueueTimeMsec() {
+        final long count = queued.sum();
+        return count == 0 ? 0 : queueNanos.sum() / (count * 1_000_000.0);
+    }
+
+    @Override
+    public long getMaxQueueTimeMsec() {
+        return TimeUnit.NANOSECONDS.toMillis(maxQueueTimeNanos.get());
+    }
+
+    @Override
+    public void resetStatistics() {
+        accepted.reset();
+        rejected.reset();
+        queued.reset();
+        queueNanos.reset();
+        maxQueueTimeNanos.set(0);
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+
+import java.util.Dictionary;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.sling.engine.jmx.ConcurrencyLimiterMBean;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
+
+/**
+ * The <code>ConcurrencyLimiterService</code> is a factory component which
+ * gets configuration to limit the number of requests processed concurrently
+ * by the SlingRequestProcessorImpl. Each configuration applies to the
+ * requests matching its paths and methods.
+ */
+@Component(service = ConcurrencyLimiterService.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@ServiceDescription("Limits the number of concurrently processed requests")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = ConcurrencyLimiterService.Config.class, factory = true)
+public class ConcurrencyLimiterService {
+
+    static final String ALGORITHM_AIMD = "aimd";
+
+    static final String ALGORITHM_GRADIENT = "gradient";
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Request Concurrency Limiter",
+            description = "Limits the number of requests processed concurrently and adapts the limit to the "
+                    + "measured request latency. Requests over the limit wait briefly and are rejected with "
+                    + "status 503 if no capacity becomes available. Each configuration applies to the requests "
+                    + "matching its paths and methods; if several configurations match a request, the one with "
+                    + "the highest ranking applies.")
+    public @interface Config {
+
+        @AttributeDefinition(name = "Name", description = "Name of the limiter, used for its JMX MBean.")
+        String limiter_name() default "default";
+
+        @AttributeDefinition(
+                name = "Path Patterns",
+                description =
+                        "Regular expressions matched against the request path. Leave empty to apply " + "to all paths.")
+        String[] limiter_paths();
+
+        @AttributeDefinition(
+                name = "Methods",
+                description = "HTTP methods of the requests to limit. Leave empty to apply to all methods.")
+        String[] limiter_methods();
+
+        @AttributeDefinition(
+                name = "Algorithm",
+                description = "How the limit is adapted. \"Gradient\" shrinks the limit in proportion to the "
+                        + "rise of the short term over the long term latency. \"AIMD\" grows the limit "
+                        + "additively and shrinks it by 10% whenever a request exceeds the latency threshold.",
+                options = {
+                    @Option(label = "Gradient", value = ALGORITHM_GRADIENT),
+                    @Option(label = "AIMD", value = ALGORITHM_AIMD)
+                })
+        String limiter_algorithm() default ALGORITHM_GRADIENT;
+
+        @AttributeDefinition(name = "Initial Limit", description = "Number of concurrent requests at start.")
+        int limiter_limit_initial() default 20;
+
+        @AttributeDefinition(name = "Minimum Limit", description = "The limit never drops below this number.")
+        int limiter_limit_min() default 4;
+
+        @AttributeDefinition(name = "Maximum Limit", description = "The limit never grows above this number.")
+        int limiter_limit_max() default 200;
+
+        @AttributeDefinition(
+                name = "Latency Threshold",
+                description =
+                        "Request latency in milliseconds above which the \"AIMD\" algorithm shrinks " + "the limit.")
+        long limiter_latency_threshold() default 1000;
+
+        @AttributeDefinition(
+                name = "Queue Size",
+                description = "Number of requests over the limit which may wait for processing. Set to zero "
+                        + "to reject requests over the limit immediately.")
+        int limiter_queue_size() default 50;
+
+        @AttributeDefinition(
+                name = "Queue Timeout",
+                description = "Time in milliseconds a request waits for processing before it is rejected.")
+        long limiter_queue_timeout() default 100;
+
+        @AttributeDefinition(
+                name = "Retry After",
+                description = "Seconds sent in the Retry-After header of rejected requests.")
+        int limiter_retry_after() default 1;
+
+        @AttributeDefinition(
+                name = "Ranking",
+                description = "If several limiters match a request, the one with the highest ranking applies.")
+        int service_ranking() default 0;
+    }
+
+    private final ConcurrencyLimiter limiter;
+
+    private final Pattern[] paths;
+
+    private final Set<String> methods;
+
+    private final int retryAfter;
+
+    private final int ranking;
+
+    private volatile ServiceRegistration<ConcurrencyLimiterMBean> registration;
+
+    @Activate
+    public ConcurrencyLimiterService(final BundleContext bundleContext, final Config config)
+            throws NotCompliantMBeanException {
+        this.limiter = new ConcurrencyLimiter(
+                config.limiter_name(),
+                createAlgorithm(config),
+                config.limiter_queue_size(),
+                config.limiter_queue_timeout());
+        this.paths = compile(config.limiter_paths());
+        this.methods = toSet(config.limiter_methods());
+        this.retryAfter = Math.max(0, config.limiter_retry_after());
+        this.ranking = config.service_ranking();
+
+        if (bundleContext != null) {
+            final Dictionary<String, Object> props = new Hashtable<>();
+            props.put(
+                    "jmx.objectname",
+                    "org.apache.sling:type=engine,service=ConcurrencyLimiter,name="
+                            + ObjectName.quote(config.limiter_name()));
+            this.registration = bundleContext.registerService(ConcurrencyLimiterMBean.class, limiter, props);
+        }
+    }
+
+    @Deactivate
+    void deactivate() {
+        if (this.registration != null) {
+            this.registration.unregister();
+            this.registration = null;
+        }
+    }
+
+    static LimitAlgorithm createAlgorithm(final Config config) {
+        final int min = Math.max(1, config.limiter_limit_min());
+        final int max = Math.max(min, config.limiter_limit_max());
+        if (ALGORITHM_AIMD.equals(config.limiter_algorithm())) {
+            return new AimdLimit(
+                    config.limiter_limit_initial(),
+                    min,
+                    max,
+                    TimeUnit.MILLISECONDS.toNanos(config.limiter_latency_threshold()));
+        }
+        return new GradientLimit(config.limiter_limit_initial(), min, max);
+    }
+
+    private static Pattern[] compile(final String[] regexes) {
+        if (regexes == null) {
+            return new Pattern[0];
+        }
+        final Pattern[] patterns = new Pattern[regexes.length];
+        for (int i = 0; i < regexes.length; i++) {
+            patterns[i] = Pattern.compile(regexes[i]);
+        }
+        return patterns;
+    }
+
+    private static Set<String> toSet(final String[] values) {
+        final Set<String> set = new HashSet<>();
+        if (values != null) {
+            for (final String value : values) {
+                set.add(value.toUpperCase());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @param request The request
+     * @return true if this limiter applies to the request
+     */
+    public boolean matches(final HttpServletRequest request) {
+        if (!methods.isEmpty() && !methods.contains(request.getMethod())) {
+            return false;
+        }
+        if (paths.length == 0) {
+            return true;
+        }
+        final String pathInfo = request.getPathInfo();
+        final String path = pathInfo == null || pathInfo.isEmpty() ? "/" : pathInfo;
+        for (final Pattern pattern : paths) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+
+    /**
+     * @return the seconds to send in the Retry-After header of rejected requests
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public int getRanking() {
+        return ranking;
+    }
+}
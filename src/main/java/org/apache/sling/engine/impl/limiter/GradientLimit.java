@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+/**
+ * The <code>GradientLimit</code> compares the short term latency of
+ * requests with their long term latency. While both are about the same, the
+ * limit grows by its square root, which allows a few requests to queue up in
+ * the application. If the short term latency rises, the limit shrinks in
+ * proportion, down to half of its value per sample.
+ * <p>
+ * The long term latency slowly follows the short term latency. If the short
+ * term latency has been much lower for a while, the long term latency
+ * recovers faster, such that a slow phase does not raise the limit for long.
+ */
+class GradientLimit implements LimitAlgorithm {
+
+    /** ratio of short term to long term latency considered normal */
+    private static final double TOLERANCE = 1.5;
+
+    /** weight of a new limit */
+    private static final double SMOOTHING = 0.2;
+
+    /** weight of a sample in the short term latency */
+    private static final double SHORT_ALPHA = 2.0 / (10 + 1);
+
+    /** weight of a sample in the long term latency */
+    private static final double LONG_ALPHA = 2.0 / (600 + 1);
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    /** written while holding the lock of onSample, read without it */
+    private volatile double limit;
+
+    private double shortLatency;
+
+    private double longLatency;
+
+    GradientLimit(final int initialLimit, final int minLimit, final int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public synchronized void onSample(final long latencyNanos, final int inFlight) {
+        final double latency = Math.max(1, latencyNanos);
+        if (longLatency == 0) {
+            shortLatency = latency;
+            longLatency = latency;
+        } else {
+            shortLatency += SHORT_ALPHA * (latency - shortLatency);
+            longLatency += LONG_ALPHA * (latency - longLatency);
+            if (longLatency / shortLatency > 2) {
+                // recover from a phase of high latency
+                longLatency *= 0.95;
+            }
+        }
+
+        if (inFlight * 2 < limit) {
+            // the limit is not used, latencies tell nothing about it
+            return;
+        }
+
+        final double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longLatency / shortLatency));
+        final double newLimit = limit * gradient + Math.sqrt(limit);
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + newLimit * SMOOTHING));
+    }
+}
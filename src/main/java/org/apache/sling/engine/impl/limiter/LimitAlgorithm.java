@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+/**
+ * A <code>LimitAlgorithm</code> adapts the concurrency limit of a
+ * {@link ConcurrencyLimiter} to the latency of the requests processed.
+ */
+interface LimitAlgorithm {
+
+    /**
+     * Returns the current limit, this is called for every request and must
+     * not block.
+     * @return the current limit, at least one
+     */
+    int getLimit();
+
+    /**
+     * Updates the limit with the latency of a processed request.
+     * @param latencyNanos The time the request took to process
+     * @param inFlight The number of requests in flight when the request started
+     */
+    void onSample(long latencyNanos, int inFlight);
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import javax.management.NotCompliantMBeanException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.sling.engine.RequestLog;
+import org.osgi.framework.BundleContext;
+
+/**
+ * The <code>AsyncFileRequestLog</code> class is an implementation of the
+ * {@link RequestLog} interface handing the log messages to an
+ * {@link AsyncLogWriter}, which writes them to a plain file on a separate
+ * thread.
+ * <p>
+ * Like the {@link FileRequestLog}, files are shared by the loggers writing to
+ * them. The writer of a file is created with the settings, including those
+ * for rolling the file over, of the first logger and stopped when the last
+ * logger is closed. A file already written by a {@link FileRequestLog} is
+ * rejected, as is a {@link FileRequestLog} for a file written by this class.
+ */
+@Deprecated
+class AsyncFileRequestLog implements RequestLog {
+
+    // The map of shared writers with their number of users
+    private static final Map<String, SharedWriter> writers = new HashMap<>();
+
+    // The writer used by this instance to write the messages
+    private volatile AsyncLogWriter output;
+
+    // Whether a file is written by an AsyncFileRequestLog, the caller must hold the class lock of FileRequestLog
+    static boolean isOpen(final String fileName) {
+        return writers.containsKey(fileName);
+    }
+
+    AsyncFileRequestLog(
+            final BundleContext bundleContext,
+            final RollingLogFile logFile,
+            final int bufferSize,
+            final int batchSize,
+            final long flushIntervalMsec,
+            final boolean blockWhenFull)
+            throws IOException {
+        synchronized (FileRequestLog.class) {
+            final String fileName = logFile.getFile().getAbsolutePath();
+            SharedWriter shared = writers.get(fileName);
+            if (shared == null) {
+                if (FileRequestLog.isOpen(fileName)) {
+                    throw new IOException("File " + fileName + " is already written by a synchronous request log");
+                }
+                final AsyncLogWriter writer;
+                try {
+                    writer = new AsyncLogWriter(logFile, bufferSize, batchSize, flushIntervalMsec, blockWhenFull);
+                } catch (final NotCompliantMBeanException e) {
+                    throw new IOException(e);
+                }
+                writer.register(bundleContext);
+                shared = new SharedWriter(writer);
+                writers.put(fileName, shared);
+            }
+            shared.users++;
+            this.output = shared.writer;
+        }
+    }
+
+    /**
+     * @see org.apache.sling.engine.RequestLog#write(java.lang.String)
+     */
+    public void write(final String message) {
+        final AsyncLogWriter writer = this.output;
+        if (writer != null && message != null) {
+            writer.write(message);
+        }
+    }
+
+    public void close() {
+        final AsyncLogWriter writer = this.output;
+        if (writer == null) {
+            return;
+        }
+        this.output = null;
+
+        synchronized (FileRequestLog.class) {
+            final String fileName = writer.getFileName();
+            final SharedWriter shared = writers.get(fileName);
+            if (shared != null && shared.writer == writer && --shared.users == 0) {
+                writers.remove(fileName);
+                writer.stop();
+            }
+        }
+    }
+
+    private static final class SharedWriter {
+
+        private final AsyncLogWriter writer;
+
+        private int users;
+
+        SharedWriter(final AsyncLogWriter writer) {
+            this.writer = writer;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Hashtable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.sling.engine.jmx.AsyncRequestLogMBean;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>AsyncLogWriter</code> writes the log messages queued by request
+ * threads to a file on a dedicated thread.
+ * <p>
+ * Request threads offer their messages to a {@link RingBuffer}. If the buffer
+ * is full, they either drop the message or wait for the writer thread to make
+ * space, depending on the configured policy. The writer thread drains the
+ * buffer in batches and flushes the file once the flush interval has passed.
+ * Rolling over the {@link RollingLogFile} is done by the writer thread as
+ * well, request threads just continue queueing their messages meanwhile.
+ */
+class AsyncLogWriter extends StandardMBean implements AsyncRequestLogMBean {
+
+    /** The largest supported buffer size */
+    static final int MAX_BUFFER_SIZE = 1 << 20;
+
+    /** Time a blocked request thread waits before retrying */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** Time to wait for the writer thread to drain the buffer when stopping */
+    private static final long STOP_TIMEOUT_MSEC = 5000;
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final RollingLogFile file;
+
+    private final RingBuffer<String> buffer;
+
+    private final int batchSize;
+
+    private final long flushIntervalNanos;
+
+    private final boolean blockWhenFull;
+
+    private final Thread thread;
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private final LongAdder blocked = new LongAdder();
+
+    private volatile boolean running = true;
+
+    /** true while the writer thread is about to park */
+    private volatile boolean waiting;
+
+    private ServiceRegistration<AsyncRequestLogMBean> registration;
+
+    AsyncLogWriter(
+            final RollingLogFile file,
+            final int bufferSize,
+            final int batchSize,
+            final long flushIntervalMsec,
+            final boolean blockWhenFull)
+            throws IOException, NotCompliantMBeanException {
+        super(AsyncRequestLogMBean.class);
+        this.file = file;
+        this.buffer = new RingBuffer<>(Math.min(MAX_BUFFER_SIZE, Math.max(1, bufferSize)));
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMsec));
+        this.blockWhenFull = blockWhenFull;
+
+        file.open();
+
+        this.thread = new Thread(
+                this::run, "Apache Sling Request Log Writer " + file.getFile().getName());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Registers this instance as an MBean service.
+     * @param bundleContext The bundle context, may be null
+     */
+    void register(final BundleContext bundleContext) {
+        if (bundleContext != null) {
+            final Dictionary<String, Object> props = new Hashtable<>();
+            props.put(
+                    "jmx.objectname",
+                    "org.apache.sling:type=engine,service=RequestLog,name=" + ObjectName.quote(getFileName()));
+            this.registration = bundleContext.registerService(AsyncRequestLogMBean.class, this, props);
+        }
+    }
+
+    /**
+     * Queues a message, called by the request threads.
+     * @param message The message
+     */
+    void write(final String message) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+        if (!buffer.offer(message)) {
+            if (!blockWhenFull) {
+                dropped.increment();
+                return;
+            }
+            blocked.increment();
+            do {
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                if (!running) {
+                    dropped.increment();
+                    return;
+                }
+            } while (!buffer.offer(message));
+        }
+        if (waiting) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Stops the writer thread after it has written all queued messages and
+     * closes the file.
+     */
+    void stop() {
+        if (registration != null) {
+            try {
+                registration.unregister();
+            } catch (final IllegalStateException ise) {
+                // bundle already stopped
+            }
+            registration = null;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MSEC);
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long lastFlush = System.nanoTime();
+        boolean dirty = false;
+        try {
+            while (running || !buffer.isEmpty()) {
+                final int count = drain();
+                if (count > 0) {
+                    dirty = true;
+                }
+
+                final long now = System.nanoTime();
+                if (dirty && (now - lastFlush >= flushIntervalNanos || !running)) {
+                    flush();
+                    dirty = false;
+                    lastFlush = now;
+                }
+
+                if (count < batchSize) {
+                    waiting = true;
+                    if (running && buffer.isEmpty()) {
+                        LockSupport.parkNanos(
+                                this, dirty ? flushIntervalNanos - (now - lastFlush) : flushIntervalNanos);
+                    }
+                    waiting = false;
+                }
+            }
+            if (dirty) {
+                flush();
+            }
+        } finally {
+            try {
+                file.close();
+            } catch (final IOException ioe) {
+                log.warn("Failed closing request log file {}", getFileName(), ioe);
+            }
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        String message;
+        while (count < batchSize && (message = buffer.poll()) != null) {
+            count++;
+            try {
+                file.write(message);
+                written.increment();
+            } catch (final IOException ioe) {
+                dropped.increment();
+                log.warn("Failed writing to request log file {}", getFileName(), ioe);
+            }
+        }
+        return count;
+    }
+
+    private void flush() {
+        try {
+            file.flush();
+        } catch (final IOException ioe) {
+            log.warn("Failed flushing request log file {}", getFileName(), ioe);
+        }
+    }
+
+    // ---------- AsyncRequestLogMBean
+
+    @Override
+    public String getFileName() {
+        return file.getFile().getAbsolutePath();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return buffer.capacity();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getBlockedCount() {
+        return blocked.sum();
+    }
+
+    @Override
+    public void resetStatistics() {
+        written.reset();
+        dropped.reset();
+        blocked.reset();
+    }
+}
@@ -19,15 +19,15 @@
 package org.apache.sling.engine.impl.log;
 
 import java.text.CharacterIterator;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
 import java.text.StringCharacterIterator;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import jakarta.servlet.http.Cookie;
 import org.apache.sling.engine.impl.request.RequestData;
@@ -36,12 +36,23 @@ import org.apache.sling.engine.impl.request.RequestData;
  * The <code>CustomLogFormat</code> class implements the support for log format
  * strings similar to the Apache httpd CustomLog configuration.
  *
+ * <p>
+ * Instances are thread safe. Log messages are rendered into a buffer reused
+ * by the calling thread, numbers and cached time stamps are appended without
+ * creating intermediate strings.
+ *
  * @see <a
  *      href="http://sling.apache.org/site/client-request-logging.html">Client
  *      Request Logging</a> for documentation of supported formats.
  */
 class CustomLogFormat {
 
+    /** Buffers larger than this are not kept for reuse by the thread */
+    private static final int MAX_RETAINED_BUFFER = 8192;
+
+    /** The buffer reused by each thread to render log messages */
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
     /*
      * NOTE: Documentation at
      * https://cwiki.apache.org/confluence/display/SLINGxSITE
@@ -81,16 +92,38 @@ class CustomLogFormat {
      */
     String format(RequestLoggerRequest request, RequestLoggerResponse response) {
         if (this.logParameters != null) {
-            StringBuilder buf = new StringBuilder();
-            for (int i = 0; i < this.logParameters.length; i++) {
-                this.logParameters[i].print(buf, request, response);
+            final StringBuilder buf = BUFFER.get();
+            buf.setLength(0);
+            this.format(buf, request, response);
+            final String message = buf.toString();
+            if (buf.capacity() > MAX_RETAINED_BUFFER) {
+                BUFFER.remove();
             }
-            return buf.toString();
+            return message;
         }
 
         return null;
     }
 
+    /**
+     * Appends a log message from the given <code>request</code> and
+     * <code>response</code> objects according to the log format from which this
+     * instance has been created.
+     *
+     * @param dest The buffer to append the log message to
+     * @param request The {@link RequestLoggerRequest} used to extract values
+     *            for the log message.
+     * @param response The {@link RequestLoggerResponse} used to extract values
+     *            for the log message.
+     */
+    void format(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
+        if (this.logParameters != null) {
+            for (int i = 0; i < this.logParameters.length; i++) {
+                this.logParameters[i].print(dest, request, response);
+            }
+        }
+    }
+
     /**
      * Returns a string representation of this log format instance. The returned
      * String is actually rebuilt from the parsed format string and may be used
@@ -404,14 +437,52 @@ class CustomLogFormat {
             this.required = required;
         }
 
-        protected abstract String getValue(RequestLoggerRequest request);
+        protected String getValue(RequestLoggerRequest request) {
+            return null;
+        }
+
+        protected String getValue(RequestLoggerResponse response) {
+            return null;
+        }
 
-        protected abstract String getValue(RequestLoggerResponse response);
+        /**
+         * Appends the value of this parameter for the request. Parameters whose
+         * value is a number or has to be escaped overwrite this method to
+         * append the value without creating intermediate strings.
+         *
+         * @return false if there is no value
+         */
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            final String value = this.getValue(request);
+            if (value == null) {
+                return false;
+            }
+            dest.append(value);
+            return true;
+        }
+
+        /**
+         * Appends the value of this parameter for the response.
+         *
+         * @return false if there is no value
+         * @see #appendValue(StringBuilder, RequestLoggerRequest)
+         */
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
+            final String value = this.getValue(response);
+            if (value == null) {
+                return false;
+            }
+            dest.append(value);
+            return true;
+        }
 
         public final void print(StringBuilder dest, RequestLoggerRequest request, RequestLoggerResponse response) {
             if (this.printOk(response.getStatus())) {
-                String value = this.isRequest ? this.getValue(request) : this.getValue(response);
-                dest.append((value == null) ? "-" : value);
+                final boolean appended =
+                        this.isRequest ? this.appendValue(dest, request) : this.appendValue(dest, response);
+                if (!appended) {
+                    dest.append('-');
+                }
             }
         }
 
@@ -467,6 +538,19 @@ class CustomLogFormat {
             return c >= 0x20 && c < 0x7f && c != '\\' && c != '"';
         }
 
+        /**
+         * Appends the escaped value unless it is null.
+         *
+         * @return false if the value is null
+         */
+        static boolean appendEscaped(StringBuilder dest, String value) {
+            if (value == null) {
+                return false;
+            }
+            escape(dest, value);
+            return true;
+        }
+
         static String escape(String value) {
             // nothing to do for empty values
             if (value == null || value.length() == 0) {
@@ -484,10 +568,13 @@ class CustomLogFormat {
                 return value;
             }
 
-            // otherwise copy the printable first part in a string buffer
-            // and start encoding
-            StringBuilder buf = new StringBuilder(value.substring(0, i));
-            while (i < value.length()) {
+            final StringBuilder buf = new StringBuilder(value.length() + 16);
+            escape(buf, value);
+            return buf.toString();
+        }
+
+        static void escape(StringBuilder buf, String value) {
+            for (int i = 0; i < value.length(); i++) {
                 char c = value.charAt(i);
                 if (isPrint(c)) {
                     buf.append(c);
@@ -507,22 +594,11 @@ class CustomLogFormat {
                     buf.append("\\\\");
                 } else { // encode
                     buf.append("\\u");
-                    if (c < 0x10) {
-                        buf.append('0'); // leading zero
-                    }
-                    if (c < 0x100) {
-                        buf.append('0'); // leading zero
+                    for (int shift = 12; shift >= 0; shift -= 4) {
+                        buf.append(Character.forDigit((c >> shift) & 0xf, 16));
                     }
-                    if (c < 0x1000) {
-                        buf.append('0'); // leading zero
-                    }
-                    buf.append(Integer.toHexString(c));
                 }
-                i++;
             }
-
-            // return the encoded string value
-            return buf.toString();
         }
     }
 
@@ -574,12 +650,10 @@ class CustomLogFormat {
             super(null, false);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return null;
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return String.valueOf(response.getRequestId());
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
+            dest.append(response.getRequestId());
+            return true;
         }
     }
 
@@ -588,40 +662,29 @@ class CustomLogFormat {
             super(null, false);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return null;
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
             int count = response.getCount();
             if (count == 0) {
-                return (this.getParName() == 'b') ? "-" : "0";
+                dest.append((this.getParName() == 'b') ? '-' : '0');
+            } else {
+                dest.append(count);
             }
-
-            return String.valueOf(count);
+            return true;
         }
     }
 
     static class TimeParameter extends BaseParameter {
 
         /** date format - see access logging in service() */
-        private static final SimpleDateFormat accessLogFmt = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss ", Locale.US);
-
-        /** time format for GMT offset - see access logging in service() */
-        private static final DecimalFormat dfmt = new DecimalFormat("+0000;-0000");
+        private static final DateTimeFormatter accessLogFmt =
+                DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
 
-        /** the timezone for the timezone offset calculation */
-        private static final Calendar calendar = Calendar.getInstance();
+        /** number of seconds whose formatted time is cached, a power of two */
+        private static final int CACHE_SIZE = 4;
 
-        /** last zone offset (cached by hours) */
-        private static String lastZoneOffset = "";
-
-        private static long lastZoneOffsetHour = -1;
-
-        /** last formatted time (cached in seconds) */
-        private static String lastTimeFormatted = "";
-
-        private static long lastTimeFormattedSeconds = -1;
+        /** last formatted times, indexed by the lowest bits of the seconds */
+        private static final AtomicReferenceArray<FormattedTime> cache = new AtomicReferenceArray<>(CACHE_SIZE);
 
         private final boolean requestStart;
 
@@ -631,10 +694,7 @@ class CustomLogFormat {
             this.requestStart = parParam == null || !parParam.equals("end");
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return null;
-        }
-
+        @Override
         protected String getValue(RequestLoggerResponse response) {
             long time = this.requestStart ? response.getRequestStart() : response.getRequestEnd();
             return timeFormatted(time);
@@ -644,23 +704,31 @@ class CustomLogFormat {
         // -----------------------------------------------------
 
         static String timeFormatted(long time) {
-            if (time / 1000 != lastTimeFormattedSeconds) {
-                lastTimeFormattedSeconds = time / 1000;
-                Date date = new Date(time);
-                StringBuilder buf = new StringBuilder(accessLogFmt.format(date));
-                if (time / 3600000 != lastZoneOffsetHour) {
-                    lastZoneOffsetHour = time / 3600000;
-                    calendar.setTime(date);
-                    int tzOffset = calendar.get(Calendar.ZONE_OFFSET) + calendar.get(Calendar.DST_OFFSET);
-                    tzOffset /= (60 * 1000);
-                    tzOffset = ((tzOffset / 60) * 100) + (tzOffset % 60);
-
-                    lastZoneOffset = dfmt.format(tzOffset);
-                }
-                buf.append(lastZoneOffset);
-                lastTimeFormatted = buf.toString();
+            final long seconds = Math.floorDiv(time, 1000);
+            final int slot = (int) (seconds & (CACHE_SIZE - 1));
+            FormattedTime formatted = cache.get(slot);
+            if (formatted == null || formatted.seconds != seconds) {
+                formatted = new FormattedTime(
+                        seconds,
+                        accessLogFmt.format(Instant.ofEpochSecond(seconds).atZone(ZoneId.systemDefault())));
+                cache.set(slot, formatted);
+            }
+            return formatted.value;
+        }
+
+        /**
+         * The immutable formatted time of one second, safe to be shared.
+         */
+        private static final class FormattedTime {
+
+            private final long seconds;
+
+            private final String value;
+
+            FormattedTime(final long seconds, final String value) {
+                this.seconds = seconds;
+                this.value = value;
             }
-            return lastTimeFormatted;
         }
     }
 
@@ -672,16 +740,14 @@ class CustomLogFormat {
             this.seconds = seconds;
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return null;
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
             long time = response.getRequestDuration();
             if (this.seconds) {
                 time /= 1000;
             }
-            return String.valueOf(time);
+            dest.append(time);
+            return true;
         }
     }
 
@@ -732,12 +798,10 @@ class CustomLogFormat {
             super(null, true);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return String.valueOf(request.getServerPort());
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return null;
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            dest.append(request.getServerPort());
+            return true;
         }
     }
 
@@ -778,15 +842,12 @@ class CustomLogFormat {
             super(null, true);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            String query = request.getQueryString();
-            query = (query == null || query.length() == 0) ? "" : "?" + query;
-
-            return request.getMethod() + " " + request.getRequestURI() + query + " " + request.getProtocol();
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return null;
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            dest.append(request.getMethod()).append(' ').append(request.getRequestURI());
+            QueryParameter.appendQuery(dest, request);
+            dest.append(' ').append(request.getProtocol());
+            return true;
         }
     }
 
@@ -837,13 +898,17 @@ class CustomLogFormat {
             super(null, true);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            String query = request.getQueryString();
-            return (query == null || query.length() == 0) ? "" : "?" + query;
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            appendQuery(dest, request);
+            return true;
         }
 
-        protected String getValue(RequestLoggerResponse response) {
-            return null;
+        static void appendQuery(StringBuilder dest, RequestLoggerRequest request) {
+            String query = request.getQueryString();
+            if (query != null && query.length() > 0) {
+                dest.append('?').append(query);
+            }
         }
     }
 
@@ -852,13 +917,9 @@ class CustomLogFormat {
             super(null, true);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            final String user = request.getRemoteUser();
-            return (user == null) ? null : escape(user);
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return null;
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            return appendEscaped(dest, request.getRemoteUser());
         }
     }
 
@@ -867,13 +928,9 @@ class CustomLogFormat {
             super(null, true);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            final String authType = request.getAuthType();
-            return (authType == null) ? null : escape(authType);
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return null;
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            return appendEscaped(dest, request.getAuthType());
         }
     }
 
@@ -882,12 +939,10 @@ class CustomLogFormat {
             super(null, false);
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return null;
-        }
-
-        protected String getValue(RequestLoggerResponse response) {
-            return String.valueOf(response.getStatus());
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
+            dest.append(response.getStatus());
+            return true;
         }
     }
 
@@ -899,16 +954,18 @@ class CustomLogFormat {
             this.cookieName = cookieName;
         }
 
-        protected String getValue(RequestLoggerRequest request) {
-            return getValue(request.getCookie(this.cookieName));
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
+            return appendValue(dest, request.getCookie(this.cookieName));
         }
 
-        protected String getValue(RequestLoggerResponse response) {
-            return getValue(response.getCookie(this.cookieName));
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
+            return appendValue(dest, response.getCookie(this.cookieName));
         }
 
-        private String getValue(final Cookie cookie) {
-            return (cookie == null) ? null : escape(cookie.getValue());
+        private boolean appendValue(StringBuilder dest, final Cookie cookie) {
+            return cookie != null && appendEscaped(dest, cookie.getValue());
         }
     }
 
@@ -917,24 +974,28 @@ class CustomLogFormat {
 
         HeaderParameter(String headerName, boolean isRequest) {
             super(headerName, isRequest);
-            this.headerName = headerName;
+            // response headers are registered by their lower case name
+            this.headerName = isRequest ? headerName : headerName.toLowerCase();
         }
 
-        protected String getValue(RequestLoggerRequest request) {
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerRequest request) {
             Enumeration<?> values = request.getHeaders(this.headerName);
             if (values == null || !values.hasMoreElements()) {
-                return null;
+                return false;
             }
 
-            String value = (String) values.nextElement();
+            escape(dest, (String) values.nextElement());
             while (values.hasMoreElements()) {
-                value += "," + values.nextElement();
+                dest.append(',');
+                escape(dest, (String) values.nextElement());
             }
-            return escape(value);
+            return true;
         }
 
-        protected String getValue(RequestLoggerResponse response) {
-            return escape(response.getHeadersString(this.headerName));
+        @Override
+        protected boolean appendValue(StringBuilder dest, RequestLoggerResponse response) {
+            return appendEscaped(dest, response.getHeadersString(this.headerName));
         }
     }
 }
@@ -59,24 +59,36 @@ class FileRequestLog implements RequestLog {
 
     // Dispose class by closing all open PrintWeiter instances
     static void dispose() {
-        for (final Writer w : logFiles.values()) {
-            try {
-                w.close();
-            } catch (IOException ioe) {
-                // don't care
+        synchronized (FileRequestLog.class) {
+            for (final Writer w : logFiles.values()) {
+                try {
+                    w.close();
+                } catch (IOException ioe) {
+                    // don't care
+                }
             }
+            logFiles.clear();
         }
-        logFiles.clear();
+    }
+
+    // Whether a file is written by a FileRequestLog, the caller must hold the class lock
+    static boolean isOpen(final String fileName) {
+        return logFiles.containsKey(fileName);
     }
 
     // The PrintWriter used by this instance to write the messages
     private PrintWriter output;
 
     FileRequestLog(File logFile) throws IOException {
-        synchronized (logFiles) {
+        // the class lock is shared with the AsyncFileRequestLog such
+        // that a file is never written by both kinds of loggers
+        synchronized (FileRequestLog.class) {
             final String fileName = logFile.getAbsolutePath();
             this.output = logFiles.get(fileName);
             if (this.output == null) {
+                if (AsyncFileRequestLog.isOpen(fileName)) {
+                    throw new IOException("File " + fileName + " is already written by an asynchronous request log");
+                }
                 logFile.getParentFile().mkdirs();
                 FileWriter fw = new FileWriter(logFile, true);
                 this.output = new PrintWriter(fw);
@@ -64,11 +64,16 @@ public class RequestLogger {
                         + "write the access log to a file (relative paths resolved against sling.home) "
                         + "or \"RequestLog Service\" to use a named OSGi service registered with the "
                         + "service interface \"org.apache.sling.engine.RequestLog\" and a service property "
-                        + "\"requestlog.name\" equal to the Logger Name setting.",
+                        + "\"requestlog.name\" equal to the Logger Name setting. \"Asynchronous File Name\" "
+                        + "writes to a file like \"File Name\", but on a separate writer thread. \"Rotating "
+                        + "File Name\" additionally rolls the file over daily and at 100MB, retaining ten "
+                        + "compressed files.",
                 options = {
                     @Option(label = "Logger Name", value = "0"),
                     @Option(label = "File Name", value = "1"),
-                    @Option(label = "RequestLog Service", value = "2")
+                    @Option(label = "RequestLog Service", value = "2"),
+                    @Option(label = "Asynchronous File Name", value = "3"),
+                    @Option(label = "Rotating File Name", value = "4")
                 })
         int request_log_outputtype() default 0;
 
@@ -104,11 +109,16 @@ public class RequestLogger {
                         + "write the access log to a file (relative paths resolved against sling.home) "
                         + "or \"RequestLog Service\" to use a named OSGi service registered with the "
                         + "service interface \"org.apache.sling.engine.RequestLog\" and a service property "
-                        + "\"requestlog.name\" equal to the Logger Name setting.",
+                        + "\"requestlog.name\" equal to the Logger Name setting. \"Asynchronous File Name\" "
+                        + "writes to a file like \"File Name\", but on a separate writer thread. \"Rotating "
+                        + "File Name\" additionally rolls the file over daily and at 100MB, retaining ten "
+                        + "compressed files.",
                 options = {
                     @Option(label = "Logger Name", value = "0"),
                     @Option(label = "File Name", value = "1"),
-                    @Option(label = "RequestLog Service", value = "2")
+                    @Option(label = "RequestLog Service", value = "2"),
+                    @Option(label = "Asynchronous File Name", value = "3"),
+                    @Option(label = "Rotating File Name", value = "4")
                 })
         int access_log_outputtype() default 0;
 
@@ -229,6 +239,46 @@ public class RequestLogger {
             public String request_log_service_format() {
                 return format;
             }
+
+            @Override
+            public int request_log_service_async_buffersize() {
+                return RequestLoggerService.DEFAULT_ASYNC_BUFFER_SIZE;
+            }
+
+            @Override
+            public int request_log_service_async_batchsize() {
+                return RequestLoggerService.DEFAULT_ASYNC_BATCH_SIZE;
+            }
+
+            @Override
+            public long request_log_service_async_flushinterval() {
+                return RequestLoggerService.DEFAULT_ASYNC_FLUSH_INTERVAL;
+            }
+
+            @Override
+            public String request_log_service_async_policy() {
+                return RequestLoggerService.ASYNC_POLICY_BLOCK;
+            }
+
+            @Override
+            public long request_log_service_rotation_maxsize() {
+                return RequestLoggerService.DEFAULT_ROTATION_MAX_SIZE;
+            }
+
+            @Override
+            public String request_log_service_rotation_interval() {
+                return RollingLogFile.INTERVAL_DAILY;
+            }
+
+            @Override
+            public int request_log_service_rotation_generations() {
+                return RequestLoggerService.DEFAULT_ROTATION_GENERATIONS;
+            }
+
+            @Override
+            public boolean request_log_service_rotation_compress() {
+                return true;
+            }
         });
         final ServiceRegistration reg =
                 bundleContext.registerService(service.getClass().getName(), service, null);
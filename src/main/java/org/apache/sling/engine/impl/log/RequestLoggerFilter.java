@@ -29,6 +29,7 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.sling.engine.impl.SlingHttpContext;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferenceCardinality;
@@ -38,6 +39,7 @@ import org.osgi.service.component.propertytypes.ServiceRanking;
 import org.osgi.service.component.propertytypes.ServiceVendor;
 import org.osgi.service.servlet.whiteboard.HttpWhiteboardConstants;
 import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardContextSelect;
+import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardFilterAsyncSupported;
 import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardFilterPattern;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +47,7 @@ import org.slf4j.LoggerFactory;
 @HttpWhiteboardContextSelect(
         "(" + HttpWhiteboardConstants.HTTP_WHITEBOARD_CONTEXT_NAME + "=" + SlingHttpContext.SERVLET_CONTEXT_NAME + ")")
 @HttpWhiteboardFilterPattern("/")
+@HttpWhiteboardFilterAsyncSupported
 @ServiceRanking(32768)
 @ServiceDescription("Request Logger Filter")
 @ServiceVendor("The Apache Software Foundation")
@@ -70,8 +73,12 @@ public final class RequestLoggerFilter implements Filter {
         try {
             chain.doFilter(rlreq, rlres);
         } finally {
-            rlres.requestEnd();
-            log(this.requestExit, rlreq, rlres);
+            // log the exit once the request is complete, which is later if
+            // it continues asynchronously
+            RequestCompletion.whenComplete(request, () -> {
+                rlres.requestEnd();
+                log(this.requestExit, rlreq, rlres);
+            });
         }
     }
 
@@ -25,6 +25,7 @@ import jakarta.servlet.FilterConfig;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
+import org.apache.sling.engine.impl.helper.RequestCompletion;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.propertytypes.ServiceRanking;
 import org.osgi.service.servlet.whiteboard.Preprocessor;
@@ -45,7 +46,8 @@ public class RequestLoggerPreprocessor implements Preprocessor {
         try {
             chain.doFilter(request, response);
         } finally {
-            request.removeAttribute(ATTR_NAME);
+            // keep the start time until the request logger is done
+            RequestCompletion.whenComplete(request, () -> request.removeAttribute(ATTR_NAME));
         }
     }
 
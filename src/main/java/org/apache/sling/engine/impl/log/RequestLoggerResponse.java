@@ -20,9 +20,10 @@ package org.apache.sling.engine.impl.log;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -47,8 +48,8 @@ class RequestLoggerResponse extends HttpServletResponseWrapper {
     private static final String HEADER_CONTENT_LENGTH = "Content-Length";
 
     /** format for RFC 1123 date string -- "Sun, 06 Nov 1994 08:49:37 GMT" */
-    private static final SimpleDateFormat RFC1123_FORMAT =
-            new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
+    private static final DateTimeFormatter RFC1123_FORMAT =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
 
     /**
      * The counter for request gone through this filter. As this is the first
@@ -345,9 +346,7 @@ class RequestLoggerResponse extends HttpServletResponseWrapper {
      * @return The string representation of the date and time value.
      */
     public static String toDateString(long date) {
-        synchronized (RFC1123_FORMAT) {
-            return RFC1123_FORMAT.format(new Date(date));
-        }
+        return RFC1123_FORMAT.format(Instant.ofEpochMilli(date).atZone(ZoneId.systemDefault()));
     }
 
     // ---------- byte/character counting output channels ----------------------
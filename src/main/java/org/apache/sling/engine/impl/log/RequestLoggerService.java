@@ -33,6 +33,8 @@ import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
 import org.osgi.service.metatype.annotations.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The <code>RequestLoggerService</code> is a factory component which gets
@@ -74,11 +76,15 @@ public class RequestLoggerService {
                         + "write the access log to a file (relative paths resolved against sling.home) "
                         + "or \"RequestLog Service\" to use a named OSGi service registered with the "
                         + "service interface \"org.apache.sling.engine.RequestLog\" and a service property "
-                        + "\"requestlog.name\" equal to the Logger Name setting.",
+                        + "\"requestlog.name\" equal to the Logger Name setting. \"Asynchronous File Name\" "
+                        + "writes to a file like \"File Name\", but on a separate writer thread. \"Rotating "
+                        + "File Name\" additionally rolls the file over by size and time.",
                 options = {
                     @Option(label = "Logger Name", value = "0"),
                     @Option(label = "File Name", value = "1"),
-                    @Option(label = "RequestLog Service", value = "2")
+                    @Option(label = "RequestLog Service", value = "2"),
+                    @Option(label = "Asynchronous File Name", value = "3"),
+                    @Option(label = "Rotating File Name", value = "4")
                 })
         int request_log_service_outputtype() default 0;
 
@@ -89,14 +95,92 @@ public class RequestLoggerService {
                         + "request exit (aka termination), which is the default for access logger type "
                         + "loggers.")
         boolean request_log_service_onentry() default false;
+
+        @AttributeDefinition(
+                name = "Asynchronous Buffer Size",
+                description = "Number of log entries queued for the writer thread of the "
+                        + "\"Asynchronous File Name\" logger type. The value is rounded up to a power of two.")
+        int request_log_service_async_buffersize() default DEFAULT_ASYNC_BUFFER_SIZE;
+
+        @AttributeDefinition(
+                name = "Asynchronous Batch Size",
+                description = "Maximum number of log entries the writer thread of the "
+                        + "\"Asynchronous File Name\" logger type writes before checking whether to flush the file.")
+        int request_log_service_async_batchsize() default DEFAULT_ASYNC_BATCH_SIZE;
+
+        @AttributeDefinition(
+                name = "Asynchronous Flush Interval",
+                description = "Interval in milliseconds after which the writer thread of the "
+                        + "\"Asynchronous File Name\" logger type flushes written log entries to the file.")
+        long request_log_service_async_flushinterval() default DEFAULT_ASYNC_FLUSH_INTERVAL;
+
+        @AttributeDefinition(
+                name = "Asynchronous Full Buffer Policy",
+                description = "What to do with log entries of the \"Asynchronous File Name\" logger type "
+                        + "if the buffer is full. \"Block\" makes the request wait for the writer thread, "
+                        + "\"Drop\" discards the log entry.",
+                options = {
+                    @Option(label = "Block", value = ASYNC_POLICY_BLOCK),
+                    @Option(label = "Drop", value = ASYNC_POLICY_DROP)
+                })
+        String request_log_service_async_policy() default ASYNC_POLICY_BLOCK;
+
+        @AttributeDefinition(
+                name = "Rotation Maximum Size",
+                description = "Size in bytes at which the file of the \"Rotating File Name\" logger type "
+                        + "is rolled over. Set to zero to not roll over by size.")
+        long request_log_service_rotation_maxsize() default DEFAULT_ROTATION_MAX_SIZE;
+
+        @AttributeDefinition(
+                name = "Rotation Interval",
+                description = "Rolls the file of the \"Rotating File Name\" logger type over when a new "
+                        + "hour or day starts.",
+                options = {
+                    @Option(label = "None", value = RollingLogFile.INTERVAL_NONE),
+                    @Option(label = "Hourly", value = RollingLogFile.INTERVAL_HOURLY),
+                    @Option(label = "Daily", value = RollingLogFile.INTERVAL_DAILY)
+                })
+        String request_log_service_rotation_interval() default RollingLogFile.INTERVAL_DAILY;
+
+        @AttributeDefinition(
+                name = "Rotation Generations",
+                description = "Number of rolled over files of the \"Rotating File Name\" logger type to "
+                        + "retain. Older files are deleted. Set to zero to retain all files.")
+        int request_log_service_rotation_generations() default DEFAULT_ROTATION_GENERATIONS;
+
+        @AttributeDefinition(
+                name = "Rotation Compression",
+                description = "Whether to gzip the rolled over files of the \"Rotating File Name\" logger "
+                        + "type. Compression is done on a background thread.")
+        boolean request_log_service_rotation_compress() default true;
     }
 
+    static final int DEFAULT_ASYNC_BUFFER_SIZE = 8192;
+
+    static final int DEFAULT_ASYNC_BATCH_SIZE = 256;
+
+    static final long DEFAULT_ASYNC_FLUSH_INTERVAL = 1000;
+
+    static final String ASYNC_POLICY_BLOCK = "block";
+
+    static final String ASYNC_POLICY_DROP = "drop";
+
+    static final long DEFAULT_ROTATION_MAX_SIZE = 100L * 1024 * 1024;
+
+    static final int DEFAULT_ROTATION_GENERATIONS = 10;
+
     private static final int OUTPUT_TYPE_LOGGER = 0;
 
     private static final int OUTPUT_TYPE_FILE = 1;
 
     private static final int OUTPUT_TYPE_CLASS = 2;
 
+    private static final int OUTPUT_TYPE_ASYNC_FILE = 3;
+
+    private static final int OUTPUT_TYPE_ROTATING_FILE = 4;
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestLoggerService.class);
+
     private boolean onEntry;
 
     private CustomLogFormat logFormat;
@@ -127,7 +211,7 @@ public class RequestLoggerService {
         // where to log to
         final String output = configuration.request_log_service_output();
         if (output != null) {
-            this.log = this.getLog(bundleContext, output, configuration.request_log_service_outputtype());
+            this.log = this.getLog(bundleContext, output, configuration);
         }
     }
 
@@ -154,27 +238,34 @@ public class RequestLoggerService {
     }
 
     @SuppressWarnings("deprecation")
-    private RequestLog getLog(BundleContext bundleContext, String output, int outputType) {
-        switch (outputType) {
+    private RequestLog getLog(BundleContext bundleContext, String output, Config configuration) {
+        switch (configuration.request_log_service_outputtype()) {
             case OUTPUT_TYPE_FILE:
                 // file logging
+                final File file = getLogFile(bundleContext, output);
                 try {
-                    // ensure the path is absolute
-                    File file = new File(output);
-                    if (!file.isAbsolute()) {
-                        final String home = bundleContext.getProperty("sling.home");
-                        if (home != null) {
-                            file = new File(home, output);
-                        }
-                        file = file.getAbsoluteFile();
-                    }
-
                     return new FileRequestLog(file);
                 } catch (IOException ioe) {
-                    // TODO: log
+                    LOG.error("Cannot open request log file {}", file, ioe);
                 }
                 break;
 
+            case OUTPUT_TYPE_ASYNC_FILE:
+                // file logging on a separate thread
+                return getAsyncLog(bundleContext, new RollingLogFile(getLogFile(bundleContext, output)), configuration);
+
+            case OUTPUT_TYPE_ROTATING_FILE:
+                // rolling file logging on a separate thread
+                return getAsyncLog(
+                        bundleContext,
+                        new RollingLogFile(
+                                getLogFile(bundleContext, output),
+                                configuration.request_log_service_rotation_maxsize(),
+                                RollingLogFile.toUnit(configuration.request_log_service_rotation_interval()),
+                                configuration.request_log_service_rotation_generations(),
+                                configuration.request_log_service_rotation_compress()),
+                        configuration);
+
             case OUTPUT_TYPE_CLASS:
                 // only try to use service if we have a bundle context
                 if (bundleContext != null) {
@@ -190,4 +281,33 @@ public class RequestLoggerService {
         // fallback in case of issue or so...
         return null;
     }
+
+    @SuppressWarnings("deprecation")
+    private static RequestLog getAsyncLog(BundleContext bundleContext, RollingLogFile file, Config configuration) {
+        try {
+            return new AsyncFileRequestLog(
+                    bundleContext,
+                    file,
+                    configuration.request_log_service_async_buffersize(),
+                    configuration.request_log_service_async_batchsize(),
+                    configuration.request_log_service_async_flushinterval(),
+                    !ASYNC_POLICY_DROP.equals(configuration.request_log_service_async_policy()));
+        } catch (IOException ioe) {
+            LOG.error("Cannot open request log file {}", file.getFile(), ioe);
+        }
+        return null;
+    }
+
+    private static File getLogFile(BundleContext bundleContext, String output) {
+        // ensure the path is absolute
+        File file = new File(output);
+        if (!file.isAbsolute()) {
+            final String home = bundleContext.getProperty("sling.home");
+            if (home != null) {
+                file = new File(home, output);
+            }
+            file = file.getAbsoluteFile();
+        }
+        return file;
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The <code>RingBuffer</code> is a bounded, lock free queue for any number of
+ * producers and a single consumer.
+ * <p>
+ * Each slot carries a sequence number telling whether it is free for the
+ * producer claiming position <code>n</code> (sequence <code>n</code>) or
+ * holds the element for the consumer at position <code>n</code> (sequence
+ * <code>n + 1</code>). Producers claim positions by incrementing the tail,
+ * the consumer owns the head.
+ *
+ * @param <E> The type of the elements
+ */
+class RingBuffer<E> {
+
+    private final Object[] elements;
+
+    private final AtomicLongArray sequences;
+
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+
+    /** only written by the consumer */
+    private volatile long head;
+
+    /**
+     * @param capacity The minimum capacity, rounded up to a power of two
+     */
+    RingBuffer(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element, may be called by any thread.
+     * @param element The element
+     * @return false if the buffer is full
+     */
+    boolean offer(final E element) {
+        long pos = tail.get();
+        for (; ; ) {
+            final int idx = (int) (pos & mask);
+            final long diff = sequences.get(idx) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements[idx] = element;
+                    // publishes the element to the consumer
+                    sequences.set(idx, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // the slot still holds the element of the previous round
+                return false;
+            } else {
+                // another producer claimed the position
+                pos = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element, must only be called by the consumer thread.
+     * @return the element or null if the buffer is empty
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        final long pos = head;
+        final int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) {
+            return null;
+        }
+        final E element = (E) elements[idx];
+        elements[idx] = null;
+        // releases the slot to the producers of the next round
+        sequences.set(idx, pos + elements.length);
+        head = pos + 1;
+        return element;
+    }
+
+    /**
+     * @return the approximate number of elements
+     */
+    int size() {
+        final long size = tail.get() - head;
+        return (int) Math.max(0, Math.min(elements.length, size));
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    int capacity() {
+        return elements.length;
+    }
+}
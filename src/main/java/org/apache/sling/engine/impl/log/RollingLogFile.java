@@ -0,0 +1,314 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The <code>RollingLogFile</code> is the file written by an
+ * {@link AsyncLogWriter}. It is not thread safe and only used by the writer
+ * thread.
+ * <p>
+ * If configured, the file is rolled over once it reaches a maximum size or
+ * when a new hour or day starts. The current file is renamed by appending
+ * the time of the rollover, <code>access.log.20240131-235959.999</code> for
+ * example, and a new file is started. Compressing the rolled file and
+ * deleting generations beyond the retained count is done on a separate
+ * thread, such that rolling over only takes a rename.
+ */
+class RollingLogFile {
+
+    static final String INTERVAL_NONE = "none";
+
+    static final String INTERVAL_HOURLY = "hourly";
+
+    static final String INTERVAL_DAILY = "daily";
+
+    private static final String COMPRESSED_SUFFIX = ".gz";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final DateTimeFormatter ROLLED_FORMAT =
+            DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss.SSS", Locale.US);
+
+    private static final Pattern ROLLED_PATTERN = Pattern.compile("\\d{8}-\\d{6}\\.\\d{3}(\\.gz)?");
+
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(Charset.defaultCharset());
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+
+    private final File file;
+
+    private final long maxSize;
+
+    private final ChronoUnit interval;
+
+    private final int generations;
+
+    private final boolean compress;
+
+    /** compresses and deletes rolled files, null if the file is never rolled */
+    private final ExecutorService housekeeper;
+
+    private OutputStream output;
+
+    /** the number of bytes in the current file */
+    private long size;
+
+    /** the size at which the file is rolled over */
+    private long rolloverSize;
+
+    /** the time at which the file is rolled over by the interval */
+    private long nextRollover = Long.MAX_VALUE;
+
+    /**
+     * Creates a file which is never rolled over.
+     * @param file The file
+     */
+    RollingLogFile(final File file) {
+        this(file, 0, null, 0, false);
+    }
+
+    /**
+     * @param file The file
+     * @param maxSize The size in bytes at which the file is rolled over, zero to disable
+     * @param interval Rolls the file over when this unit of time changes, null to disable
+     * @param generations The number of rolled files to retain, zero to retain all
+     * @param compress Whether to compress rolled files
+     */
+    RollingLogFile(
+            final File file,
+            final long maxSize,
+            final ChronoUnit interval,
+            final int generations,
+            final boolean compress) {
+        this.file = file;
+        this.maxSize = Math.max(0, maxSize);
+        this.interval = interval;
+        this.generations = Math.max(0, generations);
+        this.compress = compress;
+        if (this.maxSize > 0 || interval != null) {
+            this.housekeeper = Executors.newSingleThreadExecutor(r -> {
+                final Thread thread = new Thread(r, "Apache Sling Request Log Housekeeper " + file.getName());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            this.housekeeper = null;
+        }
+    }
+
+    /**
+     * Converts the configured rollover interval.
+     * @param interval The interval, one of {@link #INTERVAL_NONE},
+     *      {@link #INTERVAL_HOURLY} or {@link #INTERVAL_DAILY}
+     * @return The unit of time or null if the interval is not known
+     */
+    static ChronoUnit toUnit(final String interval) {
+        if (INTERVAL_HOURLY.equals(interval)) {
+            return ChronoUnit.HOURS;
+        } else if (INTERVAL_DAILY.equals(interval)) {
+            return ChronoUnit.DAYS;
+        }
+        return null;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Opens the file for appending. An existing file last modified before the
+     * current interval is rolled over with the first message written.
+     * @throws IOException If the file cannot be opened
+     */
+    void open() throws IOException {
+        file.getParentFile().mkdirs();
+        this.size = file.length();
+        this.rolloverSize = maxSize;
+        if (interval != null) {
+            final long modified = file.lastModified();
+            this.nextRollover = nextRollover(modified > 0 ? modified : System.currentTimeMillis());
+        }
+        this.output = new BufferedOutputStream(new FileOutputStream(file, true));
+    }
+
+    /**
+     * Writes a message followed by a line separator, rolling the file over
+     * before if required.
+     * @param message The message
+     * @throws IOException If writing fails
+     */
+    void write(final String message) throws IOException {
+        if (size > 0 && isRolloverDue()) {
+            rollover();
+        }
+        final byte[] bytes = message.getBytes(Charset.defaultCharset());
+        output.write(bytes);
+        output.write(LINE_SEPARATOR);
+        size += bytes.length + LINE_SEPARATOR.length;
+    }
+
+    void flush() throws IOException {
+        output.flush();
+    }
+
+    /**
+     * Closes the file. Compression and deletion of rolled files already
+     * scheduled are still completed.
+     * @throws IOException If closing the file fails
+     */
+    void close() throws IOException {
+        if (housekeeper != null) {
+            housekeeper.shutdown();
+        }
+        if (output != null) {
+            output.close();
+            output = null;
+        }
+    }
+
+    private boolean isRolloverDue() {
+        return (maxSize > 0 && size >= rolloverSize) || System.currentTimeMillis() >= nextRollover;
+    }
+
+    private long nextRollover(final long time) {
+        return toZoned(time).truncatedTo(interval).plus(1, interval).toInstant().toEpochMilli();
+    }
+
+    private void rollover() throws IOException {
+        output.close();
+
+        final long now = System.currentTimeMillis();
+        final File rolled = rolledFile(now);
+        boolean moved = false;
+        try {
+            move(file, rolled);
+            housekeeper.execute(() -> housekeeping(rolled));
+            moved = true;
+        } catch (final IOException ioe) {
+            log.warn("Failed rolling over request log file {}, retrying at the next size or interval", file, ioe);
+        }
+
+        open();
+        if (!moved) {
+            // continue writing to the current file instead of retrying with every message
+            rolloverSize = size + maxSize;
+            if (interval != null) {
+                nextRollover = nextRollover(now);
+            }
+        }
+    }
+
+    void move(final File source, final File target) throws IOException {
+        Files.move(source.toPath(), target.toPath());
+    }
+
+    private File rolledFile(final long time) {
+        long suffix = time;
+        File rolled;
+        do {
+            rolled = new File(file.getPath() + '.' + ROLLED_FORMAT.format(toZoned(suffix++)));
+        } while (rolled.exists() || new File(rolled.getPath() + COMPRESSED_SUFFIX).exists());
+        return rolled;
+    }
+
+    private static ZonedDateTime toZoned(final long time) {
+        return Instant.ofEpochMilli(time).atZone(ZoneId.systemDefault());
+    }
+
+    private void housekeeping(final File rolled) {
+        if (compress) {
+            compress(rolled);
+        }
+        if (generations > 0) {
+            deleteOldGenerations();
+        }
+    }
+
+    private void compress(final File rolled) {
+        final File temp = new File(rolled.getPath() + COMPRESSED_SUFFIX + TEMP_SUFFIX);
+        try {
+            try (InputStream in = Files.newInputStream(rolled.toPath());
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp.toPath()))) {
+                in.transferTo(out);
+            }
+            Files.move(
+                    temp.toPath(),
+                    new File(rolled.getPath() + COMPRESSED_SUFFIX).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(rolled.toPath());
+        } catch (final IOException ioe) {
+            log.warn("Failed compressing rolled request log file {}", rolled, ioe);
+            temp.delete();
+        }
+    }
+
+    private void deleteOldGenerations() {
+        final String prefix = file.getName() + '.';
+        final File[] candidates = file.getParentFile().listFiles();
+        if (candidates == null) {
+            return;
+        }
+        final List<File> rolled = new ArrayList<>();
+        for (final File candidate : candidates) {
+            final String name = candidate.getName();
+            if (name.startsWith(prefix)
+                    && ROLLED_PATTERN.matcher(name.substring(prefix.length())).matches()) {
+                rolled.add(candidate);
+            }
+        }
+        if (rolled.size() <= generations) {
+            return;
+        }
+        // the timestamps sort by name, newest first
+        rolled.sort(Collections.reverseOrder());
+        for (final File old : rolled.subList(generations, rolled.size())) {
+            try {
+                Files.deleteIfExists(old.toPath());
+            } catch (final IOException ioe) {
+                log.warn("Failed deleting rolled request log file {}", old, ioe);
+            }
+        }
+    }
+}
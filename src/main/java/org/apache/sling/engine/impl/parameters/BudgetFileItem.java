@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemHeaders;
+
+/**
+ * The <code>BudgetFileItem</code> charges the bytes written to a part
+ * against the {@link UploadBudget}: to memory as long as the part does not
+ * exceed the threshold and to disk once the wrapped item spools it to a
+ * file. The bytes are released when the item is deleted, which happens at
+ * the end of the request.
+ */
+final class BudgetFileItem implements FileItem {
+
+    private final FileItem delegate;
+
+    private final UploadBudget budget;
+
+    private final int threshold;
+
+    private long size;
+
+    private long memory;
+
+    private long disk;
+
+    BudgetFileItem(final FileItem delegate, final UploadBudget budget, final int threshold) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.threshold = threshold;
+    }
+
+    private synchronized void charge(final int len) throws UploadBudgetExceededException {
+        // same condition as the wrapped item uses to spool to a file
+        if (size + len > threshold) {
+            budget.addDisk(memory, len);
+            disk += memory + len;
+            memory = 0;
+        } else {
+            budget.addMemory(len);
+            memory += len;
+        }
+        size += len;
+    }
+
+    /**
+     * Releases the bytes of the part from the budget, releasing an item more
+     * than once has no effect.
+     */
+    private synchronized void release() {
+        budget.release(memory, disk);
+        memory = 0;
+        disk = 0;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new FilterOutputStream(delegate.getOutputStream()) {
+
+            @Override
+            public void write(final int b) throws IOException {
+                charge(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                charge(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public void delete() {
+        delegate.delete();
+        release();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return delegate.getInputStream();
+    }
+
+    @Override
+    public void write(final File file) throws Exception {
+        delegate.write(file);
+    }
+
+    @Override
+    public byte[] get() {
+        return delegate.get();
+    }
+
+    @Override
+    public String getString(final String encoding) throws UnsupportedEncodingException {
+        return delegate.getString(encoding);
+    }
+
+    @Override
+    public String getString() {
+        return delegate.getString();
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return delegate.isInMemory();
+    }
+
+    @Override
+    public long getSize() {
+        return delegate.getSize();
+    }
+
+    @Override
+    public String getContentType() {
+        return delegate.getContentType();
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public String getFieldName() {
+        return delegate.getFieldName();
+    }
+
+    @Override
+    public void setFieldName(final String name) {
+        delegate.setFieldName(name);
+    }
+
+    @Override
+    public boolean isFormField() {
+        return delegate.isFormField();
+    }
+
+    @Override
+    public void setFormField(final boolean state) {
+        delegate.setFormField(state);
+    }
+
+    @Override
+    public FileItemHeaders getHeaders() {
+        return delegate.getHeaders();
+    }
+
+    @Override
+    public void setHeaders(final FileItemHeaders headers) {
+        delegate.setHeaders(headers);
+    }
+}
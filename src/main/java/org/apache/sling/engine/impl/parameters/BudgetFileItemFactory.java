@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+
+/**
+ * The <code>BudgetFileItemFactory</code> wraps the items of another
+ * factory in {@link BudgetFileItem}s charging the {@link UploadBudget}.
+ */
+final class BudgetFileItemFactory implements FileItemFactory {
+
+    private final FileItemFactory factory;
+
+    private final UploadBudget budget;
+
+    private final int threshold;
+
+    /**
+     * @param factory The factory creating the items storing the parts
+     * @param budget The budget to charge
+     * @param threshold The size above which the items spool parts to a file
+     */
+    BudgetFileItemFactory(final FileItemFactory factory, final UploadBudget budget, final int threshold) {
+        this.factory = factory;
+        this.budget = budget;
+        this.threshold = threshold;
+    }
+
+    @Override
+    public FileItem createItem(
+            final String fieldName, final String contentType, final boolean isFormField, final String fileName) {
+        return new BudgetFileItem(factory.createItem(fieldName, contentType, isFormField, fileName), budget, threshold);
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemHeaders;
+import org.apache.commons.fileupload.ParameterParser;
+
+/**
+ * The <code>BufferedFileItem</code> stores a part of a multipart request in
+ * buffers of an {@link UploadBufferPool} as long as it does not exceed the
+ * threshold. Larger parts are spooled to a temporary file through a
+ * {@link FileChannel}, which is also used for reading.
+ * <p>
+ * Reading the chunks and writing the part to a file do not copy the data to
+ * the heap. The buffers are returned to the pool and the temporary file is
+ * deleted when the item is deleted, the item must not be used afterwards.
+ * Streams still open fail on the next read, the buffers they read from are
+ * not reused and the channels reading the file are closed, so that its disk
+ * space is freed.
+ */
+final class BufferedFileItem implements FileItem {
+
+    private final UploadBufferPool pool;
+
+    private final int threshold;
+
+    private final File repository;
+
+    private final String contentType;
+
+    private final String fileName;
+
+    private String fieldName;
+
+    private boolean formField;
+
+    private FileItemHeaders headers;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+
+    private Path file;
+
+    private long size;
+
+    private volatile boolean deleted;
+
+    /** number of open streams reading from the chunks, guarded by this */
+    private int openStreams;
+
+    /** channels of the open streams reading from the file, guarded by this */
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    BufferedFileItem(
+            final UploadBufferPool pool,
+            final int threshold,
+            final File repository,
+            final String fieldName,
+            final String contentType,
+            final boolean formField,
+            final String fileName) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.repository = repository;
+        this.fieldName = fieldName;
+        this.contentType = contentType;
+        this.formField = formField;
+        this.fileName = fileName;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return new OutputStream() {
+
+            private FileChannel channel;
+
+            @Override
+            public void write(final int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                if (channel == null && size + len > threshold) {
+                    channel = spool();
+                }
+                if (channel != null) {
+                    final ByteBuffer source = ByteBuffer.wrap(b, off, len);
+                    while (source.hasRemaining()) {
+                        channel.write(source);
+                    }
+                } else {
+                    int written = 0;
+                    while (written < len) {
+                        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                        if (chunk == null || !chunk.hasRemaining()) {
+                            chunk = pool.acquire();
+                            chunks.add(chunk);
+                        }
+                        final int n = Math.min(len - written, chunk.remaining());
+                        chunk.put(b, off + written, n);
+                        written += n;
+                    }
+                }
+                size += len;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Moves the chunks written so far to a temporary file.
+     * @return the channel to write the remainder to
+     */
+    private FileChannel spool() throws IOException {
+        file = (repository != null)
+                ? Files.createTempFile(repository.toPath(), "upload_", ".tmp")
+                : Files.createTempFile("upload_", ".tmp");
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE);
+        try {
+            for (final ByteBuffer chunk : chunks) {
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                pool.release(chunk);
+            }
+            chunks.clear();
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * @return read only views of the chunks
+     */
+    private ByteBuffer[] views() {
+        final ByteBuffer[] views = new ByteBuffer[chunks.size()];
+        for (int i = 0; i < views.length; i++) {
+            views[i] = chunks.get(i).duplicate().flip().asReadOnlyBuffer();
+        }
+        return views;
+    }
+
+    private void checkDeleted() throws IOException {
+        if (deleted) {
+            throw new IOException("Part " + fieldName + " has been deleted");
+        }
+    }
+
+    @Override
+    public synchronized InputStream getInputStream() throws IOException {
+        checkDeleted();
+        if (file == null) {
+            openStreams++;
+            return new PartInputStream(new ByteBufferInputStream(views()), true, null);
+        }
+
+        // not mapped: a mapping keeps the space of the deleted file until it is garbage collected
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        channels.add(channel);
+        return new PartInputStream(Channels.newInputStream(channel), false, channel);
+    }
+
+    /**
+     * Reads the part as long as the item has not been deleted.
+     */
+    private final class PartInputStream extends FilterInputStream {
+
+        /** whether the stream reads from the chunks */
+        private boolean chunks;
+
+        /** the channel reading from the file or <code>null</code> */
+        private final FileChannel channel;
+
+        PartInputStream(final InputStream in, final boolean chunks, final FileChannel channel) {
+            super(in);
+            this.chunks = chunks;
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeleted();
+            return in.read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            checkDeleted();
+            return in.read(b, off, len);
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            checkDeleted();
+            return in.skip(n);
+        }
+
+        @Override
+        public int available() throws IOException {
+            checkDeleted();
+            return in.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (BufferedFileItem.this) {
+                if (chunks) {
+                    chunks = false;
+                    openStreams--;
+                }
+                if (channel != null) {
+                    channels.remove(channel);
+                }
+            }
+            in.close();
+        }
+    }
+
+    /**
+     * Writes the content of the part to the channel, from the chunks or by
+     * transferring from the temporary file.
+     * @param target The channel
+     * @throws IOException if the part has been deleted or writing fails
+     */
+    void transferTo(final WritableByteChannel target) throws IOException {
+        checkDeleted();
+        if (file == null) {
+            for (final ByteBuffer view : views()) {
+                while (view.hasRemaining()) {
+                    target.write(view);
+                }
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long position = 0;
+                while (position < size) {
+                    position += channel.transferTo(position, size - position, target);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void write(final File target) throws Exception {
+        try (FileChannel channel = FileChannel.open(
+                target.toPath(),
+                StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferTo(channel);
+        }
+    }
+
+    @Override
+    public byte[] get() {
+        try (InputStream in = getInputStream()) {
+            return in.readAllBytes();
+        } catch (final IOException e) {
+            // like DiskFileItem
+            return null;
+        }
+    }
+
+    @Override
+    public String getString(final String charset) throws UnsupportedEncodingException {
+        return new String(get(), charset);
+    }
+
+    @Override
+    public String getString() {
+        String charset = null;
+        if (contentType != null) {
+            final ParameterParser parser = new ParameterParser();
+            parser.setLowerCaseNames(true);
+            final Map<String, String> params = parser.parse(contentType, ';');
+            charset = params.get("charset");
+        }
+        try {
+            return getString((charset != null) ? charset : Util.ENCODING_DIRECT);
+        } catch (final UnsupportedEncodingException e) {
+            return new String(get());
+        }
+    }
+
+    @Override
+    public void delete() {
+        synchronized (this) {
+            deleted = true;
+            for (final ByteBuffer chunk : chunks) {
+                // chunks still viewed by open streams must not be handed to other requests
+                if (openStreams > 0) {
+                    pool.discard(chunk);
+                } else {
+                    pool.release(chunk);
+                }
+            }
+            chunks.clear();
+            for (final FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    // ignore, the stream fails on the next read anyway
+                }
+            }
+            channels.clear();
+        }
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (final IOException e) {
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    @Override
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    @Override
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public String getContentType() {
+        return contentType;
+    }
+
+    @Override
+    public String getName() {
+        return fileName;
+    }
+
+    @Override
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @Override
+    public void setFieldName(final String name) {
+        this.fieldName = name;
+    }
+
+    @Override
+    public boolean isFormField() {
+        return formField;
+    }
+
+    @Override
+    public void setFormField(final boolean state) {
+        this.formField = state;
+    }
+
+    @Override
+    public FileItemHeaders getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public void setHeaders(final FileItemHeaders headers) {
+        this.headers = headers;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.File;
+
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
+
+/**
+ * The <code>BufferedFileItemFactory</code> creates {@link BufferedFileItem}s
+ * for the parts of a multipart request.
+ */
+final class BufferedFileItemFactory implements FileItemFactory {
+
+    private final UploadBufferPool pool;
+
+    private final int threshold;
+
+    private final File repository;
+
+    /**
+     * @param pool The pool of buffers for parts kept in memory
+     * @param threshold The size above which parts are spooled to a file
+     * @param repository The directory for the files or <code>null</code>
+     *      for the default temporary directory
+     */
+    BufferedFileItemFactory(final UploadBufferPool pool, final int threshold, final File repository) {
+        this.pool = pool;
+        this.threshold = threshold;
+        this.repository = repository;
+    }
+
+    @Override
+    public FileItem createItem(
+            final String fieldName, final String contentType, final boolean isFormField, final String fileName) {
+        return new BufferedFileItem(pool, threshold, repository, fieldName, contentType, isFormField, fileName);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The <code>ByteBufferInputStream</code> reads a sequence of buffers
+ * without copying them, for example the chunks of a part kept in memory.
+ */
+final class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer[] buffers;
+
+    private int current;
+
+    /**
+     * @param buffers The buffers, whose content between position and limit
+     *      is read; the buffers are consumed
+     */
+    ByteBufferInputStream(final ByteBuffer... buffers) {
+        this.buffers = buffers;
+    }
+
+    private ByteBuffer next() {
+        while (current < buffers.length) {
+            if (buffers[current].hasRemaining()) {
+                return buffers[current];
+            }
+            // drop exhausted buffers
+            buffers[current++] = null;
+        }
+        return null;
+    }
+
+    @Override
+    public int read() {
+        final ByteBuffer buffer = next();
+        return (buffer == null) ? -1 : (buffer.get() & 0xff);
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        ByteBuffer buffer;
+        while (read < len && (buffer = next()) != null) {
+            final int n = Math.min(len - read, buffer.remaining());
+            buffer.get(b, off + read, n);
+            read += n;
+        }
+        return (read == 0) ? -1 : read;
+    }
+
+    @Override
+    public long skip(final long n) {
+        long skipped = 0;
+        ByteBuffer buffer;
+        while (skipped < n && (buffer = next()) != null) {
+            final int step = (int) Math.min(n - skipped, buffer.remaining());
+            buffer.position(buffer.position() + step);
+            skipped += step;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        long available = 0;
+        for (int i = current; i < buffers.length; i++) {
+            available += buffers[i].remaining();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, available);
+    }
+
+    @Override
+    public void close() {
+        for (int i = current; i < buffers.length; i++) {
+            buffers[i] = null;
+        }
+        current = buffers.length;
+    }
+}
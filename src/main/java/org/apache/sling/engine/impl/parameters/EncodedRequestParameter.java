@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * The <code>EncodedRequestParameter</code> is a parameter of a query string
+ * or a <code>application/x-www-form-urlencoded</code> request body. It keeps
+ * a view of the already unescaped bytes of the value, which is only decoded
+ * into a string on first access with the encoding in effect at that time.
+ * Changing the encoding thus does not require recoding the value.
+ */
+class EncodedRequestParameter extends AbstractRequestParameter {
+
+    private final byte[] data;
+
+    private final int offset;
+
+    private final int length;
+
+    private byte[] content;
+
+    private String value;
+
+    EncodedRequestParameter(String name, byte[] data, int offset, int length, String encoding) {
+        super(name, encoding);
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    void setEncoding(String encoding) {
+        if (!encoding.equalsIgnoreCase(getEncoding())) {
+            this.value = null;
+        }
+        super.setEncoding(encoding);
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#get()
+     */
+    public byte[] get() {
+        if (content == null) {
+            content = Arrays.copyOfRange(data, offset, offset + length);
+        }
+        return content;
+    }
+
+    /**
+     * @return true if the value only consists of US-ASCII characters and
+     *      thus decodes to the same string with any common encoding
+     */
+    boolean isAscii() {
+        for (int i = offset; i < offset + length; i++) {
+            if (data[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getContentType()
+     */
+    public String getContentType() {
+        // none known for www-form-encoded parameters
+        return null;
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getInputStream()
+     */
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(data, offset, length);
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getFileName()
+     */
+    public String getFileName() {
+        // no original file name
+        return null;
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getSize()
+     */
+    public long getSize() {
+        return length;
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getString()
+     */
+    public String getString() {
+        if (value == null) {
+            try {
+                value = getString(getEncoding());
+            } catch (UnsupportedEncodingException uee) {
+                throw new SlingUnsupportedEncodingException(uee);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#getString(java.lang.String)
+     */
+    public String getString(String encoding) throws UnsupportedEncodingException {
+        return new String(data, offset, length, encoding);
+    }
+
+    /**
+     * @see org.apache.sling.api.request.RequestParameter#isFormField()
+     */
+    public boolean isFormField() {
+        // www-form-encoded are always form fields
+        return true;
+    }
+
+    public String toString() {
+        return this.getString();
+    }
+}
@@ -18,11 +18,12 @@
  */
 package org.apache.sling.engine.impl.parameters;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 
-import org.apache.commons.fileupload.disk.DiskFileItem;
+import org.apache.commons.fileupload.FileItem;
 
 /**
  * The <code>MultipartRequestParameter</code> represents a request parameter
@@ -34,13 +35,13 @@ import org.apache.commons.fileupload.disk.DiskFileItem;
  */
 public class MultipartRequestParameter extends AbstractRequestParameter {
 
-    private final DiskFileItem delegatee;
+    private final FileItem delegatee;
 
     private String encodedFileName;
 
     private String cachedValue;
 
-    public MultipartRequestParameter(DiskFileItem delegatee) {
+    public MultipartRequestParameter(FileItem delegatee) {
         super(delegatee.getFieldName(), null);
         this.delegatee = delegatee;
     }
@@ -49,10 +50,24 @@ public class MultipartRequestParameter extends AbstractRequestParameter {
         this.delegatee.delete();
     }
 
-    DiskFileItem getFileItem() {
+    FileItem getFileItem() {
         return this.delegatee;
     }
 
+    /**
+     * Writes the content of the parameter to a file, which for parts kept
+     * in a temporary file may be done without copying through the heap.
+     */
+    void write(File file) throws IOException {
+        try {
+            this.delegatee.write(file);
+        } catch (IOException ioe) {
+            throw ioe;
+        } catch (Exception e) {
+            throw new IOException("Cannot write " + getName() + " to " + file, e);
+        }
+    }
+
     @Override
     void setEncoding(String encoding) {
         super.setEncoding(encoding);
@@ -18,12 +18,17 @@
  */
 package org.apache.sling.engine.impl.parameters;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import jakarta.servlet.http.Part;
 import org.apache.sling.api.request.RequestParameter;
@@ -31,19 +36,57 @@ import org.apache.sling.api.request.RequestParameterMap;
 import org.slf4j.LoggerFactory;
 
 /**
- * The <code>ParameterMap</code> TODO
+ * The <code>ParameterMap</code> holds the request parameters by name in the
+ * order of their first occurrence.
+ * <p>
+ * The names are kept in insertion ordered arrays indexed by an open
+ * addressing hash table. The values of each name are kept in a list which
+ * grows by doubling, such that adding many values for the same name does
+ * not copy all values each time. The exact sized value arrays and the
+ * string values handed out are computed once on first access.
+ * <p>
+ * The map is built by a single thread and is read only afterwards.
  */
-public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> implements RequestParameterMap {
-
-    private static final long serialVersionUID = -3984737679401682171L;
+public class ParameterMap extends AbstractMap<String, RequestParameter[]> implements RequestParameterMap {
 
     static final int DEFAULT_MAX_PARAMS = 10000;
 
+    private static final int INITIAL_CAPACITY = 8;
+
     private static int maxParameters = DEFAULT_MAX_PARAMS;
 
+    /** Positions of the entries plus one, zero marks a free slot */
+    private int[] index = new int[INITIAL_CAPACITY * 2];
+
+    /** Names of the entries, null for entries removed by renaming */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    private int[] hashes = new int[INITIAL_CAPACITY];
+
+    /** Values of the entries, of which the first counts[i] are used */
+    private RequestParameter[][] values = new RequestParameter[INITIAL_CAPACITY][];
+
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    /** String values of the entries, computed on first access */
+    private String[][] strings = new String[INITIAL_CAPACITY][];
+
+    /** Number of used entry positions, including removed entries */
+    private int entries;
+
+    /** Number of entries not removed */
+    private int size;
+
+    /** All parameters in the order they have been added */
+    private RequestParameter[] parameters = new RequestParameter[INITIAL_CAPACITY];
+
+    private int parameterCount;
+
+    private List<RequestParameter> requestParameters;
+
     private Map<String, String[]> stringParameterMap;
 
-    private List<RequestParameter> requestParameters = new ArrayList<RequestParameter>();
+    private Set<Map.Entry<String, RequestParameter[]>> entrySet;
 
     static void setMaxParameters(final int maxParameters) {
         ParameterMap.maxParameters = (maxParameters > 0) ? maxParameters : -1;
@@ -55,23 +98,33 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
     }
 
     public RequestParameter[] getValues(String name) {
-        return super.get(name);
+        final int entry = find(name);
+        return (entry >= 0) ? values(entry) : null;
     }
 
     void renameParameter(String oldName, String newName) {
-        RequestParameter[] params = super.remove(oldName);
+        final int entry = find(oldName);
+        if (entry < 0) {
+            return;
+        }
+
+        final RequestParameter[] params = values(entry);
+        names[entry] = null;
+        values[entry] = null;
+        strings[entry] = null;
+        size--;
 
         for (RequestParameter param : params) {
             ((AbstractRequestParameter) param).setName(newName);
         }
 
-        super.put(newName, params);
+        setParameters(newName, params);
     }
 
     void addParameter(RequestParameter parameter, boolean prependNew) {
 
         // check number of parameters
-        if (this.requestParameters.size() == maxParameters) {
+        if (this.parameterCount == maxParameters) {
             // TODO: how to handle this situation ?? just ignore or throw or what ??
             LoggerFactory.getLogger(Util.class)
                     .warn("Too many name/value pairs, stopped processing after " + maxParameters + " entries");
@@ -80,23 +133,83 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
 
         // map of parameters
         final String name = parameter.getName();
-        RequestParameter[] current = this.get(name);
-        if (current == null) {
-            super.put(name, new RequestParameter[] {parameter});
+        final int entry = find(name);
+        if (entry < 0) {
+            add(name, new RequestParameter[] {parameter});
         } else {
-            RequestParameter[] ppn = new RequestParameter[current.length + 1];
-            System.arraycopy(current, 0, ppn, prependNew ? 1 : 0, current.length);
-            ppn[prependNew ? 0 : current.length] = parameter;
-
-            super.put(name, ppn);
+            RequestParameter[] current = values[entry];
+            final int count = counts[entry];
+            if (count == current.length) {
+                current = Arrays.copyOf(current, Math.max(count * 2, INITIAL_CAPACITY));
+                values[entry] = current;
+            }
+            if (prependNew) {
+                System.arraycopy(current, 0, current, 1, count);
+                current[0] = parameter;
+            } else {
+                current[count] = parameter;
+            }
+            counts[entry] = count + 1;
+            strings[entry] = null;
         }
 
         // list of parameters
-        this.requestParameters.add(parameter);
+        if (parameterCount == parameters.length) {
+            parameters = Arrays.copyOf(parameters, parameterCount * 2);
+        }
+        parameters[parameterCount++] = parameter;
+        requestParameters = null;
     }
 
     void setParameters(String name, RequestParameter[] parameters) {
-        super.put(name, parameters);
+        final int entry = find(name);
+        if (entry < 0) {
+            add(name, parameters);
+        } else {
+            values[entry] = parameters;
+            counts[entry] = parameters.length;
+            strings[entry] = null;
+        }
+    }
+
+    // ---------- Map
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return (key instanceof String) && find((String) key) >= 0;
+    }
+
+    @Override
+    public RequestParameter[] get(Object key) {
+        return (key instanceof String) ? getValues((String) key) : null;
+    }
+
+    @Override
+    public Set<Map.Entry<String, RequestParameter[]>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Map.Entry<String, RequestParameter[]>>() {
+                @Override
+                public Iterator<Map.Entry<String, RequestParameter[]>> iterator() {
+                    return new EntryIterator<RequestParameter[]>() {
+                        @Override
+                        RequestParameter[] value(final int entry) {
+                            return values(entry);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
     }
 
     // ---------- String parameter support
@@ -106,17 +219,19 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
         return (param != null) ? param.getString() : null;
     }
 
+    /**
+     * @param name The parameter name
+     * @return a copy of the string values, which the caller may modify, or
+     *      null if there is no parameter of that name
+     */
     public String[] getStringValues(final String name) {
-        return toStringArray(getValues(name));
+        final int entry = find(name);
+        return (entry >= 0) ? strings(entry).clone() : null;
     }
 
     public Map<String, String[]> getStringParameterMap() {
         if (this.stringParameterMap == null) {
-            LinkedHashMap<String, String[]> pm = new LinkedHashMap<String, String[]>();
-            for (Map.Entry<String, RequestParameter[]> ppmEntry : entrySet()) {
-                pm.put(ppmEntry.getKey(), toStringArray(ppmEntry.getValue()));
-            }
-            this.stringParameterMap = Collections.unmodifiableMap(pm);
+            this.stringParameterMap = new StringParameterMap();
         }
         return stringParameterMap;
     }
@@ -145,8 +260,11 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
 
     // ---------- Order Request Parameter access
 
-    public List<RequestParameter> getRequestParameterList() {
-        return Collections.unmodifiableList(requestParameters);
+    public synchronized List<RequestParameter> getRequestParameterList() {
+        if (requestParameters == null) {
+            requestParameters = Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(parameters, parameterCount)));
+        }
+        return requestParameters;
     }
 
     // ---------- Prohibited Write Access --------------------------------------
@@ -193,6 +311,101 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
 
     // ---------- internal
 
+    private static int hash(final String name) {
+        final int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param name The name
+     * @return the position of the entry or -1 if there is none
+     */
+    private int find(final String name) {
+        final int hash = hash(name);
+        final int mask = index.length - 1;
+        for (int slot = hash & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+            final int entry = index[slot] - 1;
+            if (hashes[entry] == hash && name.equals(names[entry])) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private void add(final String name, final RequestParameter[] params) {
+        if (entries == names.length) {
+            // compact removed entries or grow
+            resize((size >= entries / 2) ? entries * 2 : entries);
+        }
+        final int entry = entries++;
+        names[entry] = name;
+        hashes[entry] = hash(name);
+        values[entry] = params;
+        counts[entry] = params.length;
+        insert(entry);
+        size++;
+    }
+
+    private void insert(final int entry) {
+        final int mask = index.length - 1;
+        int slot = hashes[entry] & mask;
+        while (index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index[slot] = entry + 1;
+    }
+
+    private void resize(final int capacity) {
+        final String[] oldNames = names;
+        final int[] oldHashes = hashes;
+        final RequestParameter[][] oldValues = values;
+        final int[] oldCounts = counts;
+        final String[][] oldStrings = strings;
+        final int oldEntries = entries;
+
+        index = new int[capacity * 2];
+        names = new String[capacity];
+        hashes = new int[capacity];
+        values = new RequestParameter[capacity][];
+        counts = new int[capacity];
+        strings = new String[capacity][];
+        entries = 0;
+        for (int i = 0; i < oldEntries; i++) {
+            if (oldNames[i] != null) {
+                names[entries] = oldNames[i];
+                hashes[entries] = oldHashes[i];
+                values[entries] = oldValues[i];
+                counts[entries] = oldCounts[i];
+                strings[entries] = oldStrings[i];
+                insert(entries++);
+            }
+        }
+    }
+
+    /**
+     * @param entry The position of the entry
+     * @return the values of the entry, trimmed to their number on first access
+     */
+    private synchronized RequestParameter[] values(final int entry) {
+        RequestParameter[] params = values[entry];
+        if (params.length != counts[entry]) {
+            params = Arrays.copyOf(params, counts[entry]);
+            values[entry] = params;
+        }
+        return params;
+    }
+
+    /**
+     * @param entry The position of the entry
+     * @return the string values of the entry, computed on first access
+     */
+    private synchronized String[] strings(final int entry) {
+        if (strings[entry] == null) {
+            strings[entry] = toStringArray(values(entry));
+        }
+        return strings[entry];
+    }
+
     private static String[] toStringArray(final RequestParameter[] params) {
         if (params == null) {
             return null;
@@ -204,4 +417,83 @@ public class ParameterMap extends LinkedHashMap<String, RequestParameter[]> impl
         }
         return ps;
     }
+
+    /**
+     * Iterates the entries not removed in insertion order.
+     */
+    private abstract class EntryIterator<V> implements Iterator<Map.Entry<String, V>> {
+
+        private int next = skipRemoved(0);
+
+        abstract V value(int entry);
+
+        private int skipRemoved(int entry) {
+            while (entry < entries && names[entry] == null) {
+                entry++;
+            }
+            return entry;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries;
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final int entry = next;
+            next = skipRemoved(entry + 1);
+            return new AbstractMap.SimpleImmutableEntry<>(names[entry], value(entry));
+        }
+    }
+
+    /**
+     * Unmodifiable view of the string values of the parameters.
+     */
+    private final class StringParameterMap extends AbstractMap<String, String[]> {
+
+        private final Set<Map.Entry<String, String[]>> entrySet = new AbstractSet<Map.Entry<String, String[]>>() {
+            @Override
+            public Iterator<Map.Entry<String, String[]>> iterator() {
+                return new EntryIterator<String[]>() {
+                    @Override
+                    String[] value(final int entry) {
+                        return strings(entry);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return ParameterMap.this.containsKey(key);
+        }
+
+        @Override
+        public String[] get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            final int entry = find((String) key);
+            return (entry >= 0) ? strings(entry) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, String[]>> entrySet() {
+            return entrySet;
+        }
+    }
 }
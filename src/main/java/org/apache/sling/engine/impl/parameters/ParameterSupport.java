@@ -32,11 +32,13 @@ import java.util.Map;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletRequestWrapper;
 import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.FileItemFactory;
 import org.apache.commons.fileupload.FileUploadException;
 import org.apache.commons.fileupload.RequestContext;
-import org.apache.commons.fileupload.disk.DiskFileItem;
 import org.apache.commons.fileupload.disk.DiskFileItemFactory;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
+import org.apache.sling.api.SlingIOException;
 import org.apache.sling.api.request.RequestParameter;
 import org.apache.sling.api.request.RequestParameterMap;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -78,6 +80,12 @@ public class ParameterSupport {
     /** value of upload mode header/parameter indicating streaming is requested */
     public static final String STREAM_UPLOAD = "stream";
 
+    /** upload storage keeping parts on the heap or in temporary files */
+    static final String STORAGE_DISK = "disk";
+
+    /** upload storage keeping parts in pooled buffers or temporary files */
+    static final String STORAGE_BUFFER = "buffer";
+
     /** default log */
     private final Logger log = LoggerFactory.getLogger(getClass());
 
@@ -117,12 +125,47 @@ public class ParameterSupport {
      */
     private static long maxFileCount = 50;
 
+    /**
+     * Whether single parameter values are looked up in the query string
+     * before parsing the request body.
+     */
+    private static boolean lazyParsing = false;
+
+    /**
+     * The pool of buffers for parts of multipart requests if the buffer
+     * upload storage is used, <code>null</code> for the disk upload storage.
+     */
+    private static UploadBufferPool uploadBufferPool = null;
+
+    /**
+     * The budget charged with the parts of multipart requests, <code>null</code>
+     * if the parts are not accounted for.
+     */
+    private static UploadBudget uploadBudget = null;
+
     private final HttpServletRequest servletRequest;
 
     private ParameterMap postParameterMap;
 
+    /**
+     * The parameters of the query string parsed ahead of the other
+     * parameters in lazy parsing mode.
+     */
+    private ParameterMap queryParameterMap;
+
+    private boolean queryParameterMapValid;
+
+    /**
+     * The form encoding set by the query string, <code>null</code> if it may
+     * be set by the request body.
+     */
+    private String queryFormEncoding;
+
     private boolean requestDataUsed;
 
+    /** The parts to be deleted at the end of the request */
+    private List<FileItem> uploadItems;
+
     /**
      * Returns the {@code ParameterSupport} instance supporting request
      * parameter for the give {@code request}. For a single request only a
@@ -163,19 +206,64 @@ public class ParameterSupport {
             final long maxFileSize,
             final int fileSizeThreshold,
             final boolean checkForAdditionalParameters,
-            final long maxFileCount) {
+            final long maxFileCount,
+            final boolean lazyParsing,
+            final String uploadStorage,
+            final long uploadBufferPoolSize,
+            final UploadBudget uploadBudget) {
         ParameterSupport.maxRequestSize = (maxRequestSize > 0) ? maxRequestSize : -1;
         ParameterSupport.location = (location != null) ? new File(location) : null;
         ParameterSupport.maxFileSize = (maxFileSize > 0) ? maxFileSize : -1;
         ParameterSupport.fileSizeThreshold = (fileSizeThreshold > 0) ? fileSizeThreshold : 256000;
         ParameterSupport.checkForAdditionalParameters = checkForAdditionalParameters;
         ParameterSupport.maxFileCount = (maxFileCount > 0) ? maxFileCount : 50;
+        ParameterSupport.lazyParsing = lazyParsing;
+        ParameterSupport.uploadBufferPool =
+                STORAGE_BUFFER.equals(uploadStorage) ? new UploadBufferPool(uploadBufferPoolSize) : null;
+        ParameterSupport.uploadBudget = uploadBudget;
+    }
+
+    /**
+     * @return the configured directory for temporary files of uploads or
+     *         <code>null</code> for the default temporary directory
+     */
+    static File getLocation() {
+        return ParameterSupport.location;
+    }
+
+    /**
+     * Deletes the parts of the request, if the {@code ParameterSupport} of
+     * the request uses the buffer upload storage or an upload budget, which
+     * releases them from the budget. This is called at the end of the
+     * request.
+     *
+     * @param request The {@code HttpServletRequest}
+     */
+    public static void dispose(final HttpServletRequest request) {
+        final Object instance = request.getAttribute(ATTR_NAME);
+        if (instance instanceof ParameterSupport) {
+            ((ParameterSupport) instance).dispose();
+        }
     }
 
     private ParameterSupport(HttpServletRequest servletRequest) {
         this.servletRequest = servletRequest;
     }
 
+    /**
+     * Deletes the parts stored with the buffer upload storage or charged
+     * against the upload budget.
+     */
+    public void dispose() {
+        final List<FileItem> items = this.uploadItems;
+        if (items != null) {
+            this.uploadItems = null;
+            for (final FileItem item : items) {
+                item.delete();
+            }
+        }
+    }
+
     private HttpServletRequest getServletRequest() {
         return servletRequest;
     }
@@ -185,6 +273,10 @@ public class ParameterSupport {
     }
 
     public String getParameter(String name) {
+        final RequestParameter param = getQueryParameter(name);
+        if (param != null) {
+            return param.getString();
+        }
         return getRequestParameterMapInternal().getStringValue(name);
     }
 
@@ -216,6 +308,10 @@ public class ParameterSupport {
     }
 
     public RequestParameter getRequestParameter(String name) {
+        final RequestParameter param = getQueryParameter(name);
+        if (param != null) {
+            return param;
+        }
         return getRequestParameterMapInternal().getValue(name);
     }
 
@@ -239,20 +335,94 @@ public class ParameterSupport {
         return getRequestParameterMapInternal().getRequestParameterList();
     }
 
+    /**
+     * Returns the first value of a parameter from the query string if lazy
+     * parsing is enabled and the request body has not been parsed yet. As
+     * the query string parameters come first, this is the value the
+     * complete parameters would return as long as parsing the request body
+     * cannot change its encoding: either the query string sets the form
+     * encoding or name and value are US-ASCII.
+     *
+     * @param name The name of the parameter
+     * @return The parameter or <code>null</code> if the complete parameters
+     *         have to be consulted
+     */
+    private RequestParameter getQueryParameter(final String name) {
+        if (!lazyParsing || this.postParameterMap != null || !isAscii(name)) {
+            return null;
+        }
+
+        if (this.queryParameterMap == null) {
+            final String query = getServletRequest().getQueryString();
+            if (query == null) {
+                return null;
+            }
+            final ParameterMap parameters = new ParameterMap();
+            this.queryParameterMapValid = parseQueryString(query, getParameterEncoding(), parameters);
+            this.queryParameterMap = parameters;
+            this.queryFormEncoding = Util.getFormEncoding(parameters);
+        }
+
+        // a streamed multipart request provides the parts iterator once the parameters are parsed
+        if ("POST".equals(getServletRequest().getMethod())
+                && ServletFileUpload.isMultipartContent(getMultiPartContext())
+                && isStreamed(this.queryParameterMap, getServletRequest())) {
+            return null;
+        }
+
+        final RequestParameter param = this.queryParameterMap.getValue(name);
+        if (param instanceof EncodedRequestParameter) {
+            final EncodedRequestParameter encoded = (EncodedRequestParameter) param;
+            if (this.queryFormEncoding != null) {
+                encoded.setEncoding(this.queryFormEncoding);
+                return encoded;
+            } else if (encoded.isAscii()) {
+                return encoded;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAscii(final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getParameterEncoding() {
+        // SLING-508 Try to force servlet container to decode parameters
+        // as ISO-8859-1 such that we can recode later
+        String encoding = getServletRequest().getCharacterEncoding();
+        if (encoding == null) {
+            encoding = Util.ENCODING_DIRECT;
+            try {
+                getServletRequest().setCharacterEncoding(encoding);
+            } catch (UnsupportedEncodingException uee) {
+                throw new SlingUnsupportedEncodingException(uee);
+            }
+        }
+        return encoding;
+    }
+
+    private boolean parseQueryString(final String query, final String encoding, final ParameterMap parameters) {
+        try {
+            Util.parseQueryString(Util.fromIdentityEncodedString(query), encoding, parameters, false);
+            return true;
+        } catch (IllegalArgumentException e) {
+            this.log.error("getRequestParameterMapInternal: Error parsing request", e);
+            return false;
+        } catch (UnsupportedEncodingException e) {
+            throw new SlingUnsupportedEncodingException(e);
+        }
+    }
+
     private ParameterMap getRequestParameterMapInternal() {
         if (this.postParameterMap == null) {
 
-            // SLING-508 Try to force servlet container to decode parameters
-            // as ISO-8859-1 such that we can recode later
-            String encoding = getServletRequest().getCharacterEncoding();
-            if (encoding == null) {
-                encoding = Util.ENCODING_DIRECT;
-                try {
-                    getServletRequest().setCharacterEncoding(encoding);
-                } catch (UnsupportedEncodingException uee) {
-                    throw new SlingUnsupportedEncodingException(uee);
-                }
-            }
+            final String encoding = getParameterEncoding();
 
             // SLING-152 Get parameters from the servlet Container
             ParameterMap parameters = new ParameterMap();
@@ -260,19 +430,23 @@ public class ParameterSupport {
             // fallback is only used if this request has been started by a service call
             boolean useFallback = getServletRequest().getAttribute(MARKER_IS_SERVICE_PROCESSING) != null;
             boolean addContainerParameters = false;
+            UploadBudgetExceededException uploadRejected = null;
             // Query String
             final String query = getServletRequest().getQueryString();
             if (query != null) {
-                try {
-                    InputStream input = Util.toInputStream(query);
-                    Util.parseQueryString(input, encoding, parameters, false);
+                final boolean valid;
+                if (this.queryParameterMap != null) {
+                    // already parsed in lazy parsing mode
+                    for (final RequestParameter param : this.queryParameterMap.getRequestParameterList()) {
+                        parameters.addParameter(param, false);
+                    }
+                    valid = this.queryParameterMapValid;
+                    this.queryParameterMap = null;
+                } else {
+                    valid = parseQueryString(query, encoding, parameters);
+                }
+                if (valid) {
                     addContainerParameters = checkForAdditionalParameters;
-                } catch (IllegalArgumentException e) {
-                    this.log.error("getRequestParameterMapInternal: Error parsing request", e);
-                } catch (UnsupportedEncodingException e) {
-                    throw new SlingUnsupportedEncodingException(e);
-                } catch (IOException e) {
-                    this.log.error("getRequestParameterMapInternal: Error parsing request", e);
                 }
                 useFallback = false;
             } else {
@@ -323,7 +497,11 @@ public class ParameterSupport {
                         addContainerParameters = false;
                         useFallback = false;
                     } else {
-                        this.parseMultiPartPost(parameters);
+                        try {
+                            this.parseMultiPartPost(parameters);
+                        } catch (final UploadBudgetExceededException e) {
+                            uploadRejected = e;
+                        }
                         this.requestDataUsed = true;
                         addContainerParameters = checkForAdditionalParameters;
                         useFallback = false;
@@ -339,6 +517,11 @@ public class ParameterSupport {
             Util.fixEncoding(parameters);
 
             this.postParameterMap = parameters;
+
+            // the parameters without the parts are kept for handling the error
+            if (uploadRejected != null) {
+                throw new SlingIOException(uploadRejected);
+            }
         }
         return this.postParameterMap;
     }
@@ -415,27 +598,53 @@ public class ParameterSupport {
         };
     }
 
-    private void parseMultiPartPost(ParameterMap parameters) {
+    private void parseMultiPartPost(ParameterMap parameters) throws UploadBudgetExceededException {
         // Create a new file upload handler
         ServletFileUpload upload = new ServletFileUpload();
         upload.setSizeMax(ParameterSupport.maxRequestSize);
         upload.setFileSizeMax(ParameterSupport.maxFileSize);
-        upload.setFileItemFactory(
-                new DiskFileItemFactory(ParameterSupport.fileSizeThreshold, ParameterSupport.location));
+        final UploadBufferPool pool = ParameterSupport.uploadBufferPool;
+        FileItemFactory factory;
+        if (pool != null) {
+            factory = new BufferedFileItemFactory(pool, ParameterSupport.fileSizeThreshold, ParameterSupport.location);
+        } else {
+            factory = new DiskFileItemFactory(ParameterSupport.fileSizeThreshold, ParameterSupport.location);
+        }
+        final UploadBudget budget = ParameterSupport.uploadBudget;
+        if (budget != null) {
+            factory = new BudgetFileItemFactory(factory, budget, ParameterSupport.fileSizeThreshold);
+        }
+        upload.setFileItemFactory(factory);
         upload.setFileCountMax(ParameterSupport.maxFileCount);
         final RequestContext rc = this.getMultiPartContext();
 
-        // Parse the request
-        List<?> /* FileItem */ items = null;
+        if (budget != null) {
+            budget.admit();
+        }
+
+        // Parse the request, the items parsed so far are deleted on failure
+        List<FileItem> items = null;
         try {
             items = upload.parseRequest(rc);
         } catch (FileUploadException fue) {
+            for (Throwable cause = fue; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UploadBudgetExceededException) {
+                    throw (UploadBudgetExceededException) cause;
+                }
+            }
             this.log.error("parseMultiPartPost: Error parsing request", fue);
+        } finally {
+            if (budget != null) {
+                budget.complete();
+            }
         }
 
         if (items != null && items.size() > 0) {
-            for (Iterator<?> ii = items.iterator(); ii.hasNext(); ) {
-                DiskFileItem fileItem = (DiskFileItem) ii.next();
+            // the budget is only released once the temporary files are deleted
+            if (pool != null || budget != null) {
+                this.uploadItems = items;
+            }
+            for (FileItem fileItem : items) {
                 RequestParameter pp = new MultipartRequestParameter(fileItem);
                 parameters.addParameter(pp, false);
             }
@@ -18,8 +18,12 @@
  */
 package org.apache.sling.engine.impl.parameters;
 
+import javax.management.NotCompliantMBeanException;
+
 import java.io.File;
 import java.io.IOException;
+import java.util.Dictionary;
+import java.util.Hashtable;
 
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
@@ -28,10 +32,16 @@ import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletRequest;
 import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingIOException;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.engine.jmx.UploadBudgetMBean;
 import org.apache.sling.settings.SlingSettingsService;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceRegistration;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.propertytypes.ServiceDescription;
 import org.osgi.service.component.propertytypes.ServiceRanking;
@@ -39,7 +49,9 @@ import org.osgi.service.component.propertytypes.ServiceVendor;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.osgi.service.metatype.annotations.Option;
 import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardContextSelect;
+import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardFilterAsyncSupported;
 import org.osgi.service.servlet.whiteboard.propertytypes.HttpWhiteboardFilterPattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,6 +59,7 @@ import org.slf4j.LoggerFactory;
 @Component(name = RequestParameterSupportConfigurer.PID, service = Filter.class)
 @HttpWhiteboardContextSelect("(osgi.http.whiteboard.context.name=org.apache.sling)")
 @HttpWhiteboardFilterPattern("/")
+@HttpWhiteboardFilterAsyncSupported
 @ServiceDescription("Filter for request parameter support")
 @ServiceVendor("The Apache Software Foundation")
 @ServiceRanking(Integer.MAX_VALUE)
@@ -62,7 +75,24 @@ public class RequestParameterSupportConfigurer implements Filter {
         if (request instanceof HttpServletRequest
                 && !(request instanceof ParameterSupportHttpServletRequestWrapper)
                 && !(request instanceof SlingJakartaHttpServletRequest)) {
-            chain.doFilter(ParameterSupport.getParameterSupportRequestWrapper((HttpServletRequest) request), response);
+            try {
+                chain.doFilter(
+                        ParameterSupport.getParameterSupportRequestWrapper((HttpServletRequest) request), response);
+            } catch (final SlingIOException e) {
+                // uploads rejected outside of the Sling request processing
+                if (!(e.getCause() instanceof UploadBudgetExceededException) || response.isCommitted()) {
+                    throw e;
+                }
+                log.debug("doFilter: {}", e.getCause().getMessage());
+                ((HttpServletResponse) response)
+                        .sendError(
+                                HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                                e.getCause().getMessage());
+            } finally {
+                if (!request.isAsyncStarted()) {
+                    ParameterSupport.dispose((HttpServletRequest) request);
+                }
+            }
         } else {
             chain.doFilter(request, response);
         }
@@ -128,6 +158,58 @@ public class RequestParameterSupportConfigurer implements Filter {
                 description =
                         "The maximum number of files allowed for multipart/form-data requests in a single request. The default is 50.")
         long request_max_file_count() default 50;
+
+        @AttributeDefinition(
+                name = "Lazy Parameter Parsing",
+                description = "Enable this to answer requests for a single parameter value from the query string "
+                        + "without parsing the request body, if the value is not affected by the request body. "
+                        + "The request body is parsed once another parameter or all parameters are requested. "
+                        + "The request body can then be read by the servlet before, in which case its "
+                        + "parameters are missing.")
+        boolean sling_default_parameter_lazy() default false;
+
+        @AttributeDefinition(
+                name = "Upload Storage",
+                description = "How the parts of multipart/form-data requests are stored. With 'disk' parts up to "
+                        + "the file save threshold are kept on the heap and larger parts are written to temporary "
+                        + "files. With 'buffer' parts up to the threshold are kept in pooled direct buffers and "
+                        + "larger parts are spooled to temporary files. The parts are then deleted at the end of "
+                        + "the request. The default is 'disk'.",
+                options = {
+                    @Option(label = "Disk", value = ParameterSupport.STORAGE_DISK),
+                    @Option(label = "Buffer", value = ParameterSupport.STORAGE_BUFFER)
+                })
+        String file_storage() default ParameterSupport.STORAGE_DISK;
+
+        @AttributeDefinition(
+                name = "Upload Buffer Pool Size",
+                description = "The maximum number of bytes of direct buffers used by the 'buffer' upload storage. "
+                        + "Parts are kept in heap buffers once all direct buffers are in use. The default is 16MB.")
+        long file_buffer_pool() default 16 * 1024 * 1024;
+
+        @AttributeDefinition(
+                name = "Upload Memory Budget",
+                description = "The maximum number of bytes of multipart/form-data parts kept in memory across all "
+                        + "requests. New uploads wait or are rejected with status 503 while the budget is "
+                        + "exhausted, uploads exceeding it while their parts are stored are rejected. The default "
+                        + "is -1, which means unlimited.")
+        long file_budget_memory() default -1;
+
+        @AttributeDefinition(
+                name = "Upload Disk Budget",
+                description = "The maximum number of bytes of multipart/form-data parts written to temporary files "
+                        + "across all requests. New uploads wait or are rejected with status 503 while the budget "
+                        + "is exhausted, uploads exceeding it while their parts are stored are rejected. While an "
+                        + "upload budget is set the parts are deleted at the end of the request. The default is -1, which "
+                        + "means unlimited.")
+        long file_budget_disk() default -1;
+
+        @AttributeDefinition(
+                name = "Upload Budget Wait",
+                description = "The time in milliseconds a new upload waits for an exhausted upload budget to be "
+                        + "released by other requests before it is rejected. The default is 0, which rejects it "
+                        + "immediately.")
+        long file_budget_wait() default 0;
     }
 
     static final String PID = "org.apache.sling.engine.parameters";
@@ -138,8 +220,10 @@ public class RequestParameterSupportConfigurer implements Filter {
     @Reference
     private SlingSettingsService settignsService;
 
+    private volatile ServiceRegistration<UploadBudgetMBean> budgetRegistration;
+
     @Activate
-    private void configure(final Config config) {
+    private void configure(final BundleContext bundleContext, final Config config) throws NotCompliantMBeanException {
         final String fixEncoding = config.sling_default_parameter_encoding();
         final int maxParams = config.sling_default_max_parameters();
         final long maxRequestSize = config.request_max();
@@ -157,8 +241,17 @@ public class RequestParameterSupportConfigurer implements Filter {
             log.info("Tempory File Creation Threshold: {}", fileSizeThreshold);
             log.info("Check for additional container parameters: {}", checkAddParameters);
             log.info("Maximum File Count: {}", config.request_max_file_count());
+            log.info("Lazy parameter parsing: {}", config.sling_default_parameter_lazy());
+            log.info("Upload Storage: {}", config.file_storage());
+            log.info("Upload Buffer Pool Size: {}", config.file_buffer_pool());
+            log.info("Upload Memory Budget: {}", config.file_budget_memory());
+            log.info("Upload Disk Budget: {}", config.file_budget_disk());
+            log.info("Upload Budget Wait: {}", config.file_budget_wait());
         }
 
+        final UploadBudget budget =
+                new UploadBudget(config.file_budget_memory(), config.file_budget_disk(), config.file_budget_wait());
+
         Util.setDefaultFixEncoding(fixEncoding);
         ParameterMap.setMaxParameters(maxParams);
         ParameterSupport.configure(
@@ -167,7 +260,25 @@ public class RequestParameterSupportConfigurer implements Filter {
                 maxFileSize,
                 fileSizeThreshold,
                 checkAddParameters,
-                config.request_max_file_count());
+                config.request_max_file_count(),
+                config.sling_default_parameter_lazy(),
+                config.file_storage(),
+                config.file_buffer_pool(),
+                budget);
+
+        if (bundleContext != null) {
+            final Dictionary<String, Object> props = new Hashtable<>();
+            props.put("jmx.objectname", "org.apache.sling:type=engine,service=UploadBudget");
+            this.budgetRegistration = bundleContext.registerService(UploadBudgetMBean.class, budget, props);
+        }
+    }
+
+    @Deactivate
+    private void deactivate() {
+        if (this.budgetRegistration != null) {
+            this.budgetRegistration.unregister();
+            this.budgetRegistration = null;
+        }
     }
 
     private String getFileLocation(String fileLocation) {
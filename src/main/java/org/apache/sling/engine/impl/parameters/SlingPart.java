@@ -18,6 +18,7 @@
  */
 package org.apache.sling.engine.impl.parameters;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -56,7 +57,12 @@ public class SlingPart implements Part {
 
     @Override
     public void write(String fileName) throws IOException {
-        throw new IOException("Unsupported yet");
+        File file = new File(fileName);
+        if (!file.isAbsolute()) {
+            final File location = ParameterSupport.getLocation();
+            file = new File((location != null) ? location : new File(System.getProperty("java.io.tmpdir")), fileName);
+        }
+        this.param.write(file);
     }
 
     @Override
@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import javax.management.NotCompliantMBeanException;
+import javax.management.StandardMBean;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.sling.engine.jmx.UploadBudgetMBean;
+
+/**
+ * The <code>UploadBudget</code> limits the bytes of multipart request parts
+ * kept in memory and spooled to disk across all requests.
+ * <p>
+ * A request is admitted for parsing as long as neither budget is exhausted,
+ * otherwise it waits for the parts of other requests to be released or is
+ * rejected. The bytes of the parts are charged while they are written, a
+ * part exceeding the budget fails the request without waiting, as the
+ * request already holds parts of the budget itself.
+ */
+final class UploadBudget extends StandardMBean implements UploadBudgetMBean {
+
+    private final long memoryBudget;
+
+    private final long diskBudget;
+
+    private final long maxWaitNanos;
+
+    private final AtomicLong memory = new AtomicLong();
+
+    private final AtomicLong disk = new AtomicLong();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition released = lock.newCondition();
+
+    /** number of waiting requests, only modified with the lock held */
+    private volatile int waiting;
+
+    private final LongAdder admitted = new LongAdder();
+
+    private final LongAdder queued = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param memoryBudget The maximum bytes kept in memory, unlimited if not positive
+     * @param diskBudget The maximum bytes spooled to disk, unlimited if not positive
+     * @param maxWaitMsec The time to wait for an exhausted budget, rejecting
+     *      immediately if not positive
+     */
+    UploadBudget(final long memoryBudget, final long diskBudget, final long maxWaitMsec)
+            throws NotCompliantMBeanException {
+        super(UploadBudgetMBean.class);
+        this.memoryBudget = memoryBudget > 0 ? memoryBudget : -1;
+        this.diskBudget = diskBudget > 0 ? diskBudget : -1;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMsec));
+    }
+
+    /**
+     * Admits a request for parsing its parts, waiting if the budget is
+     * exhausted. An admitted request must call {@link #complete()} once
+     * its parts have been parsed.
+     * @throws UploadBudgetExceededException if the request is rejected
+     */
+    void admit() throws UploadBudgetExceededException {
+        if (isExhausted() && !await()) {
+            throw reject("Upload budget exhausted");
+        }
+        inFlight.incrementAndGet();
+        admitted.increment();
+    }
+
+    /**
+     * Marks the parts of an admitted request as parsed.
+     */
+    void complete() {
+        inFlight.decrementAndGet();
+    }
+
+    private boolean isExhausted() {
+        return (memoryBudget > 0 && memory.get() >= memoryBudget) || (diskBudget > 0 && disk.get() >= diskBudget);
+    }
+
+    private boolean await() {
+        if (maxWaitNanos == 0) {
+            return false;
+        }
+        lock.lock();
+        try {
+            waiting++;
+            queued.increment();
+            long remaining = maxWaitNanos;
+            while (isExhausted()) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = released.awaitNanos(remaining);
+            }
+            return true;
+        } catch (final InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waiting--;
+            lock.unlock();
+        }
+    }
+
+    private UploadBudgetExceededException reject(final String message) {
+        rejected.increment();
+        return new UploadBudgetExceededException(message);
+    }
+
+    /**
+     * Charges bytes of a part kept in memory.
+     * @param bytes The number of bytes
+     * @throws UploadBudgetExceededException if the memory budget is exceeded
+     */
+    void addMemory(final long bytes) throws UploadBudgetExceededException {
+        if (!add(memory, memoryBudget, bytes)) {
+            throw reject("Upload memory budget of " + memoryBudget + " bytes exceeded");
+        }
+    }
+
+    /**
+     * Charges bytes of a part spooled to disk, including the bytes of the
+     * part kept in memory so far, which are released from the memory budget.
+     * @param fromMemory The number of bytes charged to memory so far
+     * @param bytes The number of bytes added
+     * @throws UploadBudgetExceededException if the disk budget is exceeded
+     */
+    void addDisk(final long fromMemory, final long bytes) throws UploadBudgetExceededException {
+        if (!add(disk, diskBudget, fromMemory + bytes)) {
+            throw reject("Upload disk budget of " + diskBudget + " bytes exceeded");
+        }
+        release(fromMemory, 0);
+    }
+
+    private static boolean add(final AtomicLong counter, final long budget, final long bytes) {
+        if (budget <= 0) {
+            counter.addAndGet(bytes);
+            return true;
+        }
+        long current;
+        do {
+            current = counter.get();
+            if (current + bytes > budget) {
+                return false;
+            }
+        } while (!counter.compareAndSet(current, current + bytes));
+        return true;
+    }
+
+    /**
+     * Releases bytes of parts which have been deleted or are no longer
+     * needed, signalling waiting requests.
+     * @param memoryBytes The bytes charged to memory
+     * @param diskBytes The bytes charged to disk
+     */
+    void release(final long memoryBytes, final long diskBytes) {
+        if (memoryBytes == 0 && diskBytes == 0) {
+            return;
+        }
+        memory.addAndGet(-memoryBytes);
+        disk.addAndGet(-diskBytes);
+        if (waiting > 0) {
+            lock.lock();
+            try {
+                released.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // ---------- UploadBudgetMBean
+
+    @Override
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    @Override
+    public long getMemoryInUse() {
+        return memory.get();
+    }
+
+    @Override
+    public long getDiskBudget() {
+        return diskBudget;
+    }
+
+    @Override
+    public long getDiskInUse() {
+        return disk.get();
+    }
+
+    @Override
+    public int getUploadsInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getAdmittedCount() {
+        return admitted.sum();
+    }
+
+    @Override
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    @Override
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public void resetStatistics() {
+        admitted.reset();
+        queued.reset();
+        rejected.reset();
+    }
+}
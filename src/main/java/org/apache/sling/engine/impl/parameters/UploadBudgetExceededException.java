@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.IOException;
+
+/**
+ * The <code>UploadBudgetExceededException</code> is thrown if a multipart
+ * request is not admitted by the {@link UploadBudget} or its parts exceed
+ * the budget while they are stored.
+ */
+public class UploadBudgetExceededException extends IOException {
+
+    private static final long serialVersionUID = -2735918310522467720L;
+
+    UploadBudgetExceededException(final String message) {
+        super(message);
+    }
+}
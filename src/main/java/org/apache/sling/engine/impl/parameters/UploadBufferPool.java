@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The <code>UploadBufferPool</code> hands out fixed size direct buffers
+ * for the parts of multipart requests kept in memory. Released buffers are
+ * reused. Once the configured number of direct buffers is in use, heap
+ * buffers are handed out instead, which bounds the direct memory used.
+ */
+final class UploadBufferPool {
+
+    static final int CHUNK_SIZE = 16 * 1024;
+
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger allocated = new AtomicInteger();
+
+    private final int maxChunks;
+
+    /**
+     * @param maxBytes The maximum number of bytes held in direct buffers
+     */
+    UploadBufferPool(final long maxBytes) {
+        this.maxChunks = (int) Math.min(Integer.MAX_VALUE, Math.max(0, maxBytes / CHUNK_SIZE));
+    }
+
+    /**
+     * @return an empty buffer of {@link #CHUNK_SIZE} bytes
+     */
+    ByteBuffer acquire() {
+        final ByteBuffer buffer = free.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (allocated.incrementAndGet() <= maxChunks) {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        allocated.decrementAndGet();
+        return ByteBuffer.allocate(CHUNK_SIZE);
+    }
+
+    /**
+     * Returns a buffer acquired from this pool. The buffer must not be
+     * used anymore.
+     * @param buffer The buffer
+     */
+    void release(final ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            buffer.clear();
+            free.offer(buffer);
+        }
+    }
+
+    /**
+     * Drops a buffer acquired from this pool, which may still be read, such
+     * that it is not reused. The buffer is freed once it is not referenced
+     * anymore.
+     * @param buffer The buffer
+     */
+    void discard(final ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            allocated.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of direct buffers allocated
+     */
+    int getAllocated() {
+        return allocated.get();
+    }
+
+    /**
+     * @return the number of direct buffers ready for reuse
+     */
+    int getFree() {
+        return free.size();
+    }
+}
@@ -18,11 +18,11 @@
  */
 package org.apache.sling.engine.impl.parameters;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -51,26 +51,11 @@ public class Util {
     private static final int INSIDE_NAME = BEFORE_NAME + 1;
 
     /** Parse state constant */
-    private static final int ESC_NAME = INSIDE_NAME + 1;
-
-    /** Parse state constant */
-    private static final int BEFORE_EQU = ESC_NAME + 1;
-
-    /** Parse state constant */
-    private static final int BEFORE_VALUE = BEFORE_EQU + 1;
+    private static final int BEFORE_VALUE = INSIDE_NAME + 1;
 
     /** Parse state constant */
     private static final int INSIDE_VALUE = BEFORE_VALUE + 1;
 
-    /** Parse state constant */
-    private static final int ESC_VALUE = INSIDE_VALUE + 1;
-
-    /** Parse state constant */
-    private static final int AFTER_VALUE = INSIDE_VALUE + 1;
-
-    /** Parse state constant */
-    private static final int BEFORE_SEP = AFTER_VALUE + 1;
-
     public static void setDefaultFixEncoding(final String encoding) {
         defaultFixEncoding = validateEncoding(encoding);
     }
@@ -103,22 +88,12 @@ public class Util {
         return data;
     }
 
-    static InputStream toInputStream(String source) {
-        byte[] data = fromIdentityEncodedString(source);
-        return new ByteArrayInputStream(data);
-    }
-
     static void fixEncoding(ParameterMap parameterMap) {
-        // default the encoding to defaultFixEncoding
-        String formEncoding = getDefaultFixEncoding();
-
-        // check whether a form encoding parameter overwrites this default
-        RequestParameter[] feParm = parameterMap.get(ParameterSupport.PARAMETER_FORMENCODING);
-        if (feParm != null) {
-            // get and check form encoding
-            byte[] rawEncoding = feParm[0].get();
-            formEncoding = toIdentityEncodedString(rawEncoding);
-            formEncoding = validateEncoding(formEncoding);
+        // default the encoding to defaultFixEncoding unless a form
+        // encoding parameter overwrites this default
+        String formEncoding = getFormEncoding(parameterMap);
+        if (formEncoding == null) {
+            formEncoding = getDefaultFixEncoding();
         }
 
         // map for rename parameters due to encoding fixes
@@ -157,6 +132,24 @@ public class Util {
         }
     }
 
+    /**
+     * Returns the encoding requested by the form encoding parameter.
+     *
+     * @param parameterMap The parameters
+     * @return The validated encoding or <code>null</code> if there is no
+     *         form encoding parameter
+     */
+    static String getFormEncoding(ParameterMap parameterMap) {
+        RequestParameter[] feParm = parameterMap.get(ParameterSupport.PARAMETER_FORMENCODING);
+        if (feParm == null) {
+            return null;
+        }
+
+        // get and check form encoding
+        byte[] rawEncoding = feParm[0].get();
+        return validateEncoding(toIdentityEncodedString(rawEncoding));
+    }
+
     private static String reencode(String parName, String encoding) {
         // re-encode the parameter to the encoding
         if (!ENCODING_DIRECT.equalsIgnoreCase(encoding)) {
@@ -212,155 +205,105 @@ public class Util {
     public static void parseQueryString(InputStream data, String encoding, ParameterMap map, boolean prependNew)
             throws UnsupportedEncodingException, IOException {
 
-        parseNVPairString(data, encoding, map, '&', false, prependNew);
+        parseQueryString(data.readAllBytes(), encoding, map, prependNew);
     }
 
     /**
-     * Parse a name/value pair string and populate a map with key -> value[s]
+     * Parse a query string and store entries inside a map. The escape
+     * sequences are decoded in place, that is {@code data} is modified and
+     * must not be used by the caller anymore. The values of the parameters
+     * are views of {@code data} only decoded into strings when accessed.
      *
-     * @param data name value data
+     * @param data querystring data
      * @param encoding encoding to use for converting bytes to characters
      * @param map map to populate
-     * @param separator multi-value separator character
-     * @param allowSpaces allow spaces inside name/values
      * @param prependNew whether to prepend new values
      * @throws IllegalArgumentException if the nv string is malformed
      * @throws UnsupportedEncodingException if the {@code encoding} is not
      *             supported
-     * @throws IOException if an error occurrs reading from {@code data}
      */
-    private static void parseNVPairString(
-            InputStream data,
-            String encoding,
-            ParameterMap map,
-            char separator,
-            boolean allowSpaces,
-            boolean prependNew)
-            throws UnsupportedEncodingException, IOException {
+    static void parseQueryString(byte[] data, String encoding, ParameterMap map, boolean prependNew)
+            throws UnsupportedEncodingException {
+        final Charset charset = toCharset(encoding);
 
-        ByteArrayOutputStream keyBuffer = new ByteArrayOutputStream(256);
-        ByteArrayOutputStream valueBuffer = new ByteArrayOutputStream(256);
-        char[] chCode = new char[2];
+        // bytes are decoded to the front of the array, start of the current
+        // name and end of it or -1 if no '=' has been seen yet
+        int write = 0;
+        int nameStart = 0;
+        int nameEnd = -1;
 
         int state = BEFORE_NAME;
-        int subState = 0;
-
-        for (int in = data.read(); in >= 0; in = data.read()) {
-            char ch = (char) in;
-
-            switch (state) {
-                case BEFORE_NAME:
-                    if (ch == ' ') {
-                        continue;
-                    } else if (ch == '%') {
-                        state = ESC_NAME;
-                        subState = 0;
-                    } else if (ch == '+' && !allowSpaces) {
-                        keyBuffer.write(' ');
-                        state = INSIDE_NAME;
-                    } else {
-                        keyBuffer.write(ch);
-                        state = INSIDE_NAME;
-                    }
-                    break;
-                case INSIDE_NAME:
-                    if (ch == '=') {
-                        state = BEFORE_VALUE;
-                    } else if (ch == '+' && !allowSpaces) {
-                        keyBuffer.write(' ');
-                    } else if (ch == '%') {
-                        state = ESC_NAME;
-                        subState = 0;
-                    } else if (ch == '&') {
-                        addNVPair(map, keyBuffer, valueBuffer, encoding, prependNew);
-                        state = BEFORE_NAME;
-                    } else {
-                        keyBuffer.write(ch);
-                    }
-                    break;
-                case ESC_NAME:
-                    chCode[subState++] = ch;
-                    if (subState == chCode.length) {
-                        String code = new String(chCode);
-                        try {
-                            keyBuffer.write(Integer.parseInt(code, 16));
-                        } catch (NumberFormatException e) {
-                            throw new IllegalArgumentException("Bad escape sequence: %" + code);
-                        }
-                        state = INSIDE_NAME;
-                    }
-                    break;
-                case BEFORE_EQU:
-                    if (ch == '=') {
-                        state = BEFORE_VALUE;
-                    }
-                    break;
-                case BEFORE_VALUE:
-                    if (ch == ' ') {
-                        continue;
-                    } else if (ch == '%') {
-                        state = ESC_VALUE;
-                        subState = 0;
-                    } else if (ch == '+' && !allowSpaces) {
-                        valueBuffer.write(' ');
-                        state = INSIDE_VALUE;
-                    } else if (ch == separator) {
-                        addNVPair(map, keyBuffer, valueBuffer, encoding, prependNew);
-                        state = BEFORE_NAME;
-                    } else {
-                        valueBuffer.write(ch);
-                        state = INSIDE_VALUE;
-                    }
-                    break;
-                case INSIDE_VALUE:
-                    if (ch == separator) {
-                        addNVPair(map, keyBuffer, valueBuffer, encoding, prependNew);
-                        state = BEFORE_NAME;
-                    } else if (ch == '+' && !allowSpaces) {
-                        valueBuffer.write(' ');
-                    } else if (ch == '%') {
-                        state = ESC_VALUE;
-                        subState = 0;
-                    } else {
-                        valueBuffer.write(ch);
-                    }
-                    break;
-                case ESC_VALUE:
-                    chCode[subState++] = ch;
-                    if (subState == chCode.length) {
-                        String code = new String(chCode);
-                        try {
-                            valueBuffer.write(Integer.parseInt(code, 16));
-                        } catch (NumberFormatException e) {
-                            throw new IllegalArgumentException("Bad escape sequence: %" + code);
-                        }
-                        state = INSIDE_VALUE;
-                    }
-                    break;
-                case BEFORE_SEP:
-                    if (ch == separator) {
-                        state = BEFORE_NAME;
-                    }
+        for (int read = 0; read < data.length; read++) {
+            final byte b = data[read];
+            if (state == BEFORE_NAME || state == BEFORE_VALUE) {
+                if (b == ' ') {
+                    continue;
+                } else if (b == '&' && state == BEFORE_VALUE) {
+                    addNVPair(map, data, nameStart, nameEnd, write, charset, encoding, prependNew);
+                    nameStart = write;
+                    nameEnd = -1;
+                    state = BEFORE_NAME;
+                    continue;
+                }
+                state = (state == BEFORE_NAME) ? INSIDE_NAME : INSIDE_VALUE;
+            } else if (b == '&') {
+                addNVPair(map, data, nameStart, nameEnd, write, charset, encoding, prependNew);
+                nameStart = write;
+                nameEnd = -1;
+                state = BEFORE_NAME;
+                continue;
+            } else if (b == '=' && state == INSIDE_NAME) {
+                nameEnd = write;
+                state = BEFORE_VALUE;
+                continue;
+            }
+
+            if (b == '+') {
+                data[write++] = ' ';
+            } else if (b == '%') {
+                if (read + 2 >= data.length) {
+                    // incomplete escape sequence at the end is ignored
                     break;
+                }
+                final int high = Character.digit(data[read + 1], 16);
+                final int low = Character.digit(data[read + 2], 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException(
+                            "Bad escape sequence: %" + new String(data, read + 1, 2, StandardCharsets.ISO_8859_1));
+                }
+                data[write++] = (byte) ((high << 4) | low);
+                read += 2;
+            } else {
+                data[write++] = b;
             }
         }
 
-        if (keyBuffer.size() > 0) {
-            addNVPair(map, keyBuffer, valueBuffer, encoding, prependNew);
+        if ((nameEnd < 0 ? write : nameEnd) > nameStart) {
+            addNVPair(map, data, nameStart, nameEnd, write, charset, encoding, prependNew);
         }
     }
 
     private static void addNVPair(
             ParameterMap map,
-            ByteArrayOutputStream keyBuffer,
-            ByteArrayOutputStream valueBuffer,
+            byte[] data,
+            int nameStart,
+            int nameEnd,
+            int valueEnd,
+            Charset charset,
             String encoding,
-            boolean prependNew)
-            throws UnsupportedEncodingException {
-        final String key = keyBuffer.toString(encoding);
-        final String value = valueBuffer.toString(encoding);
-        map.addParameter(new ContainerRequestParameter(key, value, encoding), prependNew);
-        keyBuffer.reset();
-        valueBuffer.reset();
+            boolean prependNew) {
+        final int valueStart = (nameEnd < 0) ? valueEnd : nameEnd;
+        final String name = new String(data, nameStart, valueStart - nameStart, charset);
+        map.addParameter(
+                new EncodedRequestParameter(name, data, valueStart, valueEnd - valueStart, encoding), prependNew);
+    }
+
+    private static Charset toCharset(final String encoding) throws UnsupportedEncodingException {
+        try {
+            return Charset.forName(encoding);
+        } catch (IllegalArgumentException e) {
+            // IllegalCharsetNameException, UnsupportedCharsetException
+            throw new UnsupportedEncodingException(encoding);
+        }
     }
 }
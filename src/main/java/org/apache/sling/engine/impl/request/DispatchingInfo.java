@@ -41,6 +41,20 @@ public class DispatchingInfo {
         this.type = type;
     }
 
+    public DispatchingInfo(final DispatchingInfo info) {
+        this.type = info.type;
+        this.requestContent = info.requestContent;
+        this.requestServlet = info.requestServlet;
+        this.requestpathInfo = info.requestpathInfo;
+        this.contextPath = info.contextPath;
+        this.pathInfo = info.pathInfo;
+        this.queryString = info.queryString;
+        this.requestUri = info.requestUri;
+        this.servletPath = info.servletPath;
+        this.protectHeadersOnInclude = info.protectHeadersOnInclude;
+        this.checkContentTypeOnInclude = info.checkContentTypeOnInclude;
+    }
+
     public DispatcherType getType() {
         return type;
     }
@@ -0,0 +1,429 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A <code>ParallelInclude</code> renders an include on a thread of the
+ * {@link ParallelIncludeExecutor} into a private buffer.
+ * <p>
+ * The include has its own {@link RequestData}, forked from the data of the
+ * including request, with a clone of the resource resolver, a snapshot of
+ * the request attributes and its own {@link RequestProgressTracker}. The
+ * response of the include only buffers its output, headers and status set
+ * by the include are ignored.
+ */
+final class ParallelInclude implements Callable<Void> {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelInclude.class);
+
+    private final RequestData parent;
+
+    private final RequestData branch;
+
+    private final BufferedResponse response;
+
+    private final Resource resource;
+
+    private final RequestPathInfo info;
+
+    private final DispatchingInfo dispatchingInfo;
+
+    private Future<Void> future;
+
+    ParallelInclude(
+            final RequestData parent,
+            final ServletRequest request,
+            final ResourceResolver resolver,
+            final Resource resource,
+            final RequestPathInfo info,
+            final DispatchingInfo dispatchingInfo) {
+        this.parent = parent;
+        this.response = new BufferedResponse(parent.getServletResponse());
+        this.branch =
+                new RequestData(parent, new BranchRequest(parent.getServletRequest(), request), response, resolver);
+        this.resource = resource;
+        this.info = info;
+        this.dispatchingInfo = dispatchingInfo;
+    }
+
+    /**
+     * Submits the include to the executor.
+     * @param executor The executor
+     * @return true if the include has been submitted, false if the include
+     *      has to be rendered in the request thread
+     */
+    boolean submit(final ParallelIncludeExecutor executor) {
+        this.future = executor.submit(this);
+        if (this.future == null) {
+            branch.getResourceResolver().close();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        try {
+            parent.getSlingRequestProcessor()
+                    .dispatchRequest(
+                            branch.getSlingRequest(), branch.getSlingResponse(), resource, info, dispatchingInfo);
+            branch.getSlingResponse().flushBuffer();
+            return null;
+        } finally {
+            branch.getResourceResolver().close();
+        }
+    }
+
+    /**
+     * @return true if the include is complete
+     */
+    boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * Waits for the include to complete, merges its counters and progress
+     * messages into the including request and writes its output. If the
+     * include fails or does not complete in time its output is omitted.
+     * @param out The writer to write the output to
+     * @param until The {@link System#nanoTime()} until which to wait for
+     *      the include
+     * @throws IOException If writing fails
+     */
+    void join(final Writer out, final long until) throws IOException {
+        final String path = resource.getPath();
+        try {
+            future.get(Math.max(0, until - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException te) {
+            future.cancel(true);
+            log.warn("Parallel include of {} did not complete in time, omitting its output", path);
+            parent.getRequestProgressTracker().log("Parallel include of {0} timed out", path);
+            return;
+        } catch (final InterruptedException ie) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return;
+        } catch (final ExecutionException ee) {
+            parent.join(branch, path);
+            log.error("Parallel include of {} failed, omitting its output", path, ee.getCause());
+            return;
+        }
+        parent.join(branch, path);
+        out.write(response.getOutput());
+    }
+
+    /**
+     * Cancels the include, its output is not needed anymore.
+     */
+    void cancel() {
+        future.cancel(true);
+    }
+
+    /**
+     * The request of the include, with the attributes of the including
+     * request at the time of the include.
+     */
+    private static final class BranchRequest extends HttpServletRequestWrapper {
+
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        BranchRequest(final HttpServletRequest request, final ServletRequest include) {
+            super(request);
+            final Enumeration<String> names = include.getAttributeNames();
+            while (names.hasMoreElements()) {
+                final String name = names.nextElement();
+                final Object value = include.getAttribute(name);
+                if (value != null) {
+                    attributes.put(name, value);
+                }
+            }
+            attributes.put(RequestProgressTracker.class.getName(), Builders.newRequestProgressTracker());
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            return Collections.enumeration(new ArrayList<>(attributes.keySet()));
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object value) {
+            if (value == null) {
+                attributes.remove(name);
+            } else {
+                attributes.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            attributes.remove(name);
+        }
+    }
+
+    /**
+     * The response of the include, buffering the output. The response of
+     * the including request is only used for the character encoding, content
+     * type and locale as of the time of the include.
+     */
+    private static final class BufferedResponse extends HttpServletResponseWrapper {
+
+        private final String characterEncoding;
+
+        private final String contentType;
+
+        private final Locale locale;
+
+        private final CharArrayWriter chars = new CharArrayWriter();
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private PrintWriter writer;
+
+        private ServletOutputStream stream;
+
+        BufferedResponse(final HttpServletResponse response) {
+            super(response);
+            this.characterEncoding = response.getCharacterEncoding();
+            this.contentType = response.getContentType();
+            this.locale = response.getLocale();
+        }
+
+        String getOutput() throws UnsupportedEncodingException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (bytes.size() == 0) {
+                return chars.toString();
+            }
+            return chars.toString().concat(bytes.toString(characterEncoding));
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(chars);
+            }
+            return writer;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (stream == null) {
+                stream = new ServletOutputStream() {
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        throw new IllegalStateException("Not supported for parallel includes");
+                    }
+
+                    @Override
+                    public void write(final int b) {
+                        bytes.write(b);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) {
+                        bytes.write(b, off, len);
+                    }
+                };
+            }
+            return stream;
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public Locale getLocale() {
+            return locale;
+        }
+
+        @Override
+        public int getStatus() {
+            return SC_OK;
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return false;
+        }
+
+        @Override
+        public void flushBuffer() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (writer != null) {
+                writer.flush();
+            }
+            chars.reset();
+            bytes.reset();
+        }
+
+        @Override
+        public void reset() {
+            resetBuffer();
+        }
+
+        // ---------- headers and status are not set by parallel includes
+
+        @Override
+        public boolean containsHeader(final String name) {
+            return false;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return null;
+        }
+
+        @Override
+        public Collection<String> getHeaders(final String name) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Collection<String> getHeaderNames() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {}
+
+        @Override
+        public void addHeader(final String name, final String value) {}
+
+        @Override
+        public void setIntHeader(final String name, final int value) {}
+
+        @Override
+        public void addIntHeader(final String name, final int value) {}
+
+        @Override
+        public void setDateHeader(final String name, final long date) {}
+
+        @Override
+        public void addDateHeader(final String name, final long date) {}
+
+        @Override
+        public void addCookie(final Cookie cookie) {}
+
+        @Override
+        public void setStatus(final int sc) {}
+
+        @Override
+        public void sendError(final int sc) {}
+
+        @Override
+        public void sendError(final int sc, final String msg) {}
+
+        @Override
+        public void sendRedirect(final String location) {}
+
+        @Override
+        public void sendRedirect(final String location, final int sc) {}
+
+        @Override
+        public void sendRedirect(final String location, final boolean clearBuffer) {}
+
+        @Override
+        public void sendRedirect(final String location, final int sc, final boolean clearBuffer) {}
+
+        @Override
+        public void setContentType(final String type) {}
+
+        @Override
+        public void setCharacterEncoding(final String charset) {}
+
+        @Override
+        public void setCharacterEncoding(final Charset charset) {}
+
+        @Override
+        public void setContentLength(final int len) {}
+
+        @Override
+        public void setContentLengthLong(final long len) {}
+
+        @Override
+        public void setLocale(final Locale loc) {}
+
+        @Override
+        public void setBufferSize(final int size) {}
+
+        @Override
+        public void setTrailerFields(final Supplier<Map<String, String>> supplier) {}
+    }
+}
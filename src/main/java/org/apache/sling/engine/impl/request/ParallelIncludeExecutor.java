@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.engine.EngineConstants;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.propertytypes.ServiceDescription;
+import org.osgi.service.component.propertytypes.ServiceVendor;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+
+/**
+ * The <code>ParallelIncludeExecutor</code> renders includes marked as
+ * independent of the including servlet on a bounded thread pool. The output
+ * of such an include is rendered into a private buffer and spliced into the
+ * response in document order, see {@link RequestData#includeParallel}.
+ * <p>
+ * Includes are rendered in the request thread as usual if the pool and its
+ * queue are exhausted.
+ */
+@Component(service = ParallelIncludeExecutor.class, configurationPolicy = ConfigurationPolicy.REQUIRE)
+@ServiceDescription("Renders independent includes in parallel")
+@ServiceVendor("The Apache Software Foundation")
+@Designate(ocd = ParallelIncludeExecutor.Config.class)
+public class ParallelIncludeExecutor {
+
+    @ObjectClassDefinition(
+            name = "Apache Sling Parallel Includes",
+            description = "Renders includes of the configured resource types and includes whose request "
+                    + "dispatcher options set \"" + EngineConstants.OPTION_PARALLEL_INCLUDE + "\" to true "
+                    + "concurrently to the including servlet. Such includes must not depend on request "
+                    + "attributes set after they are included and must not set response headers.")
+    public @interface Config {
+
+        @AttributeDefinition(
+                name = "Resource Types",
+                description = "Resource types whose includes are rendered in parallel.")
+        String[] parallel_include_resource_types();
+
+        @AttributeDefinition(
+                name = "Threads",
+                description = "Maximum number of includes rendered in parallel across all requests.")
+        int parallel_include_threads() default 8;
+
+        @AttributeDefinition(
+                name = "Queue Size",
+                description = "Maximum number of includes waiting for a thread. Further includes are "
+                        + "rendered in the request thread.")
+        int parallel_include_queue_size() default 64;
+
+        @AttributeDefinition(
+                name = "Timeout",
+                description = "Milliseconds to wait for the output of the includes of a request rendered in "
+                        + "parallel, at most until the deadline of the request. The output of includes taking "
+                        + "longer is omitted from the response.")
+        long parallel_include_timeout() default 10000;
+    }
+
+    private final Set<String> resourceTypes = new HashSet<>();
+
+    private final long timeout;
+
+    private final ThreadPoolExecutor executor;
+
+    @Activate
+    public ParallelIncludeExecutor(final Config config) {
+        if (config.parallel_include_resource_types() != null) {
+            this.resourceTypes.addAll(Arrays.asList(config.parallel_include_resource_types()));
+        }
+        this.timeout = Math.max(0, config.parallel_include_timeout());
+        final int threads = Math.max(1, config.parallel_include_threads());
+        final AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.parallel_include_queue_size())),
+                r -> {
+                    final Thread thread = new Thread(r, "Apache Sling Parallel Include " + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * @param resource The included resource
+     * @param options The request dispatcher options or <code>null</code>
+     * @return true if the include is marked to be rendered in parallel
+     */
+    public boolean isParallel(final Resource resource, final RequestDispatcherOptions options) {
+        final String option = options == null ? null : options.get(EngineConstants.OPTION_PARALLEL_INCLUDE);
+        return option != null ? Boolean.parseBoolean(option) : resourceTypes.contains(resource.getResourceType());
+    }
+
+    /**
+     * @return the milliseconds to wait for the output of the includes
+     */
+    long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Submits an include.
+     * @param include The include
+     * @return the future of the include or <code>null</code> if the pool
+     *      and its queue are exhausted
+     */
+    <T> Future<T> submit(final Callable<T> include) {
+        try {
+            return executor.submit(include);
+        } catch (final RejectedExecutionException ree) {
+            return null;
+        }
+    }
+}
@@ -20,12 +20,17 @@ package org.apache.sling.engine.impl.request;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import jakarta.servlet.Servlet;
 import jakarta.servlet.ServletException;
@@ -36,6 +41,7 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.ServletResponseWrapper;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
@@ -46,13 +52,18 @@ import org.apache.sling.api.request.RequestProgressTracker;
 import org.apache.sling.api.request.RequestUtil;
 import org.apache.sling.api.request.TooManyCallsException;
 import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.LoginException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
 import org.apache.sling.api.servlets.ServletResolver;
 import org.apache.sling.api.wrappers.JavaxToJakartaRequestWrapper;
 import org.apache.sling.api.wrappers.JavaxToJakartaResponseWrapper;
 import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
 import org.apache.sling.api.wrappers.SlingJakartaHttpServletResponseWrapper;
+import org.apache.sling.engine.DeadlineExceededException;
+import org.apache.sling.engine.RequestDeadline;
+import org.apache.sling.engine.impl.ContentTypeHeaderState;
 import org.apache.sling.engine.impl.SlingJakartaHttpServletRequestImpl;
 import org.apache.sling.engine.impl.SlingJakartaHttpServletResponseImpl;
 import org.apache.sling.engine.impl.SlingMainServlet;
@@ -94,6 +105,9 @@ public class RequestData {
      */
     private static String REQUEST_MAX_CALL_OVERRIDE = "sling.max.calls";
 
+    /** The maximum number of include and forward paths memoized per request */
+    static final int MAX_RESOLVED_PATHS = 256;
+
     /** The request processor used for request dispatching and other stuff */
     private final SlingRequestProcessorImpl slingRequestProcessor;
 
@@ -127,9 +141,10 @@ public class RequestData {
 
     /**
      * the number of servlets called by
-     * {@link #service(SlingHttpServletRequest, SlingHttpServletResponse)}
+     * {@link #service(SlingHttpServletRequest, SlingHttpServletResponse)},
+     * shared with the includes rendered in parallel
      */
-    private int servletCallCounter;
+    private AtomicInteger servletCallCounter = new AtomicInteger();
 
     /**
      * The name of the currently active serlvet.
@@ -156,8 +171,43 @@ public class RequestData {
 
     private final boolean disableCheckCompliantGetUserPrincipal;
 
+    /**
+     * Whether the content type header has been overridden by an include.
+     * This is request state instead of thread state, such that the request
+     * may be processed on any thread.
+     */
+    private volatile ContentTypeHeaderState contentTypeHeaderState = ContentTypeHeaderState.UNSET;
+
+    /** true for the request data of an include rendered in parallel */
+    private boolean parallelInclude;
+
+    /** splices the output of includes rendered in parallel into the response */
+    private SplicingWriter splicingWriter;
+
+    /** resources resolved for include and forward paths, least recently used first */
+    private Map<String, Resource> resolvedPaths;
+
+    /** the number of include and forward paths answered from {@link #resolvedPaths} */
+    private int resolvedPathHits;
+
+    /** the time budget of the request or null */
+    private RequestDeadline deadline;
+
     private static volatile boolean loggedNonCompliantGetUserPrincipalWarning = false;
 
+    /** Response wrappers replacing the writer of the wrapped response */
+    private static final ClassValue<Boolean> REPLACES_WRITER = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(final Class<?> type) {
+            try {
+                final Class<?> declaring = type.getMethod("getWriter").getDeclaringClass();
+                return declaring != ServletResponseWrapper.class && declaring != HttpServletResponseWrapper.class;
+            } catch (final NoSuchMethodException nsme) {
+                return true;
+            }
+        }
+    };
+
     /**
      * Prevent traversal using '/../' or '/..' even if '[' or '}' is used in-between
      */
@@ -208,6 +258,34 @@ public class RequestData {
         }
     }
 
+    /**
+     * Creates the request data of an include rendered in parallel. The
+     * include shares the servlet call counter with the including request and
+     * starts at its current recursion depth.
+     */
+    RequestData(
+            final RequestData parent,
+            final HttpServletRequest request,
+            final HttpServletResponse response,
+            final ResourceResolver resourceResolver) {
+        this(
+                parent.slingRequestProcessor,
+                request,
+                response,
+                parent.protectHeadersOnInclude,
+                parent.checkContentTypeOnInclude,
+                parent.disableCheckCompliantGetUserPrincipal);
+        this.parallelInclude = true;
+        this.resourceResolver = resourceResolver;
+        this.parameterSupport = parent.getParameterSupport();
+        this.servletCallCounter = parent.servletCallCounter;
+        this.recursionDepth = parent.recursionDepth;
+        this.peakRecusionDepth = parent.recursionDepth;
+        this.currentContentData = parent.currentContentData;
+        this.contentTypeHeaderState = parent.contentTypeHeaderState;
+        this.deadline = parent.deadline;
+    }
+
     public Resource initResource(ResourceResolver resourceResolver) {
         // keep the resource resolver for request processing
         this.resourceResolver = resourceResolver;
@@ -249,7 +327,7 @@ public class RequestData {
 
         // finally resolve the servlet for the resource
         requestProgressTracker.startTimer("ServletResolution");
-        Servlet servlet = sr.resolve(slingRequest);
+        Servlet servlet = slingRequestProcessor.resolveServlet(sr, slingRequest);
         requestProgressTracker.logTimer(
                 "ServletResolution",
                 "URI={0} handled by Servlet={1}",
@@ -619,6 +697,9 @@ public class RequestData {
 
             String name = RequestUtil.getServletName(servlet);
 
+            // do not call further servlets once the client gave up
+            requestData.checkDeadline(name);
+
             // verify the number of service calls in this request
             if (requestData.hasServletMaxCallCount(request)) {
                 throw new TooManyCallsException(name);
@@ -629,8 +710,7 @@ public class RequestData {
             request.setAttribute(SLING_CURRENT_SERVLET_NAME, name);
 
             // setup the tracker for this service call
-            String timerName = name + "#" + requestData.servletCallCounter;
-            requestData.servletCallCounter++;
+            String timerName = name + "#" + requestData.servletCallCounter.getAndIncrement();
             requestData.getRequestProgressTracker().startTimer(timerName);
 
             String prevServletName = requestData.setActiveServletName(name);
@@ -680,6 +760,193 @@ public class RequestData {
         return currentContentData;
     }
 
+    /**
+     * Resolves the absolute path of an include or forward. Existing resources
+     * resolved with the resource resolver of this request are memoized for
+     * the rest of a GET or HEAD request, such that repeated includes of the
+     * same path only resolve it once.
+     * @param request The request dispatching
+     * @param absPath The absolute path to resolve
+     * @return the resource or <code>null</code>
+     */
+    public Resource resolveDispatchPath(final SlingJakartaHttpServletRequest request, final String absPath) {
+        final ResourceResolver resolver = request.getResourceResolver();
+        final String method = servletRequest.getMethod();
+        final boolean memoize = resolver == resourceResolver && ("GET".equals(method) || "HEAD".equals(method));
+        if (memoize && resolvedPaths != null) {
+            final Resource resource = resolvedPaths.get(absPath);
+            if (resource != null) {
+                resolvedPathHits++;
+                requestProgressTracker.log(
+                        "path={0} resolves to memoized Resource={1}, {2} memo hits",
+                        absPath, resource, resolvedPathHits);
+                return resource;
+            }
+        }
+
+        final String timerName = "resolveIncludedResource(" + absPath + ")";
+        requestProgressTracker.startTimer(timerName);
+
+        // resolve the absolute path in the resource resolver, using
+        // only those parts of the path as if it would be request path
+        final Resource resource = resolver.resolve(absPath);
+        if (resource != null) {
+            requestProgressTracker.logTimer(timerName, "path={0} resolves to Resource={1}", absPath, resource);
+            if (memoize && !ResourceUtil.isNonExistingResource(resource)) {
+                if (resolvedPaths == null) {
+                    resolvedPaths = new LinkedHashMap<String, Resource>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(final Map.Entry<String, Resource> eldest) {
+                            return size() > MAX_RESOLVED_PATHS;
+                        }
+                    };
+                }
+                resolvedPaths.put(absPath, resource);
+            }
+        }
+        return resource;
+    }
+
+    // ---------- Parallel includes --------------------------------------------
+
+    /**
+     * Wraps the writer of the response such that the output of includes
+     * rendered in parallel is spliced into it. The writer is only wrapped if
+     * parallel includes are configured.
+     * @param writer The writer of the response
+     * @return the writer to use
+     */
+    public PrintWriter splice(final PrintWriter writer) {
+        if (splicingWriter == null) {
+            final ParallelIncludeExecutor executor = slingRequestProcessor.getParallelIncludeExecutor();
+            if (parallelInclude || executor == null) {
+                return writer;
+            }
+            splicingWriter = new SplicingWriter(writer, executor.getTimeout(), this::getDeadline);
+        }
+        return new PrintWriter(splicingWriter);
+    }
+
+    /**
+     * Renders an include on the executor. This is only possible if the
+     * include writes to the writer of this request through wrappers which do
+     * not replace the writer, and if the include can be rendered with a clone
+     * of the resource resolver.
+     * @param executor The executor
+     * @param request The request of the include
+     * @param response The response of the include
+     * @param resource The included resource
+     * @param info The request path info of the include
+     * @param dispatchingInfo The dispatching info of the include
+     * @return true if the include has been submitted, false if it has to be
+     *      rendered in the request thread
+     */
+    public boolean includeParallel(
+            final ParallelIncludeExecutor executor,
+            final ServletRequest request,
+            final ServletResponse response,
+            final Resource resource,
+            final RequestPathInfo info,
+            final DispatchingInfo dispatchingInfo) {
+        if (parallelInclude || !isWritingThrough(response)) {
+            return false;
+        }
+        // parameters are shared with the include, avoid parsing request bodies
+        final String method = servletRequest.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        try {
+            slingResponse.getWriter();
+        } catch (final IllegalStateException | IOException e) {
+            // the output stream is used
+            return false;
+        }
+        if (splicingWriter == null) {
+            return false;
+        }
+
+        final ResourceResolver resolver;
+        try {
+            resolver = resourceResolver.clone(null);
+        } catch (final LoginException le) {
+            log.debug("Cannot clone resource resolver for parallel include of {}", resource.getPath(), le);
+            return false;
+        }
+        Resource branchResource = resolver.getResource(resource.getPath());
+        if (branchResource == null) {
+            resolver.close();
+            return false;
+        }
+        final String resourceType = resource.getResourceType();
+        if (!branchResource.getResourceType().equals(resourceType)) {
+            branchResource = new SlingRequestDispatcher.TypeOverwritingResourceWrapper(branchResource, resourceType);
+        }
+        // the include must not access resources of the resource resolver of this request
+        final DispatchingInfo branchInfo = new DispatchingInfo(dispatchingInfo);
+        if (dispatchingInfo.getRequestContent() != null) {
+            branchInfo.setRequestContent(
+                    resolver.getResource(dispatchingInfo.getRequestContent().getPath()));
+        }
+
+        getParameterSupport().getRequestParameterMap();
+        final ParallelInclude include = new ParallelInclude(this, request, resolver, branchResource, info, branchInfo);
+        if (!include.submit(executor)) {
+            return false;
+        }
+        splicingWriter.add(include);
+        requestProgressTracker.log("Rendering include of {0} in parallel", resource.getPath());
+        return true;
+    }
+
+    private boolean isWritingThrough(ServletResponse response) {
+        while (response != slingResponse) {
+            if (!(response instanceof ServletResponseWrapper) || REPLACES_WRITER.get(response.getClass())) {
+                return false;
+            }
+            response = ((ServletResponseWrapper) response).getResponse();
+        }
+        return true;
+    }
+
+    /**
+     * Merges the counters and progress messages of an include rendered in
+     * parallel once it is complete.
+     * @param branch The request data of the include
+     * @param path The path of the included resource
+     */
+    void join(final RequestData branch, final String path) {
+        this.peakRecusionDepth = Math.max(this.peakRecusionDepth, branch.peakRecusionDepth);
+        final Iterator<String> messages = branch.getRequestProgressTracker().getMessages();
+        while (messages.hasNext()) {
+            requestProgressTracker.log(
+                    "Parallel include of {0}: {1}", path, messages.next().trim());
+        }
+    }
+
+    /**
+     * Writes the output of all pending includes rendered in parallel.
+     */
+    public void joinParallelIncludes() {
+        if (splicingWriter != null) {
+            try {
+                splicingWriter.join();
+            } catch (final IOException ioe) {
+                log.debug("Failed writing the output of parallel includes", ioe);
+            }
+        }
+    }
+
+    /**
+     * Drops pending includes rendered in parallel, for example when the
+     * response buffer is reset.
+     */
+    public void discardParallelIncludes() {
+        if (splicingWriter != null) {
+            splicingWriter.discard();
+        }
+    }
+
     public ResourceResolver getResourceResolver() {
         return resourceResolver;
     }
@@ -693,7 +960,7 @@ public class RequestData {
     }
 
     public int getServletCallCount() {
-        return servletCallCounter;
+        return servletCallCounter.get();
     }
 
     public boolean protectHeadersOnInclude() {
@@ -704,6 +971,14 @@ public class RequestData {
         return checkContentTypeOnInclude;
     }
 
+    public ContentTypeHeaderState getContentTypeHeaderState() {
+        return contentTypeHeaderState;
+    }
+
+    public void setContentTypeHeaderState(final ContentTypeHeaderState contentTypeHeaderState) {
+        this.contentTypeHeaderState = contentTypeHeaderState;
+    }
+
     /**
      * Returns {@code true} if the number of {@code RequestDispatcher.include}
      * calls has been reached within the given request. That maximum number may
@@ -730,6 +1005,30 @@ public class RequestData {
         return (maxCallCounter >= 0) && getServletCallCount() >= maxCallCounter;
     }
 
+    /**
+     * @return the time budget of the request or <code>null</code>
+     */
+    public RequestDeadline getDeadline() {
+        return deadline;
+    }
+
+    public void setDeadline(final RequestDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Checks the deadline of the request before an include, forward or
+     * servlet call.
+     * @param target The path dispatched to or the name of the servlet
+     * @throws DeadlineExceededException if the deadline has passed
+     */
+    public void checkDeadline(final String target) {
+        if (deadline != null && deadline.isExceeded()) {
+            requestProgressTracker.log("Request deadline exceeded, not calling {0}", target);
+            throw new DeadlineExceededException(target);
+        }
+    }
+
     public long getElapsedTimeMsec() {
         return System.currentTimeMillis() - startTimestamp;
     }
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.engine.RequestDeadline;
+
+/**
+ * The <code>RequestDeadlineImpl</code> measures the time budget of a request
+ * with the monotonic {@link System#nanoTime()} clock.
+ */
+public class RequestDeadlineImpl implements RequestDeadline {
+
+    private final long deadline;
+
+    /**
+     * @param timeout The milliseconds from now until the deadline
+     */
+    public RequestDeadlineImpl(final long timeout) {
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    @Override
+    public long getRemainingTime(final TimeUnit unit) {
+        return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean isExceeded() {
+        return deadline - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestDeadline(remaining=" + getRemainingTime(TimeUnit.MILLISECONDS) + "ms)";
+    }
+}
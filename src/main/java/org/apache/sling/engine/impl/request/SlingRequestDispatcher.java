@@ -28,10 +28,12 @@ import jakarta.servlet.ServletResponse;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.SlingJakartaHttpServletResponse;
 import org.apache.sling.api.request.RequestDispatcherOptions;
 import org.apache.sling.api.request.RequestProgressTracker;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceWrapper;
+import org.apache.sling.engine.impl.cache.IncludeCacheImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -159,6 +161,9 @@ public class SlingRequestDispatcher implements RequestDispatcher {
         SlingJakartaHttpServletRequest cRequest = RequestData.unwrap(request);
         RequestData rd = RequestData.getRequestData(cRequest);
         String absPath = getAbsolutePath(cRequest, path);
+
+        // do not render further includes once the client gave up
+        rd.checkDeadline(absPath);
         RequestProgressTracker requestProgressTracker = cRequest.getRequestProgressTracker();
 
         // if the response is not an HttpServletResponse, fail gracefully not
@@ -169,20 +174,14 @@ public class SlingRequestDispatcher implements RequestDispatcher {
         }
 
         if (resource == null) {
-            String timerName = "resolveIncludedResource(" + absPath + ")";
-            requestProgressTracker.startTimer(timerName);
-
-            // resolve the absolute path in the resource resolver, using
-            // only those parts of the path as if it would be request path
-            resource = cRequest.getResourceResolver().resolve(absPath);
+            // resolve the absolute path, repeated paths are memoized per request
+            resource = rd.resolveDispatchPath(cRequest, absPath);
 
             // if the resource could not be resolved, fail gracefully
             if (resource == null) {
                 log.error("include: Could not resolve {} to a resource, not including", absPath);
                 return;
             }
-
-            requestProgressTracker.logTimer(timerName, "path={0} resolves to Resource={1}", absPath, resource);
         }
 
         // ensure request path info and optional merges
@@ -198,6 +197,32 @@ public class SlingRequestDispatcher implements RequestDispatcher {
             dispatchingInfo.setCheckContentTypeOnInclude(this.checkContentTypeOnInclude);
         }
 
+        // write the output of the include from the cache or cache it
+        final IncludeCacheImpl includeCache = dispatchingInfo.getType() == DispatcherType.INCLUDE
+                ? rd.getSlingRequestProcessor().getIncludeCache()
+                : null;
+        final IncludeCacheImpl.Lookup lookup =
+                includeCache == null ? null : includeCache.lookup(cRequest, resource, info, options);
+        if (lookup != null) {
+            if (!lookup.serve(response)) {
+                final SlingJakartaHttpServletResponse recording =
+                        lookup.record(RequestData.toSlingHttpServletResponse(response));
+                rd.getSlingRequestProcessor().dispatchRequest(request, recording, resource, info, dispatchingInfo);
+                lookup.complete();
+            }
+            return;
+        }
+
+        // render the include concurrently if it is marked to be independent
+        final ParallelIncludeExecutor parallel = dispatchingInfo.getType() == DispatcherType.INCLUDE
+                ? rd.getSlingRequestProcessor().getParallelIncludeExecutor()
+                : null;
+        if (parallel != null
+                && parallel.isParallel(resource, options)
+                && rd.includeParallel(parallel, request, response, resource, info, dispatchingInfo)) {
+            return;
+        }
+
         rd.getSlingRequestProcessor().dispatchRequest(request, response, resource, info, dispatchingInfo);
     }
 
@@ -228,7 +253,7 @@ public class SlingRequestDispatcher implements RequestDispatcher {
         return info;
     }
 
-    private static class TypeOverwritingResourceWrapper extends ResourceWrapper {
+    static class TypeOverwritingResourceWrapper extends ResourceWrapper {
 
         private final String resourceType;
 
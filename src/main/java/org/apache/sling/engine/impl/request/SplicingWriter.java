@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.sling.engine.RequestDeadline;
+
+/**
+ * The <code>SplicingWriter</code> writes the output of includes rendered in
+ * parallel into the response in document order.
+ * <p>
+ * As long as no parallel include is pending, output is written through.
+ * Once an include is pending, further output is buffered behind it and
+ * written as soon as all includes before it are complete. Flushing only
+ * writes the output of the includes complete so far. Joining waits for the
+ * pending includes up to one deadline shared by all of them, which is the
+ * timeout bounded by the deadline of the request. The writer is only used
+ * by the request thread.
+ */
+final class SplicingWriter extends Writer {
+
+    private final Writer out;
+
+    private final long timeoutNanos;
+
+    private final Supplier<RequestDeadline> deadline;
+
+    /** pending {@link ParallelInclude}s and the output buffered behind them */
+    private final Deque<Object> pending = new ArrayDeque<>();
+
+    /**
+     * @param out The writer of the response
+     * @param timeout The milliseconds to wait for the pending includes
+     * @param deadline Provides the deadline of the request, which may be
+     *      <code>null</code>
+     */
+    SplicingWriter(final Writer out, final long timeout, final Supplier<RequestDeadline> deadline) {
+        this.out = out;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.deadline = deadline;
+    }
+
+    /**
+     * Adds an include whose output is written at the current position.
+     * @param include The include
+     */
+    void add(final ParallelInclude include) {
+        pending.add(include);
+    }
+
+    /**
+     * @return true if no include is pending
+     */
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Writes the output of all includes and the output behind them, waiting
+     * for the includes to complete.
+     * @throws IOException If writing fails
+     */
+    void join() throws IOException {
+        drain(true);
+    }
+
+    /**
+     * Cancels all pending includes and drops the output behind them.
+     */
+    void discard() {
+        for (final Object segment : pending) {
+            if (segment instanceof ParallelInclude) {
+                ((ParallelInclude) segment).cancel();
+            }
+        }
+        pending.clear();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} until which to wait for the
+     *      pending includes
+     */
+    private long waitUntil() {
+        long wait = timeoutNanos;
+        final RequestDeadline requestDeadline = deadline.get();
+        if (requestDeadline != null) {
+            wait = Math.min(wait, Math.max(0, requestDeadline.getRemainingTime(TimeUnit.NANOSECONDS)));
+        }
+        return System.nanoTime() + wait;
+    }
+
+    private void drain(final boolean wait) throws IOException {
+        long until = 0;
+        while (!pending.isEmpty()) {
+            final Object head = pending.peekFirst();
+            if (head instanceof ParallelInclude) {
+                final ParallelInclude include = (ParallelInclude) head;
+                if (!wait && !include.isDone()) {
+                    return;
+                }
+                if (until == 0) {
+                    until = waitUntil();
+                }
+                include.join(out, until);
+            } else {
+                out.append((StringBuilder) head);
+            }
+            pending.removeFirst();
+        }
+    }
+
+    private StringBuilder buffer() {
+        final Object tail = pending.peekLast();
+        if (tail instanceof StringBuilder) {
+            return (StringBuilder) tail;
+        }
+        final StringBuilder buffer = new StringBuilder();
+        pending.addLast(buffer);
+        return buffer;
+    }
+
+    @Override
+    public void write(final int c) throws IOException {
+        if (!pending.isEmpty()) {
+            drain(false);
+        }
+        if (pending.isEmpty()) {
+            out.write(c);
+        } else {
+            buffer().append((char) c);
+        }
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) throws IOException {
+        if (!pending.isEmpty()) {
+            drain(false);
+        }
+        if (pending.isEmpty()) {
+            out.write(cbuf, off, len);
+        } else {
+            buffer().append(cbuf, off, len);
+        }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) throws IOException {
+        if (!pending.isEmpty()) {
+            drain(false);
+        }
+        if (pending.isEmpty()) {
+            out.write(str, off, len);
+        } else {
+            buffer().append(str, off, off + len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain(false);
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain(true);
+        out.close();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.jmx;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * This is the management interface of a request log file written
+ * asynchronously by a dedicated writer thread.
+ *
+ * @since 1.2.0
+ */
+@ProviderType
+public interface AsyncRequestLogMBean {
+
+    /**
+     * Returns the absolute path of the log file.
+     *
+     * @return The log file
+     */
+    String getFileName();
+
+    /**
+     * Returns the number of log entries waiting to be written.
+     *
+     * @return Number of queued log entries
+     */
+    int getQueueDepth();
+
+    /**
+     * Returns the maximum number of log entries which can be queued.
+     *
+     * @return Queue capacity
+     */
+    int getQueueCapacity();
+
+    /**
+     * Returns the number of log entries written to the file since last
+     * resetting the statistics.
+     *
+     * @return Number of written log entries
+     * @see #resetStatistics()
+     */
+    long getWrittenCount();
+
+    /**
+     * Returns the number of log entries dropped since last resetting the
+     * statistics, either because the queue was full or because writing them
+     * failed.
+     *
+     * @return Number of dropped log entries
+     * @see #resetStatistics()
+     */
+    long getDroppedCount();
+
+    /**
+     * Returns the number of times a request thread had to wait for space in
+     * the queue since last resetting the statistics.
+     *
+     * @return Number of blocked offers
+     * @see #resetStatistics()
+     */
+    long getBlockedCount();
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.jmx;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * This is the management interface of a concurrency limiter, which limits
+ * the number of requests processed concurrently and adapts the limit to the
+ * measured request latency.
+ *
+ * @since 1.2.0
+ */
+@ProviderType
+public interface ConcurrencyLimiterMBean {
+
+    /**
+     * Returns the name of the limiter.
+     *
+     * @return The name
+     */
+    String getName();
+
+    /**
+     * Returns the current limit of concurrently processed requests.
+     *
+     * @return The limit
+     */
+    int getLimit();
+
+    /**
+     * Returns the number of requests currently processed.
+     *
+     * @return Number of requests in flight
+     */
+    int getInFlight();
+
+    /**
+     * Returns the number of requests currently waiting to be processed.
+     *
+     * @return Number of queued requests
+     */
+    int getQueueLength();
+
+    /**
+     * Returns the number of requests accepted for processing since last
+     * resetting the statistics.
+     *
+     * @return Number of accepted requests
+     * @see #resetStatistics()
+     */
+    long getAcceptedCount();
+
+    /**
+     * Returns the number of requests rejected since last resetting the
+     * statistics, because the limit was reached and the queue was full or
+     * the request waited too long.
+     *
+     * @return Number of rejected requests
+     * @see #resetStatistics()
+     */
+    long getRejectedCount();
+
+    /**
+     * Returns the number of requests which had to wait for processing since
+     * last resetting the statistics.
+     *
+     * @return Number of queued requests
+     * @see #resetStatistics()
+     */
+    long getQueuedCount();
+
+    /**
+     * Returns the mean time in milliseconds requests waited for processing
+     * since last resetting the statistics. Only requests which had to wait
+     * are considered.
+     *
+     * @return Mean queue time
+     * @see #resetStatistics()
+     */
+    double getMeanQueueTimeMsec();
+
+    /**
+     * Returns the longest time in milliseconds a request waited for
+     * processing since last resetting the statistics.
+     *
+     * @return Max queue time
+     * @see #resetStatistics()
+     */
+    long getMaxQueueTimeMsec();
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+}
@@ -44,6 +44,56 @@ public interface FilterProcessorMBean {
      */
     double getMeanFilterDurationMsec();
 
+    /**
+     * Returns the median filter invocation time in milliseconds since
+     * resetting the statistics.
+     *
+     * @return Get median filter duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    double getMedianFilterDurationMsec();
+
+    /**
+     * Returns the 90th percentile of the filter invocation time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return Get 90th percentile filter duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    double get90thPercentileFilterDurationMsec();
+
+    /**
+     * Returns the 99th percentile of the filter invocation time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return Get 99th percentile filter duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    double get99thPercentileFilterDurationMsec();
+
+    /**
+     * Returns the 99.9th percentile of the filter invocation time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return Get 99.9th percentile filter duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    double get999thPercentileFilterDurationMsec();
+
+    /**
+     * Returns the longest filter invocation time in milliseconds since
+     * resetting the statistics.
+     *
+     * @return Get max filter duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    double getMaxFilterDurationMsec();
+
     /**
      * Resets all statistics values and restarts from zero.
      */
@@ -72,6 +72,46 @@ public interface RequestProcessorMBean {
      */
     double getStandardDeviationDurationMsec();
 
+    /**
+     * Returns the median request processing time in milliseconds since
+     * resetting the statistics.
+     *
+     * @return Median request duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    long getMedianRequestDurationMsec();
+
+    /**
+     * Returns the 90th percentile of the request processing time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return 90th percentile request duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    long get90thPercentileRequestDurationMsec();
+
+    /**
+     * Returns the 99th percentile of the request processing time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return 99th percentile request duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    long get99thPercentileRequestDurationMsec();
+
+    /**
+     * Returns the 99.9th percentile of the request processing time in
+     * milliseconds since resetting the statistics.
+     *
+     * @return 99.9th percentile request duration
+     * @see #resetStatistics()
+     * @since 1.2.0
+     */
+    long get999thPercentileRequestDurationMsec();
+
     /**
      * Returns the maximum peak recursive execution depth since last
      * resetting the statistics.
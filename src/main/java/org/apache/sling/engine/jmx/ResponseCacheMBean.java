@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.jmx;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * This is the management interface for the cache of rendered responses.
+ *
+ * @since 1.2.0
+ */
+@ProviderType
+public interface ResponseCacheMBean {
+
+    /**
+     * Returns the number of requests answered from the cache since last
+     * resetting the statistics.
+     *
+     * @return Number of cache hits
+     * @see #resetStatistics()
+     */
+    long getCacheHits();
+
+    /**
+     * Returns the number of cacheable requests which had to be rendered
+     * since last resetting the statistics.
+     *
+     * @return Number of cache misses
+     * @see #resetStatistics()
+     */
+    long getCacheMisses();
+
+    /**
+     * Returns the ratio of cache hits to cacheable requests since last
+     * resetting the statistics.
+     *
+     * @return Hit ratio between 0 and 1
+     * @see #resetStatistics()
+     */
+    double getHitRatio();
+
+    /**
+     * Returns the number of responses evicted to stay within the maximum
+     * weight since last resetting the statistics.
+     *
+     * @return Number of evictions
+     * @see #resetStatistics()
+     */
+    long getEvictionCount();
+
+    /**
+     * Returns the number of responses removed by invalidation since last
+     * resetting the statistics.
+     *
+     * @return Number of invalidated responses
+     * @see #resetStatistics()
+     */
+    long getInvalidationCount();
+
+    /**
+     * Returns the number of responses currently cached.
+     *
+     * @return Number of cache entries
+     */
+    int getCacheSize();
+
+    /**
+     * Returns the approximate number of bytes used by the cached responses.
+     *
+     * @return Weight of the cache entries
+     */
+    long getWeight();
+
+    /**
+     * Returns the maximum number of bytes used by the cached responses.
+     *
+     * @return Maximum weight of the cache entries
+     */
+    long getMaxWeight();
+
+    /**
+     * Invalidate the cached responses of the resource at the path and of
+     * all resources below it.
+     *
+     * @param path The resource path
+     */
+    void invalidate(String path);
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.jmx;
+
+import org.osgi.annotation.versioning.ProviderType;
+
+/**
+ * This is the management interface of the upload budget, which limits the
+ * bytes of multipart request parts buffered in memory and spooled to disk
+ * across all requests.
+ *
+ * @since 1.2.0
+ */
+@ProviderType
+public interface UploadBudgetMBean {
+
+    /**
+     * Returns the maximum number of bytes of parts kept in memory.
+     *
+     * @return The memory budget or -1 if unlimited
+     */
+    long getMemoryBudget();
+
+    /**
+     * Returns the number of bytes of parts currently kept in memory.
+     *
+     * @return Bytes in memory
+     */
+    long getMemoryInUse();
+
+    /**
+     * Returns the maximum number of bytes of parts spooled to temporary
+     * files.
+     *
+     * @return The disk budget or -1 if unlimited
+     */
+    long getDiskBudget();
+
+    /**
+     * Returns the number of bytes of parts currently spooled to temporary
+     * files.
+     *
+     * @return Bytes on disk
+     */
+    long getDiskInUse();
+
+    /**
+     * Returns the number of multipart requests currently parsed.
+     *
+     * @return Number of uploads in flight
+     */
+    int getUploadsInFlight();
+
+    /**
+     * Returns the number of multipart requests admitted for parsing since
+     * last resetting the statistics.
+     *
+     * @return Number of admitted uploads
+     * @see #resetStatistics()
+     */
+    long getAdmittedCount();
+
+    /**
+     * Returns the number of multipart requests which had to wait for the
+     * budget since last resetting the statistics.
+     *
+     * @return Number of waiting uploads
+     * @see #resetStatistics()
+     */
+    long getQueuedCount();
+
+    /**
+     * Returns the number of multipart requests rejected since last resetting
+     * the statistics, because the budget was exhausted when they arrived or
+     * while their parts were stored.
+     *
+     * @return Number of rejected uploads
+     * @see #resetStatistics()
+     */
+    long getRejectedCount();
+
+    /**
+     * Resets all statistics values and restarts from zero.
+     */
+    void resetStatistics();
+}
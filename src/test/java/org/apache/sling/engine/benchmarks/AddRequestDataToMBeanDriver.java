@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.benchmarks;
+
+import javax.management.NotCompliantMBeanException;
+
+import java.util.Random;
+
+import com.sun.japex.JapexDriverBase;
+import com.sun.japex.TestCase;
+import org.apache.sling.engine.impl.RequestProcessorMBeanImpl;
+
+/**
+ * Adds request data to the striped cells of the RequestProcessorMBeanImpl.
+ * The MBean is shared by all driver threads to measure contention.
+ */
+public class AddRequestDataToMBeanDriver extends JapexDriverBase {
+
+    private static final RequestProcessorMBeanImpl BEAN = createBean();
+
+    private final Random random = new Random();
+
+    private static RequestProcessorMBeanImpl createBean() {
+        try {
+            return new RequestProcessorMBeanImpl();
+        } catch (final NotCompliantMBeanException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void prepare(TestCase tc) {
+        BEAN.resetStatistics();
+    }
+
+    @Override
+    public void run(TestCase tc) {
+        BEAN.addRequestData(random.nextInt(1000), random.nextInt(50), random.nextInt(10));
+    }
+}
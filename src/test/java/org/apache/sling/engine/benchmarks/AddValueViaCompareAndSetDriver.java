@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.sun.japex.JapexDriverBase;
+import com.sun.japex.TestCase;
+
+/**
+ * Adds a value to immutable statistics swapped in with a compare-and-set
+ * loop, as the RequestProcessorMBeanImpl used to do. The statistics are
+ * shared by all driver threads to measure contention.
+ */
+public class AddValueViaCompareAndSetDriver extends JapexDriverBase {
+
+    private static final AtomicReference<Data> DATA = new AtomicReference<>(new Data());
+
+    private final Random random = new Random();
+
+    @Override
+    public void prepare(TestCase tc) {
+        DATA.set(new Data());
+    }
+
+    @Override
+    public void run(TestCase tc) {
+        final long value = random.nextInt(1000);
+        for (; ; ) {
+            final Data oldVal = DATA.get();
+            if (DATA.compareAndSet(oldVal, new Data(oldVal, value))) {
+                break;
+            }
+        }
+    }
+
+    private static final class Data {
+
+        private final long n;
+
+        private final long min;
+
+        private final long max;
+
+        private final double sumX;
+
+        private final double sumX2;
+
+        private final double mean;
+
+        private final double standardDeviation;
+
+        Data() {
+            this.n = 0;
+            this.min = Long.MAX_VALUE;
+            this.max = 0;
+            this.sumX = 0;
+            this.sumX2 = 0;
+            this.mean = 0;
+            this.standardDeviation = 0;
+        }
+
+        Data(final Data other, final long value) {
+            this.n = other.n + 1;
+            this.min = Math.min(other.min, value);
+            this.max = Math.max(other.max, value);
+            this.sumX = other.sumX + value;
+            this.sumX2 = other.sumX2 + value * value;
+            this.mean = sumX / n;
+            this.standardDeviation = n > 1 ? Math.sqrt((sumX2 - sumX * sumX / n) / (n - 1)) : 0;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.engine.DeadlineExceededException;
+import org.apache.sling.engine.RequestDeadline;
+import org.apache.sling.engine.impl.request.RequestData;
+import org.apache.sling.engine.impl.request.RequestDeadlineImpl;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RequestDeadlineTest {
+
+    private SlingRequestProcessorImpl processor;
+
+    private HttpServletRequest request;
+
+    @Before
+    public void setup() {
+        processor = new SlingRequestProcessorImpl();
+        request = Mockito.mock(HttpServletRequest.class);
+    }
+
+    private void configure(final long timeout, final String header) {
+        final Config config = Mockito.mock(Config.class);
+        Mockito.when(config.sling_request_timeout()).thenReturn(timeout);
+        Mockito.when(config.sling_request_timeout_header()).thenReturn(header);
+        processor.modified(config);
+    }
+
+    private static long remaining(final RequestDeadline deadline) {
+        return deadline.getRemainingTime(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testNoDeadlineByDefault() {
+        configure(0, null);
+        assertNull(processor.createDeadline(request));
+    }
+
+    @Test
+    public void testConfiguredTimeout() {
+        configure(5000, null);
+        final RequestDeadline deadline = processor.createDeadline(request);
+        assertNotNull(deadline);
+        assertTrue(remaining(deadline) > 4000 && remaining(deadline) <= 5000);
+        assertFalse(deadline.isExceeded());
+    }
+
+    @Test
+    public void testAttributeOverridesTimeout() {
+        configure(5000, null);
+        Mockito.when(request.getAttribute(RequestDeadline.TIMEOUT_ATTRIBUTE_NAME))
+                .thenReturn(60000);
+        assertTrue(remaining(processor.createDeadline(request)) > 50000);
+
+        Mockito.when(request.getAttribute(RequestDeadline.TIMEOUT_ATTRIBUTE_NAME))
+                .thenReturn(0);
+        assertNull(processor.createDeadline(request));
+    }
+
+    @Test
+    public void testHeaderOnlyShortensTimeout() {
+        configure(5000, "X-Request-Timeout");
+        Mockito.when(request.getHeader("X-Request-Timeout")).thenReturn("1000");
+        assertTrue(remaining(processor.createDeadline(request)) <= 1000);
+
+        Mockito.when(request.getHeader("X-Request-Timeout")).thenReturn("60000");
+        assertTrue(remaining(processor.createDeadline(request)) <= 5000);
+
+        Mockito.when(request.getHeader("X-Request-Timeout")).thenReturn("invalid");
+        assertTrue(remaining(processor.createDeadline(request)) <= 5000);
+
+        configure(0, "X-Request-Timeout");
+        Mockito.when(request.getHeader("X-Request-Timeout")).thenReturn("1000");
+        assertTrue(remaining(processor.createDeadline(request)) <= 1000);
+    }
+
+    @Test
+    public void testCheckDeadline() {
+        final SlingRequestProcessorImpl mockProcessor = Mockito.mock(SlingRequestProcessorImpl.class);
+        Mockito.when(mockProcessor.getAdditionalResponseHeaders()).thenReturn(Collections.emptyList());
+        final RequestProgressTracker tracker = Mockito.mock(RequestProgressTracker.class);
+        Mockito.when(request.getAttribute(RequestProgressTracker.class.getName()))
+                .thenReturn(tracker);
+        final RequestData requestData =
+                new RequestData(mockProcessor, request, Mockito.mock(HttpServletResponse.class), false, false, false);
+
+        requestData.checkDeadline("/content/page");
+        requestData.setDeadline(new RequestDeadlineImpl(60000));
+        requestData.checkDeadline("/content/page");
+
+        requestData.setDeadline(new RequestDeadlineImpl(0));
+        try {
+            requestData.checkDeadline("/content/page");
+            fail("Expected DeadlineExceededException");
+        } catch (final DeadlineExceededException dee) {
+            // expected
+        }
+        Mockito.verify(tracker).log(Mockito.anyString(), Mockito.eq("/content/page"));
+    }
+}
@@ -186,6 +186,52 @@ public class RequestProcessorMBeanImplTest {
                 0d);
     }
 
+    @Test
+    public void test_percentiles() throws NotCompliantMBeanException {
+        final RequestProcessorMBeanImpl bean = new RequestProcessorMBeanImpl();
+        assertEquals(0L, bean.getMedianRequestDurationMsec());
+        assertEquals(0L, bean.get999thPercentileRequestDurationMsec());
+
+        for (int i = 1; i <= 1000; i++) {
+            bean.addRequestData(i, 1, 1);
+        }
+
+        assertAlmostEqual("Median Duration", 500, bean.getMedianRequestDurationMsec(), 8);
+        assertAlmostEqual("90th Percentile Duration", 900, bean.get90thPercentileRequestDurationMsec(), 8);
+        assertAlmostEqual("99th Percentile Duration", 990, bean.get99thPercentileRequestDurationMsec(), 8);
+        assertEquals(1000L, bean.get999thPercentileRequestDurationMsec());
+
+        bean.resetStatistics();
+        assertEquals(0L, bean.getMedianRequestDurationMsec());
+    }
+
+    @Test
+    public void test_concurrent_statistics() throws Exception {
+        final RequestProcessorMBeanImpl bean = new RequestProcessorMBeanImpl();
+        final int threads = 8;
+        final int num = 10000;
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int duration = t + 1;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < num; i++) {
+                    bean.addRequestData(duration, duration, duration);
+                }
+            });
+            workers[t].start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(threads * num, bean.getRequestsCount());
+        assertEquals(1L, bean.getMinRequestDurationMsec());
+        assertEquals(threads, bean.getMaxRequestDurationMsec());
+        assertEquals((threads + 1) / 2.0, bean.getMeanRequestDurationMsec(), 0.0001);
+        assertEquals(threads, bean.getMaxServletCallCount());
+        assertEquals(1, bean.getMinPeakRecursionDepth());
+    }
+
     private void assertAlmostEqual(final String message, final double v1, final double v2, int samples) {
         final double centi = v1 / samples;
         if (v2 < (v1 - centi) || v2 > (v1 + centi)) {
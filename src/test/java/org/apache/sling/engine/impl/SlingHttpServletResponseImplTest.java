@@ -219,7 +219,7 @@ public class SlingHttpServletResponseImplTest {
         Mockito.verify(orig, never()).setLocale(null);
         Mockito.verify(orig, Mockito.times(1)).setBufferSize(4500);
 
-        Mockito.verify(requestProcessor, atMostOnce()).setContentTypeHeaderState(Mockito.any());
+        Mockito.verify(requestData, atMostOnce()).setContentTypeHeaderState(Mockito.any());
 
         ArgumentCaptor<String> logCaptor = ArgumentCaptor.forClass(String.class);
         verify(requestProgressTracker, times(1)).log(logCaptor.capture());
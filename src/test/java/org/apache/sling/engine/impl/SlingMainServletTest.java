@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl;
+
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.auth.core.AuthenticationSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class SlingMainServletTest {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final List<AsyncListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    private volatile boolean asyncStarted;
+
+    private HttpServletRequest request;
+
+    private HttpServletResponse response;
+
+    private AsyncContext asyncContext;
+
+    private ResourceResolver resolver;
+
+    private SlingRequestProcessorImpl processor;
+
+    private ExecutorService executor;
+
+    private SlingMainServlet servlet;
+
+    @Before
+    public void setup() throws Exception {
+        request = Mockito.mock(HttpServletRequest.class);
+        response = Mockito.mock(HttpServletResponse.class);
+        asyncContext = Mockito.mock(AsyncContext.class);
+        resolver = Mockito.mock(ResourceResolver.class);
+
+        attributes.put(AuthenticationSupport.REQUEST_ATTRIBUTE_RESOLVER, resolver);
+        Mockito.when(request.getAttribute(anyString()))
+                .thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request)
+                .setAttribute(anyString(), any());
+        Mockito.when(request.isAsyncSupported()).thenReturn(true);
+        Mockito.when(request.isAsyncStarted()).thenAnswer(invocation -> asyncStarted);
+        Mockito.when(request.getAsyncContext()).thenReturn(asyncContext);
+        Mockito.when(request.startAsync(request, response)).thenAnswer(invocation -> {
+            asyncStarted = true;
+            return asyncContext;
+        });
+
+        // the container notifies the listeners when the async context completes
+        Mockito.when(asyncContext.getRequest()).thenReturn(request);
+        Mockito.doAnswer(invocation -> listeners.add(invocation.getArgument(0)))
+                .when(asyncContext)
+                .addListener(any());
+        Mockito.doAnswer(invocation -> {
+                    asyncStarted = false;
+                    for (final AsyncListener listener : listeners) {
+                        listener.onComplete(new AsyncEvent(asyncContext));
+                    }
+                    completed.countDown();
+                    return null;
+                })
+                .when(asyncContext)
+                .complete();
+
+        processor = Mockito.mock(SlingRequestProcessorImpl.class);
+        servlet = new SlingMainServlet();
+        setField("requestProcessorImpl", processor);
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void setField(final String name, final Object value) throws Exception {
+        final Field field = SlingMainServlet.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(servlet, value);
+    }
+
+    /** Finishes the request like the whiteboard once the servlet returned */
+    private void finishSecurity() {
+        new SlingHttpContext(Mockito.mock(AuthenticationSupport.class)).finishSecurity(request, response);
+    }
+
+    @Test
+    public void testVirtualModeKeepsResolverOpenUntilCompletion() throws Exception {
+        // stands in for the virtual thread executor, which requires Java 21
+        executor = Executors.newSingleThreadExecutor();
+        setField("requestExecutor", executor);
+
+        final CountDownLatch processing = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final Thread[] processingThread = new Thread[1];
+        Mockito.doAnswer(invocation -> {
+                    processingThread[0] = Thread.currentThread();
+                    processing.countDown();
+                    proceed.await();
+                    return null;
+                })
+                .when(processor)
+                .doProcessRequest(request, response, resolver);
+
+        servlet.service(request, response);
+        assertTrue(processing.await(10, TimeUnit.SECONDS));
+        assertNotSame(Thread.currentThread(), processingThread[0]);
+        Mockito.verify(asyncContext).setTimeout(0);
+
+        // the container thread returned while the request is still processed
+        finishSecurity();
+        Mockito.verify(resolver, Mockito.never()).close();
+
+        proceed.countDown();
+        assertTrue(completed.await(10, TimeUnit.SECONDS));
+        Mockito.verify(resolver, Mockito.atLeastOnce()).close();
+    }
+
+    @Test
+    public void testContainerMode() throws Exception {
+        final Thread[] processingThread = new Thread[1];
+        Mockito.doAnswer(invocation -> {
+                    processingThread[0] = Thread.currentThread();
+                    return null;
+                })
+                .when(processor)
+                .doProcessRequest(request, response, resolver);
+
+        servlet.service(request, response);
+        assertSame(Thread.currentThread(), processingThread[0]);
+        Mockito.verify(request, Mockito.never()).startAsync(any(), any());
+        Mockito.verify(resolver, Mockito.atLeastOnce()).close();
+
+        finishSecurity();
+        Mockito.verify(resolver, Mockito.atLeast(2)).close();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestDispatcherOptions;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.engine.IncludeCache;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IncludeCacheImplTest {
+
+    private IncludeCacheImpl cache;
+
+    private SlingJakartaHttpServletRequest request;
+
+    private RequestProgressTracker tracker;
+
+    private RequestPathInfo info;
+
+    @Before
+    public void setup() {
+        final IncludeCacheImpl.Config config = Mockito.mock(IncludeCacheImpl.Config.class);
+        Mockito.when(config.include_cache_resource_types()).thenReturn(new String[] {"site/header"});
+        Mockito.when(config.include_cache_max_size()).thenReturn(1);
+        Mockito.when(config.include_cache_max_entry_size()).thenReturn(1024);
+        Mockito.when(config.include_cache_ttl()).thenReturn(60L);
+        this.cache = new IncludeCacheImpl(config);
+
+        this.request = Mockito.mock(SlingJakartaHttpServletRequest.class);
+        this.tracker = Mockito.mock(RequestProgressTracker.class);
+        final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.getUserID()).thenReturn("anonymous");
+        Mockito.when(request.getResourceResolver()).thenReturn(resolver);
+        Mockito.when(request.getRequestProgressTracker()).thenReturn(tracker);
+
+        this.info = Mockito.mock(RequestPathInfo.class);
+        Mockito.when(info.getExtension()).thenReturn("html");
+    }
+
+    private static Resource resource(final String path, final String resourceType) {
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn(path);
+        Mockito.when(resource.getResourceType()).thenReturn(resourceType);
+        return resource;
+    }
+
+    private static SlingJakartaHttpServletResponse response(final StringWriter out) throws Exception {
+        final SlingJakartaHttpServletResponse response = Mockito.mock(SlingJakartaHttpServletResponse.class);
+        Mockito.when(response.getWriter()).thenReturn(new PrintWriter(out));
+        return response;
+    }
+
+    @Test
+    public void testEnabling() {
+        final Resource header = resource("/content/header", "site/header");
+        final Resource teaser = resource("/content/teaser", "site/teaser");
+        assertNotNull(cache.lookup(request, header, info, null));
+        assertNull(cache.lookup(request, teaser, info, null));
+
+        final RequestDispatcherOptions enable = new RequestDispatcherOptions();
+        enable.put(IncludeCache.OPTION_CACHE, "true");
+        assertNotNull(cache.lookup(request, teaser, info, enable));
+
+        final RequestDispatcherOptions disable = new RequestDispatcherOptions();
+        disable.put(IncludeCache.OPTION_CACHE, "false");
+        assertNull(cache.lookup(request, header, info, disable));
+    }
+
+    @Test
+    public void testRecordAndServe() throws Exception {
+        final Resource header = resource("/content/header", "site/header");
+
+        final StringWriter first = new StringWriter();
+        final IncludeCacheImpl.Lookup miss = cache.lookup(request, header, info, null);
+        assertFalse(miss.serve(response(first)));
+        miss.record(response(first)).getWriter().write("<header/>");
+        miss.complete();
+        assertEquals("<header/>", first.toString());
+        Mockito.verify(tracker).log("Include cache miss for {0}", "/content/header");
+
+        final StringWriter second = new StringWriter();
+        assertTrue(cache.lookup(request, header, info, null).serve(response(second)));
+        assertEquals("<header/>", second.toString());
+        Mockito.verify(tracker).log("Include cache hit for {0}", "/content/header");
+
+        cache.invalidate("/content");
+        assertFalse(cache.lookup(request, header, info, null).serve(response(new StringWriter())));
+    }
+
+    @Test
+    public void testSuffixIsPartOfKey() throws Exception {
+        final Resource header = resource("/content/header", "site/header");
+        Mockito.when(info.getSuffix()).thenReturn("/en");
+
+        final IncludeCacheImpl.Lookup english = cache.lookup(request, header, info, null);
+        english.record(response(new StringWriter())).getWriter().write("<header lang=\"en\"/>");
+        english.complete();
+
+        // a suffix replaced through the request dispatcher options must not hit
+        Mockito.when(info.getSuffix()).thenReturn("/de");
+        assertFalse(cache.lookup(request, header, info, null).serve(response(new StringWriter())));
+
+        Mockito.when(info.getSuffix()).thenReturn("/en");
+        final StringWriter out = new StringWriter();
+        assertTrue(cache.lookup(request, header, info, null).serve(response(out)));
+        assertEquals("<header lang=\"en\"/>", out.toString());
+    }
+
+    @Test
+    public void testIncompleteOutputIsNotCached() throws Exception {
+        final Resource header = resource("/content/header", "site/header");
+        final IncludeCacheImpl.Lookup lookup = cache.lookup(request, header, info, null);
+        final SlingJakartaHttpServletResponse recording = lookup.record(response(new StringWriter()));
+        recording.getWriter().write("<header>");
+        recording.resetBuffer();
+        lookup.complete();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.service.servlet.context.ServletContextHelper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestCoalescerTest {
+
+    private static RequestCoalescer.Config config(final String[] paths, final int maxSize) {
+        final RequestCoalescer.Config config = Mockito.mock(RequestCoalescer.Config.class);
+        Mockito.when(config.coalesce_paths()).thenReturn(paths);
+        Mockito.when(config.coalesce_extensions()).thenReturn(new String[] {"html"});
+        Mockito.when(config.coalesce_headers()).thenReturn(new String[] {"Accept-Encoding"});
+        Mockito.when(config.coalesce_max_size()).thenReturn(maxSize);
+        Mockito.when(config.coalesce_timeout()).thenReturn(1000L);
+        return config;
+    }
+
+    private static HttpServletRequest request(final String method, final String path) {
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getMethod()).thenReturn(method);
+        Mockito.when(request.getPathInfo()).thenReturn(path);
+        Mockito.when(request.getRequestURI()).thenReturn(path);
+        Mockito.when(request.getScheme()).thenReturn("http");
+        Mockito.when(request.getServerName()).thenReturn("localhost");
+        Mockito.when(request.getServerPort()).thenReturn(8080);
+        Mockito.when(request.getHeaders("Accept-Encoding")).thenReturn(Collections.enumeration(Arrays.asList("gzip")));
+        return request;
+    }
+
+    /** a response with headers, backed by the given buffer */
+    private static HttpServletResponse response(final ByteArrayOutputStream buffer, final Map<String, String> headers)
+            throws IOException {
+        final HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        final ServletOutputStream out = new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                // not used
+            }
+        };
+        Mockito.when(response.getOutputStream()).thenReturn(out);
+        Mockito.when(response.getWriter())
+                .thenReturn(new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+        Mockito.when(response.getStatus()).thenReturn(200);
+        Mockito.when(response.getContentType()).thenReturn("text/html;charset=UTF-8");
+        Mockito.when(response.getCharacterEncoding()).thenReturn("UTF-8");
+        Mockito.when(response.getHeaderNames()).thenReturn(headers.keySet());
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            Mockito.when(response.getHeaders(header.getKey())).thenReturn(Collections.singleton(header.getValue()));
+        }
+        return response;
+    }
+
+    @Test
+    public void testGetExtension() {
+        assertEquals("html", RequestPatterns.getExtension("/content/page.html"));
+        assertEquals("html", RequestPatterns.getExtension("/content/page.selector.html"));
+        assertEquals("", RequestPatterns.getExtension("/content/page"));
+        assertEquals("", RequestPatterns.getExtension("/content.folder/page"));
+    }
+
+    @Test
+    public void testIsCoalescable() {
+        final RequestCoalescer coalescer = new RequestCoalescer(config(new String[] {"/content/.*"}, 1024));
+        assertTrue(coalescer.isCoalescable(request("GET", "/content/page.html")));
+        assertFalse(coalescer.isCoalescable(request("POST", "/content/page.html")));
+        assertFalse(coalescer.isCoalescable(request("GET", "/content/page.json")));
+        assertFalse(coalescer.isCoalescable(request("GET", "/apps/page.html")));
+
+        final HttpServletRequest withCookie = request("GET", "/content/page.html");
+        Mockito.when(withCookie.getHeader("Cookie")).thenReturn("session=1");
+        assertFalse(coalescer.isCoalescable(withCookie));
+
+        final HttpServletRequest withAuthorization = request("GET", "/content/page.html");
+        Mockito.when(withAuthorization.getHeader("Authorization")).thenReturn("Basic YTpi");
+        assertFalse(coalescer.isCoalescable(withAuthorization));
+        assertNull(coalescer.join(withAuthorization));
+
+        // authenticated without cookies or authorization header, e.g. by a client certificate
+        final HttpServletRequest authenticated = request("GET", "/content/page.html");
+        Mockito.when(authenticated.getAuthType()).thenReturn(HttpServletRequest.CLIENT_CERT_AUTH);
+        assertFalse(coalescer.isCoalescable(authenticated));
+        assertNull(coalescer.join(authenticated));
+
+        final HttpServletRequest byHandler = request("GET", "/content/page.html");
+        Mockito.when(byHandler.getAttribute(ServletContextHelper.AUTHENTICATION_TYPE))
+                .thenReturn("TOKEN");
+        assertFalse(coalescer.isCoalescable(byHandler));
+    }
+
+    @Test
+    public void testFollowerReplaysLeaderResponse() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(config(null, 1024));
+        final RequestCoalescer.Flight leader = coalescer.join(request("GET", "/page.html"));
+        final RequestCoalescer.Flight follower = coalescer.join(request("GET", "/page.html"));
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "max-age=60");
+        headers.put("Vary", "Accept-Encoding");
+        final ByteArrayOutputStream leaderBody = new ByteArrayOutputStream();
+        final HttpServletResponse recording = leader.record(response(leaderBody, headers));
+        recording.getWriter().write("Hello Wörld");
+        recording.getWriter().flush();
+        leader.complete();
+
+        final ByteArrayOutputStream followerBody = new ByteArrayOutputStream();
+        final HttpServletResponse followerResponse = response(followerBody, Collections.emptyMap());
+        assertTrue(follower.replay(followerResponse));
+
+        final byte[] expected = "Hello Wörld".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(expected, leaderBody.toByteArray());
+        assertArrayEquals(expected, followerBody.toByteArray());
+        Mockito.verify(followerResponse).setStatus(200);
+        Mockito.verify(followerResponse).addHeader("Cache-Control", "max-age=60");
+        Mockito.verify(followerResponse).setContentType("text/html;charset=UTF-8");
+        Mockito.verify(followerResponse).setContentLength(expected.length);
+
+        // a request after completion leads a new flight
+        assertTrue(coalescer.join(request("GET", "/page.html")).isLeader());
+    }
+
+    @Test
+    public void testDifferentHeadersAreNotCoalesced() {
+        final RequestCoalescer coalescer = new RequestCoalescer(config(null, 1024));
+        final HttpServletRequest identity = request("GET", "/page.html");
+        Mockito.when(identity.getHeaders("Accept-Encoding")).thenReturn(Collections.emptyEnumeration());
+        assertTrue(coalescer.join(request("GET", "/page.html")).isLeader());
+        assertTrue(coalescer.join(identity).isLeader());
+    }
+
+    @Test
+    public void testPrivateResponseIsNotReplayed() throws Exception {
+        final RequestCoalescer coalescer = new RequestCoalescer(config(null, 1024));
+        final RequestCoalescer.Flight leader = coalescer.join(request("GET", "/page.html"));
+        final RequestCoalescer.Flight follower = coalescer.join(request("GET", "/page.html"));
+
+        final HttpServletResponse recording = leader.record(
+                response(new ByteArrayOutputStream(), Collections.singletonMap("Set-Cookie", "session=1")));
+        recording.getOutputStream().write(new byte[] {1, 2, 3});
+        leader.complete();
+
+        assertFalse(follower.replay(response(new ByteArrayOutputStream(), Collections.emptyMap())));
+    }
+
+    @Test
+    public void testLargeResponseIsNotRecorded() throws Exception {
+        final RecordingResponse recording =
+                new RecordingResponse(response(new ByteArrayOutputStream(), Collections.emptyMap()), 4);
+        recording.getOutputStream().write(new byte[] {1, 2, 3});
+        assertNotNull(recording.finish());
+        recording.getOutputStream().write(new byte[] {4, 5});
+        assertNull(recording.finish());
+    }
+
+    @Test
+    public void testIsShareable() {
+        final RecordedResponse ok = new RecordedResponse(
+                200, null, Arrays.asList(new String[][] {{"Cache-Control", "public, max-age=60"}}), new byte[0]);
+        assertTrue(ok.isShareable(Collections.emptySet()));
+        final RecordedResponse error = new RecordedResponse(500, null, Collections.emptyList(), new byte[0]);
+        assertFalse(error.isShareable(Collections.emptySet()));
+        final RecordedResponse noStore = new RecordedResponse(
+                200, null, Arrays.asList(new String[][] {{"Cache-Control", "no-store"}}), new byte[0]);
+        assertFalse(noStore.isShareable(Collections.emptySet()));
+        final RecordedResponse vary =
+                new RecordedResponse(200, null, Arrays.asList(new String[][] {{"Vary", "*"}}), new byte[0]);
+        assertFalse(vary.isShareable(Collections.singleton("accept")));
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.osgi.service.servlet.context.ServletContextHelper;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheImplTest {
+
+    private static ResponseCacheImpl cache(final int maxSizeMB) throws Exception {
+        final ResponseCacheImpl.Config config = Mockito.mock(ResponseCacheImpl.Config.class);
+        Mockito.when(config.cache_extensions()).thenReturn(new String[] {"html"});
+        Mockito.when(config.cache_headers()).thenReturn(new String[] {"Accept-Encoding"});
+        Mockito.when(config.cache_parameters()).thenReturn(new String[] {"page", "size"});
+        Mockito.when(config.cache_max_size()).thenReturn(maxSizeMB);
+        Mockito.when(config.cache_max_entry_size()).thenReturn(1024);
+        Mockito.when(config.cache_ttl()).thenReturn(60L);
+        return new ResponseCacheImpl(config);
+    }
+
+    private static SlingJakartaHttpServletRequest request(final String resourcePath, final String query) {
+        final SlingJakartaHttpServletRequest request = Mockito.mock(SlingJakartaHttpServletRequest.class);
+        final RequestPathInfo requestPathInfo = Mockito.mock(RequestPathInfo.class);
+        Mockito.when(requestPathInfo.getResourcePath()).thenReturn(resourcePath);
+        Mockito.when(requestPathInfo.getExtension()).thenReturn("html");
+        Mockito.when(request.getRequestPathInfo()).thenReturn(requestPathInfo);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getPathInfo()).thenReturn(resourcePath + ".html");
+        Mockito.when(request.getQueryString()).thenReturn(query);
+        Mockito.when(request.getHeaders("Accept-Encoding")).thenReturn(Collections.emptyEnumeration());
+        return request;
+    }
+
+    private static HttpServletResponse response(final ByteArrayOutputStream buffer) throws Exception {
+        final HttpServletResponse response = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(response.getOutputStream()).thenReturn(new ServletOutputStream() {
+            @Override
+            public void write(final int b) {
+                buffer.write(b);
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(final WriteListener writeListener) {
+                // not used
+            }
+        });
+        Mockito.when(response.getStatus()).thenReturn(200);
+        Mockito.when(response.getHeaderNames()).thenReturn(Collections.emptyList());
+        return response;
+    }
+
+    /** renders the request through the cache and returns the body sent */
+    private static byte[] render(final ResponseCacheImpl cache, final String path, final byte[] body) throws Exception {
+        final SlingJakartaHttpServletRequest request = request(path, null);
+        final ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        final ResponseCacheImpl.Lookup lookup = cache.lookup(request, response(sent));
+        assertNotNull(lookup);
+        if (!lookup.serve(request)) {
+            lookup.getResponse().getOutputStream().write(body);
+            lookup.complete();
+        }
+        return sent.toByteArray();
+    }
+
+    private static RecordedResponse recorded(final int size) {
+        return new RecordedResponse(200, null, Collections.emptyList(), new byte[size]).offHeap();
+    }
+
+    @Test
+    public void testGetQuery() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        assertEquals(Collections.emptyList(), cache.getQuery(null));
+        assertEquals(Arrays.asList("page=2", "size=10"), cache.getQuery("size=10&page=2"));
+        assertNull(cache.getQuery("page=2&other=1"));
+        assertNull(cache.getQuery("%zz=1"));
+
+        final SlingJakartaHttpServletRequest request = request("/content/page", "other=1");
+        assertNull(cache.lookup(request, response(new ByteArrayOutputStream())));
+    }
+
+    @Test
+    public void testServeFromCache() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        final byte[] body = {1, 2, 3};
+        assertArrayEquals(body, render(cache, "/content/page", body));
+        assertEquals(1, cache.getCacheSize());
+        assertEquals(0, cache.getCacheHits());
+        assertEquals(1, cache.getCacheMisses());
+
+        // served from the cache, not rendered again
+        assertArrayEquals(body, render(cache, "/content/page", new byte[] {4}));
+        assertEquals(1, cache.getCacheHits());
+        assertEquals(0.5, cache.getHitRatio(), 0.001);
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getCacheHits());
+        assertEquals(0, cache.getCacheMisses());
+    }
+
+    @Test
+    public void testAnonymousOnly() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        final SlingJakartaHttpServletRequest request = request("/content/page", null);
+        Mockito.when(request.getHeader("Cookie")).thenReturn("session=1");
+        assertNull(cache.lookup(request, response(new ByteArrayOutputStream())));
+
+        // authenticated by an authentication handler without cookies or authorization header
+        final SlingJakartaHttpServletRequest authenticated = request("/content/page", null);
+        Mockito.when(authenticated.getAttribute(ServletContextHelper.AUTHENTICATION_TYPE))
+                .thenReturn("TOKEN");
+        assertNull(cache.lookup(authenticated, response(new ByteArrayOutputStream())));
+
+        final SlingJakartaHttpServletRequest byContainer = request("/content/page", null);
+        Mockito.when(byContainer.getAuthType()).thenReturn(HttpServletRequest.CLIENT_CERT_AUTH);
+        assertNull(cache.lookup(byContainer, response(new ByteArrayOutputStream())));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        cache.put("/content/a", "a", recorded(10), 0);
+        cache.put("/content/a/child", "a/child", recorded(10), 0);
+        cache.put("/content/ab", "ab", recorded(10), 0);
+        assertEquals(3, cache.getCacheSize());
+
+        cache.invalidate("/content/a");
+        assertNull(cache.get("a"));
+        assertNull(cache.get("a/child"));
+        assertNotNull(cache.get("ab"));
+        assertEquals(2, cache.getInvalidationCount());
+
+        cache.invalidateAll();
+        assertEquals(0, cache.getCacheSize());
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void testInvalidateWhileRendering() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        final SlingJakartaHttpServletRequest request = request("/content/page", null);
+        final ResponseCacheImpl.Lookup lookup = cache.lookup(request, response(new ByteArrayOutputStream()));
+        assertFalse(lookup.serve(request));
+        lookup.getResponse().getOutputStream().write(new byte[] {1});
+
+        cache.invalidate("/content");
+        lookup.complete();
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void testEvictByWeight() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        cache.put("/content/a", "a", recorded(400 * 1024), 0);
+        cache.put("/content/b", "b", recorded(400 * 1024), 0);
+        // recently used entries are evicted last
+        assertNotNull(cache.get("a"));
+        cache.put("/content/c", "c", recorded(400 * 1024), 0);
+
+        assertEquals(2, cache.getCacheSize());
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    }
+
+    @Test
+    public void testRecentlyUsedSurvivesSampledEviction() throws Exception {
+        final ResponseCacheImpl cache = cache(1);
+        cache.put("/content/hot", "hot", recorded(100 * 1024), 0);
+        for (int i = 0; i < 4 * PathCache.EVICTION_SAMPLES; i++) {
+            assertNotNull(cache.get("hot"));
+            cache.put("/content/" + i, String.valueOf(i), recorded(100 * 1024), 0);
+        }
+
+        assertNotNull(cache.get("hot"));
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.cache;
+
+import java.util.Collections;
+
+import jakarta.servlet.Servlet;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.servlets.ServletResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+public class ServletResolutionCacheTest {
+
+    private ServletResolutionCache cache;
+
+    private ServletResolver resolver;
+
+    private final Servlet page = Mockito.mock(Servlet.class);
+
+    private final Servlet json = Mockito.mock(Servlet.class);
+
+    @Before
+    public void setup() throws Exception {
+        final ServletResolutionCache.Config config = Mockito.mock(ServletResolutionCache.Config.class);
+        Mockito.when(config.servlet_resolution_cache_enabled()).thenReturn(true);
+        Mockito.when(config.servlet_resolution_cache_size()).thenReturn(100);
+        this.cache = new ServletResolutionCache(config);
+        this.resolver = resolver();
+    }
+
+    private ServletResolver resolver() {
+        final ServletResolver resolver = Mockito.mock(ServletResolver.class);
+        Mockito.when(resolver.resolve(Mockito.any(SlingJakartaHttpServletRequest.class)))
+                .thenAnswer(invocation -> {
+                    final SlingJakartaHttpServletRequest request = invocation.getArgument(0);
+                    return "json".equals(request.getRequestPathInfo().getExtension()) ? json : page;
+                });
+        return resolver;
+    }
+
+    private static SlingJakartaHttpServletRequest request(final String resourceType, final String extension) {
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getResourceType()).thenReturn(resourceType);
+        final RequestPathInfo info = Mockito.mock(RequestPathInfo.class);
+        Mockito.when(info.getExtension()).thenReturn(extension);
+        final SlingJakartaHttpServletRequest request = Mockito.mock(SlingJakartaHttpServletRequest.class);
+        Mockito.when(request.getMethod()).thenReturn("GET");
+        Mockito.when(request.getResource()).thenReturn(resource);
+        Mockito.when(request.getRequestPathInfo()).thenReturn(info);
+        return request;
+    }
+
+    @Test
+    public void testCachesPerRequestShape() {
+        assertSame(page, cache.resolve(resolver, request("site/page", "html")));
+        assertSame(page, cache.resolve(resolver, request("site/page", "html")));
+        assertSame(json, cache.resolve(resolver, request("site/page", "json")));
+        assertSame(page, cache.resolve(resolver, request("site/article", "html")));
+
+        Mockito.verify(resolver, Mockito.times(3)).resolve(Mockito.any(SlingJakartaHttpServletRequest.class));
+        assertEquals(1, cache.getCacheHits());
+        assertEquals(3, cache.getCacheMisses());
+        assertEquals(0.25, cache.getHitRatio(), 0.001);
+        assertEquals(3, cache.getCacheSize());
+    }
+
+    @Test
+    public void testOtherResolverInvalidates() {
+        cache.resolve(resolver, request("site/page", "html"));
+        final ServletResolver other = resolver();
+        cache.resolve(other, request("site/page", "html"));
+        cache.resolve(other, request("site/page", "html"));
+
+        Mockito.verify(other, Mockito.times(1)).resolve(Mockito.any(SlingJakartaHttpServletRequest.class));
+        assertEquals(1, cache.getCacheSize());
+    }
+
+    @Test
+    public void testInvalidate() {
+        cache.resolve(resolver, request("site/page", "html"));
+        cache.onChange(Collections.emptyList());
+        assertEquals(0, cache.getCacheSize());
+        assertEquals(1, cache.getInvalidationCount());
+
+        cache.resolve(resolver, request("site/page", "html"));
+        cache.unbindServlet(null);
+        assertEquals(0, cache.getCacheSize());
+        assertEquals(2, cache.getInvalidationCount());
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getInvalidationCount());
+        assertEquals(0, cache.getCacheMisses());
+    }
+
+    @Test
+    public void testDisable() {
+        cache.resolve(resolver, request("site/page", "html"));
+        cache.setEnabled(false);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.getCacheSize());
+
+        cache.resolve(resolver, request("site/page", "html"));
+        cache.resolve(resolver, request("site/page", "html"));
+        Mockito.verify(resolver, Mockito.times(3)).resolve(Mockito.any(SlingJakartaHttpServletRequest.class));
+        assertEquals(0, cache.getCacheSize());
+        assertEquals(0, cache.getCacheHits());
+    }
+}
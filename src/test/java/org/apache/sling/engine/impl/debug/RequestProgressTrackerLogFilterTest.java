@@ -70,8 +70,8 @@ public class RequestProgressTrackerLogFilterTest {
     @Test
     public void verifySlingRequestProgressTrackerDurationIsNanos() throws Exception {
         // Verify that SlingRequestProgressTracker duration is based on nano time
-        final long startMsec = System.currentTimeMillis();
         final RequestProgressTracker rpt = Builders.newRequestProgressTracker();
+        final long startMsec = System.currentTimeMillis();
         Thread.sleep(10);
         final long elapsedMsec = System.currentTimeMillis() - startMsec;
         final long rptElapsed = rpt.getDuration();
@@ -96,6 +96,8 @@ public abstract class AbstractFilterTest {
                 will(returnValue(suffix));
                 allowing(info).getSelectors();
                 will(returnValue(selectors == null ? new String[0] : selectors));
+                allowing(info).getSelectorString();
+                will(returnValue(selectors == null ? null : String.join(".", selectors)));
                 allowing(info).getResourcePath();
                 will(returnValue(path));
             }
@@ -134,6 +136,8 @@ public abstract class AbstractFilterTest {
                 will(returnValue(null));
                 allowing(info).getSelectors();
                 will(returnValue(new String[0]));
+                allowing(info).getSelectorString();
+                will(returnValue(null));
                 allowing(info).getResourcePath();
                 will(returnValue(resourcePath));
             }
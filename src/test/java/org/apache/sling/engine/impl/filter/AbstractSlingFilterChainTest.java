@@ -19,6 +19,9 @@
 package org.apache.sling.engine.impl.filter;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import jakarta.servlet.Filter;
 import jakarta.servlet.FilterChain;
@@ -30,11 +33,17 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.wrappers.SlingJakartaHttpServletRequestWrapper;
 import org.apache.sling.engine.impl.SlingJakartaHttpServletRequestImpl;
 import org.apache.sling.engine.impl.SlingRequestProcessorImpl;
 import org.apache.sling.engine.impl.request.RequestData;
 import org.junit.Test;
 
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_EXTENSIONS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class AbstractSlingFilterChainTest extends AbstractFilterTest {
@@ -75,4 +84,107 @@ public class AbstractSlingFilterChainTest extends AbstractFilterTest {
         }
         assertTrue("an illegal state exception should have been caught", illegalStateCaught);
     }
+
+    @Test
+    public void testSkippedFiltersDoNotRecurse() throws Exception {
+        final FilterPredicate notSelected = predicate(SLING_FILTER_PATTERN, "/no/match/.*");
+        final FilterHandle[] handles = new FilterHandle[100000];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = new FilterHandle(null, notSelected, i, 0, null, null);
+        }
+
+        final int[] renderDepth = new int[1];
+        AbstractSlingFilterChain chain = new AbstractSlingFilterChain(handles) {
+            @Override
+            protected void render(SlingJakartaHttpServletRequest request, SlingJakartaHttpServletResponse response)
+                    throws IOException, ServletException {
+                renderDepth[0] = Thread.currentThread().getStackTrace().length;
+            }
+        };
+        SlingJakartaHttpServletRequest httpReq = whateverRequest();
+        final RequestData requestData = new RequestData(
+                new SlingRequestProcessorImpl(), httpReq, context.mock(HttpServletResponse.class), false, false, true);
+        requestData.setContent(context.mock(Resource.class), httpReq.getRequestPathInfo());
+        final SlingJakartaHttpServletRequestImpl req = new SlingJakartaHttpServletRequestImpl(requestData, httpReq);
+
+        chain.doFilter(req, context.mock(SlingJakartaHttpServletResponse.class));
+        assertTrue("render should have been called", renderDepth[0] > 0);
+        assertTrue("skipped filters should not add stack frames", renderDepth[0] < 200);
+    }
+
+    @Test
+    public void testWrappedRequestSelectsRemainingFilters() throws Exception {
+        final List<String> invoked = new ArrayList<>();
+        final SlingJakartaHttpServletRequest txt = mockRequest("/content/test", "txt", null, "GET", null);
+        final SlingFilterChainHelper helper = new SlingFilterChainHelper();
+        helper.addFilter(
+                new RecordingFilter("wrapping", invoked) {
+                    @Override
+                    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                            throws IOException, ServletException {
+                        invoked.add(name);
+                        // pass on a request for another extension
+                        chain.doFilter(
+                                new SlingJakartaHttpServletRequestWrapper((SlingJakartaHttpServletRequest) request) {
+                                    @Override
+                                    public RequestPathInfo getRequestPathInfo() {
+                                        return txt.getRequestPathInfo();
+                                    }
+                                },
+                                response);
+                    }
+                },
+                null,
+                1L,
+                3,
+                "wrapping",
+                null);
+        helper.addFilter(
+                new RecordingFilter("txt", invoked), predicate(SLING_FILTER_EXTENSIONS, "txt"), 2L, 2, "txt", null);
+        helper.addFilter(
+                new RecordingFilter("json", invoked), predicate(SLING_FILTER_EXTENSIONS, "json"), 3L, 1, "json", null);
+
+        final SlingJakartaHttpServletRequest json = whateverRequest();
+        final RequestData requestData = new RequestData(
+                new SlingRequestProcessorImpl(), json, context.mock(HttpServletResponse.class), false, false, true);
+        requestData.setContent(context.mock(Resource.class), json.getRequestPathInfo());
+        final SlingJakartaHttpServletRequestImpl req = new SlingJakartaHttpServletRequestImpl(requestData, json);
+
+        final AbstractSlingFilterChain chain = new AbstractSlingFilterChain(helper.getSelection(), req) {
+            @Override
+            protected void render(SlingJakartaHttpServletRequest request, SlingJakartaHttpServletResponse response)
+                    throws IOException, ServletException {
+                invoked.add("render " + request.getRequestPathInfo().getExtension());
+            }
+        };
+        chain.doFilter(req, context.mock(SlingJakartaHttpServletResponse.class));
+
+        // the filters after the wrapping filter are selected for the wrapped request
+        assertEquals(Arrays.asList("wrapping", "txt", "render txt"), invoked);
+    }
+
+    private static class RecordingFilter implements Filter {
+
+        protected final String name;
+
+        private final List<String> invoked;
+
+        RecordingFilter(final String name, final List<String> invoked) {
+            this.name = name;
+            this.invoked = invoked;
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) {}
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+                throws IOException, ServletException {
+            invoked.add(name);
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {}
+    }
 }
@@ -22,14 +22,18 @@ import java.io.IOException;
 import java.util.Objects;
 
 import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Filter;
 import org.apache.sling.api.SlingJakartaHttpServletRequest;
 import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
 import org.apache.sling.api.servlets.JakartaErrorHandler;
+import org.apache.sling.engine.EngineConstants;
 import org.apache.sling.engine.impl.DefaultErrorHandler;
 import org.apache.sling.engine.impl.SlingJakartaHttpServletResponseImpl;
 import org.apache.sling.engine.impl.request.RequestData;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.osgi.framework.ServiceReference;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -110,4 +114,31 @@ public class ErrorFilterChainTest {
         // error handling was performed, in this case null
         verify(requestData, times(1)).setDispatchingInfo(Mockito.argThat(Objects::isNull));
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFiltersSelectedForRequest() throws Exception {
+        final DefaultErrorHandler handler = new DefaultErrorHandler();
+        final JakartaErrorHandler errorHandler = Mockito.mock(JakartaErrorHandler.class);
+        handler.setDelegate(null, errorHandler);
+
+        final ServiceReference<Filter> reference = Mockito.mock(ServiceReference.class);
+        when(reference.getProperty(EngineConstants.SLING_FILTER_EXTENSIONS)).thenReturn("txt");
+        final Filter filter = Mockito.mock(Filter.class);
+        final SlingFilterChainHelper helper = new SlingFilterChainHelper();
+        helper.addFilter(filter, new FilterPredicate(reference), 1L, 0, "txt", null);
+
+        final RequestPathInfo info = Mockito.mock(RequestPathInfo.class);
+        when(info.getExtension()).thenReturn("json");
+        final SlingJakartaHttpServletRequest request = Mockito.mock(SlingJakartaHttpServletRequest.class);
+        when(request.getMethod()).thenReturn("GET");
+        when(request.getRequestPathInfo()).thenReturn(info);
+        final SlingJakartaHttpServletResponse response = Mockito.mock(SlingJakartaHttpServletResponse.class);
+
+        final ErrorFilterChain chain = new ErrorFilterChain(helper.getSelection(), request, handler, 404, "not found");
+        chain.doFilter(request, response);
+
+        verify(filter, never()).doFilter(any(), any(), any());
+        verify(errorHandler, times(1)).handleError(eq(404), eq("not found"), eq(request), eq(response));
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import jakarta.servlet.Filter;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.junit.Test;
+
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_EXTENSIONS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FilterChainCacheTest extends AbstractFilterTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        chain.addFilter(
+                context.mock(Filter.class, "txt"),
+                predicate(SLING_FILTER_EXTENSIONS, new String[] {"txt"}),
+                1L,
+                0,
+                "txt",
+                null);
+        chain.addFilter(context.mock(Filter.class, "all"), null, 2L, 0, "all", null);
+
+        final SlingJakartaHttpServletRequest json = mockRequest("/content/a", "json", null, "GET", null);
+        final SlingJakartaHttpServletRequest txt = mockRequest("/content/a", "txt", null, "GET", null);
+
+        final FilterHandle[] first = chain.getFilters(json);
+        assertEquals(1, first.length);
+        assertSame(first, chain.getFilters(json));
+        assertEquals(2, chain.getFilters(txt).length);
+        assertEquals(1, chain.getCacheHits());
+        assertEquals(2, chain.getCacheMisses());
+        assertEquals(2, chain.getCacheSize());
+
+        chain.resetCacheStatistics();
+        assertEquals(0, chain.getCacheHits());
+        assertEquals(0, chain.getCacheMisses());
+    }
+
+    @Test
+    public void testInvalidationOnChange() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        final SlingJakartaHttpServletRequest request = whateverRequest();
+        assertEquals(0, chain.getFilters(request).length);
+        assertEquals(1, chain.getCacheSize());
+
+        chain.addFilter(context.mock(Filter.class, "all"), null, 1L, 0, "all", null);
+        assertEquals(0, chain.getCacheSize());
+        assertEquals(1, chain.getFilters(request).length);
+
+        chain.removeFilterById(1L);
+        assertEquals(0, chain.getFilters(request).length);
+    }
+
+    @Test
+    public void testPatternFiltersStayCandidates() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        chain.addFilter(
+                context.mock(Filter.class, "pattern"),
+                predicate(SLING_FILTER_PATTERN, "/content/test/.*"),
+                1L,
+                0,
+                "pattern",
+                null);
+
+        final SlingJakartaHttpServletRequest match = mockRequest("/content/test/foo", "html", null, "GET", null);
+        final SlingJakartaHttpServletRequest noMatch = mockRequest("/content/bar/foo", "html", null, "GET", null);
+
+        final FilterHandle[] filters = chain.getFilters(match);
+        assertSame(filters, chain.getFilters(noMatch));
+        assertTrue(filters[0].selectResidual(match));
+        assertFalse(filters[0].selectResidual(noMatch));
+    }
+
+    @Test
+    public void testSelectionIsSnapshot() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        final FilterSelection empty = chain.getSelection();
+        assertNull(empty.getPatternMatcher());
+
+        chain.addFilter(
+                context.mock(Filter.class, "pattern"),
+                predicate(SLING_FILTER_PATTERN, "/content/test/.*"),
+                1L,
+                0,
+                "pattern",
+                null);
+        final FilterSelection selection = chain.getSelection();
+        assertNotSame(empty, selection);
+        assertNotNull(selection.getPatternMatcher());
+        assertEquals(1, selection.getFilters().length);
+
+        // a published selection is never changed by later updates
+        chain.removeFilterById(1L);
+        assertEquals(0, empty.getFilters().length);
+        assertNull(empty.getPatternMatcher());
+        assertEquals(1, selection.getFilters().length);
+        assertNotNull(selection.getPatternMatcher());
+        assertNull(chain.getSelection().getPatternMatcher());
+    }
+}
@@ -21,6 +21,7 @@ package org.apache.sling.engine.impl.filter;
 import org.junit.Test;
 
 import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -44,4 +45,35 @@ public class FilterHandleTest extends AbstractFilterTest {
                 "filter should not be selected when no matching predicate",
                 handle.select(mockRequest("/content/test/no/matching/predicate", null, null, null, null)));
     }
+
+    @Test
+    public void testStatistics() throws Exception {
+        final FilterProcessorMBeanImpl mbean = new FilterProcessorMBeanImpl();
+        final FilterHandle request = new FilterHandle(null, null, 0L, 0, "", mbean);
+        final FilterHandle component = new FilterHandle(null, null, 0L, 0, "", mbean);
+        for (int i = 1; i <= 100; i++) {
+            request.track();
+            request.trackTime(i * 1000);
+        }
+        component.track();
+        component.trackTime(1_000_000);
+
+        assertEquals(100, request.getCalls());
+        assertEquals(5050, request.getTime());
+        assertEquals(50500, request.getTimePerCall());
+
+        assertEquals(101, mbean.getInvocationsCount());
+        assertEquals(59.9, mbean.getMeanFilterDurationMsec(), 0.1);
+        assertEquals(1000, mbean.getMaxFilterDurationMsec(), 0.001);
+        assertTrue(mbean.getMedianFilterDurationMsec() >= 51);
+        assertTrue(mbean.get99thPercentileFilterDurationMsec() >= 100);
+
+        component.dispose();
+        assertEquals(100, mbean.getInvocationsCount());
+
+        mbean.resetStatistics();
+        assertEquals(0, request.getCalls());
+        assertEquals(0, mbean.getInvocationsCount());
+        assertEquals(0, mbean.get999thPercentileFilterDurationMsec(), 0);
+    }
 }
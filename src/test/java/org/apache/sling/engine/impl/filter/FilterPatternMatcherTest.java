@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import jakarta.servlet.Filter;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.junit.Test;
+
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_REQUEST_PATTERN;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_RESOURCE_PATTERN;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_SUFFIX_PATTERN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FilterPatternMatcherTest extends AbstractFilterTest {
+
+    @Test
+    public void testLiterals() {
+        assertEquals("/content/test", FilterPatternMatcher.toLiteral("/content/test"));
+        assertEquals("/content/a.b", FilterPatternMatcher.toLiteral("/content/a\\.b"));
+        assertEquals("/content/a.b", FilterPatternMatcher.toLiteral("\\Q/content/a.b\\E"));
+        assertEquals("", FilterPatternMatcher.toLiteral(""));
+        assertNull(FilterPatternMatcher.toLiteral("/content/(a|b)"));
+        assertNull(FilterPatternMatcher.toLiteral("/content/\\d"));
+        assertNull(FilterPatternMatcher.toLiteral("\\Q/content"));
+
+        assertTrue(FilterPatternMatcher.isPrefix("/content/.*"));
+        assertTrue(FilterPatternMatcher.isPrefix("/content\\\\.*"));
+        assertFalse(FilterPatternMatcher.isPrefix("/content\\.*"));
+        assertFalse(FilterPatternMatcher.isPrefix("/content/"));
+    }
+
+    @Test
+    public void testSameResultAsPredicate() {
+        final FilterHandle[] filters = {
+            handle(1, SLING_FILTER_PATTERN, "/content/test/.*"),
+            handle(2, SLING_FILTER_PATTERN, "/content/test"),
+            handle(3, SLING_FILTER_PATTERN, ".*"),
+            handle(4, SLING_FILTER_PATTERN, "/content/(test|bar)/.*"),
+            handle(5, SLING_FILTER_RESOURCE_PATTERN, "/content/test/.*"),
+            handle(6, SLING_FILTER_REQUEST_PATTERN, "/content/bar/.*"),
+            handle(7, SLING_FILTER_SUFFIX_PATTERN, "/foo/.*"),
+            handle(8, SLING_FILTER_PATTERN, "/"),
+            handle(9, SLING_FILTER_PATTERN, "/content/.*", SLING_FILTER_SUFFIX_PATTERN, "/bar"),
+            new FilterHandle(context.mock(Filter.class, "none"), predicate(), 10, 0, "none", null)
+        };
+        final FilterPatternMatcher matcher = new FilterPatternMatcher(filters);
+
+        final SlingJakartaHttpServletRequest[] requests = {
+            mockRequest("/content/test/foo", "html", null, "GET", null),
+            mockRequest("/content/test", "html", null, "GET", "/foo/x"),
+            mockRequest("/content/bar/foo", "html", null, "GET", "/bar"),
+            mockRequest("", "html", null, "GET", null),
+            mockRequest("/content/test/foo", "/content/bar/foo", "json"),
+            mockRequest("/content/other\nline", "html", null, "GET", null)
+        };
+        for (final SlingJakartaHttpServletRequest request : requests) {
+            final FilterPatternMatcher.Matches matches = matcher.match(request);
+            assertTrue(matches.isValidFor(request));
+            for (final FilterHandle filter : filters) {
+                assertEquals(
+                        filter.getOrderSource() + " on "
+                                + request.getRequestPathInfo().getResourcePath(),
+                        filter.select(request),
+                        matches.select(filter, request));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final FilterHandle[] filters = {new FilterHandle(context.mock(Filter.class), null, 1, 0, "null", null)};
+        assertTrue(new FilterPatternMatcher(filters).isEmpty());
+    }
+
+    private FilterHandle handle(final long id, final Object... config) {
+        return new FilterHandle(
+                context.mock(Filter.class, "filter" + id), predicate(config), id, 0, String.valueOf(id), null);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.filter;
+
+import jakarta.servlet.Filter;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.junit.Test;
+
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_EXTENSIONS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_METHODS;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_PATTERN;
+import static org.apache.sling.engine.EngineConstants.SLING_FILTER_SELECTORS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FilterSelectionIndexTest extends AbstractFilterTest {
+
+    private FilterHandle handle(final String name, final long id, final FilterPredicate predicate) {
+        return new FilterHandle(context.mock(Filter.class, name), predicate, id, 0, name, null);
+    }
+
+    @Test
+    public void testUnrestrictedReturnsAll() {
+        final FilterHandle[] filters = {
+            handle("a", 1, null), handle("b", 2, predicate()), handle("c", 3, predicate(SLING_FILTER_PATTERN, "/x/.*"))
+        };
+        final FilterSelectionIndex index = new FilterSelectionIndex(filters);
+        assertSame(filters, index.select(whateverRequest()));
+    }
+
+    @Test
+    public void testBuckets() {
+        final FilterHandle any = handle("any", 1, null);
+        final FilterHandle post = handle("post", 2, predicate(SLING_FILTER_METHODS, new String[] {"POST"}));
+        final FilterHandle json = handle("json", 3, predicate(SLING_FILTER_EXTENSIONS, new String[] {"json", "xml"}));
+        final FilterHandle sel = handle("sel", 4, predicate(SLING_FILTER_SELECTORS, new String[] {"foo", "bar"}));
+        final FilterHandle getHtml = handle(
+                "getHtml",
+                5,
+                predicate(SLING_FILTER_METHODS, new String[] {"GET"}, SLING_FILTER_EXTENSIONS, new String[] {"html"}));
+        final FilterSelectionIndex index = new FilterSelectionIndex(new FilterHandle[] {any, post, json, sel, getHtml});
+
+        assertArrayEquals(
+                new FilterHandle[] {any, json}, index.select(mockRequest("/content/a", "json", null, "GET", null)));
+        assertArrayEquals(
+                new FilterHandle[] {any, post, sel},
+                index.select(mockRequest("/content/a", "txt", new String[] {"x", "bar"}, "POST", null)));
+        assertArrayEquals(
+                new FilterHandle[] {any, getHtml}, index.select(mockRequest("/content/a", "html", null, "GET", null)));
+        assertArrayEquals(new FilterHandle[] {any}, index.select(mockRequest("/content/a", null, null, null, null)));
+    }
+
+    @Test
+    public void testSameResultAsPredicate() {
+        final FilterHandle[] filters = {
+            handle("a", 1, predicate(SLING_FILTER_METHODS, new String[] {"GET"}, SLING_FILTER_PATTERN, "/content/.*")),
+            handle("b", 2, predicate(SLING_FILTER_SELECTORS, new String[] {"test"})),
+            handle("c", 3, predicate(SLING_FILTER_EXTENSIONS, new String[] {"txt"}))
+        };
+        final FilterSelectionIndex index = new FilterSelectionIndex(filters);
+        final SlingJakartaHttpServletRequest request = whateverRequest();
+        final FilterHandle[] selected = index.select(request);
+        assertEquals(2, selected.length);
+        for (final FilterHandle handle : selected) {
+            assertTrue(handle.select(request));
+        }
+        assertFalse(filters[2].select(request));
+    }
+
+    @Test
+    public void testChainHelperRebuildsIndex() {
+        final SlingFilterChainHelper chain = new SlingFilterChainHelper();
+        final SlingJakartaHttpServletRequest request = whateverRequest();
+        chain.addFilter(
+                context.mock(Filter.class, "post"),
+                predicate(SLING_FILTER_METHODS, new String[] {"POST"}),
+                1L,
+                0,
+                "post",
+                null);
+        assertEquals(0, chain.getFilters(request).length);
+
+        chain.addFilter(context.mock(Filter.class, "all"), null, 2L, 0, "all", null);
+        assertEquals(1, chain.getFilters(request).length);
+
+        chain.removeFilterById(2L);
+        assertEquals(0, chain.getFilters(request).length);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.helper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        for (long value = 0; value < 100_000; value++) {
+            final int bucket = LatencyHistogram.bucket(value);
+            assertTrue(value + " above upper bound", value <= LatencyHistogram.upperBound(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below lower bound", value > LatencyHistogram.upperBound(bucket - 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(1000, snapshot.getMax());
+        assertWithinError(500, snapshot.getValueAtPercentile(50));
+        assertWithinError(900, snapshot.getValueAtPercentile(90));
+        assertWithinError(990, snapshot.getValueAtPercentile(99));
+        assertEquals(1000, snapshot.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void testMergeAndReset() {
+        final LatencyHistogram first = new LatencyHistogram();
+        final LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20_000);
+        second.record(-5);
+
+        final LatencyHistogram.Snapshot merged = first.snapshot().merge(second.snapshot());
+        assertEquals(3, merged.getCount());
+        assertEquals(20_000, merged.getMax());
+        assertEquals(0, merged.getValueAtPercentile(1));
+
+        second.reset();
+        assertEquals(0, second.snapshot().getCount());
+        assertEquals(0, second.snapshot().getValueAtPercentile(99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80_000, histogram.snapshot().getCount());
+    }
+
+    private static void assertWithinError(final long expected, final long actual) {
+        assertTrue(
+                "expected " + expected + " but was " + actual, actual >= expected && actual <= expected + expected / 8);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.helper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.ServletRequest;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class RequestCompletionTest {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final List<String> events = new ArrayList<>();
+
+    private ServletRequest request;
+
+    private AsyncContext asyncContext;
+
+    @Before
+    public void setup() {
+        request = Mockito.mock(ServletRequest.class);
+        Mockito.when(request.getAttribute(anyString()))
+                .thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+        Mockito.doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(request)
+                .setAttribute(anyString(), any());
+
+        asyncContext = Mockito.mock(AsyncContext.class);
+        Mockito.when(asyncContext.getRequest()).thenReturn(request);
+    }
+
+    @Test
+    public void testSynchronousRequestCompletesImmediately() {
+        RequestCompletion.whenComplete(request, () -> events.add("done"));
+        assertEquals(List.of("done"), events);
+        assertNull(RequestCompletion.get(request));
+    }
+
+    @Test
+    public void testAsynchronousRequestCompletesWithContext() {
+        final RequestCompletion completion = RequestCompletion.start(asyncContext);
+        Mockito.verify(asyncContext).addListener(completion);
+        Mockito.when(request.isAsyncStarted()).thenReturn(true);
+        assertSame(completion, RequestCompletion.get(request));
+
+        RequestCompletion.whenComplete(request, () -> events.add("statistics"));
+        RequestCompletion.whenComplete(request, () -> {
+            throw new IllegalStateException("failing action");
+        });
+        RequestCompletion.whenComplete(request, () -> events.add("resolver"));
+        assertEquals(List.of(), events);
+
+        completion.complete();
+        Mockito.verify(asyncContext).complete();
+        completion.onComplete(new AsyncEvent(asyncContext));
+        assertEquals(List.of("statistics", "resolver"), events);
+
+        // actions registered after completion run immediately
+        RequestCompletion.whenComplete(request, () -> events.add("late"));
+        assertEquals(List.of("statistics", "resolver", "late"), events);
+    }
+
+    @Test
+    public void testAsyncContextStartedOutsideOfEngine() {
+        Mockito.when(request.isAsyncStarted()).thenReturn(true);
+        Mockito.when(request.getAsyncContext()).thenReturn(asyncContext);
+
+        RequestCompletion.whenComplete(request, () -> events.add("resolver"));
+        final RequestCompletion completion = RequestCompletion.get(request);
+        Mockito.verify(asyncContext).addListener(completion);
+        assertEquals(List.of(), events);
+
+        RequestCompletion.whenComplete(request, () -> events.add("logger"));
+        Mockito.verify(asyncContext, Mockito.times(1)).addListener(any());
+
+        completion.onComplete(new AsyncEvent(asyncContext));
+        assertEquals(List.of("resolver", "logger"), events);
+    }
+
+    @Test
+    public void testAsyncContextCompletedConcurrently() {
+        Mockito.when(request.isAsyncStarted()).thenReturn(true);
+        Mockito.when(request.getAsyncContext()).thenThrow(new IllegalStateException());
+
+        RequestCompletion.whenComplete(request, () -> events.add("done"));
+        assertEquals(List.of("done"), events);
+    }
+
+    @Test
+    public void testTakenOverContextIsNotCompleted() {
+        final RequestCompletion completion = RequestCompletion.start(asyncContext);
+        assertSame(asyncContext, completion.takeOver());
+        completion.complete();
+        Mockito.verify(asyncContext, Mockito.never()).complete();
+    }
+
+    @Test
+    public void testUnsupportedAsyncProcessing() {
+        Mockito.when(request.isAsyncStarted()).thenThrow(new UnsupportedOperationException());
+        RequestCompletion.whenComplete(request, () -> events.add("done"));
+        assertEquals(List.of("done"), events);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.helper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void testSupportedFromJava21() {
+        assertEquals(Runtime.version().feature() >= 21, VirtualThreads.isSupported());
+    }
+
+    @Test
+    public void testNewExecutor() throws Exception {
+        final ExecutorService executor = VirtualThreads.newExecutor();
+        if (!VirtualThreads.isSupported()) {
+            assertNull(executor);
+            return;
+        }
+        try {
+            final Future<Boolean> virtual = executor.submit(() -> {
+                // Thread.isVirtual() is not available when compiling for Java 17
+                return (Boolean) Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            });
+            assertTrue(virtual.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.limiter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrencyLimiterTest {
+
+    /** a limit which never changes */
+    private static LimitAlgorithm fixed(final int limit) {
+        return new LimitAlgorithm() {
+            @Override
+            public int getLimit() {
+                return limit;
+            }
+
+            @Override
+            public void onSample(final long latencyNanos, final int inFlight) {
+                // fixed
+            }
+        };
+    }
+
+    @Test
+    public void testRejectsOverLimitWithoutQueue() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(2), 0, 100);
+        final ConcurrencyLimiter.Permit first = limiter.acquire();
+        final ConcurrencyLimiter.Permit second = limiter.acquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.acquire());
+        assertEquals(2, limiter.getInFlight());
+
+        first.release();
+        // releasing twice has no effect
+        first.release();
+        assertEquals(1, limiter.getInFlight());
+        assertNotNull(limiter.acquire());
+
+        assertEquals(3, limiter.getAcceptedCount());
+        assertEquals(1, limiter.getRejectedCount());
+        limiter.resetStatistics();
+        assertEquals(0, limiter.getAcceptedCount());
+        assertEquals(0, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testQueuedRequestGetsReleasedPermit() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(1), 1, 10_000);
+        final ConcurrencyLimiter.Permit first = limiter.acquire();
+
+        final AtomicReference<ConcurrencyLimiter.Permit> queued = new AtomicReference<>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            queued.set(limiter.acquire());
+            done.countDown();
+        });
+        waiter.start();
+        for (int i = 0; i < 500 && limiter.getQueueLength() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, limiter.getQueueLength());
+
+        // the queue is full
+        assertNull(limiter.acquire());
+
+        first.release();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertNotNull(queued.get());
+        assertEquals(0, limiter.getQueueLength());
+        assertEquals(1, limiter.getQueuedCount());
+        assertEquals(1, limiter.getRejectedCount());
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter("test", fixed(1), 5, 20);
+        assertNotNull(limiter.acquire());
+        assertNull(limiter.acquire());
+        assertEquals(1, limiter.getQueuedCount());
+        assertTrue(limiter.getMaxQueueTimeMsec() >= 20);
+        assertTrue(limiter.getMeanQueueTimeMsec() >= 20);
+    }
+
+    @Test
+    public void testAimdLimit() {
+        final long threshold = TimeUnit.MILLISECONDS.toNanos(100);
+        final AimdLimit limit = new AimdLimit(10, 2, 12, threshold);
+
+        // fast requests grow the limit only if it is used
+        limit.onSample(threshold / 2, 1);
+        assertEquals(10, limit.getLimit());
+        for (int i = 0; i < 12; i++) {
+            limit.onSample(threshold / 2, 10);
+        }
+        assertEquals(11, limit.getLimit());
+
+        // slow requests shrink it down to the minimum
+        limit.onSample(threshold * 2, 1);
+        assertEquals(10, limit.getLimit());
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(threshold * 2, 1);
+        }
+        assertEquals(2, limit.getLimit());
+    }
+
+    @Test
+    public void testGradientLimit() {
+        final GradientLimit limit = new GradientLimit(20, 4, 100);
+        final long normal = TimeUnit.MILLISECONDS.toNanos(10);
+        for (int i = 0; i < 100; i++) {
+            limit.onSample(normal, limit.getLimit());
+        }
+        final int grown = limit.getLimit();
+        assertTrue("limit grows with stable latency: " + grown, grown > 20);
+
+        for (int i = 0; i < 50; i++) {
+            limit.onSample(normal * 10, limit.getLimit());
+        }
+        final int shrunk = limit.getLimit();
+        assertTrue("limit shrinks with rising latency: " + shrunk, shrunk < grown);
+        assertTrue(shrunk >= 4);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("deprecation")
+public class AsyncFileRequestLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWritesAllMessagesWhenBlocking() throws Exception {
+        final File file = new File(folder.getRoot(), "logs/access.log");
+        final AsyncFileRequestLog log = new AsyncFileRequestLog(null, new RollingLogFile(file), 16, 4, 10, true);
+
+        final int threads = 4;
+        final int perThread = 1000;
+        final Thread[] writers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    log.write("thread " + id + " message " + i);
+                }
+            });
+            writers[t].start();
+        }
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        log.close();
+
+        final List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+        assertEquals(threads * perThread, lines.size());
+        assertTrue(lines.contains("thread 3 message 999"));
+    }
+
+    @Test
+    public void testDropsWhenStopped() throws Exception {
+        final File file = new File(folder.getRoot(), "drop.log");
+        final AsyncLogWriter writer = new AsyncLogWriter(new RollingLogFile(file), 2, 1, 1000, false);
+        writer.stop();
+
+        // the writer is stopped, nothing is queued anymore
+        writer.write("late");
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(0, writer.getWrittenCount());
+
+        writer.resetStatistics();
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void testSharedFileIsClosedByLastLogger() throws Exception {
+        final File file = new File(folder.getRoot(), "request.log");
+        final AsyncFileRequestLog entry = new AsyncFileRequestLog(null, new RollingLogFile(file), 16, 4, 1000, true);
+        final AsyncFileRequestLog exit = new AsyncFileRequestLog(null, new RollingLogFile(file), 16, 4, 1000, true);
+
+        entry.write("-> GET /");
+        entry.close();
+        entry.write("ignored after close");
+        exit.write("<- 200");
+        exit.close();
+
+        final List<String> lines = Files.readAllLines(file.toPath(), Charset.defaultCharset());
+        assertEquals(List.of("-> GET /", "<- 200"), lines);
+    }
+
+    @Test
+    public void testFileOfSynchronousLogIsRejected() throws Exception {
+        final File file = new File(folder.getRoot(), "sync.log");
+        final FileRequestLog sync = new FileRequestLog(file);
+        try {
+            new AsyncFileRequestLog(null, new RollingLogFile(file), 16, 4, 1000, true);
+            fail("the file is already written by a synchronous log");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains(file.getAbsolutePath()));
+        } finally {
+            sync.close();
+            FileRequestLog.dispose();
+        }
+    }
+
+    @Test
+    public void testFileOfAsynchronousLogIsRejected() throws Exception {
+        final File file = new File(folder.getRoot(), "async.log");
+        final AsyncFileRequestLog async = new AsyncFileRequestLog(null, new RollingLogFile(file), 16, 4, 1000, true);
+        try {
+            new FileRequestLog(file);
+            fail("the file is already written by an asynchronous log");
+        } catch (final IOException expected) {
+            assertTrue(expected.getMessage().contains(file.getAbsolutePath()));
+        } finally {
+            async.close();
+        }
+
+        // once the asynchronous log is closed, the file is free again
+        new FileRequestLog(file).close();
+        FileRequestLog.dispose();
+    }
+}
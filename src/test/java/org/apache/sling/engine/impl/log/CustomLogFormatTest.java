@@ -18,6 +18,10 @@
  */
 package org.apache.sling.engine.impl.log;
 
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
 import junit.framework.TestCase;
 
 /**
@@ -69,4 +73,22 @@ public class CustomLogFormatTest extends TestCase {
                 "This is a special character \\u1234",
                 CustomLogFormat.HeaderParameter.escape("This is a special character \u1234"));
     }
+
+    public void testTimeFormatted() {
+        final SimpleDateFormat expected = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.US);
+        final long[] times = {0L, 999L, 1000L, 1_700_000_000_123L, 1_700_000_000_999L, 1_700_000_001_000L, -1L};
+        for (final long time : times) {
+            // format twice to cover the cached value
+            assertEquals(expected.format(new Date(time)), CustomLogFormat.TimeParameter.timeFormatted(time));
+            assertEquals(expected.format(new Date(time)), CustomLogFormat.TimeParameter.timeFormatted(time));
+        }
+    }
+
+    public void testEscapeInto() {
+        final StringBuilder dest = new StringBuilder("x=");
+        CustomLogFormat.HeaderParameter.escape(dest, "a\"\u00e4");
+        assertEquals("x=a\\\"\\u00e4", dest.toString());
+        assertTrue(CustomLogFormat.HeaderParameter.appendEscaped(dest, ""));
+        assertFalse(CustomLogFormat.HeaderParameter.appendEscaped(dest, null));
+    }
 }
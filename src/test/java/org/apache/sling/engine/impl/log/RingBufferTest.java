@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void testCapacityIsPowerOfTwo() {
+        assertEquals(2, new RingBuffer<String>(1).capacity());
+        assertEquals(8, new RingBuffer<String>(5).capacity());
+        assertEquals(8, new RingBuffer<String>(8).capacity());
+    }
+
+    @Test
+    public void testFullAndEmpty() {
+        final RingBuffer<String> buffer = new RingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer("m" + i));
+        }
+        assertFalse(buffer.offer("m4"));
+        assertEquals(4, buffer.size());
+
+        assertEquals("m0", buffer.poll());
+        assertTrue(buffer.offer("m4"));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals("m" + i, buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        final int producers = 4;
+        final int perProducer = 50000;
+        final Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        final AtomicInteger received = new AtomicInteger();
+        long sum = 0;
+        while (received.get() < producers * perProducer) {
+            final Integer value = buffer.poll();
+            if (value == null) {
+                Thread.yield();
+            } else {
+                received.incrementAndGet();
+                sum += value;
+            }
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals((long) producers * perProducer * (perProducer - 1) / 2, sum);
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class RollingLogFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRolloverBySize() throws Exception {
+        final File file = new File(folder.getRoot(), "access.log");
+        final RollingLogFile log = new RollingLogFile(file, 10, null, 0, false);
+        log.open();
+        log.write("first");
+        log.write("second");
+        // the limit has been reached, this rolls over
+        log.write("third");
+        log.close();
+
+        assertEquals(List.of("third"), Files.readAllLines(file.toPath(), Charset.defaultCharset()));
+        final File[] rolled = rolled(file);
+        assertEquals(1, rolled.length);
+        assertEquals(List.of("first", "second"), Files.readAllLines(rolled[0].toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testSizeCountsBytes() throws Exception {
+        assumeTrue(StandardCharsets.UTF_8.equals(Charset.defaultCharset()));
+        final File file = new File(folder.getRoot(), "access.log");
+        final RollingLogFile log = new RollingLogFile(file, 10, null, 0, false);
+        log.open();
+        // three characters but six bytes
+        log.write("\u00e4\u00f6\u00fc");
+        log.write("\u00e4\u00f6\u00fc");
+        log.write("\u00e4\u00f6\u00fc");
+        log.close();
+
+        assertEquals(1, rolled(file).length);
+        assertEquals(List.of("\u00e4\u00f6\u00fc"), Files.readAllLines(file.toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testFailedRolloverIsRetriedAtNextSize() throws Exception {
+        final File file = new File(folder.getRoot(), "access.log");
+        final AtomicInteger attempts = new AtomicInteger();
+        final RollingLogFile log = new RollingLogFile(file, 10, ChronoUnit.DAYS, 0, false) {
+            @Override
+            void move(final File source, final File target) throws IOException {
+                attempts.incrementAndGet();
+                throw new IOException("file is locked");
+            }
+        };
+        log.open();
+        for (int i = 0; i < 7; i++) {
+            log.write("12345");
+        }
+        log.close();
+
+        // rolled over at 12 bytes and retried at 22 and 34 bytes
+        assertEquals(3, attempts.get());
+        assertEquals(
+                7, Files.readAllLines(file.toPath(), Charset.defaultCharset()).size());
+        assertArrayEquals(new File[0], rolled(file));
+    }
+
+    @Test
+    public void testRolloverOfFileFromPreviousInterval() throws Exception {
+        final File file = new File(folder.getRoot(), "access.log");
+        Files.write(file.toPath(), List.of("yesterday"), Charset.defaultCharset());
+        assertTrue(file.setLastModified(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+
+        final RollingLogFile log = new RollingLogFile(file, 0, ChronoUnit.DAYS, 0, false);
+        log.open();
+        log.write("today");
+        log.write("still today");
+        log.close();
+
+        assertEquals(List.of("today", "still today"), Files.readAllLines(file.toPath(), Charset.defaultCharset()));
+        final File[] rolled = rolled(file);
+        assertEquals(1, rolled.length);
+        assertEquals(List.of("yesterday"), Files.readAllLines(rolled[0].toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testCompressionAndRetention() throws Exception {
+        final File file = new File(folder.getRoot(), "access.log");
+        final RollingLogFile log = new RollingLogFile(file, 1, null, 2, true);
+        log.open();
+        for (int i = 0; i < 5; i++) {
+            log.write("message " + i);
+        }
+        log.close();
+
+        // wait for the housekeeping thread
+        File[] rolled = rolled(file);
+        for (int i = 0; i < 500 && !isHousekept(rolled); i++) {
+            Thread.sleep(10);
+            rolled = rolled(file);
+        }
+        assertEquals(2, rolled.length);
+        assertEquals("message 2", gunzip(rolled[0]));
+        assertEquals("message 3", gunzip(rolled[1]));
+        assertEquals(List.of("message 4"), Files.readAllLines(file.toPath(), Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testToUnit() {
+        assertEquals(ChronoUnit.HOURS, RollingLogFile.toUnit(RollingLogFile.INTERVAL_HOURLY));
+        assertEquals(ChronoUnit.DAYS, RollingLogFile.toUnit(RollingLogFile.INTERVAL_DAILY));
+        assertNull(RollingLogFile.toUnit(RollingLogFile.INTERVAL_NONE));
+        assertNull(RollingLogFile.toUnit(null));
+    }
+
+    @Test
+    public void testNeverRolled() throws Exception {
+        final File file = new File(folder.getRoot(), "logs/request.log");
+        final RollingLogFile log = new RollingLogFile(file);
+        log.open();
+        log.write("first");
+        log.close();
+        log.open();
+        log.write("second");
+        log.close();
+
+        assertEquals(List.of("first", "second"), Files.readAllLines(file.toPath(), Charset.defaultCharset()));
+        assertArrayEquals(new File[0], rolled(file));
+    }
+
+    private static boolean isHousekept(final File[] rolled) {
+        return rolled.length == 2
+                && Arrays.stream(rolled).allMatch(f -> f.getName().endsWith(".gz"));
+    }
+
+    private static File[] rolled(final File file) {
+        final File[] rolled = file.getParentFile()
+                .listFiles((dir, name) -> name.startsWith(file.getName() + ".") && !name.endsWith(".tmp"));
+        Arrays.sort(rolled);
+        return rolled;
+    }
+
+    private static String gunzip(final File file) throws Exception {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+            return new String(in.readAllBytes(), Charset.defaultCharset()).trim();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BufferedFileItemTest {
+
+    private static final int THRESHOLD = 3 * UploadBufferPool.CHUNK_SIZE;
+
+    private File directory;
+
+    private UploadBufferPool pool;
+
+    @Before
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("uploads").toFile();
+        pool = new UploadBufferPool(2L * UploadBufferPool.CHUNK_SIZE);
+    }
+
+    @After
+    public void cleanup() {
+        for (final File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private BufferedFileItem write(final byte[] content) throws IOException {
+        final BufferedFileItem item =
+                new BufferedFileItem(pool, THRESHOLD, directory, "file", "text/plain", false, "a.txt");
+        try (OutputStream out = item.getOutputStream()) {
+            // write in uneven pieces like the upload does
+            for (int i = 0; i < content.length; i += 1000) {
+                out.write(content, i, Math.min(1000, content.length - i));
+            }
+        }
+        return item;
+    }
+
+    private static byte[] content(final int size) {
+        final byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    private static byte[] read(final InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return stream.readAllBytes();
+        }
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        final byte[] content = content(THRESHOLD);
+        final BufferedFileItem item = write(content);
+
+        assertTrue(item.isInMemory());
+        assertEquals(THRESHOLD, item.getSize());
+        assertArrayEquals(content, item.get());
+        assertArrayEquals(content, read(item.getInputStream()));
+        assertEquals(0, directory.list().length);
+
+        // two direct buffers from the pool, the third one from the heap
+        assertEquals(2, pool.getAllocated());
+
+        final File target = new File(directory, "target");
+        item.write(target);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+
+        item.delete();
+        assertEquals(2, pool.getFree());
+        try {
+            item.getInputStream();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadAfterDelete() throws Exception {
+        final byte[] content = content(2 * UploadBufferPool.CHUNK_SIZE);
+        final BufferedFileItem item = write(content);
+
+        final InputStream open = item.getInputStream();
+        assertEquals(content[0] & 0xff, open.read());
+        try (InputStream closed = item.getInputStream()) {
+            assertArrayEquals(content, closed.readAllBytes());
+        }
+
+        item.delete();
+        try {
+            open.read();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // the chunks viewed by the open stream are not reused
+        assertEquals(0, pool.getFree());
+        assertEquals(0, pool.getAllocated());
+        open.close();
+    }
+
+    @Test
+    public void testSpooled() throws Exception {
+        final byte[] content = content(THRESHOLD + 1);
+        final BufferedFileItem item = write(content);
+
+        assertFalse(item.isInMemory());
+        assertEquals(THRESHOLD + 1, item.getSize());
+        assertEquals(1, directory.list().length);
+        assertEquals(2, pool.getFree());
+
+        try (InputStream in = item.getInputStream()) {
+            assertEquals(content.length, in.available());
+            assertEquals(content[0] & 0xff, in.read());
+            assertEquals(100, in.skip(100));
+            final byte[] rest = new byte[content.length];
+            int read = 0;
+            for (int n; (n = in.read(rest, read, rest.length - read)) > 0; ) {
+                read += n;
+            }
+            assertEquals(content.length - 101, read);
+            assertArrayEquals(Arrays.copyOfRange(content, 101, content.length), Arrays.copyOf(rest, read));
+            assertEquals(-1, in.read());
+        }
+
+        final File target = new File(directory, "target");
+        item.write(target);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        target.delete();
+
+        item.delete();
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void testDeleteSpooledWhileReading() throws Exception {
+        final BufferedFileItem item = write(content(THRESHOLD + 1));
+        final InputStream kept = item.getInputStream();
+        assertEquals(content(1)[0] & 0xff, kept.read());
+
+        item.delete();
+        assertEquals(0, directory.list().length);
+        try {
+            kept.read();
+            fail("IOException expected");
+        } catch (final IOException e) {
+            // expected
+        }
+        kept.close();
+    }
+
+    @Test
+    public void testFormField() throws Exception {
+        final BufferedFileItem item =
+                new BufferedFileItem(pool, THRESHOLD, directory, "field", "text/plain; charset=UTF-8", true, null);
+        try (OutputStream out = item.getOutputStream()) {
+            out.write("\u00e4".getBytes("UTF-8"));
+        }
+        assertEquals("\u00e4", item.getString());
+        assertEquals(2, item.getSize());
+        item.delete();
+    }
+}
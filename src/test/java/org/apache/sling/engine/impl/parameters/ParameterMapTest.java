@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import org.apache.sling.api.request.RequestParameter;
+
+public class ParameterMapTest extends TestCase {
+
+    @Override
+    protected void tearDown() {
+        ParameterMap.setMaxParameters(ParameterMap.DEFAULT_MAX_PARAMS);
+    }
+
+    private static RequestParameter param(final String name, final String value) {
+        return new ContainerRequestParameter(name, value, Util.ENCODING_DIRECT);
+    }
+
+    public void test_many_names() {
+        final ParameterMap map = new ParameterMap();
+        for (int i = 0; i < 1000; i++) {
+            map.addParameter(param("p" + i, "v" + i), false);
+        }
+
+        assertEquals(1000, map.size());
+        final List<String> names = new ArrayList<>(map.keySet());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("p" + i, names.get(i));
+            assertEquals("v" + i, map.getStringValue("p" + i));
+            assertTrue(map.containsKey("p" + i));
+        }
+        assertNull(map.get("p1000"));
+        assertNull(map.getStringValues("p1000"));
+        assertFalse(map.containsKey(null));
+    }
+
+    public void test_many_values() {
+        final ParameterMap map = new ParameterMap();
+        for (int i = 0; i < 1000; i++) {
+            map.addParameter(param("p" + (i % 3), "v" + i), false);
+        }
+
+        assertEquals(3, map.size());
+        assertEquals(334, map.getValues("p0").length);
+        assertEquals(333, map.getStringValues("p2").length);
+        assertEquals("v0", map.getStringValue("p0"));
+        assertEquals("v999", map.getStringValues("p0")[333]);
+        assertSame(map.getValues("p1"), map.get("p1"));
+
+        // values handed out are not modified by later additions
+        final RequestParameter[] before = map.getValues("p1");
+        map.addParameter(param("p1", "last"), false);
+        assertEquals(333, before.length);
+        assertEquals(334, map.getValues("p1").length);
+        assertEquals("last", map.getStringValues("p1")[333]);
+
+        final List<RequestParameter> list = map.getRequestParameterList();
+        assertEquals(1001, list.size());
+        assertEquals("v0", list.get(0).getString());
+        assertEquals("last", list.get(1000).getString());
+    }
+
+    public void test_prepend() {
+        final ParameterMap map = new ParameterMap();
+        map.addParameter(param("p", "1"), false);
+        map.addParameter(param("p", "2"), true);
+        map.addParameter(param("p", "3"), false);
+        map.addParameter(param("p", "4"), true);
+
+        assertEquals(Arrays.asList("4", "2", "1", "3"), Arrays.asList(map.getStringValues("p")));
+    }
+
+    public void test_rename() {
+        final ParameterMap map = new ParameterMap();
+        map.addParameter(param("a", "1"), false);
+        map.addParameter(param("b", "2"), false);
+        map.addParameter(param("c", "3"), false);
+        map.addParameter(param("a", "4"), false);
+
+        map.renameParameter("a", "d");
+        map.renameParameter("c", "b");
+
+        assertEquals(Arrays.asList("b", "d"), new ArrayList<>(map.keySet()));
+        assertNull(map.getValues("a"));
+        assertEquals(Arrays.asList("1", "4"), Arrays.asList(map.getStringValues("d")));
+        assertEquals("d", map.getValue("d").getName());
+        assertEquals(Arrays.asList("3"), Arrays.asList(map.getStringValues("b")));
+
+        // renaming many entries compacts the removed entries
+        for (int i = 0; i < 100; i++) {
+            map.addParameter(param("x" + i, "" + i), false);
+            map.renameParameter("x" + i, "y" + i);
+        }
+        assertEquals(102, map.size());
+        assertEquals("99", map.getStringValue("y99"));
+        assertNull(map.getValue("x99"));
+    }
+
+    public void test_max_parameters() {
+        ParameterMap.setMaxParameters(3);
+        final ParameterMap map = new ParameterMap();
+        map.addParameter(param("a", "1"), false);
+        map.addParameter(param("a", "2"), false);
+        map.addParameter(param("b", "3"), false);
+        map.addParameter(param("c", "4"), false);
+
+        assertEquals(2, map.size());
+        assertEquals(3, map.getRequestParameterList().size());
+        assertNull(map.getValue("c"));
+    }
+
+    public void test_string_parameter_map() {
+        final ParameterMap map = new ParameterMap();
+        map.addParameter(param("a", "1"), false);
+        map.addParameter(param("b", "2"), false);
+        map.addParameter(param("a", "3"), false);
+
+        final Map<String, String[]> strings = map.getStringParameterMap();
+        assertSame(strings, map.getStringParameterMap());
+        assertEquals(2, strings.size());
+        assertEquals(Arrays.asList("a", "b"), new ArrayList<>(strings.keySet()));
+        assertEquals(Arrays.asList("1", "3"), Arrays.asList(strings.get("a")));
+        assertSame(strings.get("a"), strings.get("a"));
+
+        // the values are copied, changing them does not change the parameters
+        final String[] values = map.getStringValues("a");
+        assertNotSame(values, map.getStringValues("a"));
+        values[0] = "changed";
+        assertEquals(Arrays.asList("1", "3"), Arrays.asList(map.getStringValues("a")));
+        assertEquals(Arrays.asList("1", "3"), Arrays.asList(strings.get("a")));
+        assertTrue(strings.containsKey("b"));
+        assertNull(strings.get("c"));
+
+        try {
+            strings.put("c", new String[] {"4"});
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            map.remove("a");
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            map.entrySet().iterator().next().setValue(null);
+            fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import org.apache.sling.api.SlingIOException;
+import org.apache.sling.api.request.RequestParameter;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParameterSupportTest {
+
+    private static final String FORM = "--XX\r\n"
+            + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+            + "Hello\r\n"
+            + "--XX\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + "content\r\n"
+            + "--XX--\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void tearDown() {
+        ParameterSupport.configure(-1, null, -1, 256000, false, 50, false, ParameterSupport.STORAGE_DISK, 0, null);
+    }
+
+    private static HttpServletRequest post(final String query, final String body) throws IOException {
+        final ByteArrayInputStream input = new ByteArrayInputStream(body.getBytes(StandardCharsets.ISO_8859_1));
+        final HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(request.getMethod()).thenReturn("POST");
+        Mockito.when(request.getQueryString()).thenReturn(query);
+        Mockito.when(request.getContentType()).thenReturn("application/x-www-form-urlencoded");
+        Mockito.when(request.getParameterMap()).thenReturn(Collections.emptyMap());
+        Mockito.when(request.getInputStream()).thenReturn(new ServletInputStream() {
+            @Override
+            public int read() {
+                return input.read();
+            }
+
+            @Override
+            public boolean isFinished() {
+                return input.available() == 0;
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setReadListener(ReadListener readListener) {}
+        });
+        return request;
+    }
+
+    private static HttpServletRequest multipart(final String body) throws IOException {
+        final HttpServletRequest request = post(null, body);
+        Mockito.when(request.getContentType()).thenReturn("multipart/form-data; boundary=XX");
+        Mockito.when(request.getContentLength()).thenReturn(body.length());
+        return request;
+    }
+
+    private static ParameterSupport lazy(final HttpServletRequest request) {
+        ParameterSupport.configure(-1, null, -1, 256000, false, 50, true, ParameterSupport.STORAGE_DISK, 0, null);
+        return ParameterSupport.getInstance(request);
+    }
+
+    @Test
+    public void testEager() throws IOException {
+        final HttpServletRequest request = post("a=1", "b=2");
+        final ParameterSupport support = ParameterSupport.getInstance(request);
+
+        assertEquals("1", support.getParameter("a"));
+        Mockito.verify(request).getInputStream();
+        assertEquals(true, support.requestDataUsed());
+    }
+
+    @Test
+    public void testLazyQueryParameter() throws IOException {
+        final HttpServletRequest request = post("a=1&a=3", "b=2&a=4");
+        final ParameterSupport support = lazy(request);
+
+        assertEquals("1", support.getParameter("a"));
+        assertEquals("1", support.getRequestParameter("a").getString());
+        Mockito.verify(request, Mockito.never()).getInputStream();
+        assertEquals(false, support.requestDataUsed());
+
+        // the body is parsed for a name missing from the query string
+        assertEquals("2", support.getParameter("b"));
+        Mockito.verify(request).getInputStream();
+        assertEquals(true, support.requestDataUsed());
+        assertEquals(Arrays.asList("1", "3", "4"), Arrays.asList(support.getParameterValues("a")));
+        assertEquals(Arrays.asList("a", "b"), Collections.list(support.getParameterNames()));
+    }
+
+    @Test
+    public void testLazyAllValues() throws IOException {
+        final HttpServletRequest request = post("a=1", "a=2");
+        final ParameterSupport support = lazy(request);
+
+        assertEquals(Arrays.asList("1", "2"), Arrays.asList(support.getParameterValues("a")));
+        Mockito.verify(request).getInputStream();
+    }
+
+    @Test
+    public void testLazyEncodingFromBody() throws IOException {
+        final HttpServletRequest request = post("a=%C3%A4&c=1", "_charset_=UTF-8");
+        final ParameterSupport support = lazy(request);
+
+        assertEquals("1", support.getParameter("c"));
+        Mockito.verify(request, Mockito.never()).getInputStream();
+
+        // the encoding of a non ASCII value may be set by the body
+        assertEquals("\u00e4", support.getParameter("a"));
+        Mockito.verify(request).getInputStream();
+    }
+
+    @Test
+    public void testLazyEncodingFromQuery() throws IOException {
+        final HttpServletRequest request = post("_charset_=UTF-8&a=%C3%A4", "b=2");
+        final ParameterSupport support = lazy(request);
+
+        assertEquals("\u00e4", support.getParameter("a"));
+        Mockito.verify(request, Mockito.never()).getInputStream();
+        assertEquals("\u00e4", support.getParameterMap().get("a")[0]);
+        assertEquals("2", support.getParameter("b"));
+    }
+
+    @Test
+    public void testLazyWithoutQuery() throws IOException {
+        final HttpServletRequest request = post(null, "b=2");
+        final ParameterSupport support = lazy(request);
+
+        assertEquals("2", support.getParameter("b"));
+        assertNull(support.getParameter("a"));
+    }
+
+    @Test
+    public void testBufferUploadStorage() throws IOException {
+        ParameterSupport.configure(
+                -1, null, -1, 256000, false, 50, false, ParameterSupport.STORAGE_BUFFER, 1 << 20, null);
+        final HttpServletRequest request = multipart(FORM);
+        final ParameterSupport support = ParameterSupport.getInstance(request);
+
+        assertEquals("Hello", support.getParameter("title"));
+        final RequestParameter file = support.getRequestParameter("file");
+        assertEquals("a.txt", file.getFileName());
+        try (InputStream in = file.getInputStream()) {
+            assertEquals("content", new String(in.readAllBytes(), StandardCharsets.ISO_8859_1));
+        }
+        final InputStream kept = file.getInputStream();
+
+        support.dispose();
+        try {
+            file.getInputStream();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // a stream kept beyond the end of the request does not read reused buffers
+        try {
+            kept.read();
+            fail("IOException expected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUploadBudget() throws Exception {
+        final UploadBudget budget = new UploadBudget(1024, -1, 0);
+        ParameterSupport.configure(-1, null, -1, 256000, false, 50, false, ParameterSupport.STORAGE_DISK, 0, budget);
+        final ParameterSupport support = ParameterSupport.getInstance(multipart(FORM));
+
+        assertEquals("Hello", support.getParameter("title"));
+        assertEquals("Hello".length() + "content".length(), budget.getMemoryInUse());
+        assertEquals(0, budget.getUploadsInFlight());
+
+        support.dispose();
+        assertEquals(0, budget.getMemoryInUse());
+        assertEquals(1, budget.getAdmittedCount());
+    }
+
+    @Test
+    public void testUploadBudgetDeletesTemporaryFiles() throws Exception {
+        final UploadBudget budget = new UploadBudget(-1, 1024, 0);
+        ParameterSupport.configure(
+                -1,
+                folder.getRoot().getAbsolutePath(),
+                -1,
+                4,
+                false,
+                50,
+                false,
+                ParameterSupport.STORAGE_DISK,
+                0,
+                budget);
+        final ParameterSupport support = ParameterSupport.getInstance(multipart(FORM));
+
+        assertEquals("Hello", support.getParameter("title"));
+        assertEquals("Hello".length() + "content".length(), budget.getDiskInUse());
+        assertEquals(2, folder.getRoot().list().length);
+
+        // the disk budget is only released together with the files
+        support.dispose();
+        assertEquals(0, budget.getDiskInUse());
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void testUploadBudgetExceeded() throws Exception {
+        final UploadBudget budget = new UploadBudget(8, -1, 0);
+        ParameterSupport.configure(-1, null, -1, 256000, false, 50, false, ParameterSupport.STORAGE_DISK, 0, budget);
+        final ParameterSupport support = ParameterSupport.getInstance(multipart(FORM));
+
+        try {
+            support.getParameter("title");
+            fail("SlingIOException expected");
+        } catch (SlingIOException e) {
+            assertTrue(e.getCause() instanceof UploadBudgetExceededException);
+        }
+        assertEquals(0, budget.getMemoryInUse());
+        assertEquals(1, budget.getRejectedCount());
+
+        // the parameters are available without the parts
+        assertNull(support.getParameter("title"));
+    }
+}
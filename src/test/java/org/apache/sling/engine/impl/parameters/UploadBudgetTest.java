@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.parameters;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class UploadBudgetTest {
+
+    @Test
+    public void testMemoryMovedToDisk() throws Exception {
+        final UploadBudget budget = new UploadBudget(100, 1000, 0);
+        budget.addMemory(60);
+        assertEquals(60, budget.getMemoryInUse());
+
+        budget.addDisk(60, 40);
+        assertEquals(0, budget.getMemoryInUse());
+        assertEquals(100, budget.getDiskInUse());
+
+        budget.release(0, 100);
+        assertEquals(0, budget.getDiskInUse());
+    }
+
+    @Test
+    public void testExceeded() throws Exception {
+        final UploadBudget budget = new UploadBudget(100, 1000, 0);
+        budget.addMemory(60);
+        try {
+            budget.addMemory(41);
+            fail("UploadBudgetExceededException expected");
+        } catch (UploadBudgetExceededException e) {
+            // expected
+        }
+        assertEquals(60, budget.getMemoryInUse());
+        assertEquals(1, budget.getRejectedCount());
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        final UploadBudget budget = new UploadBudget(0, -1, 0);
+        budget.addMemory(Integer.MAX_VALUE);
+        budget.admit();
+        assertEquals(-1, budget.getMemoryBudget());
+        assertEquals(-1, budget.getDiskBudget());
+        assertEquals(1, budget.getUploadsInFlight());
+    }
+
+    @Test
+    public void testAdmitFailFast() throws Exception {
+        final UploadBudget budget = new UploadBudget(100, -1, 0);
+        budget.admit();
+        budget.addMemory(100);
+        budget.complete();
+        try {
+            budget.admit();
+            fail("UploadBudgetExceededException expected");
+        } catch (UploadBudgetExceededException e) {
+            // expected
+        }
+        assertEquals(0, budget.getUploadsInFlight());
+        assertEquals(1, budget.getAdmittedCount());
+        assertEquals(1, budget.getRejectedCount());
+        assertEquals(0, budget.getQueuedCount());
+    }
+
+    @Test
+    public void testAdmitWaitsForRelease() throws Exception {
+        final UploadBudget budget = new UploadBudget(100, -1, 60_000);
+        budget.addMemory(100);
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread waiter = new Thread(() -> {
+            try {
+                budget.admit();
+                admitted.countDown();
+            } catch (UploadBudgetExceededException e) {
+                // not admitted
+            }
+        });
+        waiter.start();
+        while (budget.getQueuedCount() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, admitted.getCount());
+
+        budget.release(100, 0);
+        waiter.join(10_000);
+        assertEquals(0, admitted.getCount());
+        assertEquals(1, budget.getUploadsInFlight());
+    }
+
+    @Test
+    public void testAdmitWaitTimesOut() throws Exception {
+        final UploadBudget budget = new UploadBudget(-1, 10, 10);
+        budget.addDisk(0, 10);
+        try {
+            budget.admit();
+            fail("UploadBudgetExceededException expected");
+        } catch (UploadBudgetExceededException e) {
+            // expected
+        }
+        assertEquals(1, budget.getQueuedCount());
+        assertEquals(1, budget.getRejectedCount());
+
+        budget.resetStatistics();
+        assertEquals(0, budget.getQueuedCount());
+        assertEquals(0, budget.getRejectedCount());
+    }
+}
@@ -127,4 +127,50 @@ public class UtilTest extends TestCase {
         assertEquals("Some Page", map.getStringValue("title"));
         assertEquals("/content/geometrixx", map.getStringValue("parentPath"));
     }
+
+    public void test_decode_escapes() throws Exception {
+        final ParameterMap map = new ParameterMap();
+        final String query = "na%6De=a+b%2Fc&flag& spaced = value &x=%";
+        Util.parseQueryString(Util.fromIdentityEncodedString(query), Util.ENCODING_DIRECT, map, false);
+
+        assertEquals("a b/c", map.getStringValue("name"));
+        assertEquals("", map.getStringValue("flag"));
+        assertEquals("value ", map.getStringValue("spaced "));
+        assertEquals("", map.getStringValue("x"));
+        assertEquals(5, map.getValue("name").getSize());
+        assertEquals("a b/c", new String(map.getValue("name").get(), Util.ENCODING_DIRECT));
+    }
+
+    public void test_decode_bad_escape() throws Exception {
+        final ParameterMap map = new ParameterMap();
+        try {
+            Util.parseQueryString(Util.fromIdentityEncodedString("a=1&b=%zz&c=3"), Util.ENCODING_DIRECT, map, false);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Bad escape sequence: %zz", e.getMessage());
+        }
+        assertEquals("1", map.getStringValue("a"));
+        assertNull(map.getValue("c"));
+    }
+
+    public void test_decode_charset() throws Exception {
+        final ParameterMap map = new ParameterMap();
+        final String query = "%E3%83%91=%E1%9B%82%E3%83%91%EF%BE%89&_charset_=UTF-8";
+        Util.parseQueryString(Util.fromIdentityEncodedString(query), Util.ENCODING_DIRECT, map, false);
+        assertEquals(utf8Coded, map.getStringValue("\u00e3\u0083\u0091"));
+
+        Util.fixEncoding(map);
+        assertEquals(utf8String, map.getStringValue("\u30d1"));
+        assertEquals(utf8, ((AbstractRequestParameter) map.getValue("\u30d1")).getEncoding());
+        assertEquals(utf8Coded, map.getValue("\u30d1").getString(Util.ENCODING_DIRECT));
+    }
+
+    public void test_decode_unsupported_encoding() throws Exception {
+        try {
+            Util.parseQueryString(Util.fromIdentityEncodedString("a=1"), "XX_invalid_XX", new ParameterMap(), false);
+            fail("UnsupportedEncodingException expected");
+        } catch (UnsupportedEncodingException e) {
+            // expected
+        }
+    }
 }
@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.Servlet;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.SlingJakartaHttpServletResponse;
+import org.apache.sling.api.request.RequestPathInfo;
+import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.request.builder.Builders;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.engine.impl.SlingRequestProcessorImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+
+public class ParallelIncludeTest {
+
+    private final Map<String, Object> attributes = new HashMap<>();
+
+    private final StringWriter output = new StringWriter();
+
+    private final List<ResourceResolver> clones = new ArrayList<>();
+
+    private HttpServletRequest servletRequest;
+
+    private SlingRequestProcessorImpl processor;
+
+    private ResourceResolver resolver;
+
+    private ParallelIncludeExecutor executor;
+
+    private RequestData requestData;
+
+    /** renders the included resources on the threads of the executor */
+    private Servlet servlet;
+
+    @Before
+    public void setup() throws Exception {
+        servletRequest = Mockito.mock(HttpServletRequest.class);
+        Mockito.when(servletRequest.getMethod()).thenReturn("GET");
+        Mockito.when(servletRequest.getParameterMap()).thenReturn(Collections.emptyMap());
+        Mockito.when(servletRequest.getAttribute(anyString()))
+                .thenAnswer(invocation -> attributes.get(invocation.getArgument(0)));
+        Mockito.when(servletRequest.getAttributeNames())
+                .thenAnswer(invocation -> Collections.enumeration(new ArrayList<>(attributes.keySet())));
+        Mockito.doAnswer(invocation -> attributes.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(servletRequest)
+                .setAttribute(anyString(), any());
+        attributes.put(RequestProgressTracker.class.getName(), Builders.newRequestProgressTracker());
+
+        final HttpServletResponse servletResponse = Mockito.mock(HttpServletResponse.class);
+        Mockito.when(servletResponse.getWriter()).thenReturn(new PrintWriter(output));
+        Mockito.when(servletResponse.getCharacterEncoding()).thenReturn("UTF-8");
+        Mockito.when(servletResponse.getContentType()).thenReturn("text/html");
+        Mockito.when(servletResponse.getLocale()).thenReturn(Locale.ENGLISH);
+
+        executor = executor(2, 1);
+        processor = Mockito.mock(SlingRequestProcessorImpl.class);
+        Mockito.when(processor.getParallelIncludeExecutor()).thenAnswer(invocation -> executor);
+        Mockito.when(processor.getAdditionalResponseHeaders()).thenReturn(Collections.emptyList());
+        Mockito.when(processor.getMaxCallCounter()).thenReturn(50);
+        Mockito.when(processor.getMaxIncludeCounter()).thenReturn(50);
+
+        // the include is rendered by calling the servlet like the processor does
+        Mockito.doAnswer(invocation -> {
+                    final SlingJakartaHttpServletRequest request = invocation.getArgument(0);
+                    final RequestData branch = RequestData.getRequestData(request);
+                    final ContentData previous = branch.getContentData();
+                    branch.setContent(invocation.getArgument(2), invocation.getArgument(3))
+                            .setServlet(servlet);
+                    try {
+                        RequestData.service(request, invocation.getArgument(1));
+                    } finally {
+                        branch.resetContent(previous);
+                    }
+                    return null;
+                })
+                .when(processor)
+                .dispatchRequest(any(), any(), any(), any(), any());
+
+        resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.clone(null)).thenAnswer(invocation -> {
+            final ResourceResolver clone = Mockito.mock(ResourceResolver.class);
+            Mockito.when(clone.getResource(anyString())).thenAnswer(get -> resource(get.getArgument(0)));
+            clones.add(clone);
+            return clone;
+        });
+
+        requestData = new RequestData(processor, servletRequest, servletResponse, false, false, true);
+        final Field field = RequestData.class.getDeclaredField("resourceResolver");
+        field.setAccessible(true);
+        field.set(requestData, resolver);
+
+        servlet = Mockito.mock(Servlet.class);
+        Mockito.doAnswer(invocation -> {
+                    final SlingJakartaHttpServletRequest request = invocation.getArgument(0);
+                    final String path = request.getRequestPathInfo().getResourcePath();
+                    request.getRequestProgressTracker().log("rendering " + path);
+                    ((ServletResponse) invocation.getArgument(1)).getWriter().write("<" + path.substring(9) + "/>");
+                    return null;
+                })
+                .when(servlet)
+                .service(any(), any());
+    }
+
+    @After
+    public void tearDown() {
+        executor.deactivate();
+    }
+
+    private static ParallelIncludeExecutor executor(final int threads, final int queueSize) {
+        final ParallelIncludeExecutor.Config config = Mockito.mock(ParallelIncludeExecutor.Config.class);
+        Mockito.when(config.parallel_include_threads()).thenReturn(threads);
+        Mockito.when(config.parallel_include_queue_size()).thenReturn(queueSize);
+        Mockito.when(config.parallel_include_timeout()).thenReturn(10000L);
+        return new ParallelIncludeExecutor(config);
+    }
+
+    private static Resource resource(final String path) {
+        final Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.getPath()).thenReturn(path);
+        Mockito.when(resource.getResourceType()).thenReturn("app/teaser");
+        return resource;
+    }
+
+    private boolean include(final String path) {
+        final RequestPathInfo info = Mockito.mock(RequestPathInfo.class);
+        Mockito.when(info.getResourcePath()).thenReturn(path);
+        Mockito.when(info.getSelectors()).thenReturn(new String[0]);
+        final SlingJakartaHttpServletRequest request = requestData.getSlingRequest();
+        final SlingJakartaHttpServletResponse response = requestData.getSlingResponse();
+        return requestData.includeParallel(
+                executor, request, response, resource(path), info, new DispatchingInfo(DispatcherType.INCLUDE));
+    }
+
+    private List<String> messages() {
+        final List<String> messages = new ArrayList<>();
+        final Iterator<String> iterator =
+                requestData.getRequestProgressTracker().getMessages();
+        while (iterator.hasNext()) {
+            messages.add(iterator.next());
+        }
+        return messages;
+    }
+
+    @Test
+    public void testIncludesAreSplicedInDocumentOrder() throws Exception {
+        final PrintWriter writer = requestData.getSlingResponse().getWriter();
+        writer.write("<a>");
+        assertTrue(include("/content/b"));
+        writer.write("<x/>");
+        assertTrue(include("/content/c"));
+        writer.write("</a>");
+
+        requestData.joinParallelIncludes();
+        writer.flush();
+        assertEquals("<a><b/><x/><c/></a>", output.toString());
+
+        // the servlet calls of the includes count for the request
+        assertEquals(2, requestData.getServletCallCount());
+        assertTrue(messages().stream()
+                .anyMatch(m -> m.contains("Parallel include of /content/b") && m.contains("rendering /content/b")));
+        assertTrue(messages().stream()
+                .anyMatch(m -> m.contains("Parallel include of /content/c") && m.contains("rendering /content/c")));
+
+        // the clones of the resource resolver are closed once rendered
+        assertEquals(2, clones.size());
+        for (final ResourceResolver clone : clones) {
+            Mockito.verify(clone).close();
+        }
+    }
+
+    @Test
+    public void testBranchRequestAttributes() throws Exception {
+        final CountDownLatch attributeSet = new CountDownLatch(1);
+        final Map<String, Object> seen = new HashMap<>();
+        servlet = Mockito.mock(Servlet.class);
+        Mockito.doAnswer(invocation -> {
+                    final ServletRequest request = invocation.getArgument(0);
+                    attributeSet.await(10, TimeUnit.SECONDS);
+                    seen.put("before", request.getAttribute("before"));
+                    seen.put("after", request.getAttribute("after"));
+                    request.setAttribute("include", "set");
+                    return null;
+                })
+                .when(servlet)
+                .service(any(), any());
+
+        requestData.getSlingResponse().getWriter();
+        attributes.put("before", "included");
+        assertTrue(include("/content/b"));
+        // attributes set by the including servlet after the include are not visible to it
+        requestData.getSlingRequest().setAttribute("after", "not included");
+        attributeSet.countDown();
+        requestData.joinParallelIncludes();
+
+        assertEquals("included", seen.get("before"));
+        assertNull(seen.get("after"));
+        // attributes set by the include are not visible to the including servlet
+        assertNull(requestData.getSlingRequest().getAttribute("include"));
+    }
+
+    @Test
+    public void testSequentialFallbackForRequestBody() throws Exception {
+        Mockito.when(servletRequest.getMethod()).thenReturn("POST");
+        requestData.getSlingResponse().getWriter();
+
+        assertFalse(include("/content/b"));
+        Mockito.verify(resolver, Mockito.never()).clone(null);
+    }
+
+    @Test
+    public void testSequentialFallbackForExhaustedExecutor() throws Exception {
+        executor.deactivate();
+        executor = executor(1, 1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        servlet = Mockito.mock(Servlet.class);
+        Mockito.doAnswer(invocation -> proceed.await(10, TimeUnit.SECONDS))
+                .when(servlet)
+                .service(any(), any());
+        requestData.getSlingResponse().getWriter();
+
+        // one include is rendered, one waits in the queue
+        assertTrue(include("/content/b"));
+        assertTrue(include("/content/c"));
+        assertFalse(include("/content/d"));
+        assertEquals(3, clones.size());
+        Mockito.verify(clones.get(2)).close();
+
+        proceed.countDown();
+        requestData.joinParallelIncludes();
+    }
+
+    @Test
+    public void testSequentialFallbackWithoutResolver() throws Exception {
+        Mockito.when(resolver.clone(null)).thenThrow(new LoginException("no session"));
+        requestData.getSlingResponse().getWriter();
+
+        assertFalse(include("/content/b"));
+        requestData.joinParallelIncludes();
+        assertEquals(0, requestData.getServletCallCount());
+    }
+}
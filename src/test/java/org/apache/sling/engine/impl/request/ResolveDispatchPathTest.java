@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.apache.sling.api.SlingJakartaHttpServletRequest;
+import org.apache.sling.api.request.RequestProgressTracker;
+import org.apache.sling.api.resource.NonExistingResource;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.engine.impl.SlingRequestProcessorImpl;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ResolveDispatchPathTest {
+
+    private HttpServletRequest servletRequest;
+
+    private ResourceResolver resolver;
+
+    private RequestProgressTracker tracker;
+
+    private RequestData requestData;
+
+    private SlingJakartaHttpServletRequest request;
+
+    @Before
+    public void setup() throws Exception {
+        final SlingRequestProcessorImpl processor = mock(SlingRequestProcessorImpl.class);
+        when(processor.getAdditionalResponseHeaders()).thenReturn(Collections.emptyList());
+        servletRequest = mock(HttpServletRequest.class);
+        when(servletRequest.getMethod()).thenReturn("GET");
+        tracker = mock(RequestProgressTracker.class);
+        when(servletRequest.getAttribute(RequestProgressTracker.class.getName()))
+                .thenReturn(tracker);
+
+        requestData = new RequestData(processor, servletRequest, mock(HttpServletResponse.class), false, false, false);
+        resolver = mock(ResourceResolver.class);
+        when(resolver.resolve(anyString())).thenAnswer(invocation -> resource(invocation.getArgument(0)));
+        final Field field = RequestData.class.getDeclaredField("resourceResolver");
+        field.setAccessible(true);
+        field.set(requestData, resolver);
+
+        request = mock(SlingJakartaHttpServletRequest.class);
+        when(request.getResourceResolver()).thenReturn(resolver);
+    }
+
+    private static Resource resource(final String path) {
+        final Resource resource = mock(Resource.class);
+        when(resource.getPath()).thenReturn(path);
+        when(resource.getResourceType()).thenReturn("site/item");
+        return resource;
+    }
+
+    @Test
+    public void testRepeatedPathIsMemoized() {
+        final Resource first = requestData.resolveDispatchPath(request, "/content/list/item1");
+        assertSame(first, requestData.resolveDispatchPath(request, "/content/list/item1"));
+        requestData.resolveDispatchPath(request, "/content/list/item2");
+
+        verify(resolver, times(1)).resolve("/content/list/item1");
+        verify(resolver, times(1)).resolve("/content/list/item2");
+        verify(tracker).log(anyString(), eq("/content/list/item1"), eq(first), eq(1));
+    }
+
+    @Test
+    public void testNotMemoizedForOtherMethods() {
+        when(servletRequest.getMethod()).thenReturn("POST");
+        requestData.resolveDispatchPath(request, "/content/list/item1");
+        requestData.resolveDispatchPath(request, "/content/list/item1");
+        verify(resolver, times(2)).resolve("/content/list/item1");
+    }
+
+    @Test
+    public void testNotMemoizedForOtherResolvers() {
+        final ResourceResolver other = mock(ResourceResolver.class);
+        when(other.resolve(anyString())).thenAnswer(invocation -> resource(invocation.getArgument(0)));
+        when(request.getResourceResolver()).thenReturn(other);
+        requestData.resolveDispatchPath(request, "/content/list/item1");
+        requestData.resolveDispatchPath(request, "/content/list/item1");
+        verify(other, times(2)).resolve("/content/list/item1");
+    }
+
+    @Test
+    public void testNonExistingResourcesAreNotMemoized() {
+        when(resolver.resolve("/content/missing"))
+                .thenAnswer(invocation -> new NonExistingResource(resolver, "/content/missing"));
+        requestData.resolveDispatchPath(request, "/content/missing");
+        requestData.resolveDispatchPath(request, "/content/missing");
+        verify(resolver, times(2)).resolve("/content/missing");
+    }
+
+    @Test
+    public void testMemoIsBounded() {
+        for (int i = 0; i <= RequestData.MAX_RESOLVED_PATHS; i++) {
+            requestData.resolveDispatchPath(request, "/content/list/item" + i);
+        }
+        // the least recently used path has been dropped
+        requestData.resolveDispatchPath(request, "/content/list/item0");
+        verify(resolver, times(2)).resolve("/content/list/item0");
+        requestData.resolveDispatchPath(request, "/content/list/item" + RequestData.MAX_RESOLVED_PATHS);
+        verify(resolver, times(1)).resolve("/content/list/item" + RequestData.MAX_RESOLVED_PATHS);
+    }
+}
@@ -39,6 +39,7 @@ import org.apache.sling.engine.impl.SlingJakartaHttpServletResponseImpl;
 import org.apache.sling.engine.impl.SlingRequestProcessorImpl;
 import org.apache.sling.engine.impl.filter.FilterHandle;
 import org.apache.sling.engine.impl.filter.ServletFilterManager;
+import org.apache.sling.engine.impl.filter.SlingFilterChainHelper;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
@@ -130,7 +131,8 @@ public class SlingRequestDispatcherTest {
         servletResolverField.set(slingRequestProcessor, servletResolver);
 
         ServletFilterManager filterManager = mock(ServletFilterManager.class);
-        when(filterManager.getFilters(any())).thenReturn(new FilterHandle[] {});
+        when(filterManager.getFilters(any(), any())).thenReturn(new FilterHandle[] {});
+        when(filterManager.getSelection(any())).thenReturn(new SlingFilterChainHelper().getSelection());
         Field filterManagerField = slingRequestProcessor.getClass().getDeclaredField("filterManager");
         filterManagerField.setAccessible(true);
         filterManagerField.set(slingRequestProcessor, filterManager);
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.engine.impl.request;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sling.engine.RequestDeadline;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SplicingWriterTest {
+
+    private static ParallelInclude include(final String output, final boolean done) throws IOException {
+        final ParallelInclude include = mock(ParallelInclude.class);
+        when(include.isDone()).thenReturn(done);
+        doAnswer(invocation -> {
+                    ((Writer) invocation.getArgument(0)).write(output);
+                    return null;
+                })
+                .when(include)
+                .join(any(Writer.class), anyLong());
+        return include;
+    }
+
+    @Test
+    public void testWriteThrough() throws IOException {
+        final StringWriter out = new StringWriter();
+        final SplicingWriter writer = new SplicingWriter(out, 1000, () -> null);
+        writer.write("abc");
+        writer.write('d');
+        assertEquals("abcd", out.toString());
+        assertTrue(writer.isEmpty());
+    }
+
+    @Test
+    public void testDocumentOrder() throws IOException {
+        final StringWriter out = new StringWriter();
+        final SplicingWriter writer = new SplicingWriter(out, 1000, () -> null);
+        writer.write("<a>");
+        writer.add(include("<b/>", false));
+        writer.write("</a>");
+        writer.add(include("<c/>", false));
+        writer.write('!');
+        assertEquals("<a>", out.toString());
+
+        writer.join();
+        assertEquals("<a><b/></a><c/>!", out.toString());
+        assertTrue(writer.isEmpty());
+    }
+
+    @Test
+    public void testCompletedIncludesAreWrittenOnWrite() throws IOException {
+        final StringWriter out = new StringWriter();
+        final SplicingWriter writer = new SplicingWriter(out, 1000, () -> null);
+        final ParallelInclude pending = include("<c/>", false);
+        writer.add(include("<b/>", true));
+        writer.add(pending);
+        writer.write("x");
+        assertEquals("<b/>", out.toString());
+        verify(pending, never()).join(any(Writer.class), anyLong());
+
+        // flushing does not wait for pending includes
+        writer.flush();
+        assertEquals("<b/>", out.toString());
+        verify(pending, never()).join(any(Writer.class), anyLong());
+
+        writer.join();
+        assertEquals("<b/><c/>x", out.toString());
+    }
+
+    @Test
+    public void testIncludesShareDeadline() throws IOException {
+        final SplicingWriter writer = new SplicingWriter(new StringWriter(), 1000, () -> null);
+        final ParallelInclude first = include("<b/>", false);
+        final ParallelInclude second = include("<c/>", false);
+        writer.add(first);
+        writer.add(second);
+
+        final long before = System.nanoTime();
+        writer.join();
+        final ArgumentCaptor<Long> firstUntil = ArgumentCaptor.forClass(Long.class);
+        final ArgumentCaptor<Long> secondUntil = ArgumentCaptor.forClass(Long.class);
+        verify(first).join(any(Writer.class), firstUntil.capture());
+        verify(second).join(any(Writer.class), secondUntil.capture());
+        assertEquals(firstUntil.getValue(), secondUntil.getValue());
+        assertTrue(firstUntil.getValue() - before >= TimeUnit.MILLISECONDS.toNanos(1000));
+        assertTrue(firstUntil.getValue() - System.nanoTime() <= TimeUnit.MILLISECONDS.toNanos(1000));
+    }
+
+    @Test
+    public void testRequestDeadlineBoundsWait() throws IOException {
+        final RequestDeadline deadline = mock(RequestDeadline.class);
+        when(deadline.getRemainingTime(TimeUnit.NANOSECONDS)).thenReturn(-5L);
+        final SplicingWriter writer = new SplicingWriter(new StringWriter(), 1000, () -> deadline);
+        final ParallelInclude include = include("<b/>", false);
+        writer.add(include);
+
+        writer.join();
+        final ArgumentCaptor<Long> until = ArgumentCaptor.forClass(Long.class);
+        verify(include).join(any(Writer.class), until.capture());
+        assertTrue(until.getValue() - System.nanoTime() <= 0);
+    }
+
+    @Test
+    public void testDiscard() throws IOException {
+        final StringWriter out = new StringWriter();
+        final SplicingWriter writer = new SplicingWriter(out, 1000, () -> null);
+        final ParallelInclude include = include("<b/>", false);
+        writer.add(include);
+        writer.write("x");
+        writer.discard();
+        verify(include).cancel();
+        assertTrue(writer.isEmpty());
+
+        writer.write("y");
+        writer.join();
+        assertEquals("y", out.toString());
+    }
+}